@@ -0,0 +1,150 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.base;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.IntStream;
+
+import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Numbers stations 0, 1, 2, ... so that a set of stations can be a bitset, and a station channel pair a SAT variable, no larger than the number of stations, however large the station IDs are.
+ * The stations given upfront are numbered in the given order (increasing ID for a collection of stations). A station that is not in the index yet gets the next number the first time it is indexed, and keeps it for good.
+ * Looking a station up does not lock, so an index can be shared by threads.
+ */
+public class StationIndex {
+
+    /**
+     * Numbers every station by its ID, for data that predates station indices (a bitset is then as large as the largest ID).
+     */
+    public static final StationIndex IDENTITY = new StationIndex(true);
+
+    private final boolean identity;
+    private final ConcurrentMap<Integer, Integer> numbers = new ConcurrentHashMap<>();
+    // stations[n] is the station numbered n, replaced by a larger copy whenever a station is added
+    private volatile Station[] stations = new Station[0];
+
+    private StationIndex(boolean identity) {
+        this.identity = identity;
+    }
+
+    /**
+     * An empty index, stations are numbered as they are indexed.
+     */
+    public StationIndex() {
+        this(false);
+    }
+
+    /**
+     * @param stations the stations to number, in increasing order of ID
+     */
+    public StationIndex(Collection<Station> stations) {
+        this(stations.stream().mapToInt(Station::getID).sorted().distinct().toArray());
+    }
+
+    /**
+     * @param stationIDs the IDs of the stations to number, in order (e.g. as given by {@link #getStationIDs()})
+     */
+    public StationIndex(int[] stationIDs) {
+        this(false);
+        final Station[] indexed = new Station[stationIDs.length];
+        for (int number = 0; number < stationIDs.length; number++) {
+            Preconditions.checkArgument(numbers.putIfAbsent(stationIDs[number], number) == null, "Station %s is listed twice", stationIDs[number]);
+            indexed[number] = new Station(stationIDs[number]);
+        }
+        stations = indexed;
+    }
+
+    public boolean isIdentity() {
+        return identity;
+    }
+
+    /**
+     * @return the number of the station, -1 if it is not in the index
+     */
+    public int indexOf(Station station) {
+        if (identity) {
+            return station.getID();
+        }
+        final Integer number = numbers.get(station.getID());
+        return number != null ? number : -1;
+    }
+
+    /**
+     * @return the number of the station, which is added to the index if it is not there yet
+     */
+    public int index(Station station) {
+        final int number = indexOf(station);
+        return number >= 0 ? number : add(station);
+    }
+
+    private synchronized int add(Station station) {
+        final Integer number = numbers.get(station.getID());
+        if (number != null) {
+            return number;
+        }
+        final int added = stations.length;
+        final Station[] indexed = Arrays.copyOf(stations, added + 1);
+        indexed[added] = station;
+        // publish the station before its number, so that whoever finds the number can find the station
+        stations = indexed;
+        numbers.put(station.getID(), added);
+        return added;
+    }
+
+    /**
+     * @return the station with the given number
+     */
+    public Station getStation(int number) {
+        if (identity) {
+            return new Station(number);
+        }
+        final Station[] indexed = stations;
+        Preconditions.checkArgument(number >= 0 && number < indexed.length, "No station is numbered %s", number);
+        return indexed[number];
+    }
+
+    /**
+     * @return the IDs of the stations of the index, in order of number (empty for {@link #IDENTITY})
+     */
+    public int[] getStationIDs() {
+        return Arrays.stream(stations).mapToInt(Station::getID).toArray();
+    }
+
+    /**
+     * @return the numbers given so far, in increasing order. For {@link #IDENTITY}, the numbers 1 ... N_STATIONS that the bundled permutations of the containment cache are made of
+     */
+    public int[] getNumbers() {
+        return identity ? IntStream.rangeClosed(1, StationPackingUtils.N_STATIONS).toArray() : IntStream.range(0, stations.length).toArray();
+    }
+
+    @Override
+    public String toString() {
+        return identity ? "StationIndex(IDENTITY)" : "StationIndex(" + stations.length + " stations)";
+    }
+
+}
@@ -39,11 +39,16 @@ import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 /**
  * Immutable container class representing a station packing instance.
@@ -55,10 +60,16 @@ public class StationPackingInstance {
 	
 	public static final String NAME_KEY = "NAME";
     public static final String CACHE_DATE_KEY = "CACHE_DATE";
+    private static final HashFunction CANONICAL_HASH_FUNCTION = Hashing.murmur3_128();
+    // ends the channels of a station in the canonical hash, no channel word can take this value
+    private static final int END_OF_DOMAIN = Integer.MIN_VALUE;
     private final ImmutableMap<Station, Set<Integer>> domains;
 	private final ImmutableMap<Station, Integer> previousAssignment;
 	@Getter
 	private final Map<String, Object> metadata;
+	// see getCanonicalHash, computed on first use (racing threads compute the same value)
+	@JsonIgnore
+	private transient volatile HashCode canonicalHash;
 
 	/**
 	 * Create a station packing instance.
@@ -134,7 +145,7 @@ public class StationPackingInstance {
 		return allChannels;
 	}
 
-	// warning: changing this method will completely mess up hashing!
+	// warning: getHashString hashes this string, so changing this method renames every saved instance file!
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -211,6 +222,8 @@ public class StationPackingInstance {
 	}
 	
 	/**
+	 * Names the files saved for the instance (see {@link ca.ubc.cs.beta.stationpacking.solvers.decorators.ResultSaverSolverDecorator} and {@link ca.ubc.cs.beta.stationpacking.solvers.decorators.CNFSaverSolverDecorator}),
+	 * so it keeps the SHA-1 of the instance's string for the files saved earlier to be found. Use {@link #getCanonicalHash()} to tell instances apart in memory.
 	 * @return a hashed version of the instance's string representation.
 	 */
 	public String getHashString()
@@ -226,6 +239,48 @@ public class StationPackingInstance {
 		    throw new IllegalStateException("Could not encode filename", e);
 		}
 	}
+
+	/**
+	 * A 128 bit hash of the domains, which does not depend on the order the domains were given in (the previous assignment and the metadata are not part of it).
+	 * The station IDs and the channels, as 64 channel words, are fed to the hash function in increasing order, without building the instance's string.
+	 * Computed once per instance.
+	 * @return the canonical hash of the instance.
+	 */
+	public HashCode getCanonicalHash()
+	{
+		HashCode hash = canonicalHash;
+		if (hash == null)
+		{
+			final Hasher hasher = CANONICAL_HASH_FUNCTION.newHasher();
+			hasher.putInt(domains.size());
+			// the domains are sorted by station, and each domain is sorted
+			for (Map.Entry<Station, Set<Integer>> entry : domains.entrySet())
+			{
+				hasher.putInt(entry.getKey().getID());
+				int word = 0;
+				long mask = 0;
+				for (int channel : entry.getValue())
+				{
+					final int channelWord = Math.floorDiv(channel, Long.SIZE);
+					if (mask != 0 && channelWord != word)
+					{
+						hasher.putInt(word).putLong(mask);
+						mask = 0;
+					}
+					word = channelWord;
+					mask |= 1L << Math.floorMod(channel, Long.SIZE);
+				}
+				if (mask != 0)
+				{
+					hasher.putInt(word).putLong(mask);
+				}
+				hasher.putInt(END_OF_DOMAIN);
+			}
+			hash = hasher.hash();
+			canonicalHash = hash;
+		}
+		return hash;
+	}
 	
 	public String getName() {
 		return (String) metadata.getOrDefault(NAME_KEY, "UNTITLED");
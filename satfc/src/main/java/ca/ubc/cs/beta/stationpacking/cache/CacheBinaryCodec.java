@@ -0,0 +1,368 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheBatchRequest;
+import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheRequest;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchRequest;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheRequest;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
+import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A compact binary encoding of the messages exchanged with the cache server, used instead of JSON when both sides agree on {@link CacheBinaryMessageConverter#MEDIA_TYPE}.
+ * Stations are written as variable length deltas between increasing IDs, domains as channel masks (see {@link CacheUtils#toChannelMask}) XORed with the previous station's mask (neighbouring stations often share a domain, which then costs a single byte),
+ * followed by the rare channels that do not fit in a mask, and assignments as one channel per station. Only the (small) metadata map is still written as JSON, since its values can be of any type.
+ * Malformed input (a truncated or corrupt message) makes the readers throw an {@link IOException}. Sizes read from the input are never trusted for an allocation,
+ * arrays grow as their elements actually arrive, so a corrupt size runs out of input rather than out of memory.
+ */
+public class CacheBinaryCodec {
+
+    // the most elements (or bytes) allocated up front for a size read from the input
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private CacheBinaryCodec() {
+    }
+
+    public static void writeRequest(DataOutput out, ContainmentCacheRequest request) throws IOException {
+        writeInstance(out, request.getInstance());
+        writeCoordinate(out, request.getCoordinate());
+    }
+
+    public static ContainmentCacheRequest readRequest(DataInput in) throws IOException {
+        return new ContainmentCacheRequest(readInstance(in), readCoordinate(in));
+    }
+
+    public static void writeBatchRequest(DataOutput out, ContainmentCacheBatchRequest request) throws IOException {
+        writeCoordinate(out, request.getCoordinate());
+        writeVarInt(out, request.getInstances().size());
+        for (StationPackingInstance instance : request.getInstances()) {
+            writeInstance(out, instance);
+        }
+    }
+
+    public static ContainmentCacheBatchRequest readBatchRequest(DataInput in) throws IOException {
+        final CacheCoordinate coordinate = readCoordinate(in);
+        final int size = readVarInt(in);
+        final List<StationPackingInstance> instances = new ArrayList<>(Math.min(size, INITIAL_CAPACITY));
+        for (int i = 0; i < size; i++) {
+            instances.add(readInstance(in));
+        }
+        return new ContainmentCacheBatchRequest(instances, coordinate);
+    }
+
+    public static void writeCacheRequest(DataOutput out, ContainmentCacheCacheRequest request) throws IOException {
+        writeInstance(out, request.getInstance());
+        writeCoordinate(out, request.getCoordinate());
+        writeSolverResult(out, request.getResult());
+    }
+
+    public static ContainmentCacheCacheRequest readCacheRequest(DataInput in) throws IOException {
+        return new ContainmentCacheCacheRequest(readInstance(in), readCoordinate(in), readSolverResult(in));
+    }
+
+    public static void writeCacheBatchRequest(DataOutput out, ContainmentCacheCacheBatchRequest request) throws IOException {
+        writeVarInt(out, request.getRequests().size());
+        for (ContainmentCacheCacheRequest cacheRequest : request.getRequests()) {
+            writeCacheRequest(out, cacheRequest);
+        }
+    }
+
+    public static ContainmentCacheCacheBatchRequest readCacheBatchRequest(DataInput in) throws IOException {
+        final int size = readVarInt(in);
+        final List<ContainmentCacheCacheRequest> requests = new ArrayList<>(Math.min(size, INITIAL_CAPACITY));
+        for (int i = 0; i < size; i++) {
+            requests.add(readCacheRequest(in));
+        }
+        return new ContainmentCacheCacheBatchRequest(requests);
+    }
+
+    public static void writeSATResult(DataOutput out, ContainmentCacheSATResult result) throws IOException {
+        writeNullableString(out, result.getKey());
+        out.writeBoolean(result.getResult() != null);
+        if (result.getResult() != null) {
+            writeAssignment(out, result.getResult());
+        }
+    }
+
+    public static ContainmentCacheSATResult readSATResult(DataInput in) throws IOException {
+        final String key = readNullableString(in);
+        final Map<Integer, Set<Station>> assignment = in.readBoolean() ? readAssignment(in) : null;
+        return new ContainmentCacheSATResult(assignment, key);
+    }
+
+    public static void writeUNSATResult(DataOutput out, ContainmentCacheUNSATResult result) throws IOException {
+        writeNullableString(out, result.getKey());
+    }
+
+    public static ContainmentCacheUNSATResult readUNSATResult(DataInput in) throws IOException {
+        return new ContainmentCacheUNSATResult(readNullableString(in));
+    }
+
+    public static void writeBatchResults(DataOutput out, ContainmentCacheBatchResult[] results) throws IOException {
+        writeVarInt(out, results.length);
+        for (ContainmentCacheBatchResult result : results) {
+            writeSATResult(out, result.getSATResult());
+            writeUNSATResult(out, result.getUNSATResult());
+        }
+    }
+
+    public static ContainmentCacheBatchResult[] readBatchResults(DataInput in) throws IOException {
+        final int size = readVarInt(in);
+        final List<ContainmentCacheBatchResult> results = new ArrayList<>(Math.min(size, INITIAL_CAPACITY));
+        for (int i = 0; i < size; i++) {
+            results.add(new ContainmentCacheBatchResult(readSATResult(in), readUNSATResult(in)));
+        }
+        return results.toArray(new ContainmentCacheBatchResult[results.size()]);
+    }
+
+    public static void writeInstance(DataOutput out, StationPackingInstance instance) throws IOException {
+        // an instance's domains are sorted by station
+        final Map<Station, Set<Integer>> domains = instance.getDomains();
+        writeVarInt(out, domains.size());
+        int previousID = 0;
+        for (Station station : domains.keySet()) {
+            writeVarInt(out, station.getID() - previousID);
+            previousID = station.getID();
+        }
+        long previousMask = 0;
+        // the position of the station and the channel, for every channel left out of the masks
+        final List<Integer> otherChannels = new ArrayList<>();
+        int position = 0;
+        for (Set<Integer> domain : domains.values()) {
+            final long mask = CacheUtils.toChannelMask(domain);
+            writeVarLong(out, mask ^ previousMask);
+            previousMask = mask;
+            if (Long.bitCount(mask) != domain.size()) {
+                for (int channel : domain) {
+                    if (!CacheUtils.isInChannelMask(mask, channel)) {
+                        otherChannels.add(position);
+                        otherChannels.add(channel);
+                    }
+                }
+            }
+            position++;
+        }
+        writeVarInt(out, otherChannels.size() / 2);
+        for (int value : otherChannels) {
+            writeVarInt(out, value);
+        }
+        writeStationToChannel(out, instance.getPreviousAssignment());
+        writeString(out, JSONUtils.toString(instance.getMetadata()));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static StationPackingInstance readInstance(DataInput in) throws IOException {
+        final int[] stations = readStationIDs(in);
+        final List<Set<Integer>> stationDomains = new ArrayList<>(stations.length);
+        long mask = 0;
+        for (int i = 0; i < stations.length; i++) {
+            mask ^= readVarLong(in);
+            final Set<Integer> domain = new HashSet<>();
+            for (long bits = mask; bits != 0; bits &= bits - 1) {
+                domain.add(Long.numberOfTrailingZeros(bits));
+            }
+            stationDomains.add(domain);
+        }
+        final int numOtherChannels = readVarInt(in);
+        for (int i = 0; i < numOtherChannels; i++) {
+            final int position = readVarInt(in);
+            if (position >= stations.length) {
+                throw new IOException("Channel for station " + position + " of an instance of " + stations.length + " stations");
+            }
+            stationDomains.get(position).add(readVarInt(in));
+        }
+        final ImmutableMap.Builder<Station, Set<Integer>> domains = ImmutableMap.builder();
+        for (int i = 0; i < stations.length; i++) {
+            domains.put(new Station(stations[i]), stationDomains.get(i));
+        }
+        final Map<Station, Integer> previousAssignment = readStationToChannel(in);
+        final Map<String, Object> metadata = JSONUtils.toObject(readString(in), Map.class);
+        return new StationPackingInstance(domains.build(), previousAssignment, metadata);
+    }
+
+    public static void writeSolverResult(DataOutput out, SolverResult result) throws IOException {
+        writeVarInt(out, result.getResult().ordinal());
+        out.writeDouble(result.getRuntime());
+        writeAssignment(out, result.getAssignment());
+    }
+
+    public static SolverResult readSolverResult(DataInput in) throws IOException {
+        final int ordinal = readVarInt(in);
+        if (ordinal >= SATResult.values().length) {
+            throw new IOException("Unknown SAT result " + ordinal);
+        }
+        final SATResult result = SATResult.values()[ordinal];
+        final double runtime = in.readDouble();
+        return new SolverResult(result, runtime, readAssignment(in));
+    }
+
+    public static void writeCoordinate(DataOutput out, CacheCoordinate coordinate) throws IOException {
+        writeString(out, coordinate.getDomainHash());
+        writeString(out, coordinate.getInterferenceHash());
+    }
+
+    public static CacheCoordinate readCoordinate(DataInput in) throws IOException {
+        return new CacheCoordinate(readString(in), readString(in));
+    }
+
+    // a channel to stations assignment is written as the station to channel map it is equivalent to
+    private static void writeAssignment(DataOutput out, Map<Integer, Set<Station>> assignment) throws IOException {
+        writeStationToChannel(out, CacheUtils.stationToChannelFromChannelToStation(assignment));
+    }
+
+    private static Map<Integer, Set<Station>> readAssignment(DataInput in) throws IOException {
+        return readStationToChannel(in).entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue, Collectors.mapping(Map.Entry::getKey, Collectors.toSet())));
+    }
+
+    private static void writeStationToChannel(DataOutput out, Map<Station, Integer> stationToChannel) throws IOException {
+        final List<Station> stations = stationToChannel.keySet().stream().sorted().collect(Collectors.toList());
+        writeVarInt(out, stations.size());
+        int previousID = 0;
+        for (Station station : stations) {
+            writeVarInt(out, station.getID() - previousID);
+            previousID = station.getID();
+        }
+        for (Station station : stations) {
+            writeVarInt(out, stationToChannel.get(station));
+        }
+    }
+
+    private static Map<Station, Integer> readStationToChannel(DataInput in) throws IOException {
+        final int[] stations = readStationIDs(in);
+        final Map<Station, Integer> stationToChannel = new HashMap<>();
+        for (int i = 0; i < stations.length; i++) {
+            stationToChannel.put(new Station(stations[i]), readVarInt(in));
+        }
+        return stationToChannel;
+    }
+
+    // increasing station IDs, written as their number followed by the deltas between them
+    private static int[] readStationIDs(DataInput in) throws IOException {
+        final int size = readVarInt(in);
+        int[] stations = new int[Math.min(size, INITIAL_CAPACITY)];
+        int previousID = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == stations.length) {
+                stations = Arrays.copyOf(stations, (int) Math.min(size, 2L * stations.length));
+            }
+            final long ID = (long) previousID + readVarInt(in);
+            if (ID > Integer.MAX_VALUE) {
+                throw new IOException("Station ID " + ID + " does not fit in an int");
+            }
+            stations[i] = (int) ID;
+            previousID = stations[i];
+        }
+        return stations;
+    }
+
+    private static void writeString(DataOutput out, String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        final int size = readVarInt(in);
+        byte[] bytes = new byte[Math.min(size, INITIAL_CAPACITY)];
+        int read = 0;
+        while (true) {
+            in.readFully(bytes, read, bytes.length - read);
+            read = bytes.length;
+            if (read == size) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            bytes = Arrays.copyOf(bytes, (int) Math.min(size, 2L * bytes.length));
+        }
+    }
+
+    private static void writeNullableString(DataOutput out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            writeString(out, string);
+        }
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    // unsigned LEB128: 7 bits per byte, high bit set on every byte but the last
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        Preconditions.checkArgument(value >= 0, "Cannot encode negative value %s", value);
+        writeVarLong(out, value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        final long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Variable length number " + value + " does not fit in an int");
+        }
+        return (int) value;
+    }
+
+}
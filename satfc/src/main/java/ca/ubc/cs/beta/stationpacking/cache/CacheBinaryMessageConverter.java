@@ -0,0 +1,118 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheBatchRequest;
+import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheRequest;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchRequest;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheRequest;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Reads and writes the cache requests and results with {@link CacheBinaryCodec}, for the {@link #MEDIA_TYPE} content type.
+ */
+public class CacheBinaryMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-satfc-cache";
+    public static final MediaType MEDIA_TYPE = MediaType.valueOf(MEDIA_TYPE_VALUE);
+
+    private static final ImmutableSet<Class<?>> SUPPORTED_CLASSES = ImmutableSet.of(
+            ContainmentCacheRequest.class,
+            ContainmentCacheBatchRequest.class,
+            ContainmentCacheCacheRequest.class,
+            ContainmentCacheCacheBatchRequest.class,
+            ContainmentCacheSATResult.class,
+            ContainmentCacheUNSATResult.class,
+            ContainmentCacheBatchResult[].class
+    );
+
+    public CacheBinaryMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return SUPPORTED_CLASSES.contains(clazz);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(inputMessage.getBody()));
+        if (clazz.equals(ContainmentCacheRequest.class)) {
+            return CacheBinaryCodec.readRequest(in);
+        } else if (clazz.equals(ContainmentCacheBatchRequest.class)) {
+            return CacheBinaryCodec.readBatchRequest(in);
+        } else if (clazz.equals(ContainmentCacheCacheRequest.class)) {
+            return CacheBinaryCodec.readCacheRequest(in);
+        } else if (clazz.equals(ContainmentCacheCacheBatchRequest.class)) {
+            return CacheBinaryCodec.readCacheBatchRequest(in);
+        } else if (clazz.equals(ContainmentCacheSATResult.class)) {
+            return CacheBinaryCodec.readSATResult(in);
+        } else if (clazz.equals(ContainmentCacheUNSATResult.class)) {
+            return CacheBinaryCodec.readUNSATResult(in);
+        } else if (clazz.equals(ContainmentCacheBatchResult[].class)) {
+            return CacheBinaryCodec.readBatchResults(in);
+        }
+        throw new HttpMessageNotReadableException("Cannot read " + clazz + " as " + MEDIA_TYPE_VALUE);
+    }
+
+    @Override
+    protected void writeInternal(Object o, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputMessage.getBody()));
+        if (o instanceof ContainmentCacheRequest) {
+            CacheBinaryCodec.writeRequest(out, (ContainmentCacheRequest) o);
+        } else if (o instanceof ContainmentCacheBatchRequest) {
+            CacheBinaryCodec.writeBatchRequest(out, (ContainmentCacheBatchRequest) o);
+        } else if (o instanceof ContainmentCacheCacheRequest) {
+            CacheBinaryCodec.writeCacheRequest(out, (ContainmentCacheCacheRequest) o);
+        } else if (o instanceof ContainmentCacheCacheBatchRequest) {
+            CacheBinaryCodec.writeCacheBatchRequest(out, (ContainmentCacheCacheBatchRequest) o);
+        } else if (o instanceof ContainmentCacheSATResult) {
+            CacheBinaryCodec.writeSATResult(out, (ContainmentCacheSATResult) o);
+        } else if (o instanceof ContainmentCacheUNSATResult) {
+            CacheBinaryCodec.writeUNSATResult(out, (ContainmentCacheUNSATResult) o);
+        } else if (o instanceof ContainmentCacheBatchResult[]) {
+            CacheBinaryCodec.writeBatchResults(out, (ContainmentCacheBatchResult[]) o);
+        } else {
+            throw new HttpMessageNotWritableException("Cannot write " + o.getClass() + " as " + MEDIA_TYPE_VALUE);
+        }
+        out.flush();
+    }
+
+}
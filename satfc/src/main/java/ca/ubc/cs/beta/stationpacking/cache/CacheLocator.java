@@ -1,16 +1,51 @@
 package ca.ubc.cs.beta.stationpacking.cache;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+import ca.ubc.cs.beta.stationpacking.cache.ContainmentCache.CacheContents;
+import ca.ubc.cs.beta.stationpacking.cache.ContainmentCache.CompactionResult;
+import ca.ubc.cs.beta.stationpacking.cache.ContainmentCacheSnapshot.LoadedSnapshot;
 import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
 import ca.ubc.cs.beta.stationpacking.cache.RedisCacher.ContainmentCacheInitData;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentIndexType;
+import ca.ubc.cs.beta.stationpacking.cache.containment.IContainmentCacheEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.PermutationSelector;
+import ca.ubc.cs.beta.stationpacking.cache.containment.PermutationSelector.CandidateWindows;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
+
+import com.google.common.base.Preconditions;
 
 /**
  * Created by newmanne on 25/03/15.
@@ -18,26 +53,480 @@ import ca.ubc.cs.beta.stationpacking.cache.RedisCacher.ContainmentCacheInitData;
 @Slf4j
 public class CacheLocator implements ICacheLocator, ApplicationListener<ContextRefreshedEvent> {
 
+    // how many entries and queries the candidate windows of permutations are estimated from
+    private static final int PERMUTATION_SAMPLE_ENTRIES = 100000;
+    private static final int PERMUTATION_SAMPLE_QUERIES = 1000;
+    // new permutations are only worth an index rebuild if they shrink the candidate windows by at least this fraction
+    private static final double PERMUTATION_MIN_IMPROVEMENT = 0.05;
+
     private final RedisCacher cacher;
     private final ConcurrentMap<CacheCoordinate, ContainmentCache> caches;
+    // which data structure the containment caches use to narrow down candidate entries
+    private final ContainmentIndexType indexType;
+
+    // where the caches are periodically snapshot to (see ContainmentCacheSnapshot), null if snapshots are disabled
+    private final File snapshotFile;
+    private final long snapshotIntervalSeconds;
+    // how often dominated entries are pruned (0 to never prune), and the memory each cache may take before its least used entries are evicted (0 for no limit)
+    private final long compactionIntervalSeconds;
+    private final long memoryBudgetBytes;
+    // this server only holds the entries of shard shardIndex out of shardCount (see CacheShardRouter)
+    private final int shardIndex;
+    private final int shardCount;
+    // whether the permutations of the indices are picked from the cached entries on startup (see PermutationSelector), and how often they are picked again (0 to never)
+    private final boolean dataDrivenPermutations;
+    private final long permutationRebuildIntervalSeconds;
+    // runs the snapshots, the compactions and the permutation rebuilds, null if they are all disabled
+    private final ScheduledExecutorService maintenanceExecutor;
+    // load each coordinate in the background on its first query (see locate), instead of loading every coordinate on startup
+    private final boolean lazyLoading;
+    // loads the coordinates, null unless loading lazily
+    private final ExecutorService loadExecutor;
+    // the coordinates that were queried, and where their loading stands (only when loading lazily)
+    private final ConcurrentMap<CacheCoordinate, CoordinateLoad> loads = new ConcurrentHashMap<>();
+    // completed with the keys of the snapshot entries once the snapshot is restored (no keys without a snapshot)
+    private final CompletableFuture<Set<String>> restoredKeys = new CompletableFuture<>();
 
     public CacheLocator(RedisCacher cacher) {
-        this.cacher = cacher;
+        this(builder(cacher));
+    }
+
+    public CacheLocator(RedisCacher cacher, ContainmentIndexType indexType) {
+        this(builder(cacher).indexType(indexType));
+    }
+
+    private CacheLocator(Builder options) {
+        Preconditions.checkArgument(!options.lazyLoading || options.loadThreads > 0, "Coordinates cannot be loaded with %s threads", options.loadThreads);
+        Preconditions.checkArgument(options.shardCount > 0 && options.shardIndex >= 0 && options.shardIndex < options.shardCount, "Shard index %s is not valid for %s shards", options.shardIndex, options.shardCount);
+        Preconditions.checkArgument(options.snapshotFile == null || options.snapshotIntervalSeconds > 0, "Snapshot interval must be positive");
+        Preconditions.checkArgument(options.compactionIntervalSeconds >= 0, "Compaction interval cannot be negative");
+        Preconditions.checkArgument(options.memoryBudgetBytes >= 0, "Memory budget cannot be negative");
+        Preconditions.checkArgument(options.memoryBudgetBytes == 0 || options.compactionIntervalSeconds > 0, "A memory budget is only enforced when compacting");
+        Preconditions.checkArgument(options.permutationRebuildIntervalSeconds >= 0, "Permutation rebuild interval cannot be negative");
+        Preconditions.checkArgument(!(options.dataDrivenPermutations || options.permutationRebuildIntervalSeconds > 0) || options.indexType.equals(ContainmentIndexType.PERMUTATION), "Permutations can only be picked for a %s index", ContainmentIndexType.PERMUTATION);
+        this.cacher = options.cacher;
+        this.indexType = options.indexType;
+        this.snapshotFile = options.snapshotFile;
+        this.snapshotIntervalSeconds = options.snapshotIntervalSeconds;
+        this.compactionIntervalSeconds = options.compactionIntervalSeconds;
+        this.memoryBudgetBytes = options.memoryBudgetBytes;
+        this.shardIndex = options.shardIndex;
+        this.shardCount = options.shardCount;
+        this.dataDrivenPermutations = options.dataDrivenPermutations;
+        this.permutationRebuildIntervalSeconds = options.permutationRebuildIntervalSeconds;
         caches = new ConcurrentHashMap<>();
+        maintenanceExecutor = snapshotFile != null || compactionIntervalSeconds > 0 || permutationRebuildIntervalSeconds > 0 ? Executors.newSingleThreadScheduledExecutor(new SequentiallyNamedThreadFactory("Cache Maintenance", true)) : null;
+        this.lazyLoading = options.lazyLoading;
+        loadExecutor = lazyLoading ? Executors.newFixedThreadPool(options.loadThreads, new SequentiallyNamedThreadFactory("Cache Loader", true)) : null;
+    }
+
+    /**
+     * @return a builder of a locator over the entries of cacher. Unless set otherwise, the locator uses a {@link ContainmentIndexType#PERMUTATION} index, loads every coordinate on startup and does no maintenance
+     */
+    public static Builder builder(RedisCacher cacher) {
+        return new Builder(cacher);
+    }
+
+    /**
+     * The options of a {@link CacheLocator}, checked when it is built
+     */
+    public static class Builder {
+
+        private final RedisCacher cacher;
+        private ContainmentIndexType indexType = ContainmentIndexType.PERMUTATION;
+        private File snapshotFile;
+        private long snapshotIntervalSeconds;
+        private long compactionIntervalSeconds;
+        private long memoryBudgetBytes;
+        private int shardIndex = 0;
+        private int shardCount = 1;
+        private boolean dataDrivenPermutations;
+        private long permutationRebuildIntervalSeconds;
+        private boolean lazyLoading;
+        private int loadThreads;
+
+        private Builder(RedisCacher cacher) {
+            this.cacher = cacher;
+        }
+
+        public Builder indexType(ContainmentIndexType indexType) {
+            this.indexType = indexType;
+            return this;
+        }
+
+        /**
+         * @param snapshotFile the caches are restored from this file on startup, and written back to it every snapshotIntervalSeconds. Null disables snapshots
+         */
+        public Builder snapshot(File snapshotFile, long snapshotIntervalSeconds) {
+            this.snapshotFile = snapshotFile;
+            this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+            return this;
+        }
+
+        /**
+         * @param compactionIntervalSeconds every compactionIntervalSeconds, dominated entries are removed from the caches and from redis (see {@link ContainmentCache#compact(long)}). 0 disables compaction
+         * @param memoryBudgetBytes when compacting, the least used entries of a cache are evicted until it fits in this many bytes. Evicted entries stay in redis, and are recorded in the snapshot so that a restart does not load them again. 0 for no limit
+         */
+        public Builder compaction(long compactionIntervalSeconds, long memoryBudgetBytes) {
+            this.compactionIntervalSeconds = compactionIntervalSeconds;
+            this.memoryBudgetBytes = memoryBudgetBytes;
+            return this;
+        }
+
+        /**
+         * @param shardIndex when the cache is split across several servers, only the entries of this shard (out of shardCount) are held by this server, see {@link CacheShardRouter#shardOf}
+         */
+        public Builder shard(int shardIndex, int shardCount) {
+            this.shardIndex = shardIndex;
+            this.shardCount = shardCount;
+            return this;
+        }
+
+        /**
+         * @param dataDrivenPermutations pick the permutations of each cache's index from its entries on startup, instead of using the bundled ones, when that narrows down lookups (see {@link PermutationSelector})
+         * @param permutationRebuildIntervalSeconds every permutationRebuildIntervalSeconds, pick the permutations again and rebuild the index of the caches that would benefit, while queries carry on. 0 disables the rebuilds
+         */
+        public Builder permutations(boolean dataDrivenPermutations, long permutationRebuildIntervalSeconds) {
+            this.dataDrivenPermutations = dataDrivenPermutations;
+            this.permutationRebuildIntervalSeconds = permutationRebuildIntervalSeconds;
+            return this;
+        }
+
+        /**
+         * @param lazyLoading rather than loading every coordinate before answering anything, restore the snapshot in the background and load each coordinate on its first query, using loadThreads threads.
+         *                    Queries on a coordinate that is not loaded yet are cache misses. See {@link CacheLocator#getLoadStatus()}
+         */
+        public Builder lazyLoading(boolean lazyLoading, int loadThreads) {
+            this.lazyLoading = lazyLoading;
+            this.loadThreads = loadThreads;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the options do not go together
+         */
+        public CacheLocator build() {
+            return new CacheLocator(this);
+        }
     }
 
     @Override
     public Optional<ContainmentCache> locate(CacheCoordinate coordinate) {
-        return Optional.ofNullable(caches.get(coordinate));
+        final ContainmentCache cache = caches.get(coordinate);
+        if (cache == null && lazyLoading) {
+            // a miss right away, the coordinate answers once it is loaded
+            startLoading(coordinate);
+        }
+        return Optional.ofNullable(cache);
+    }
+
+    @Override
+    public void addToCache(CacheCoordinate coordinate, StationPackingInstance instance, SolverResult result, String key) {
+        if (!isOwned(key)) {
+            // the result is in redis, and is held by the shard that owns it once that shard reloads
+            log.warn("Entry {} belongs to shard {}, not to this shard ({}). Clients should list every shard so that results are sent to the shard that owns them", key, CacheShardRouter.shardOf(key, shardCount), shardIndex);
+            return;
+        }
+        ContainmentCache cache = caches.get(coordinate);
+        if (cache == null && lazyLoading) {
+            final CoordinateLoad load = startLoading(coordinate);
+            synchronized (load) {
+                cache = caches.get(coordinate);
+                if (cache == null) {
+                    // the load may have pulled the entries from redis before this one was stored there, so it adds it once it is done
+                    load.pending.add(new PendingEntry(instance, result, key));
+                    return;
+                }
+            }
+        }
+        if (cache == null) {
+            cache = caches.computeIfAbsent(coordinate, c -> {
+                log.info("Creating a new containment cache for coordinate {}", c);
+                return new ContainmentCache(indexType, new StationIndex());
+            });
+        }
+        add(cache, instance, result, key);
+    }
+
+    private static void add(ContainmentCache cache, StationPackingInstance instance, SolverResult result, String key) {
+        if (result.getResult().equals(SATResult.SAT)) {
+            cache.add(new ContainmentCacheSATEntry(result.getAssignment(), key, cache.getStationIndex()));
+        } else if (result.getResult().equals(SATResult.UNSAT)) {
+            cache.add(new ContainmentCacheUNSATEntry(instance.getDomains(), key, cache.getStationIndex()));
+        }
     }
 
     @Override
     public void onApplicationEvent(ContextRefreshedEvent event) {
-        log.info("Beginning to init caches");
-        final ContainmentCacheInitData containmentCacheInitData = cacher.getContainmentCacheInitData();
+        log.info("Beginning to init caches using a {} index", indexType);
+        if (shardCount > 1) {
+            log.info("This server is shard {} out of {}", shardIndex, shardCount);
+        }
+        if (lazyLoading) {
+            log.info("Coordinates are loaded on their first query, queries on the others miss until then");
+            // not on a loader thread, as the loads wait for it
+            new SequentiallyNamedThreadFactory("Cache Snapshot Restorer", true).newThread(() -> {
+                restoredKeys.complete(restoreSnapshot());
+                // pull the entries added to the coordinates of the snapshot since
+                caches.keySet().forEach(this::startLoading);
+            }).start();
+        } else {
+            loadEverything();
+        }
+        if (snapshotFile != null) {
+            maintenanceExecutor.scheduleWithFixedDelay(this::writeSnapshot, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        }
+        if (compactionIntervalSeconds > 0) {
+            maintenanceExecutor.scheduleWithFixedDelay(this::compact, compactionIntervalSeconds, compactionIntervalSeconds, TimeUnit.SECONDS);
+        }
+        if (permutationRebuildIntervalSeconds > 0) {
+            maintenanceExecutor.scheduleWithFixedDelay(this::reselectPermutations, permutationRebuildIntervalSeconds, permutationRebuildIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    // the caches of the snapshot, if there is one, and the keys of their entries
+    private Set<String> restoreSnapshot() {
+        if (snapshotFile != null && snapshotFile.exists()) {
+            try {
+                final LoadedSnapshot snapshot = ContainmentCacheSnapshot.read(snapshotFile, indexType);
+                caches.putAll(snapshot.getCaches());
+                return snapshot.getKeys();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not read the cache snapshot " + snapshotFile + ", loading everything from redis instead", e);
+            }
+        }
+        return Collections.emptySet();
+    }
+
+    // load every coordinate before answering anything
+    private void loadEverything() {
+        final Set<String> knownKeys = restoreSnapshot();
+        restoredKeys.complete(knownKeys);
+        // only pull the entries that were added since the snapshot
+        final ContainmentCacheInitData containmentCacheInitData = cacher.getContainmentCacheInitData(knownKeys, this::isOwned);
         containmentCacheInitData.getCaches().forEach(cacheCoordinate -> {
-            caches.put(cacheCoordinate, new ContainmentCache(containmentCacheInitData.getSATResults().get(cacheCoordinate), containmentCacheInitData.getUNSATResults().get(cacheCoordinate)));
+            final List<ContainmentCacheSATEntry> SATEntries = containmentCacheInitData.getSATResults().get(cacheCoordinate);
+            final List<ContainmentCacheUNSATEntry> UNSATEntries = containmentCacheInitData.getUNSATResults().get(cacheCoordinate);
+            final ContainmentCache cache = caches.get(cacheCoordinate);
+            // entries come out of redis numbered by station ID, they are renumbered densely (see StationIndex) so that their bitsets are as small as the number of stations
+            if (cache == null) {
+                final StationIndex stationIndex = new StationIndex(stationIDs(SATEntries, UNSATEntries));
+                caches.put(cacheCoordinate, new ContainmentCache(withStationIndex(SATEntries, ContainmentCacheSATEntry::withStationIndex, stationIndex), withStationIndex(UNSATEntries, ContainmentCacheUNSATEntry::withStationIndex, stationIndex), indexType, stationIndex));
+            } else {
+                addMissing(cache, SATEntries, UNSATEntries);
+            }
+        });
+        if (dataDrivenPermutations) {
+            reselectPermutations();
+        }
+    }
+
+    // start loading a coordinate in the background, unless it is already loaded or being loaded. A load that failed is tried again
+    private CoordinateLoad startLoading(CacheCoordinate coordinate) {
+        final CoordinateLoad fresh = new CoordinateLoad();
+        final CoordinateLoad load = loads.compute(coordinate, (c, current) -> current == null || current.state == LoadState.FAILED ? fresh : current);
+        if (load == fresh) {
+            log.info("Loading cache coordinate {}", coordinate);
+            loadExecutor.execute(() -> load(coordinate, load));
+        }
+        return load;
+    }
+
+    private void load(CacheCoordinate coordinate, CoordinateLoad load) {
+        try {
+            final Watch watch = Watch.constructAutoStartWatch();
+            final Set<String> knownKeys = restoredKeys.join();
+            final ContainmentCacheInitData data = cacher.getContainmentCacheInitData(coordinate, knownKeys, this::isOwned);
+            final List<ContainmentCacheSATEntry> SATEntries = data.getSATResults().get(coordinate);
+            final List<ContainmentCacheUNSATEntry> UNSATEntries = data.getUNSATResults().get(coordinate);
+            final Set<String> loadedKeys = Stream.concat(SATEntries.stream().map(ContainmentCacheSATEntry::getKey), UNSATEntries.stream().map(ContainmentCacheUNSATEntry::getKey)).collect(Collectors.toSet());
+            final ContainmentCache restored = caches.get(coordinate);
+            final ContainmentCache cache;
+            if (restored != null) {
+                // restored from the snapshot, only the entries added since are missing
+                addMissing(restored, SATEntries, UNSATEntries);
+                cache = restored;
+            } else {
+                final StationIndex stationIndex = new StationIndex(stationIDs(SATEntries, UNSATEntries));
+                cache = new ContainmentCache(withStationIndex(SATEntries, ContainmentCacheSATEntry::withStationIndex, stationIndex), withStationIndex(UNSATEntries, ContainmentCacheUNSATEntry::withStationIndex, stationIndex), indexType, stationIndex);
+                if (dataDrivenPermutations) {
+                    reselectPermutations(coordinate, cache);
+                }
+            }
+            synchronized (load) {
+                caches.putIfAbsent(coordinate, cache);
+                for (PendingEntry entry : load.pending) {
+                    if (!knownKeys.contains(entry.getKey()) && !loadedKeys.contains(entry.getKey())) {
+                        add(cache, entry.getInstance(), entry.getResult(), entry.getKey());
+                    }
+                }
+                load.pending.clear();
+                load.state = LoadState.LOADED;
+            }
+            log.info("Loaded cache coordinate {} ({} SAT and {} UNSAT entries pulled from redis) in {}s", coordinate, SATEntries.size(), UNSATEntries.size(), watch.getElapsedTime());
+        } catch (RuntimeException e) {
+            // tried again on the next query
+            log.error("Could not load cache coordinate " + coordinate, e);
+            synchronized (load) {
+                load.error = e.toString();
+                load.state = LoadState.FAILED;
+            }
+        }
+    }
+
+    // add the entries pulled from redis that the cache does not hold yet, e.g. results posted to it while it was loading, without renumbering the others
+    private static void addMissing(ContainmentCache cache, List<ContainmentCacheSATEntry> SATEntries, List<ContainmentCacheUNSATEntry> UNSATEntries) {
+        final StationIndex stationIndex = cache.getStationIndex();
+        SATEntries.stream().filter(entry -> !cache.contains(entry.getKey())).forEach(entry -> cache.add(entry.withStationIndex(stationIndex)));
+        UNSATEntries.stream().filter(entry -> !cache.contains(entry.getKey())).forEach(entry -> cache.add(entry.withStationIndex(stationIndex)));
+    }
+
+    // the IDs of the stations of the entries, in increasing order
+    private static int[] stationIDs(List<? extends IContainmentCacheEntry> SATEntries, List<? extends IContainmentCacheEntry> UNSATEntries) {
+        final BitSet stations = new BitSet();
+        Stream.concat(SATEntries.stream(), UNSATEntries.stream()).forEach(entry -> stations.or(entry.getBitSet()));
+        return stations.stream().toArray();
+    }
+
+    private static <T> List<T> withStationIndex(List<T> entries, BiFunction<T, StationIndex, T> renumber, StationIndex stationIndex) {
+        return entries.parallelStream().map(entry -> renumber.apply(entry, stationIndex)).collect(Collectors.toList());
+    }
+
+    /**
+     * Pick permutations from the entries of every cache, and rebuild the index of the caches whose lookups they narrow down noticeably better than the current permutations
+     */
+    void reselectPermutations() {
+        caches.forEach(this::reselectPermutations);
+    }
+
+    private void reselectPermutations(CacheCoordinate coordinate, ContainmentCache cache) {
+        try {
+            final CacheContents contents = cache.getContents();
+            final int[][] current = contents.getPermutations();
+            if (current == null) {
+                return;
+            }
+            final List<BitSet> stationSets = Stream.concat(contents.getSATEntries().stream(), contents.getUNSATEntries().stream())
+                    .map(IContainmentCacheEntry::getBitSet)
+                    .collect(Collectors.toList());
+            if (stationSets.isEmpty()) {
+                return;
+            }
+            final Watch watch = Watch.constructAutoStartWatch();
+            final List<BitSet> entries = PermutationSelector.sample(stationSets, PERMUTATION_SAMPLE_ENTRIES);
+            final List<BitSet> queries = PermutationSelector.sample(stationSets, PERMUTATION_SAMPLE_QUERIES);
+            final int[][] selected = PermutationSelector.selectPermutations(entries, current.length, cache.getStationIndex().getNumbers());
+            final CandidateWindows currentWindows = PermutationSelector.estimateCandidateWindows(current, entries, queries);
+            final CandidateWindows selectedWindows = PermutationSelector.estimateCandidateWindows(selected, entries, queries);
+            log.info("Cache {}: lookups check on average {} (SAT) and {} (UNSAT) out of {} sampled entries with the current permutations, and {} and {} with permutations picked from the data ({}s to estimate)",
+                    coordinate, currentWindows.getMeanSupersetWindow(), currentWindows.getMeanSubsetWindow(), entries.size(), selectedWindows.getMeanSupersetWindow(), selectedWindows.getMeanSubsetWindow(), watch.getElapsedTime());
+            final double currentCost = currentWindows.getMeanSupersetWindow() + currentWindows.getMeanSubsetWindow();
+            final double selectedCost = selectedWindows.getMeanSupersetWindow() + selectedWindows.getMeanSubsetWindow();
+            if (selectedCost < currentCost * (1 - PERMUTATION_MIN_IMPROVEMENT)) {
+                log.info("Rebuilding the index of cache {} with the new permutations", coordinate);
+                cache.rebuildIndex(selected);
+            }
+        } catch (RuntimeException e) {
+            // keep the current permutations
+            log.error("Could not pick new permutations for cache " + coordinate, e);
+        }
+    }
+
+    /**
+     * Compact every cache, deleting the entries that turned out to be dominated from redis so that they are not loaded again
+     */
+    void compact() {
+        caches.forEach((coordinate, cache) -> {
+            try {
+                final Watch watch = Watch.constructAutoStartWatch();
+                final CompactionResult result = cache.compact(memoryBudgetBytes);
+                log.info("Compacted cache {} in {}s: {} dominated entries removed, {} entries evicted", coordinate, watch.getElapsedTime(), result.getDominatedKeys().size(), result.getEvictedKeys().size());
+                cacher.deleteKeys(result.getDominatedKeys());
+            } catch (RuntimeException e) {
+                // try again next time
+                log.error("Could not compact cache " + coordinate, e);
+            }
         });
+    }
+
+    private boolean isOwned(String key) {
+        return CacheShardRouter.shardOf(key, shardCount) == shardIndex;
+    }
+
+    private void writeSnapshot() {
+        if (!restoredKeys.isDone()) {
+            // the caches are still being restored from the snapshot, which would be replaced by a partial one
+            return;
+        }
+        try {
+            ContainmentCacheSnapshot.write(snapshotFile, caches);
+        } catch (IOException | RuntimeException e) {
+            // keep the previous snapshot and try again next time
+            log.error("Could not write the cache snapshot " + snapshotFile, e);
+        }
+    }
+
+    /**
+     * Stop the periodic snapshots, compactions and permutation rebuilds, writing a last snapshot so that nothing added since the previous one has to be pulled from redis on restart
+     */
+    public void close() {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+        }
+        if (loadExecutor != null) {
+            loadExecutor.shutdownNow();
+        }
+        if (snapshotFile != null) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * @return where the loading of the coordinates stands
+     */
+    public LoadStatus getLoadStatus() {
+        final List<CacheCoordinate> loading = new ArrayList<>();
+        final Map<CacheCoordinate, String> failed = new HashMap<>();
+        loads.forEach((coordinate, load) -> {
+            if (load.state == LoadState.LOADING) {
+                loading.add(coordinate);
+            } else if (load.state == LoadState.FAILED) {
+                failed.put(coordinate, load.error);
+            }
+        });
+        return new LoadStatus(restoredKeys.isDone(), new ArrayList<>(caches.keySet()), loading, failed);
+    }
+
+    @Data
+    public static class LoadStatus {
+        // whether the snapshot (if any) was restored, until then nothing is answered
+        private final boolean snapshotRestored;
+        // the coordinates that answer queries
+        private final List<CacheCoordinate> loaded;
+        // the coordinates that were queried and are still being loaded
+        private final List<CacheCoordinate> loading;
+        // the coordinates that could not be loaded, and why. They are tried again on their next query
+        private final Map<CacheCoordinate, String> failed;
+    }
+
+    private enum LoadState {
+        LOADING,
+        LOADED,
+        FAILED
+    }
+
+    // the lazy load of one coordinate
+    private static class CoordinateLoad {
+        private volatile LoadState state = LoadState.LOADING;
+        private volatile String error;
+        // the results added while the coordinate was loading (guarded by the load)
+        private final List<PendingEntry> pending = new ArrayList<>();
+    }
 
+    @Data
+    private static class PendingEntry {
+        private final StationPackingInstance instance;
+        private final SolverResult result;
+        private final String key;
     }
 }
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import lombok.extern.slf4j.Slf4j;
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Routes cache traffic to the shards of a sharded cache server.
+ * Each shard (a satfcserver started with --cache.shard.index and --cache.shard.count) holds the entries whose redis key hashes to it, see {@link #shardOf}.
+ * A superset or a subset of a query can be on any shard, so queries are sent to every shard and the answers are merged, while inserts only go to the shard that owns the entry.
+ */
+@Slf4j
+public class CacheShardRouter {
+
+    private final List<String> serverURLs;
+
+    /**
+     * @param serverURLs the base URL of the server, or a comma separated list of the base URLs of the shards, in order of shard index
+     */
+    public CacheShardRouter(String serverURLs) {
+        this.serverURLs = ImmutableList.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(serverURLs));
+        Preconditions.checkArgument(!this.serverURLs.isEmpty(), "No server URL given");
+    }
+
+    /**
+     * @return the shard, out of shardCount, that holds the entry with this redis key
+     */
+    public static int shardOf(String key, int shardCount) {
+        return shardCount == 1 ? 0 : Math.floorMod(Hashing.murmur3_32().hashString(key, Charsets.UTF_8).asInt(), shardCount);
+    }
+
+    public int getShardCount() {
+        return serverURLs.size();
+    }
+
+    public List<String> getServerURLs() {
+        return serverURLs;
+    }
+
+    /**
+     * @return the base URL of the shard that holds the entry with this redis key
+     */
+    public String route(String key) {
+        return serverURLs.get(shardOf(key, serverURLs.size()));
+    }
+
+    /**
+     * Call every shard in parallel
+     * @return the answers, in order of shard index
+     */
+    public <T> List<T> fanOut(Function<String, T> call) {
+        if (serverURLs.size() == 1) {
+            return ImmutableList.of(call.apply(serverURLs.get(0)));
+        }
+        final List<Future<T>> futures = new ArrayList<>();
+        serverURLs.forEach(serverURL -> futures.add(QueryExecutor.INSTANCE.submit(() -> call.apply(serverURL))));
+        final List<T> answers = new ArrayList<>();
+        try {
+            for (Future<T> future : futures) {
+                answers.add(getUnchecked(future));
+            }
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return answers;
+    }
+
+    /**
+     * Call every shard in parallel, returning as soon as one of them gives a conclusive answer
+     * @return the first answer that is conclusive, or the answer of the last shard to reply if none is
+     */
+    public <T> T fanOutUntil(Function<String, T> call, Predicate<T> isConclusive) {
+        if (serverURLs.size() == 1) {
+            return call.apply(serverURLs.get(0));
+        }
+        final CompletionService<T> completionService = new ExecutorCompletionService<>(QueryExecutor.INSTANCE);
+        final List<Future<T>> futures = new ArrayList<>();
+        serverURLs.forEach(serverURL -> futures.add(completionService.submit(() -> call.apply(serverURL))));
+        try {
+            T answer = null;
+            for (int i = 0; i < futures.size(); i++) {
+                answer = getUnchecked(completionService.take());
+                if (isConclusive.test(answer)) {
+                    break;
+                }
+            }
+            return answer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the cache shards", e);
+        } finally {
+            // the other shards' answers are not needed anymore
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private static <T> T getUnchecked(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the cache shards", e);
+        } catch (ExecutionException e) {
+            // rethrow what the call threw, as if the shard had been called directly
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new UncheckedExecutionException(e.getCause());
+        }
+    }
+
+    // shared by every router, the threads mostly wait on the network
+    private static class QueryExecutor {
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new SequentiallyNamedThreadFactory("Cache Shard Query", true));
+    }
+
+}
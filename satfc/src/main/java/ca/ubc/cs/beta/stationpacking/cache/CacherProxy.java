@@ -21,6 +21,10 @@
  */
 package ca.ubc.cs.beta.stationpacking.cache;
 
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -39,20 +43,56 @@ import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
 @Slf4j
 public class CacherProxy implements ICacher {
 
-    private final RestTemplate restTemplate = CacheUtils.getRestTemplate();
-    private final String baseServerURL;
+    private final RestTemplate restTemplate;
+    // results are sent to the shard that owns them
+    private final CacheShardRouter router;
     private final CacheCoordinate coordinate;
+    // use the binary protocol (see CacheBinaryMessageConverter) rather than JSON
+    private final boolean binary;
 
-    public CacherProxy(String serverURL, CacheCoordinate cacheCoordinate) {
-        this.baseServerURL = serverURL;
+    /**
+     * @param restTemplate used to talk to the server, see {@link CacheUtils#createRestTemplate}
+     * @param serverURL the base URL of the server, or a comma separated list of the base URLs of the shards of a sharded server (see {@link CacheShardRouter})
+     */
+    public CacherProxy(RestTemplate restTemplate, String serverURL, CacheCoordinate cacheCoordinate, boolean binary) {
+        this.restTemplate = restTemplate;
+        this.router = new CacheShardRouter(serverURL);
         this.coordinate = cacheCoordinate;
+        this.binary = binary;
+    }
+
+    public CacherProxy(String serverURL, CacheCoordinate cacheCoordinate, boolean binary) {
+        this(CacheUtils.getRestTemplate(), serverURL, cacheCoordinate, binary);
+    }
+
+    public CacherProxy(String serverURL, CacheCoordinate cacheCoordinate) {
+        this(serverURL, cacheCoordinate, false);
     }
 
     @Override
     public void cacheResult(CacheCoordinate cacheCoordinate, StationPackingInstance instance, SolverResult result) {
-        final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(baseServerURL + "/v1/cache");
         final ContainmentCacheCacheRequest request = new ContainmentCacheCacheRequest(instance, coordinate, result);
-        restTemplate.postForLocation(builder.build().toUriString(), request);
+        final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serverURLFor(request) + "/v1/cache");
+        restTemplate.postForLocation(builder.build().toUriString(), CacheUtils.toRequestEntity(request, binary));
+    }
+
+    /**
+     * Cache many results in a single request (one request per shard when the server is sharded)
+     */
+    public void cacheResults(List<ContainmentCacheCacheRequest> requests) {
+        final Map<String, List<ContainmentCacheCacheRequest>> requestsByServer = requests.stream().collect(Collectors.groupingBy(this::serverURLFor));
+        requestsByServer.forEach((serverURL, serverRequests) -> {
+            final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serverURL + "/v1/cache/batch");
+            restTemplate.postForLocation(builder.build().toUriString(), CacheUtils.toRequestEntity(new ContainmentCacheCacheBatchRequest(serverRequests), binary));
+        });
+    }
+
+    // the shard that will own the entry, which is determined by the redis key the server will store it under
+    private String serverURLFor(ContainmentCacheCacheRequest request) {
+        if (router.getShardCount() == 1) {
+            return router.getServerURLs().get(0);
+        }
+        return router.route(request.getCoordinate().toKey(request.getResult().getResult(), request.getInstance()));
     }
 
     /**
@@ -68,5 +108,15 @@ public class CacherProxy implements ICacher {
 
     }
 
+    /**
+     * Object used to represent a request to cache many instances
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ContainmentCacheCacheBatchRequest {
+        private List<ContainmentCacheCacheRequest> requests;
+    }
+
 
 }
@@ -21,84 +21,509 @@
  */
 package ca.ubc.cs.beta.stationpacking.cache;
 
-import static ca.ubc.cs.beta.stationpacking.utils.GuavaCollectors.toImmutableList;
-
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.IntStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentIndexType;
+import ca.ubc.cs.beta.stationpacking.cache.containment.IContainmentCacheEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.IContainmentIndex;
+import ca.ubc.cs.beta.stationpacking.cache.containment.PermutationContainmentIndex;
+import ca.ubc.cs.beta.stationpacking.cache.containment.PermutationSelector;
+import ca.ubc.cs.beta.stationpacking.cache.containment.SetTrieContainmentIndex;
 import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
-import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils.IndexedStations;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
 
 /**
  * Created by newmanne on 1/24/15.
+ * Entries can be added while queries are being answered: a read/write lock keeps queries from seeing a half-inserted entry
  */
 @Slf4j
 public class ContainmentCache {
 
-    final ImmutableList<ImmutableList<ContainmentCacheUNSATEntry>> UNSATCache;
-    final ImmutableList<ImmutableList<ContainmentCacheSATEntry>> SATCache;
+    // only accessed under the lock, as rebuildIndex swaps in new indices
+    IContainmentIndex<ContainmentCacheUNSATEntry> UNSATCache;
+    IContainmentIndex<ContainmentCacheSATEntry> SATCache;
+
+    // entries added while the indices are being rebuilt, which the new indices are missing (null when not rebuilding)
+    private List<ContainmentCacheSATEntry> SATAddedDuringRebuild;
+    private List<ContainmentCacheUNSATEntry> UNSATAddedDuringRebuild;
+    // compactions and rebuilds change the indices wholesale, so they do not run at the same time
+    private final Object maintenanceLock = new Object();
+
+    // queries hold the read lock for as long as they look at the indices, insertions hold the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
-    final ImmutableList<PermutableBitSetComparator> comparators;
+    // the key of every entry in the indices, so that a result cached twice is only held once (entries without a key are always added)
+    private final Set<String> keys = ConcurrentHashMap.newKeySet();
+    // keys of the entries evicted to fit in the memory budget. They stay in redis, and are kept in the snapshot so that a restart does not pull them again
+    private final Set<String> evictedKeys = ConcurrentHashMap.newKeySet();
 
-    // A list of permutations of the numbers {1... N_STATIONS}
-    final int[][] permutations;
+    // how many queries each entry (by key) has answered, so that eviction can keep the useful ones
+    private final ConcurrentMap<String, LongAdder> hits = new ConcurrentHashMap<>();
+    // bumped by every change to the indices, so that answers can be reused for as long as it stays the same
+    private final AtomicLong version = new AtomicLong();
+
+    // numbers the stations of the entries and of the queries, every entry must use this index
+    private final StationIndex stationIndex;
 
     public ContainmentCache(List<ContainmentCacheSATEntry> SATData, List<ContainmentCacheUNSATEntry> UNSATData) {
-        permutations = initPermutation();
-
-        comparators = Arrays.stream(permutations)
-                .map(PermutableBitSetComparator::new)
-                .collect(toImmutableList());
-
-        // Sort and store the data according to each comparator
-        final ImmutableList.Builder<ImmutableList<ContainmentCacheSATEntry>> SATCacheBuilder = ImmutableList.builder();
-        final ImmutableList.Builder<ImmutableList<ContainmentCacheUNSATEntry>> UNSATCacheBuilder = ImmutableList.builder();
-        for (int i = 0; i < permutations.length; i++) {
-            final PermutableBitSetComparator permutableBitSetComparator = comparators.get(i);
-            final Comparator<ContainmentCacheSATEntry> SATComparator = (o1, o2) -> permutableBitSetComparator.compare(o1.getBitSet(), o2.getBitSet());
-            final Comparator<ContainmentCacheUNSATEntry> UNSATComparator = (o1, o2) -> permutableBitSetComparator.compare(o1.getBitSet(), o2.getBitSet());
-            SATData.sort(SATComparator);
-            UNSATData.sort(UNSATComparator);
-            SATCacheBuilder.add(ImmutableList.copyOf(SATData));
-            UNSATCacheBuilder.add(ImmutableList.copyOf(UNSATData));
-        }
-        SATCache = SATCacheBuilder.build();
-        UNSATCache = UNSATCacheBuilder.build();
-    }
-
-    // Read the permutations in from disk
-    private int[][] initPermutation() {
+        this(SATData, UNSATData, ContainmentIndexType.PERMUTATION);
+    }
+
+    public ContainmentCache(List<ContainmentCacheSATEntry> SATData, List<ContainmentCacheUNSATEntry> UNSATData, ContainmentIndexType indexType) {
+        this(SATData, UNSATData, indexType, StationIndex.IDENTITY);
+    }
+
+    /**
+     * @param stationIndex the station index of the entries, queries are numbered with it too
+     */
+    public ContainmentCache(List<ContainmentCacheSATEntry> SATData, List<ContainmentCacheUNSATEntry> UNSATData, ContainmentIndexType indexType, StationIndex stationIndex) {
+        this.stationIndex = stationIndex;
+        SATData.forEach(entry -> checkStationIndex(entry.getStationIndex(), entry.getKey()));
+        UNSATData.forEach(entry -> checkStationIndex(entry.getStationIndex(), entry.getKey()));
+        SATData = withNewKeys(SATData);
+        UNSATData = withNewKeys(UNSATData);
+        switch (indexType) {
+            case PERMUTATION:
+                final int[][] permutations = readPermutations(stationIndex);
+                SATCache = new PermutationContainmentIndex<>(permutations, SATData);
+                UNSATCache = new PermutationContainmentIndex<>(permutations, UNSATData);
+                break;
+            case SET_TRIE:
+                SATCache = new SetTrieContainmentIndex<>(SATData);
+                UNSATCache = new SetTrieContainmentIndex<>(UNSATData);
+                break;
+            default:
+                throw new IllegalStateException("Unrecognized index type " + indexType);
+        }
+    }
+
+    /**
+     * A cache using permutation indices with the given permutations rather than the bundled ones (see {@link PermutationSelector})
+     */
+    public ContainmentCache(List<ContainmentCacheSATEntry> SATData, List<ContainmentCacheUNSATEntry> UNSATData, int[][] permutations) {
+        this(SATData, UNSATData, permutations, StationIndex.IDENTITY);
+    }
+
+    public ContainmentCache(List<ContainmentCacheSATEntry> SATData, List<ContainmentCacheUNSATEntry> UNSATData, int[][] permutations, StationIndex stationIndex) {
+        this(new PermutationContainmentIndex<>(permutations, withoutDuplicateKeys(SATData)), new PermutationContainmentIndex<>(permutations, withoutDuplicateKeys(UNSATData)), stationIndex);
+    }
+
+    public ContainmentCache(ContainmentIndexType indexType) {
+        this(indexType, StationIndex.IDENTITY);
+    }
+
+    public ContainmentCache(ContainmentIndexType indexType, StationIndex stationIndex) {
+        this(new ArrayList<>(), new ArrayList<>(), indexType, stationIndex);
+    }
+
+    public ContainmentCache() {
+        this(ContainmentIndexType.PERMUTATION);
+    }
+
+    /**
+     * Add a new SAT entry to the cache. It is visible to every query that starts after this method returns
+     * @return false if the cache already holds an entry with the same key, which is kept instead
+     */
+    public boolean add(ContainmentCacheSATEntry entry) {
+        checkStationIndex(entry.getStationIndex(), entry.getKey());
+        if (!claimKey(entry.getKey())) {
+            return false;
+        }
+        if (entry.getKey() != null) {
+            evictedKeys.remove(entry.getKey());
+        }
+        write(() -> {
+            SATCache.add(entry);
+            if (SATAddedDuringRebuild != null) {
+                SATAddedDuringRebuild.add(entry);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Add a new UNSAT entry to the cache. It is visible to every query that starts after this method returns
+     * @return false if the cache already holds an entry with the same key, which is kept instead
+     */
+    public boolean add(ContainmentCacheUNSATEntry entry) {
+        checkStationIndex(entry.getStationIndex(), entry.getKey());
+        if (!claimKey(entry.getKey())) {
+            return false;
+        }
+        if (entry.getKey() != null) {
+            evictedKeys.remove(entry.getKey());
+        }
+        write(() -> {
+            UNSATCache.add(entry);
+            if (UNSATAddedDuringRebuild != null) {
+                UNSATAddedDuringRebuild.add(entry);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return whether the cache holds an entry with this key
+     */
+    public boolean contains(String key) {
+        return keys.contains(key);
+    }
+
+    // true if no entry has the key yet, which is now taken
+    private boolean claimKey(String key) {
+        return key == null || keys.add(key);
+    }
+
+    // the entries whose key no entry has yet, in order, claiming their keys
+    private <T extends IContainmentCacheEntry> List<T> withNewKeys(List<T> entries) {
+        return entries.stream().filter(entry -> claimKey(entry.getKey())).collect(Collectors.toList());
+    }
+
+    // the first entry with each key, in order
+    private static <T extends IContainmentCacheEntry> List<T> withoutDuplicateKeys(List<T> entries) {
+        final Set<String> seen = new HashSet<>();
+        return entries.stream().filter(entry -> entry.getKey() == null || seen.add(entry.getKey())).collect(Collectors.toList());
+    }
+
+    private void checkStationIndex(StationIndex entryIndex, String key) {
+        Preconditions.checkArgument(entryIndex == stationIndex, "Entry %s is not numbered with the station index of the cache", key);
+    }
+
+    /**
+     * @return the station index that numbers the stations of the entries, entries added to this cache must be built with it
+     */
+    public StationIndex getStationIndex() {
+        return stationIndex;
+    }
+
+    private void write(Runnable runnable) {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            runnable.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private <T> T read(Supplier<T> supplier) {
+        lock.readLock().lock();
+        try {
+            return supplier.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Build a cache around indices that are already populated (e.g. restored from a snapshot)
+     */
+    public ContainmentCache(IContainmentIndex<ContainmentCacheSATEntry> SATCache, IContainmentIndex<ContainmentCacheUNSATEntry> UNSATCache) {
+        this(SATCache, UNSATCache, StationIndex.IDENTITY);
+    }
+
+    public ContainmentCache(IContainmentIndex<ContainmentCacheSATEntry> SATCache, IContainmentIndex<ContainmentCacheUNSATEntry> UNSATCache, StationIndex stationIndex) {
+        this.SATCache = SATCache;
+        this.UNSATCache = UNSATCache;
+        this.stationIndex = stationIndex;
+        SATCache.getEntries().forEach(entry -> claimKey(entry.getKey()));
+        UNSATCache.getEntries().forEach(entry -> claimKey(entry.getKey()));
+    }
+
+    /**
+     * @return a consistent copy of the entries of this cache, along with the orderings of the permutation indices
+     */
+    public CacheContents getContents() {
+        return read(() -> new CacheContents(SATCache.getEntries(), UNSATCache.getEntries(), getPermutations(SATCache), getOrderings(SATCache), getOrderings(UNSATCache)));
+    }
+
+    /**
+     * @return the permutations of the indices, null if they are not permutation indices
+     */
+    public int[][] getPermutations() {
+        return read(() -> getPermutations(SATCache));
+    }
+
+    /**
+     * Sort the entries again according to new permutations, then swap the new indices in.
+     * Queries and insertions carry on against the old indices while the new ones are built, and are only blocked for the swap
+     */
+    public void rebuildIndex(int[][] permutations) {
+        synchronized (maintenanceLock) {
+            final Watch watch = Watch.constructAutoStartWatch();
+            final List<ContainmentCacheSATEntry> SATEntries = new ArrayList<>();
+            final List<ContainmentCacheUNSATEntry> UNSATEntries = new ArrayList<>();
+            write(() -> {
+                SATEntries.addAll(SATCache.getEntries());
+                UNSATEntries.addAll(UNSATCache.getEntries());
+                SATAddedDuringRebuild = new ArrayList<>();
+                UNSATAddedDuringRebuild = new ArrayList<>();
+            });
+            try {
+                final PermutationContainmentIndex<ContainmentCacheSATEntry> newSATCache = new PermutationContainmentIndex<>(permutations, SATEntries);
+                final PermutationContainmentIndex<ContainmentCacheUNSATEntry> newUNSATCache = new PermutationContainmentIndex<>(permutations, UNSATEntries);
+                write(() -> {
+                    SATAddedDuringRebuild.forEach(newSATCache::add);
+                    UNSATAddedDuringRebuild.forEach(newUNSATCache::add);
+                    SATCache = newSATCache;
+                    UNSATCache = newUNSATCache;
+                });
+                log.info("Rebuilt an index of {} entries in {}s", SATEntries.size() + UNSATEntries.size(), watch.getElapsedTime());
+            } finally {
+                write(() -> {
+                    SATAddedDuringRebuild = null;
+                    UNSATAddedDuringRebuild = null;
+                });
+            }
+        }
+    }
+
+    /**
+     * Remove the entries that are dominated by another entry, then, if the remaining entries take more than memoryBudgetBytes, evict the ones that answered the fewest queries.
+     * A SAT entry is dominated by another SAT entry that has all of its stations on the same channels. An UNSAT entry is dominated by another UNSAT entry on a subset of its stations with domains at least as large.
+     * Queries are only blocked while the entries are taken out of the indices, not while looking for them.
+     * @param memoryBudgetBytes the (estimated) memory the entries of this cache may take, 0 for no limit
+     */
+    public CompactionResult compact(long memoryBudgetBytes) {
+        Preconditions.checkArgument(memoryBudgetBytes >= 0, "Memory budget cannot be negative");
+        synchronized (maintenanceLock) {
+            return compactUnderMaintenanceLock(memoryBudgetBytes);
+        }
+    }
+
+    private CompactionResult compactUnderMaintenanceLock(long memoryBudgetBytes) {
+        // only this method removes entries, so what is found here is still in the indices when the write lock is taken
+        final Set<ContainmentCacheSATEntry> dominatedSAT = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<ContainmentCacheUNSATEntry> dominatedUNSAT = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<ContainmentCacheSATEntry> SATEntries = read(SATCache::getEntries);
+        final List<ContainmentCacheUNSATEntry> UNSATEntries = read(UNSATCache::getEntries);
+        // an entry that is dominated is only ever removed in favour of one that is kept, so that of two identical entries exactly one survives.
+        // An entry is never dominated by one with the same key, as removing it would take the key (and the redis entry) of the one kept
+        for (ContainmentCacheSATEntry entry : SATEntries) {
+            read(() -> {
+                for (ContainmentCacheSATEntry other : SATCache.getPotentialSupersets(entry.getBitSet())) {
+                    if (other != entry && !sameKey(entry, other) && !dominatedSAT.contains(other) && entry.isDominatedBy(other)) {
+                        dominatedSAT.add(entry);
+                        break;
+                    }
+                }
+                return null;
+            });
+        }
+        for (ContainmentCacheUNSATEntry entry : UNSATEntries) {
+            read(() -> {
+                for (ContainmentCacheUNSATEntry other : UNSATCache.getPotentialSubsets(entry.getBitSet())) {
+                    if (other != entry && !sameKey(entry, other) && !dominatedUNSAT.contains(other) && entry.isDominatedBy(other)) {
+                        dominatedUNSAT.add(entry);
+                        break;
+                    }
+                }
+                return null;
+            });
+        }
+
+        final Set<Object> evicted = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (memoryBudgetBytes > 0) {
+            final List<Object> survivors = new ArrayList<>();
+            SATEntries.stream().filter(entry -> !dominatedSAT.contains(entry)).forEach(survivors::add);
+            UNSATEntries.stream().filter(entry -> !dominatedUNSAT.contains(entry)).forEach(survivors::add);
+            long usedBytes = survivors.stream().mapToLong(ContainmentCache::estimateBytes).sum();
+            if (usedBytes > memoryBudgetBytes) {
+                survivors.sort(Comparator.comparingLong(entry -> getHits(getKey(entry))));
+                for (Object entry : survivors) {
+                    if (usedBytes <= memoryBudgetBytes) {
+                        break;
+                    }
+                    evicted.add(entry);
+                    usedBytes -= estimateBytes(entry);
+                }
+            }
+        }
+
+        write(() -> {
+            dominatedSAT.forEach(entry -> SATCache.remove(entry));
+            dominatedUNSAT.forEach(entry -> UNSATCache.remove(entry));
+            evicted.forEach(entry -> {
+                if (entry instanceof ContainmentCacheSATEntry) {
+                    SATCache.remove((ContainmentCacheSATEntry) entry);
+                } else {
+                    UNSATCache.remove((ContainmentCacheUNSATEntry) entry);
+                }
+            });
+        });
+        // a key can only be given up once no entry left in the cache has it
+        final Set<String> keptKeys = new HashSet<>();
+        SATEntries.stream().filter(entry -> !dominatedSAT.contains(entry) && !evicted.contains(entry)).forEach(entry -> keptKeys.add(entry.getKey()));
+        UNSATEntries.stream().filter(entry -> !dominatedUNSAT.contains(entry) && !evicted.contains(entry)).forEach(entry -> keptKeys.add(entry.getKey()));
+        final Set<String> dominatedKeys = new LinkedHashSet<>();
+        final Set<String> newlyEvictedKeys = new LinkedHashSet<>();
+        dominatedSAT.forEach(entry -> dominatedKeys.add(entry.getKey()));
+        dominatedUNSAT.forEach(entry -> dominatedKeys.add(entry.getKey()));
+        evicted.forEach(entry -> newlyEvictedKeys.add(getKey(entry)));
+        for (Set<String> removedKeys : Arrays.asList(dominatedKeys, newlyEvictedKeys)) {
+            removedKeys.remove(null);
+            removedKeys.removeAll(keptKeys);
+        }
+        dominatedKeys.forEach(hits::remove);
+        newlyEvictedKeys.forEach(hits::remove);
+        dominatedKeys.forEach(keys::remove);
+        newlyEvictedKeys.forEach(keys::remove);
+        evictedKeys.addAll(newlyEvictedKeys);
+        return new CompactionResult(new ArrayList<>(dominatedKeys), new ArrayList<>(newlyEvictedKeys));
+    }
+
+    private static boolean sameKey(IContainmentCacheEntry a, IContainmentCacheEntry b) {
+        return a.getKey() != null && a.getKey().equals(b.getKey());
+    }
+
+    /**
+     * @return the keys of the entries evicted to fit in the memory budget (see {@link #compact}), which should not be loaded from redis again. A key stops being evicted when its entry is added again
+     */
+    public Set<String> getEvictedKeys() {
+        return Collections.unmodifiableSet(evictedKeys);
+    }
+
+    // restores the evicted keys of a snapshot
+    void addEvictedKeys(Collection<String> evicted) {
+        evictedKeys.addAll(evicted);
+    }
+
+    /**
+     * @return how many queries the entry with this key has answered
+     */
+    public long getHits(String key) {
+        final LongAdder adder = key != null ? hits.get(key) : null;
+        return adder != null ? adder.sum() : 0;
+    }
+
+    /**
+     * @return a number that changes whenever entries are added or removed. A query answered at a version has the same answer for as long as the version stays the same
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    // also called for answers that were reused rather than looked up, see ContainmentCacheQueryCoalescer
+    void hit(String key) {
+        if (key != null) {
+            hits.computeIfAbsent(key, k -> new LongAdder()).increment();
+        }
+    }
+
+    private static String getKey(Object entry) {
+        return entry instanceof ContainmentCacheSATEntry ? ((ContainmentCacheSATEntry) entry).getKey() : ((ContainmentCacheUNSATEntry) entry).getKey();
+    }
+
+    // A rough estimate of the heap taken by an entry: the object, its bit set, its words (held twice, by the bit set and the entry), its channels and its key
+    static long estimateBytes(Object entry) {
+        final long words;
+        final long channels;
+        final String key;
+        if (entry instanceof ContainmentCacheSATEntry) {
+            final ContainmentCacheSATEntry SATEntry = (ContainmentCacheSATEntry) entry;
+            words = SATEntry.getWords().length;
+            channels = SATEntry.getChannels().length;
+            key = SATEntry.getKey();
+        } else {
+            final ContainmentCacheUNSATEntry UNSATEntry = (ContainmentCacheUNSATEntry) entry;
+            words = UNSATEntry.getWords().length;
+            channels = (long) Long.BYTES * UNSATEntry.getChannelMasks().length;
+            key = UNSATEntry.getKey();
+        }
+        return 32 + 32 + 2 * (16 + Long.BYTES * words) + 16 + channels + (key != null ? 40 + 2L * key.length() : 0);
+    }
+
+    @Data
+    public static class CompactionResult {
+        // keys of the entries that another entry makes useless, they can be dropped for good
+        private final List<String> dominatedKeys;
+        // keys of the entries that were dropped to fit in the memory budget
+        private final List<String> evictedKeys;
+    }
+
+    private static int[][] getPermutations(IContainmentIndex<?> index) {
+        return index instanceof PermutationContainmentIndex ? ((PermutationContainmentIndex<?>) index).getPermutations() : null;
+    }
+
+    private static int[][] getOrderings(IContainmentIndex<?> index) {
+        return index instanceof PermutationContainmentIndex ? ((PermutationContainmentIndex<?>) index).getOrderings() : null;
+    }
+
+    /**
+     * The bundled permutations order station IDs. They are used as they are with station IDs as numbers (see {@link StationIndex#IDENTITY}).
+     * For other station indices, every station ID is replaced by the station's number (stations the index does not have yet are added to it),
+     * and the stations of the index that the permutations do not order are appended to each of them, in increasing order of number.
+     */
+    public static int[][] readPermutations(StationIndex stationIndex) {
+        final int[][] stationIDPermutations = readPermutations();
+        if (stationIndex.isIdentity()) {
+            return stationIDPermutations;
+        }
+        final int[][] permutations = new int[stationIDPermutations.length][];
+        final BitSet ordered = new BitSet();
+        for (int p = 0; p < stationIDPermutations.length; p++) {
+            permutations[p] = Arrays.stream(stationIDPermutations[p]).map(stationID -> stationIndex.index(new Station(stationID))).toArray();
+            Arrays.stream(permutations[p]).forEach(ordered::set);
+        }
+        final int[] unordered = Arrays.stream(stationIndex.getNumbers()).filter(number -> !ordered.get(number)).toArray();
+        for (int p = 0; p < permutations.length; p++) {
+            final int[] permutation = Arrays.copyOf(permutations[p], permutations[p].length + unordered.length);
+            System.arraycopy(unordered, 0, permutation, permutations[p].length, unordered.length);
+            permutations[p] = permutation;
+        }
+        return permutations;
+    }
+
+    // Read the bundled permutations in from disk
+    public static int[][] readPermutations() {
         final int[][] permutationsTemp;
         try {
             final List<String> lines = Resources.readLines(Resources.getResource("precache_permutations.txt"), Charsets.UTF_8);
             final int numPermutations = lines.size();
             log.debug("Read " + numPermutations + " permutations");
-            permutationsTemp = new int[numPermutations][StationPackingUtils.N_STATIONS];
+            permutationsTemp = new int[numPermutations][];
             for (int i = 0; i < lines.size(); i++) {
                 final List<String> numbers = Splitter.on(',').trimResults().splitToList(lines.get(i));
-                Preconditions.checkState(numbers.size() == StationPackingUtils.N_STATIONS, "Each permutation must have length equal to N_STATIONS");
+                // N_STATIONS station IDs for the bundled file, as many as there were stations for a file written by PermutationSelectorExecutor
+                Preconditions.checkState(i == 0 || numbers.size() == permutationsTemp[0].length, "Each permutation must order the same stations");
+                permutationsTemp[i] = new int[numbers.size()];
                 for (int j = 0; j < numbers.size(); j++) {
                     permutationsTemp[i][j] = Integer.valueOf(numbers.get(j));
                 }
@@ -109,141 +534,125 @@ public class ContainmentCache {
         }
     }
 
-    /**
-     * Return a collection of entries that are potential supersets of the query
-     * In order for an entry be a superset of a the query, a necessary condition is that is larger (in unsigned integer representation) than the query
-     * We find the set of all entries larger than the query according to every permutation, and return the smallest such set so that we have the fewest entries to search further
-     * This initial filtering can be performed efficiently using binary search
-     * If we find an exact match, we return that much only
-     */
-    private Collection<ContainmentCacheSATEntry> smallSetLargerThanOrEqualTo(BitSet aBitSet) {
-        final ContainmentCacheSATEntry fakeEntry = new ContainmentCacheSATEntry(aBitSet); // need to wrap this for comparator
-        final List<Integer> binarySearchReturn = IntStream
-                .range(0, permutations.length)
-                .mapToObj(permutationIndex -> Collections.binarySearch(SATCache.get(permutationIndex), fakeEntry, (o1, o2) -> comparators.get(permutationIndex).compare(o1.getBitSet(), o2.getBitSet())))
-                .collect(toImmutableList());
-        // binary search return value is positive if the item is found in the list (the index). If it's in one list, it will be in all the lists, so might as well just work with the first
-        final Integer exactMatchIndexInFirstPermutation = binarySearchReturn.get(0);
-        if (exactMatchIndexInFirstPermutation >= 0) {
-            log.debug("Found an exact match in the SAT cache!");
-            return SATCache.get(0).subList(exactMatchIndexInFirstPermutation, exactMatchIndexInFirstPermutation + 1);
-        } else {
-            final List<Integer> insertionIndices = binarySearchReturn.stream().map(i -> -(i + 1)).collect(toImmutableList());
-            log.debug("No exact match found. Insertion indices for the various permutations are {}", insertionIndices);
-            final int bestInsertionPoint = Collections.max(insertionIndices);
-            final int bestPermutation = insertionIndices.indexOf(bestInsertionPoint);
-            final List<ContainmentCacheSATEntry> potentialSupersets = SATCache.get(bestPermutation).subList(bestInsertionPoint, SATCache.get(bestPermutation).size());
-            log.debug("Returning a list of " + potentialSupersets.size() + " entries to search through");
-            // reverse the list so the bigger things are seen first as they are most likely to be supersets
-            return Lists.reverse(potentialSupersets);
-        }
-    }
-
-    /**
-     * Return a collection of entries that are potential subsets of the query
-     * In order for an entry be a subset of a the query, a necessary condition is that is smaller (in unsigned integer representation) than the query
-     * We find the set of all entries smaller than the query according to every permutation, and return the smallest such set so that we have the fewest entries to search further
-     * This initial filtering can be performed efficiently using binary search
-     * If we find an exact match, we return that much only
-     */
-    private Collection<ContainmentCacheUNSATEntry> smallSetSmallerThanOrEqualTo(BitSet aBitSet) {
-        final ContainmentCacheUNSATEntry fakeEntry = new ContainmentCacheUNSATEntry(aBitSet); // need to wrap this for comparator
-        final List<Integer> binarySearchReturn = IntStream
-                .range(0, permutations.length)
-                .mapToObj(permutationIndex -> Collections.binarySearch(UNSATCache.get(permutationIndex), fakeEntry, (o1, o2) -> comparators.get(permutationIndex).compare(o1.getBitSet(), o2.getBitSet())))
-                .collect(toImmutableList());
-        // binary search return value is positive if the item is found in the list (the index). If it's in one list, it will be in all the lists, so might as well just work with the first
-        final Integer exactMatchIndexInFirstPermutation = binarySearchReturn.get(0);
-        if (exactMatchIndexInFirstPermutation >= 0) {
-            log.debug("Found an exact match in the UNSAT cache!");
-            return UNSATCache.get(0).subList(exactMatchIndexInFirstPermutation, exactMatchIndexInFirstPermutation + 1);
-        } else {
-            final List<Integer> insertionIndices = binarySearchReturn.stream().map(i -> -(i + 1)).collect(toImmutableList());
-            log.debug("No exact match found. Insertion indices for the various permutations are {}", insertionIndices);
-            final int bestInsertionPoint = Collections.min(insertionIndices);
-            final int bestPermutation = insertionIndices.indexOf(bestInsertionPoint);
-            final ImmutableList<ContainmentCacheUNSATEntry> potentialSubsets = UNSATCache.get(bestPermutation).subList(0, bestInsertionPoint);
-            log.debug("Returning a list of " + potentialSubsets.size() + " entries to search through");
-            return potentialSubsets;
-        }
-    }
-
-    // true if a is a superset of b
-    private boolean isSupersetOrEqualToByStations(final BitSet a, final BitSet b) {
-        return b.stream().allMatch(a::get);
-    }
-
-    // true if a is a subset of b
-    private boolean isSubsetOrEqualToByStations(final BitSet a, final BitSet b) {
-        return a.stream().allMatch(b::get);
+    @Data
+    public static class CacheContents {
+        private final List<ContainmentCacheSATEntry> SATEntries;
+        private final List<ContainmentCacheUNSATEntry> UNSATEntries;
+        // the permutations of the indices, null if the index does not use permutations
+        private final int[][] permutations;
+        // orderings[p][i] is the index in the list of entries of the i-th entry according to permutation p, null if the index does not use permutations
+        private final int[][] SATOrderings;
+        private final int[][] UNSATOrderings;
     }
 
     public ContainmentCacheUNSATResult proveUNSATBySubset(final StationPackingInstance aInstance) {
-        // convert instance to bit set representation
-        final BitSet bitSet = CacheUtils.toBitSet(aInstance);
-        // try to narrow down the entries we have to search by only looking at subsets
-        final Collection<ContainmentCacheUNSATEntry> containmentCacheUNSATEntries = smallSetSmallerThanOrEqualTo(bitSet);
-        return containmentCacheUNSATEntries.stream()
-                /*
-                 * The entry's stations should be a subset of the query's stations (so as to be less constrained)
-                 * and each station in the entry must have larger than or equal to the corresponding station domain in the target (so as to be less constrained)
-                 */
-                .filter(entry -> isSubsetOrEqualToByStations(entry.getBitSet(), bitSet) && isSupersetOrEqualToByDomains(entry.getDomains(), aInstance.getDomains()))
-                .map(entry -> new ContainmentCacheUNSATResult(entry.getKey()))
-                .findAny()
-                .orElse(ContainmentCacheUNSATResult.failure());
-    }
-
-    // true if a's domain is a superset of b's domain
-    private boolean isSupersetOrEqualToByDomains(Map<Station, Set<Integer>> a, Map<Station, Set<Integer>> b) {
-        return b.entrySet().stream().allMatch(entry -> {
-            final Set<Integer> integers = a.get(entry.getKey());
-            return integers != null && integers.containsAll(entry.getValue());
+        // convert instance to bit set representation, everything the scan needs about the query is computed once so that checking a candidate does not allocate
+        // stations that no entry has are left out, they cannot be in a subset
+        final IndexedStations query = CacheUtils.toIndexedStations(aInstance, stationIndex);
+        if (query.isTruncatedDomains()) {
+            // the masks cannot tell whether an entry's domain has the channels that were left out, so no entry can be shown to cover the query
+            return ContainmentCacheUNSATResult.failure();
+        }
+        final BitSet bitSet = query.getBitSet();
+        final long[] words = query.getWords();
+        final long[] domainMasks = query.getDomainMasks();
+        final ContainmentCacheUNSATResult result = read(() -> {
+            // try to narrow down the entries we have to search by only looking at subsets
+            final Iterable<ContainmentCacheUNSATEntry> containmentCacheUNSATEntries = UNSATCache.getPotentialSubsets(bitSet);
+            return StreamSupport.stream(containmentCacheUNSATEntries.spliterator(), false)
+                    /*
+                     * The entry's stations should be a subset of the query's stations (so as to be less constrained)
+                     * and each station in the entry must have larger than or equal to the corresponding station domain in the target (so as to be less constrained)
+                     */
+                    .filter(entry -> CacheUtils.isSubsetOrEqualTo(entry.getWords(), words) && entry.isSupersetOrEqualToByDomains(words, domainMasks))
+                    .map(entry -> new ContainmentCacheUNSATResult(entry.getKey()))
+                    .findAny()
+                    .orElse(ContainmentCacheUNSATResult.failure());
         });
+        if (result.isValid()) {
+            hit(result.getKey());
+        }
+        return result;
     }
 
     public ContainmentCacheSATResult proveSATBySuperset(final StationPackingInstance aInstance) {
-        // convert instance to bit set representation
-        final BitSet bitSet = CacheUtils.toBitSet(aInstance);
-        // try to narrow down the entries we have to search by only looking at supersets
-        final Collection<ContainmentCacheSATEntry> containmentCacheSATEntries = smallSetLargerThanOrEqualTo(bitSet);
-        return containmentCacheSATEntries.stream()
-                /**
-                 * The entry must contain at least every station in the query in order to provide a solution (hence superset)
-                 * The entry should also be a solution to the problem, which it will be as long as the solution can project onto the query's domains since they come from the set of interference constraints
-                 */
-                .filter(entry -> isSupersetOrEqualToByStations(entry.getBitSet(), bitSet) && entry.isSolutionTo(aInstance))
-                .map(entry -> new ContainmentCacheSATResult(entry.getAssignmentChannelToStation(), entry.getKey()))
-                .findAny()
-                .orElse(ContainmentCacheSATResult.failure());
-    }
-
-    /**
-     * A comparator that compares bitsets according to an ordering specified by permutation such that the least
-     * significant digit is the first number in the permutation)
-     */
-    private static class PermutableBitSetComparator implements Comparator<BitSet> {
-
-        final int[] permutation;
-
-        public PermutableBitSetComparator(int[] permutation) {
-            this.permutation = permutation;
-        }
-
-        @Override
-        public int compare(BitSet bs1, BitSet bs2) {
-            for (int i = permutation.length - 1; i >= 0; i--) {
-                int index = permutation[i];
-                boolean b1 = bs1.get(index);
-                boolean b2 = bs2.get(index);
-                if (b1 && !b2) {
-                    return 1;
-                } else if (!b1 && b2) {
-                    return -1;
+        // convert instance to bit set representation, everything the scan needs about the query is computed once so that checking a candidate does not allocate
+        final IndexedStations query = CacheUtils.toIndexedStations(aInstance, stationIndex);
+        if (query.getNumUnindexed() > 0) {
+            // no entry has these stations
+            return ContainmentCacheSATResult.failure();
+        }
+        final BitSet bitSet = query.getBitSet();
+        final long[] words = query.getWords();
+        final int[] stations = query.getStations();
+        final long[] domainMasks = query.getDomainMasks();
+        final ContainmentCacheSATResult result = read(() -> {
+            // try to narrow down the entries we have to search by only looking at supersets
+            final Iterable<ContainmentCacheSATEntry> containmentCacheSATEntries = SATCache.getPotentialSupersets(bitSet);
+            return StreamSupport.stream(containmentCacheSATEntries.spliterator(), false)
+                    /**
+                     * The entry must contain at least every station in the query in order to provide a solution (hence superset)
+                     * The entry should also be a solution to the problem, which it will be as long as the solution can project onto the query's domains since they come from the set of interference constraints
+                     */
+                    .filter(entry -> CacheUtils.isSubsetOrEqualTo(words, entry.getWords()) && entry.isSolutionTo(stations, domainMasks))
+                    .map(entry -> new ContainmentCacheSATResult(entry.getAssignmentChannelToStation(), entry.getKey()))
+                    .findAny()
+                    .orElse(ContainmentCacheSATResult.failure());
+        });
+        if (result.isValid()) {
+            hit(result.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Look for the SAT entry that puts the most stations of the query on a channel of their domain, for when no entry solves the whole query.
+     * Such an entry is a good starting point to solve the query from (see {@link ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.NearestSATPreviousAssignmentDecorator}): only the stations it misses and their neighbours are left to pack.
+     * @param scanBudget the maximum number of entries to look at
+     * @return the assignment of the entry, restricted to the stations of the query it puts on a channel of their domain, or a failure if no entry has any such station. The assignment covers the whole query if the entry solves it
+     */
+    public ContainmentCacheSATResult findNearestSAT(final StationPackingInstance aInstance, int scanBudget) {
+        Preconditions.checkArgument(scanBudget > 0, "Scan budget must be positive");
+        // stations that no entry has are left out, no entry solves them
+        final IndexedStations query = CacheUtils.toIndexedStations(aInstance, stationIndex);
+        final BitSet bitSet = query.getBitSet();
+        final int[] stations = query.getStations();
+        final long[] domainMasks = query.getDomainMasks();
+        final ContainmentCacheSATEntry nearest = read(() -> {
+            // an entry can come up in several orderings, only the first time counts against the budget
+            final Set<ContainmentCacheSATEntry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            ContainmentCacheSATEntry best = null;
+            int bestSolved = 0;
+            for (ContainmentCacheSATEntry entry : SATCache.getNearest(bitSet)) {
+                if (!seen.add(entry)) {
+                    continue;
+                }
+                final int solved = entry.countSolved(stations, domainMasks);
+                if (solved > bestSolved) {
+                    best = entry;
+                    bestSolved = solved;
+                    if (solved == stations.length) {
+                        break;
+                    }
+                }
+                if (seen.size() >= scanBudget) {
+                    break;
                 }
             }
-            return 0;
+            return best;
+        });
+        if (nearest == null) {
+            return ContainmentCacheSATResult.failure();
         }
+        hit(nearest.getKey());
+        final Map<Integer, Set<Station>> assignment = new HashMap<>();
+        nearest.getAssignment().forEach((stationId, channel) -> {
+            final Station station = new Station(stationId);
+            if (aInstance.getDomains().containsKey(station) && aInstance.getDomains().get(station).contains(channel)) {
+                assignment.computeIfAbsent(channel, c -> new HashSet<>()).add(station);
+            }
+        });
+        return new ContainmentCacheSATResult(assignment, nearest.getKey());
     }
 
-}
\ No newline at end of file
+}
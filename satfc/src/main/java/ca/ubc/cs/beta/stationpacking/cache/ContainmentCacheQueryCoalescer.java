@@ -0,0 +1,106 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import lombok.Data;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Answers the containment cache queries of the server so that identical queries share the work: when solver nodes go through the same auction round, many of them ask the same question at nearly the same time.
+ * Identical queries (same kind, coordinate and instance, by canonical hash) that arrive while one is being answered wait for its answer instead of scanning the candidate entries again,
+ * and the most recent answers are kept so that the queries that come shortly after are answered right away.
+ * Answers are tied to the version of the cache they were computed on (see {@link ContainmentCache#getVersion()}), so any insertion or removal invalidates them.
+ */
+public class ContainmentCacheQueryCoalescer {
+
+    private enum QueryType {
+        SAT, UNSAT, NEAREST_SAT
+    }
+
+    @Data
+    private static class Query {
+        private final QueryType type;
+        private final CacheCoordinate coordinate;
+        private final HashCode instanceHash;
+        private final long version;
+    }
+
+    // queries being answered and recent answers. Loading a key blocks the other loads of that key, which is what coalesces identical queries
+    private final Cache<Query, Object> answers;
+
+    /**
+     * @param maxAnswers how many recent answers are kept, 0 to only share the answers of queries in flight
+     */
+    public ContainmentCacheQueryCoalescer(int maxAnswers) {
+        Preconditions.checkArgument(maxAnswers >= 0, "The number of answers kept cannot be negative");
+        answers = CacheBuilder.newBuilder().maximumSize(maxAnswers).build();
+    }
+
+    public ContainmentCacheSATResult proveSATBySuperset(CacheCoordinate coordinate, ContainmentCache cache, StationPackingInstance instance) {
+        return answer(QueryType.SAT, coordinate, cache, instance, () -> cache.proveSATBySuperset(instance), ContainmentCacheSATResult::getKey);
+    }
+
+    public ContainmentCacheUNSATResult proveUNSATBySubset(CacheCoordinate coordinate, ContainmentCache cache, StationPackingInstance instance) {
+        return answer(QueryType.UNSAT, coordinate, cache, instance, () -> cache.proveUNSATBySubset(instance), ContainmentCacheUNSATResult::getKey);
+    }
+
+    public ContainmentCacheSATResult findNearestSAT(CacheCoordinate coordinate, ContainmentCache cache, StationPackingInstance instance, int scanBudget) {
+        return answer(QueryType.NEAREST_SAT, coordinate, cache, instance, () -> cache.findNearestSAT(instance, scanBudget), ContainmentCacheSATResult::getKey);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T answer(QueryType type, CacheCoordinate coordinate, ContainmentCache cache, StationPackingInstance instance, Callable<T> lookup, Function<T, String> getKey) {
+        // read before looking up, so that the answer includes at least every entry of that version
+        final Query query = new Query(type, coordinate, StationPackingInstanceHasher.hash(instance), cache.getVersion());
+        final AtomicBoolean looked = new AtomicBoolean();
+        final T answer;
+        try {
+            answer = (T) answers.get(query, () -> {
+                looked.set(true);
+                return lookup.call();
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        if (!looked.get()) {
+            // the lookup counted its hit, a reused answer still answers a query
+            cache.hit(getKey.apply(answer));
+        }
+        return answer;
+    }
+
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
+import ca.ubc.cs.beta.stationpacking.cache.ContainmentCache.CacheContents;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentIndexType;
+import ca.ubc.cs.beta.stationpacking.cache.containment.PermutationContainmentIndex;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A binary snapshot of every containment cache, so that a restarting server does not have to pull and sort everything from redis again.
+ * The file holds, for each cache coordinate, the IDs of the stations in order of number (see {@link StationIndex}), the station words and packed channels of the SAT entries, the station words and channel masks of the UNSAT entries,
+ * the permutations and orderings of the permutation index, so that the entries do not have to be sorted again (the restored cache keeps the permutations it had, which may have been picked from the data, see {@link PermutationSelector}),
+ * and the keys of the entries that were evicted from the cache, so that they are not pulled from redis again.
+ * Snapshots are read through windows of the file mapped in memory (see {@link MappedReader}): the station words, channels and orderings are bulk copied from the mapping into the entries' arrays, without going through a stream.
+ * The restored entries live on the heap like the ones loaded from redis, since the containment checks read them as plain arrays; a snapshot saves the time it takes to pull, parse and sort them.
+ * Snapshots are written to a temporary file that then replaces the previous snapshot, so a crash never leaves a partial snapshot behind.
+ */
+@Slf4j
+public class ContainmentCacheSnapshot {
+
+    // "SFCS"
+    private static final int MAGIC = 0x53464353;
+    // bump whenever the layout below changes, older snapshots are then ignored
+    private static final int VERSION = 4;
+    // the most bytes of the file mapped at once, so that snapshots larger than a buffer can hold are read too
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private ContainmentCacheSnapshot() {
+    }
+
+    @Data
+    public static class LoadedSnapshot {
+        private final Map<CacheCoordinate, ContainmentCache> caches;
+        // the redis key of every entry in the snapshot, and of every entry evicted from its cache
+        private final Set<String> keys;
+    }
+
+    /**
+     * Write a snapshot of the caches. Each cache is copied under its read lock, so queries and insertions can carry on while the snapshot is written
+     */
+    public static void write(File file, Map<CacheCoordinate, ContainmentCache> caches) throws IOException {
+        final Watch watch = Watch.constructAutoStartWatch();
+        final File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(caches.size());
+            for (Map.Entry<CacheCoordinate, ContainmentCache> entry : caches.entrySet()) {
+                writeString(out, entry.getKey().getDomainHash());
+                writeString(out, entry.getKey().getInterferenceHash());
+                final CacheContents contents = entry.getValue().getContents();
+                // the index only ever grows, so taken after the entries it numbers all of their stations
+                final StationIndex stationIndex = entry.getValue().getStationIndex();
+                out.writeBoolean(stationIndex.isIdentity());
+                if (!stationIndex.isIdentity()) {
+                    writeInts(out, stationIndex.getStationIDs());
+                }
+                out.writeInt(contents.getSATEntries().size());
+                for (ContainmentCacheSATEntry SATEntry : contents.getSATEntries()) {
+                    writeString(out, SATEntry.getKey());
+                    writeLongs(out, SATEntry.getWords());
+                    out.writeInt(SATEntry.getChannels().length);
+                    out.write(SATEntry.getChannels());
+                }
+                out.writeInt(contents.getUNSATEntries().size());
+                for (ContainmentCacheUNSATEntry UNSATEntry : contents.getUNSATEntries()) {
+                    writeString(out, UNSATEntry.getKey());
+                    writeLongs(out, UNSATEntry.getWords());
+                    writeLongs(out, UNSATEntry.getChannelMasks());
+                }
+                final boolean hasOrderings = contents.getPermutations() != null && contents.getSATOrderings() != null && contents.getUNSATOrderings() != null;
+                out.writeBoolean(hasOrderings);
+                if (hasOrderings) {
+                    writeOrderings(out, contents.getPermutations());
+                    writeOrderings(out, contents.getSATOrderings());
+                    writeOrderings(out, contents.getUNSATOrderings());
+                }
+                final Set<String> evictedKeys = new HashSet<>(entry.getValue().getEvictedKeys());
+                out.writeInt(evictedKeys.size());
+                for (String key : evictedKeys) {
+                    writeString(out, key);
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Wrote a snapshot of {} caches to {} in {}s", caches.size(), file, watch.getElapsedTime());
+    }
+
+    /**
+     * Read a snapshot written by {@link #write}
+     * @param indexType the kind of index the restored caches should use
+     */
+    public static LoadedSnapshot read(File file, ContainmentIndexType indexType) throws IOException {
+        return read(file, indexType, WINDOW_BYTES);
+    }
+
+    // windowBytes is only ever small in tests, to cross window boundaries
+    static LoadedSnapshot read(File file, ContainmentIndexType indexType, long windowBytes) throws IOException {
+        final Watch watch = Watch.constructAutoStartWatch();
+        final Map<CacheCoordinate, ContainmentCache> caches = new HashMap<>();
+        final Set<String> keys = new HashSet<>();
+        try (MappedReader in = new MappedReader(file, windowBytes)) {
+            // no length in the file can be larger than the file itself, so a corrupt one fails instead of allocating too much
+            final long size = in.size();
+            Preconditions.checkState(in.readInt() == MAGIC, "%s is not a containment cache snapshot", file);
+            final int version = in.readInt();
+            Preconditions.checkState(version == VERSION, "Snapshot %s has version %s, expected version %s", file, version, VERSION);
+            final int numCaches = readLength(in, 1, size);
+            for (int c = 0; c < numCaches; c++) {
+                final CacheCoordinate coordinate = new CacheCoordinate(readString(in, size), readString(in, size));
+                final StationIndex stationIndex = in.readBoolean() ? StationIndex.IDENTITY : new StationIndex(readInts(in, size));
+                final int numSAT = readLength(in, 1, size);
+                final List<ContainmentCacheSATEntry> SATEntries = new ArrayList<>(numSAT);
+                for (int i = 0; i < numSAT; i++) {
+                    final String key = readString(in, size);
+                    final long[] words = readLongs(in, size);
+                    final byte[] channels = new byte[readLength(in, 1, size)];
+                    in.readFully(channels);
+                    SATEntries.add(new ContainmentCacheSATEntry(words, channels, key, stationIndex));
+                    keys.add(key);
+                }
+                final int numUNSAT = readLength(in, 1, size);
+                final List<ContainmentCacheUNSATEntry> UNSATEntries = new ArrayList<>(numUNSAT);
+                for (int i = 0; i < numUNSAT; i++) {
+                    final String key = readString(in, size);
+                    UNSATEntries.add(new ContainmentCacheUNSATEntry(readLongs(in, size), readLongs(in, size), key, stationIndex));
+                    keys.add(key);
+                }
+                final boolean hasOrderings = in.readBoolean();
+                final ContainmentCache cache;
+                if (hasOrderings) {
+                    final int[][] permutations = readOrderings(in, size);
+                    final int[][] SATOrderings = readOrderings(in, size);
+                    final int[][] UNSATOrderings = readOrderings(in, size);
+                    // the orderings are of no use to another kind of index
+                    cache = indexType.equals(ContainmentIndexType.PERMUTATION) ?
+                            new ContainmentCache(new PermutationContainmentIndex<>(permutations, SATEntries, SATOrderings), new PermutationContainmentIndex<>(permutations, UNSATEntries, UNSATOrderings), stationIndex) :
+                            new ContainmentCache(SATEntries, UNSATEntries, indexType, stationIndex);
+                } else {
+                    cache = new ContainmentCache(SATEntries, UNSATEntries, indexType, stationIndex);
+                }
+                final int numEvicted = readLength(in, 1, size);
+                final List<String> evictedKeys = new ArrayList<>(numEvicted);
+                for (int i = 0; i < numEvicted; i++) {
+                    evictedKeys.add(readString(in, size));
+                }
+                cache.addEvictedKeys(evictedKeys);
+                keys.addAll(evictedKeys);
+                caches.put(coordinate, cache);
+            }
+        }
+        log.info("Read a snapshot of {} caches ({} keys) from {} in {}s", caches.size(), keys.size(), file, watch.getElapsedTime());
+        return new LoadedSnapshot(caches, keys);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedReader in, long size) throws IOException {
+        final byte[] bytes = new byte[readLength(in, 1, size)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // a count of elements of the given size, which must fit in a file of the given size
+    private static int readLength(MappedReader in, int elementBytes, long size) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || (long) length * elementBytes > size) {
+            throw new IOException("Corrupt snapshot, found a length of " + length + " in a file of " + size + " bytes");
+        }
+        return length;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+        out.writeInt(ints.length);
+        for (int i : ints) {
+            out.writeInt(i);
+        }
+    }
+
+    private static int[] readInts(MappedReader in, long size) throws IOException {
+        final int[] ints = new int[readLength(in, Integer.BYTES, size)];
+        in.readFully(ints);
+        return ints;
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] longs) throws IOException {
+        out.writeInt(longs.length);
+        for (long l : longs) {
+            out.writeLong(l);
+        }
+    }
+
+    private static long[] readLongs(MappedReader in, long size) throws IOException {
+        final long[] longs = new long[readLength(in, Long.BYTES, size)];
+        in.readFully(longs);
+        return longs;
+    }
+
+    private static void writeOrderings(DataOutputStream out, int[][] orderings) throws IOException {
+        out.writeInt(orderings.length);
+        for (int[] ordering : orderings) {
+            writeInts(out, ordering);
+        }
+    }
+
+    private static int[][] readOrderings(MappedReader in, long size) throws IOException {
+        final int[][] orderings = new int[readLength(in, Integer.BYTES, size)][];
+        for (int i = 0; i < orderings.length; i++) {
+            orderings[i] = readInts(in, size);
+        }
+        return orderings;
+    }
+
+    /**
+     * Reads a file through read only mappings of at most windowBytes of it at a time, in the big endian layout {@link DataOutputStream} writes.
+     * Only the current window is referenced: a window is let go as soon as the next one is mapped, and the last one on {@link #close}, after which its mapping is released when the buffer is garbage collected (there is no way to unmap it explicitly).
+     * Arrays are bulk copied out of the mapping, so nothing read is backed by the file once the reader is closed.
+     */
+    private static class MappedReader implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final long size;
+        private final long windowBytes;
+        // where the current window starts in the file
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        private MappedReader(File file, long windowBytes) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            size = channel.size();
+            this.windowBytes = windowBytes;
+            map(0, 0);
+        }
+
+        private long size() {
+            return size;
+        }
+
+        // map the window that starts at position, at least minBytes long
+        private void map(long position, int minBytes) throws IOException {
+            if (size - position < minBytes) {
+                throw new EOFException("The snapshot ends at byte " + size + ", expected " + minBytes + " more bytes at byte " + position);
+            }
+            window = null;
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Math.max(windowBytes, minBytes), size - position));
+        }
+
+        // make sure that the next bytes are in the window
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                map(windowStart + window.position(), bytes);
+            }
+        }
+
+        private int readInt() throws IOException {
+            ensure(Integer.BYTES);
+            return window.getInt();
+        }
+
+        private boolean readBoolean() throws IOException {
+            ensure(1);
+            return window.get() != 0;
+        }
+
+        private void readFully(byte[] bytes) throws IOException {
+            int done = 0;
+            while (done < bytes.length) {
+                ensure(1);
+                final int n = Math.min(window.remaining(), bytes.length - done);
+                window.get(bytes, done, n);
+                done += n;
+            }
+        }
+
+        private void readFully(int[] ints) throws IOException {
+            int done = 0;
+            while (done < ints.length) {
+                ensure(Integer.BYTES);
+                final int n = Math.min(window.remaining() / Integer.BYTES, ints.length - done);
+                window.asIntBuffer().get(ints, done, n);
+                window.position(window.position() + n * Integer.BYTES);
+                done += n;
+            }
+        }
+
+        private void readFully(long[] longs) throws IOException {
+            int done = 0;
+            while (done < longs.length) {
+                ensure(Long.BYTES);
+                final int n = Math.min(window.remaining() / Long.BYTES, longs.length - done);
+                window.asLongBuffer().get(longs, done, n);
+                window.position(window.position() + n * Long.BYTES);
+                done += n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+
+    }
+
+}
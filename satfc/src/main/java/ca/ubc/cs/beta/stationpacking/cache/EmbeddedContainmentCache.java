@@ -0,0 +1,302 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheRequest;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentIndexType;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.IContainmentCacheProxy;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A containment cache held in the solver's own JVM, for single machine deployments and tests: lookups and insertions are plain method calls, without HTTP round trips or serialization.
+ * Results are appended to a local file, if there is one, which is replayed into the cache the next time an embedded cache is created on it.
+ * Several embedded caches (say, one per constraint set) of the same process may share a file, but the file must not be used by two processes at once: a process only excludes its own readers and writers.
+ * Given the proxies of a cache server, the embedded cache also syncs with it: results are sent to the server too, lookups that miss locally are asked to the server, and the SAT entries the server answers with are kept locally.
+ */
+@Slf4j
+public class EmbeddedContainmentCache implements IContainmentCacheProxy, ICacher, AutoCloseable {
+
+    // how many SAT entries a nearest SAT lookup looks at, at most (the cache server's default)
+    private static final int NEAREST_SCAN_BUDGET = 1000;
+
+    private final CacheCoordinate coordinate;
+    private final ContainmentCache cache;
+    // the key of every entry of the cache, so that a result is only added and written once
+    private final Set<String> keys = ConcurrentHashMap.newKeySet();
+    // where results are appended, null to keep them in memory only
+    private final File file;
+    // shared by every embedded cache of the process on the same file, held while replaying, truncating, appending and closing
+    private final Object fileLock;
+    private FileOutputStream fileOut;
+    // the cache server, null if the embedded cache is on its own
+    private final IContainmentCacheProxy remote;
+    private final ICacher remoteCacher;
+
+    /**
+     * @param stationIndex numbers the stations of the entries, e.g. the station manager's index
+     * @param file the file the results are appended to, and read back from on creation. Null to keep them in memory only
+     * @param remote the lookups of a cache server, asked when a lookup misses locally. Null to stay local
+     * @param remoteCacher where results are sent besides the local cache, e.g. the server. Null to stay local
+     */
+    public EmbeddedContainmentCache(CacheCoordinate coordinate, StationIndex stationIndex, File file, IContainmentCacheProxy remote, ICacher remoteCacher) {
+        this.coordinate = coordinate;
+        this.file = file;
+        this.remote = remote;
+        this.remoteCacher = remoteCacher;
+        fileLock = file != null ? CacheUtils.getFileLock(file) : new Object();
+        final List<ContainmentCacheSATEntry> SATEntries = new ArrayList<>();
+        final List<ContainmentCacheUNSATEntry> UNSATEntries = new ArrayList<>();
+        if (file != null) {
+            // no other cache of the process appends while the file is read and truncated
+            synchronized (fileLock) {
+                if (file.exists()) {
+                    replay(SATEntries, UNSATEntries, stationIndex);
+                }
+                try {
+                    fileOut = new FileOutputStream(file, true);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Could not open the cache file " + file, e);
+                }
+            }
+        }
+        cache = new ContainmentCache(SATEntries, UNSATEntries, ContainmentIndexType.PERMUTATION, stationIndex);
+    }
+
+    public EmbeddedContainmentCache(CacheCoordinate coordinate, StationIndex stationIndex, File file) {
+        this(coordinate, stationIndex, file, null, null);
+    }
+
+    // read the entries of this coordinate back from the file. A record cut short by a crash is dropped from the file, so that new records can follow the last complete one.
+    // Called with the file lock held, so the last record cannot be one that another cache is still writing
+    private void replay(List<ContainmentCacheSATEntry> SATEntries, List<ContainmentCacheUNSATEntry> UNSATEntries, StationIndex stationIndex) {
+        final Watch watch = Watch.constructAutoStartWatch();
+        long complete = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                final byte[] record;
+                try {
+                    record = new byte[in.readInt()];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                complete += Integer.BYTES + record.length;
+                final DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                final String key = recordIn.readUTF();
+                final ContainmentCacheCacheRequest request = CacheBinaryCodec.readCacheRequest(recordIn);
+                if (request.getCoordinate().equals(coordinate) && keys.add(key)) {
+                    if (request.getResult().getResult().equals(SATResult.SAT)) {
+                        SATEntries.add(new ContainmentCacheSATEntry(request.getResult().getAssignment(), key, stationIndex));
+                    } else {
+                        UNSATEntries.add(new ContainmentCacheUNSATEntry(request.getInstance().getDomains(), key, stationIndex));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Could not read the cache file " + file, e);
+        }
+        if (complete < file.length()) {
+            log.warn("Dropping the last {} bytes of the cache file {}, which hold an incomplete result", file.length() - complete, file);
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.setLength(complete);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not truncate the cache file " + file, e);
+            }
+        }
+        log.info("Read {} SAT and {} UNSAT entries from the cache file {} in {}s", SATEntries.size(), UNSATEntries.size(), file, watch.getElapsedTime());
+    }
+
+    @Override
+    public void cacheResult(CacheCoordinate cacheCoordinate, StationPackingInstance instance, SolverResult result) {
+        Preconditions.checkArgument(cacheCoordinate.equals(coordinate), "The embedded cache of %s cannot cache a result for %s", coordinate, cacheCoordinate);
+        if (!(result.getResult().equals(SATResult.SAT) || result.getResult().equals(SATResult.UNSAT))) {
+            return;
+        }
+        if (add(coordinate.toKey(result.getResult(), instance), instance, result) && remoteCacher != null) {
+            remoteCacher.cacheResult(cacheCoordinate, instance, result);
+        }
+    }
+
+    // add a result to the cache and the file, unless there already is an entry with the same key
+    private boolean add(String key, StationPackingInstance instance, SolverResult result) {
+        if (!keys.add(key)) {
+            return false;
+        }
+        if (result.getResult().equals(SATResult.SAT)) {
+            cache.add(new ContainmentCacheSATEntry(result.getAssignment(), key, cache.getStationIndex()));
+        } else {
+            cache.add(new ContainmentCacheUNSATEntry(instance.getDomains(), key, cache.getStationIndex()));
+        }
+        append(key, new ContainmentCacheCacheRequest(instance, coordinate, result));
+        return true;
+    }
+
+    private void append(String key, ContainmentCacheCacheRequest request) {
+        if (file == null) {
+            return;
+        }
+        try {
+            final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            final DataOutputStream payloadOut = new DataOutputStream(payload);
+            payloadOut.writeUTF(key);
+            CacheBinaryCodec.writeCacheRequest(payloadOut, request);
+            final ByteArrayOutputStream record = new ByteArrayOutputStream(Integer.BYTES + payload.size());
+            new DataOutputStream(record).writeInt(payload.size());
+            payload.writeTo(record);
+            // a single write, so that the records of caches sharing the file do not interleave
+            synchronized (fileLock) {
+                if (fileOut != null) {
+                    fileOut.write(record.toByteArray());
+                }
+            }
+        } catch (IOException e) {
+            // the entry is still in memory, it is just not kept for the next run
+            log.error("Could not append result " + key + " to the cache file " + file, e);
+        }
+    }
+
+    // keep a SAT entry the server answered with, so that the next lookups that it solves do not go to the server
+    private void learn(ContainmentCacheSATResult result) {
+        final Map<Station, Set<Integer>> domains = new HashMap<>();
+        result.getResult().forEach((channel, stations) -> stations.forEach(station -> domains.put(station, new HashSet<>(Collections.singleton(channel)))));
+        add(result.getKey(), new StationPackingInstance(domains), new SolverResult(SATResult.SAT, 0.0, result.getResult()));
+    }
+
+    /**
+     * Local lookups take a fraction of a millisecond, so there is always time for them
+     */
+    @Override
+    public boolean hasTimeToQuery(ITerminationCriterion terminationCriterion) {
+        return true;
+    }
+
+    @Override
+    public List<ContainmentCacheBatchResult> prefetch(List<StationPackingInstance> instances) {
+        final List<ContainmentCacheBatchResult> results = new ArrayList<>(instances.size());
+        final List<StationPackingInstance> misses = new ArrayList<>();
+        final List<Integer> missIndices = new ArrayList<>();
+        for (StationPackingInstance instance : instances) {
+            final ContainmentCacheBatchResult result = new ContainmentCacheBatchResult(cache.proveSATBySuperset(instance), cache.proveUNSATBySubset(instance));
+            if (!result.getSATResult().isValid() && !result.getUNSATResult().isValid()) {
+                misses.add(instance);
+                missIndices.add(results.size());
+            }
+            results.add(result);
+        }
+        if (remote != null && !misses.isEmpty()) {
+            final List<ContainmentCacheBatchResult> remoteResults = remote.prefetch(misses);
+            for (int i = 0; i < misses.size(); i++) {
+                final ContainmentCacheBatchResult remoteResult = remoteResults.get(i);
+                if (remoteResult.getSATResult().isValid()) {
+                    learn(remoteResult.getSATResult());
+                }
+                results.set(missIndices.get(i), remoteResult);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public ContainmentCacheSATResult proveSATBySuperset(StationPackingInstance instance) {
+        final ContainmentCacheSATResult result = cache.proveSATBySuperset(instance);
+        if (result.isValid() || remote == null) {
+            return result;
+        }
+        final ContainmentCacheSATResult remoteResult = remote.proveSATBySuperset(instance);
+        if (remoteResult.isValid()) {
+            learn(remoteResult);
+        }
+        return remoteResult;
+    }
+
+    @Override
+    public ContainmentCacheSATResult findNearestSAT(StationPackingInstance instance) {
+        final ContainmentCacheSATResult result = cache.findNearestSAT(instance, NEAREST_SCAN_BUDGET);
+        return result.isValid() || remote == null ? result : remote.findNearestSAT(instance);
+    }
+
+    @Override
+    public ContainmentCacheUNSATResult proveUNSATBySubset(StationPackingInstance instance) {
+        final ContainmentCacheUNSATResult result = cache.proveUNSATBySubset(instance);
+        return result.isValid() || remote == null ? result : remote.proveUNSATBySubset(instance);
+    }
+
+    /**
+     * @return the cache the lookups are made on
+     */
+    public ContainmentCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Stop appending to the file. Lookups still work, but results are no longer kept for the next run
+     */
+    @Override
+    public void close() {
+        synchronized (fileLock) {
+            if (fileOut != null) {
+                try {
+                    fileOut.close();
+                } catch (IOException e) {
+                    log.error("Could not close the cache file " + file, e);
+                }
+                fileOut = null;
+            }
+        }
+    }
+
+}
@@ -24,7 +24,9 @@ package ca.ubc.cs.beta.stationpacking.cache;
 import java.util.Optional;
 
 import net.jcip.annotations.ThreadSafe;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
 
 /**
  * Created by newmanne on 20/03/15.
@@ -34,4 +36,10 @@ public interface ICacheLocator {
 
     Optional<ContainmentCache> locate(CacheCoordinate coordinate);
 
+    /**
+     * Make a freshly cached result available to queries without waiting for the caches to be reloaded
+     * @param key the redis key the result was stored under
+     */
+    void addToCache(CacheCoordinate coordinate, StationPackingInstance instance, SolverResult result, String key);
+
 }
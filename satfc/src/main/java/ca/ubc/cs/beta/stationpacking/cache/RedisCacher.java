@@ -21,16 +21,28 @@
  */
 package ca.ubc.cs.beta.stationpacking.cache;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
@@ -41,10 +53,13 @@ import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntr
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
 import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 /**
@@ -54,13 +69,22 @@ import com.google.common.collect.Sets;
 @Slf4j
 public class RedisCacher {
 
+    // number of keys redis is asked to look at per SCAN call
+    private static final int SCAN_BATCH_SIZE = 1000;
+    // number of keys per MGET, and number of MGETs sent in one pipeline
+    private static final int MGET_BATCH_SIZE = 500;
+    private static final int MGETS_PER_PIPELINE = 20;
+
     private final StringRedisTemplate redisTemplate;
 
     public RedisCacher(StringRedisTemplate template) {
         this.redisTemplate = template;
     }
 
-    public void cacheResult(CacheCoordinate cacheCoordinate, StationPackingInstance instance, SolverResult result) {
+    /**
+     * @return the redis key under which the result was stored
+     */
+    public String cacheResult(CacheCoordinate cacheCoordinate, StationPackingInstance instance, SolverResult result) {
         Preconditions.checkState(result.getResult().equals(SATResult.UNSAT) || result.getResult().equals(SATResult.SAT), "Result must be SAT or UNSAT in order to cache");
         final String jsonResult;
         final Map<String, Object> metadata = instance.getMetadata();
@@ -75,6 +99,7 @@ public class RedisCacher {
         final String key = cacheCoordinate.toKey(result.getResult(), instance);
         log.info("Adding result for " + instance.getName() + " to cache with key " + key);
         redisTemplate.boundValueOps(key).set(jsonResult);
+        return key;
     }
 
 
@@ -109,49 +134,61 @@ public class RedisCacher {
 
     }
 
+    /**
+     * Remove these entries from redis for good (e.g. entries that are dominated by other entries)
+     */
+    public void deleteKeys(Collection<String> keys) {
+        if (!keys.isEmpty()) {
+            log.info("Deleting {} entries from redis", keys.size());
+            Iterables.partition(keys, MGET_BATCH_SIZE).forEach(batch -> redisTemplate.delete(batch));
+        }
+    }
+
     public ContainmentCacheInitData getContainmentCacheInitData() {
-        log.info("Pulling precache data from redis");
-        long start = System.currentTimeMillis();
+        return getContainmentCacheInitData(Collections.emptySet());
+    }
 
-        final ListMultimap<CacheCoordinate, ContainmentCacheSATEntry> SATResults = ArrayListMultimap.create();
-        final ListMultimap<CacheCoordinate, ContainmentCacheUNSATEntry> UNSATResults = ArrayListMultimap.create();
+    /**
+     * @param knownKeys keys that are already loaded (e.g. from a snapshot), and should not be pulled again
+     */
+    public ContainmentCacheInitData getContainmentCacheInitData(Set<String> knownKeys) {
+        return getContainmentCacheInitData(knownKeys, key -> true);
+    }
 
-        final Set<String> SATKeys = redisTemplate.keys("SATFC:SAT:*");
-        log.info("Found " + SATKeys.size() + " SAT keys");
+    /**
+     * @param knownKeys keys that are already loaded (e.g. from a snapshot), and should not be pulled again
+     * @param keyFilter only the keys that pass this filter are pulled (e.g. the keys owned by a shard)
+     */
+    public ContainmentCacheInitData getContainmentCacheInitData(Set<String> knownKeys, Predicate<String> keyFilter) {
+        return getContainmentCacheInitData("*", knownKeys, keyFilter);
+    }
 
-        // process SATs
-        final AtomicInteger progressIndex = new AtomicInteger();
-        SATKeys.forEach(key -> {
-            if (progressIndex.get() % 1000 == 0) {
-                log.info("Processed " + progressIndex.get() + " SAT keys out of " + SATKeys.size());
-            }
-            final CacheCoordinate coordinate = CacheCoordinate.fromKey(key);
-            final SATCacheEntry cacheEntry = getSATSolverResultByKey(key, false).get();
-            final ContainmentCacheSATEntry entry = new ContainmentCacheSATEntry(cacheEntry.getAssignment(), key);
-            SATResults.put(coordinate, entry);
-            progressIndex.incrementAndGet();
+    /**
+     * Only pull the entries of one cache coordinate
+     * @param knownKeys keys that are already loaded (e.g. from a snapshot), and should not be pulled again
+     * @param keyFilter only the keys that pass this filter are pulled (e.g. the keys owned by a shard)
+     */
+    public ContainmentCacheInitData getContainmentCacheInitData(CacheCoordinate coordinate, Set<String> knownKeys, Predicate<String> keyFilter) {
+        return getContainmentCacheInitData(coordinate.getDomainHash() + ":" + coordinate.getInterferenceHash() + ":*", knownKeys, keyFilter);
+    }
+
+    // keyPattern matches the part of the keys that follows the result (see CacheCoordinate#toKey)
+    private ContainmentCacheInitData getContainmentCacheInitData(String keyPattern, Set<String> knownKeys, Predicate<String> keyFilter) {
+        log.info("Pulling precache data from redis");
+        long start = System.currentTimeMillis();
+
+        final ListMultimap<CacheCoordinate, ContainmentCacheSATEntry> SATResults = loadEntries("SATFC:SAT:" + keyPattern, knownKeys, keyFilter, (key, value) -> {
+            final SATCacheEntry cacheEntry = JSONUtils.toObject(value, SATCacheEntry.class);
+            return new ContainmentCacheSATEntry(cacheEntry.getAssignment(), key);
         });
-        log.info("Finished processing {} SAT entries", progressIndex.get());
         SATResults.keySet().forEach(cacheCoordinate -> {
             log.info("Found {} SAT entries for cache " + cacheCoordinate, SATResults.get(cacheCoordinate).size());
         });
 
-        // process UNSATs
-        final Set<String> UNSATKeys = redisTemplate.keys("SATFC:UNSAT:*");
-        log.info("Found " + UNSATKeys.size() + " UNSAT keys");
-
-        progressIndex.set(0);
-        UNSATKeys.forEach(key -> {
-            if (progressIndex.get() % 1000 == 0) {
-                log.info("Processed " + progressIndex.get() + " UNSAT keys out of " + UNSATKeys.size());
-            }
-            final CacheCoordinate coordinate = CacheCoordinate.fromKey(key);
-            final UNSATCacheEntry cacheEntry = getUNSATSolverResultByKey(key, false).get();
-            final ContainmentCacheUNSATEntry entry = new ContainmentCacheUNSATEntry(cacheEntry.getDomains(), key);
-            UNSATResults.put(coordinate, entry);
-            progressIndex.incrementAndGet();
+        final ListMultimap<CacheCoordinate, ContainmentCacheUNSATEntry> UNSATResults = loadEntries("SATFC:UNSAT:" + keyPattern, knownKeys, keyFilter, (key, value) -> {
+            final UNSATCacheEntry cacheEntry = JSONUtils.toObject(value, UNSATCacheEntry.class);
+            return new ContainmentCacheUNSATEntry(cacheEntry.getDomains(), key);
         });
-        log.info("Finished processing {} UNSAT entries", progressIndex.get());
         UNSATResults.keySet().forEach(cacheCoordinate -> {
             log.info("Found {} UNSAT entries for cache " + cacheCoordinate, UNSATResults.get(cacheCoordinate).size());
         });
@@ -161,6 +198,78 @@ public class RedisCacher {
         return new ContainmentCacheInitData(SATResults, UNSATResults);
     }
 
+    /**
+     * Load every entry whose key matches the pattern, grouped by cache coordinate.
+     * Keys are found with SCAN (KEYS would block redis for the whole duration), values are fetched with pipelined MGETs, and the JSON is decoded in parallel.
+     */
+    private <T> ListMultimap<CacheCoordinate, T> loadEntries(String pattern, Set<String> knownKeys, Predicate<String> keyFilter, BiFunction<String, String, T> decoder) {
+        final Watch watch = Watch.constructAutoStartWatch();
+        final List<String> keys = scanKeys(pattern);
+        log.info("Found {} keys matching {} in {}s", keys.size(), pattern, watch.getElapsedTime());
+        keys.removeIf(keyFilter.negate());
+        if (!knownKeys.isEmpty()) {
+            keys.removeIf(knownKeys::contains);
+            log.info("{} of those keys are not already loaded", keys.size());
+        }
+
+        final List<String> values = multiGet(keys);
+
+        watch.reset();
+        watch.start();
+        @SuppressWarnings("unchecked")
+        final T[] entries = (T[]) new Object[keys.size()];
+        IntStream.range(0, keys.size()).parallel().forEach(i -> {
+            // the key may have been deleted since it was scanned
+            if (values.get(i) != null) {
+                entries[i] = decoder.apply(keys.get(i), values.get(i));
+            }
+        });
+        log.info("Decoded {} entries in {}s ({} entries/s)", keys.size(), watch.getElapsedTime(), throughput(keys.size(), watch.getElapsedTime()));
+
+        final ListMultimap<CacheCoordinate, T> results = ArrayListMultimap.create();
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] != null) {
+                results.put(CacheCoordinate.fromKey(keys.get(i)), entries[i]);
+            }
+        }
+        return results;
+    }
+
+    private List<String> scanKeys(String pattern) {
+        final RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        return redisTemplate.execute((RedisCallback<List<String>>) connection -> {
+            // SCAN can return the same key more than once
+            final Set<String> keys = new LinkedHashSet<>();
+            try (Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().match(pattern).count(SCAN_BATCH_SIZE).build())) {
+                cursor.forEachRemaining(key -> keys.add(serializer.deserialize(key)));
+            } catch (IOException e) {
+                throw new RuntimeException("Could not close the redis cursor", e);
+            }
+            return new ArrayList<>(keys);
+        });
+    }
+
+    // the values of the given keys, in the same order (null for keys that no longer exist)
+    @SuppressWarnings("unchecked")
+    private List<String> multiGet(List<String> keys) {
+        final RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        final List<String> values = new ArrayList<>(keys.size());
+        final Watch watch = Watch.constructAutoStartWatch();
+        for (List<List<String>> pipeline : Lists.partition(Lists.partition(keys, MGET_BATCH_SIZE), MGETS_PER_PIPELINE)) {
+            final List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                pipeline.forEach(batch -> connection.mGet(batch.stream().map(serializer::serialize).toArray(byte[][]::new)));
+                return null;
+            });
+            results.forEach(result -> values.addAll((List<String>) result));
+            log.info("Fetched {} values out of {} ({} values/s)", values.size(), keys.size(), throughput(values.size(), watch.getElapsedTime()));
+        }
+        return values;
+    }
+
+    private static long throughput(int count, double seconds) {
+        return seconds > 0 ? Math.round(count / seconds) : count;
+    }
+
     @Data
     public static class ContainmentCacheInitData {
         private final ListMultimap<CacheCoordinate, ContainmentCacheSATEntry> SATResults;
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.walltime.WalltimeTerminationCriterion;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Caches results with another cacher and, from a background thread, looks for a smaller unsatisfiable subset of the stations of every UNSAT result, which is cached as well.
+ * A smaller UNSAT entry is a subset of many more problems, so it lets the subset cache answer them without solving.
+ * <p>
+ * Stations are removed in chunks, halving the chunk size every pass: a chunk stays removed if the remaining stations are still UNSAT within a short cutoff.
+ * Every problem gets a bounded number of solver calls, and problems that arrive while the queue is full are not shrunk.
+ */
+@Slf4j
+public class UNSATCoreShrinkingCacher implements ICacher, AutoCloseable {
+
+    private static final long SEED = 1;
+
+    private final ICacher cacher;
+    private final ISolver solver;
+    private final double cutoff;
+    private final int maxSolverCalls;
+    private final ThreadPoolExecutor shrinker;
+    // hashes of the problems waiting to be shrunk, a problem already queued is not queued again
+    private final Set<String> queued = new HashSet<>();
+    private volatile boolean closed = false;
+
+    /**
+     * @param cacher where results, and the smaller UNSAT problems that are found, are cached
+     * @param solver solver used to shrink problems, it is only used from the background thread and must not be used elsewhere
+     * @param capacity maximum number of UNSAT problems waiting to be shrunk
+     * @param cutoff walltime (s) given to each solver call
+     * @param maxSolverCalls maximum number of solver calls spent on a problem
+     */
+    public UNSATCoreShrinkingCacher(ICacher cacher, ISolver solver, int capacity, double cutoff, int maxSolverCalls) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        Preconditions.checkArgument(cutoff > 0, "Cutoff must be positive");
+        Preconditions.checkArgument(maxSolverCalls > 0, "Maximum number of solver calls must be positive");
+        this.cacher = cacher;
+        this.solver = solver;
+        this.cutoff = cutoff;
+        this.maxSolverCalls = maxSolverCalls;
+        shrinker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity), new SequentiallyNamedThreadFactory("UNSAT Core Shrinker", true));
+    }
+
+    @Override
+    public void cacheResult(CacheCoordinate cacheCoordinate, StationPackingInstance instance, SolverResult result) {
+        cacher.cacheResult(cacheCoordinate, instance, result);
+        if (result.getResult().equals(SATResult.UNSAT) && instance.getStations().size() > 1 && !closed) {
+            submit(cacheCoordinate, instance);
+        }
+    }
+
+    private void submit(CacheCoordinate cacheCoordinate, StationPackingInstance instance) {
+        final String hash = instance.getCanonicalHash().toString();
+        synchronized (queued) {
+            if (!queued.add(hash)) {
+                return;
+            }
+        }
+        try {
+            shrinker.execute(() -> {
+                synchronized (queued) {
+                    queued.remove(hash);
+                }
+                try {
+                    final StationPackingInstance core = shrink(instance);
+                    if (core.getStations().size() < instance.getStations().size() && !closed) {
+                        log.debug("Caching an UNSAT core of {} out of {} stations", core.getStations().size(), instance.getStations().size());
+                        cacher.cacheResult(cacheCoordinate, core, new SolverResult(SATResult.UNSAT, 0.0));
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Could not shrink an UNSAT problem", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("UNSAT core shrinking queue is full");
+            synchronized (queued) {
+                queued.remove(hash);
+            }
+        }
+    }
+
+    /**
+     * @return an UNSAT problem made of a subset of the stations of the given UNSAT problem (with the same domains), the problem itself if no station could be removed.
+     */
+    public StationPackingInstance shrink(StationPackingInstance instance) {
+        final Map<Station, Set<Integer>> domains = instance.getDomains();
+        List<Station> core = new ArrayList<>(domains.keySet());
+        int calls = 0;
+        int chunkSize = core.size() / 2;
+        while (chunkSize >= 1 && calls < maxSolverCalls && !closed) {
+            int start = 0;
+            while (start < core.size() && calls < maxSolverCalls && !closed) {
+                final int end = Math.min(start + chunkSize, core.size());
+                final List<Station> candidate = new ArrayList<>(core.subList(0, start));
+                candidate.addAll(core.subList(end, core.size()));
+                if (candidate.isEmpty()) {
+                    start = end;
+                    continue;
+                }
+                final SolverResult result = solver.solve(subproblem(instance, candidate), new WalltimeTerminationCriterion(cutoff), SEED);
+                calls++;
+                if (result.getResult().equals(SATResult.UNSAT)) {
+                    // the chunk is not needed, the next one now starts where it was
+                    core = candidate;
+                } else {
+                    start = end;
+                }
+            }
+            chunkSize /= 2;
+        }
+        log.debug("Shrunk an UNSAT problem from {} to {} stations with {} solver calls", domains.size(), core.size(), calls);
+        return core.size() < domains.size() ? subproblem(instance, core) : instance;
+    }
+
+    private static StationPackingInstance subproblem(StationPackingInstance instance, List<Station> stations) {
+        final Map<Station, Set<Integer>> domains = Maps.newLinkedHashMap();
+        stations.forEach(station -> domains.put(station, instance.getDomains().get(station)));
+        return new StationPackingInstance(domains, ImmutableMap.of(), instance.getMetadata());
+    }
+
+    /**
+     * Stops shrinking: problems still waiting are dropped, and the problem being shrunk is abandoned after its current solver call.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        // interrupts the solver call in progress
+        shrinker.shutdownNow();
+        try {
+            if (!shrinker.awaitTermination((long) Math.ceil(cutoff) + 1, TimeUnit.SECONDS)) {
+                log.warn("UNSAT core shrinker did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        solver.notifyShutdown();
+    }
+
+}
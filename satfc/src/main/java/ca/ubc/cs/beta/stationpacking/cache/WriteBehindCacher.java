@@ -0,0 +1,222 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheRequest;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
+import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Sends results to the cache server from a background thread, so that solving never waits on the network.
+ * Results are queued (a result whose redis key is already queued is dropped as a duplicate) and sent in batches.
+ * When the queue is full, or the server cannot be reached, results are appended to a spill file if there is one (and sent the next time a write-behind cacher is created with that file), or dropped otherwise.
+ * Several cachers of the same process may share a spill file. Lines of the spill file that cannot be read (say, the last one, cut short by a crash) are skipped.
+ */
+@Slf4j
+public class WriteBehindCacher implements ICacher, AutoCloseable {
+
+    // maximum number of results sent in one request
+    private static final int BATCH_SIZE = 100;
+
+    private final CacherProxy proxy;
+    private final int capacity;
+    // null if overflowing results should be dropped
+    private final File spillFile;
+    // shared by every cacher of the process that spills to the same file
+    private final Object spillLock;
+
+    // queued requests, by redis key, in insertion order
+    private final LinkedHashMap<String, ContainmentCacheCacheRequest> pending = new LinkedHashMap<>();
+    private boolean closed = false;
+    private final AtomicLong dropped = new AtomicLong();
+    private final ExecutorService writer;
+
+    /**
+     * @param capacity maximum number of results waiting to be sent
+     * @param spillFile where results go when they cannot be queued or sent, null to drop them instead
+     */
+    public WriteBehindCacher(CacherProxy proxy, int capacity, File spillFile) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        this.proxy = proxy;
+        this.capacity = capacity;
+        this.spillFile = spillFile;
+        spillLock = spillFile != null ? CacheUtils.getFileLock(spillFile) : new Object();
+        writer = Executors.newSingleThreadExecutor(new SequentiallyNamedThreadFactory("Cache Write-Behind", true));
+        writer.execute(() -> {
+            try {
+                replaySpillFile();
+            } catch (RuntimeException e) {
+                log.error("Could not send the results spilled to " + spillFile, e);
+            }
+            writeLoop();
+        });
+    }
+
+    @Override
+    public void cacheResult(CacheCoordinate cacheCoordinate, StationPackingInstance instance, SolverResult result) {
+        final String key = cacheCoordinate.toKey(result.getResult(), instance);
+        final ContainmentCacheCacheRequest request = new ContainmentCacheCacheRequest(instance, cacheCoordinate, result);
+        synchronized (pending) {
+            Preconditions.checkState(!closed, "Cannot cache results after the cacher was closed");
+            if (pending.containsKey(key)) {
+                log.debug("Result for {} is already waiting to be cached", key);
+                return;
+            }
+            if (pending.size() < capacity) {
+                pending.put(key, request);
+                pending.notifyAll();
+                return;
+            }
+        }
+        log.debug("Cache write-behind queue is full");
+        overflow(Lists.newArrayList(request));
+    }
+
+    private void writeLoop() {
+        while (true) {
+            final List<ContainmentCacheCacheRequest> batch = new ArrayList<>();
+            synchronized (pending) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    // closed, and everything was sent
+                    return;
+                }
+                final Iterator<Map.Entry<String, ContainmentCacheCacheRequest>> iterator = pending.entrySet().iterator();
+                while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
+                    batch.add(iterator.next().getValue());
+                    iterator.remove();
+                }
+            }
+            try {
+                send(batch);
+            } catch (RuntimeException e) {
+                // keep the thread alive for the next batches
+                log.error("Could not cache " + batch.size() + " results", e);
+            }
+        }
+    }
+
+    private void send(List<ContainmentCacheCacheRequest> batch) {
+        try {
+            proxy.cacheResults(batch);
+        } catch (RuntimeException e) {
+            log.warn("Could not send " + batch.size() + " results to the cache server", e);
+            overflow(batch);
+        }
+    }
+
+    // results that could not be queued or sent
+    private void overflow(List<ContainmentCacheCacheRequest> requests) {
+        if (spillFile != null) {
+            synchronized (spillLock) {
+                try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile, true), StandardCharsets.UTF_8))) {
+                    for (ContainmentCacheCacheRequest request : requests) {
+                        out.write(JSONUtils.toString(request));
+                        out.write(System.lineSeparator());
+                    }
+                    return;
+                } catch (IOException e) {
+                    log.error("Could not spill results to " + spillFile, e);
+                }
+            }
+        }
+        final long total = dropped.addAndGet(requests.size());
+        log.warn("Dropped {} results that could not be cached ({} so far)", requests.size(), total);
+    }
+
+    // send the results spilled by a previous cacher
+    private void replaySpillFile() {
+        if (spillFile == null || !spillFile.exists()) {
+            return;
+        }
+        final List<ContainmentCacheCacheRequest> requests = new ArrayList<>();
+        synchronized (spillLock) {
+            try {
+                for (String line : Files.readAllLines(spillFile.toPath(), StandardCharsets.UTF_8)) {
+                    if (!line.isEmpty()) {
+                        try {
+                            requests.add(JSONUtils.toObject(line, ContainmentCacheCacheRequest.class));
+                        } catch (RuntimeException e) {
+                            log.warn("Skipping a spilled result of {} that cannot be read: {}", spillFile, e.getMessage());
+                        }
+                    }
+                }
+                Files.delete(spillFile.toPath());
+            } catch (IOException e) {
+                log.error("Could not read spilled results from " + spillFile, e);
+                return;
+            }
+        }
+        log.info("Sending {} results spilled to {}", requests.size(), spillFile);
+        Lists.partition(requests, BATCH_SIZE).forEach(this::send);
+    }
+
+    /**
+     * Send everything that is still queued, then stop the background thread
+     */
+    @Override
+    public void close() {
+        synchronized (pending) {
+            closed = true;
+            pending.notifyAll();
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -7,45 +7,162 @@ import java.util.Set;
 
 import lombok.Data;
 import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils.IndexedStations;
 
 import com.google.common.collect.HashMultimap;
-import com.google.common.collect.ImmutableMap;
 
 /**
 * Created by newmanne on 25/03/15.
 */
 @Data
-public class ContainmentCacheSATEntry {
+public class ContainmentCacheSATEntry implements IContainmentCacheEntry {
+    // channels[i] is the channel of the i-th station (in increasing order of number) of the bitset
     byte[] channels;
+    // the numbers of the stations in stationIndex
     BitSet bitSet;
+    // the bitset as words, for allocation free containment checks
+    long[] words;
     String key;
+    StationIndex stationIndex;
 
     // fake constructor
     public ContainmentCacheSATEntry(BitSet bitSet) {
         this.bitSet = bitSet;
+        this.words = bitSet.toLongArray();
+        this.stationIndex = StationIndex.IDENTITY;
     }
 
     public ContainmentCacheSATEntry(Map<Integer, Set<Station>> answer, String key) {
-        this.bitSet = CacheUtils.toBitSet(answer);
+        this(answer, key, StationIndex.IDENTITY);
+    }
+
+    /**
+     * @param stationIndex numbers the stations, the stations of the answer that it does not have yet are added to it
+     */
+    public ContainmentCacheSATEntry(Map<Integer, Set<Station>> answer, String key, StationIndex stationIndex) {
+        this.stationIndex = stationIndex;
+        this.bitSet = CacheUtils.toBitSet(answer, stationIndex);
+        this.words = bitSet.toLongArray();
         final Map<Station, Integer> stationToChannel = CacheUtils.stationToChannelFromChannelToStation(answer);
         this.key = key;
         final int numStations = this.bitSet.cardinality();
         channels = new byte[numStations];
         int j = 0;
-        for (int stationId = bitSet.nextSetBit(0); stationId >= 0; stationId = bitSet.nextSetBit(stationId+1)) {
-            channels[j] = stationToChannel.get(new Station(stationId)).byteValue();
+        for (int number = bitSet.nextSetBit(0); number >= 0; number = bitSet.nextSetBit(number + 1)) {
+            channels[j] = stationToChannel.get(stationIndex.getStation(number)).byteValue();
             j++;
         }
     }
 
+    /**
+     * @param words the stations (their numbers in stationIndex), as words
+     * @param channels channels[i] is the channel of the i-th station (in increasing order of number)
+     */
+    public ContainmentCacheSATEntry(long[] words, byte[] channels, String key, StationIndex stationIndex) {
+        this.bitSet = BitSet.valueOf(words);
+        this.words = words;
+        this.channels = channels;
+        this.key = key;
+        this.stationIndex = stationIndex;
+    }
+
+    /**
+     * @return this entry with its stations numbered by another station index (which gets the stations it does not have yet)
+     */
+    public ContainmentCacheSATEntry withStationIndex(StationIndex otherIndex) {
+        if (otherIndex == stationIndex) {
+            return this;
+        }
+        final int[] numbers = bitSet.stream().map(number -> otherIndex.index(stationIndex.getStation(number))).toArray();
+        final int[] order = CacheUtils.sortedOrder(numbers);
+        final BitSet otherBitSet = new BitSet();
+        final byte[] otherChannels = new byte[channels.length];
+        for (int i = 0; i < order.length; i++) {
+            otherBitSet.set(numbers[order[i]]);
+            otherChannels[i] = channels[order[i]];
+        }
+        return new ContainmentCacheSATEntry(otherBitSet.toLongArray(), otherChannels, key, otherIndex);
+    }
+
     // aInstance is already known to be a subset of this entry
     public boolean isSolutionTo(StationPackingInstance aInstance) {
-        final ImmutableMap<Station, Set<Integer>> domains = aInstance.getDomains();
-        final Map<Integer, Integer> stationToChannel = getAssignment();
+        final IndexedStations query = CacheUtils.toIndexedStations(aInstance, stationIndex);
+        return query.getNumUnindexed() == 0 && isSolutionTo(query.getStations(), query.getDomainMasks());
+    }
 
-        return domains.entrySet().stream().allMatch(entry -> entry.getValue().contains(stationToChannel.get(entry.getKey().getID())));
+    /**
+     * Allocation free version of {@link #isSolutionTo(StationPackingInstance)}. The stations of the query are already known to be a subset of this entry
+     * @param stations the numbers (in this entry's station index) of the query's stations, in increasing order
+     * @param domainMasks domainMasks[i] is the channel mask (see {@link CacheUtils#toChannelMask}) of the domain of stations[i]
+     */
+    public boolean isSolutionTo(int[] stations, long[] domainMasks) {
+        // walk the words and the query stations together, so that the rank of each station (its index into channels) is a running popcount
+        int word = 0;
+        int rank = 0;
+        for (int i = 0; i < stations.length; i++) {
+            final int station = stations[i];
+            final int stationWord = station >>> 6;
+            while (word < stationWord) {
+                rank += Long.bitCount(words[word]);
+                word++;
+            }
+            final int channel = Byte.toUnsignedInt(channels[rank + Long.bitCount(words[stationWord] & ((1L << station) - 1))]);
+            if (channel >= Long.SIZE || (domainMasks[i] & (1L << channel)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Like {@link #isSolutionTo(int[], long[])}, for a query that this entry only partly covers
+     * @return how many stations of the query this entry has, on a channel of their domain
+     */
+    public int countSolved(int[] stations, long[] domainMasks) {
+        int solved = 0;
+        int word = 0;
+        int rank = 0;
+        for (int i = 0; i < stations.length; i++) {
+            final int station = stations[i];
+            final int stationWord = station >>> 6;
+            if (stationWord >= words.length) {
+                break;
+            }
+            while (word < stationWord) {
+                rank += Long.bitCount(words[word]);
+                word++;
+            }
+            if ((words[stationWord] & (1L << station)) == 0) {
+                continue;
+            }
+            final int channel = Byte.toUnsignedInt(channels[rank + Long.bitCount(words[stationWord] & ((1L << station) - 1))]);
+            if (channel < Long.SIZE && (domainMasks[i] & (1L << channel)) != 0) {
+                solved++;
+            }
+        }
+        return solved;
+    }
+
+    /**
+     * @return true if every station of this entry is in other, on the same channel. Any query this entry answers is then also answered by other
+     */
+    public boolean isDominatedBy(ContainmentCacheSATEntry other) {
+        if (!CacheUtils.isSubsetOrEqualTo(words, other.words)) {
+            return false;
+        }
+        final int[] stations = bitSet.stream().toArray();
+        final long[] channelMasks = new long[stations.length];
+        for (int i = 0; i < stations.length; i++) {
+            final int channel = Byte.toUnsignedInt(channels[i]);
+            if (channel >= Long.SIZE) {
+                return false;
+            }
+            channelMasks[i] = 1L << channel;
+        }
+        return other.isSolutionTo(stations, channelMasks);
     }
 
     @SuppressWarnings("unchecked")
@@ -62,8 +179,8 @@ public class ContainmentCacheSATEntry {
     public Map<Integer,Integer> getAssignment() {
         final Map<Integer, Integer> stationToChannel = new HashMap<>();
         int j = 0;
-        for (int stationId = bitSet.nextSetBit(0); stationId >= 0; stationId = bitSet.nextSetBit(stationId+1)) {
-            stationToChannel.put(stationId, Byte.toUnsignedInt(channels[j]));
+        for (int number = bitSet.nextSetBit(0); number >= 0; number = bitSet.nextSetBit(number + 1)) {
+            stationToChannel.put(stationIndex.getStation(number).getID(), Byte.toUnsignedInt(channels[j]));
             j++;
         }
         return stationToChannel;
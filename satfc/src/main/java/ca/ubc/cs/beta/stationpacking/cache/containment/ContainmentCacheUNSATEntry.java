@@ -6,27 +6,115 @@ import java.util.Set;
 
 import lombok.Data;
 import ca.ubc.cs.beta.stationpacking.base.Station;
-import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
 
 /**
 * Created by newmanne on 25/03/15.
+* The domains are stored as one channel mask per station (see {@link CacheUtils#toChannelMask}), parallel to the set bits of the bitset
 */
 @Data
-public class ContainmentCacheUNSATEntry {
+public class ContainmentCacheUNSATEntry implements IContainmentCacheEntry {
+    // the numbers of the stations in stationIndex
     final BitSet bitSet;
-    Map<Station, Set<Integer>> domains;
+    // the bitset as words, for allocation free containment checks
+    final long[] words;
+    // channelMasks[i] is the domain of the i-th station (in increasing order of number) of the bitset
+    final long[] channelMasks;
     String key;
+    final StationIndex stationIndex;
 
     // "fake" constructor used for comparator purposes only
     public ContainmentCacheUNSATEntry(BitSet bitSet) {
         this.bitSet = bitSet;
+        this.words = bitSet.toLongArray();
+        this.channelMasks = new long[0];
+        this.stationIndex = StationIndex.IDENTITY;
     }
 
     public ContainmentCacheUNSATEntry(final Map<Station, Set<Integer>> domains, final String key) {
+        this(domains, key, StationIndex.IDENTITY);
+    }
+
+    /**
+     * Channels that do not fit in a channel mask are left out of the domains: the entry then only covers queries whose domains are within the channels it kept, which are still UNSAT
+     * @param stationIndex numbers the stations, the stations of the domains that it does not have yet are added to it
+     */
+    public ContainmentCacheUNSATEntry(final Map<Station, Set<Integer>> domains, final String key, final StationIndex stationIndex) {
+        this.key = key;
+        this.stationIndex = stationIndex;
+        this.bitSet = new BitSet(domains.size());
+        domains.keySet().forEach(station -> bitSet.set(stationIndex.index(station)));
+        this.words = bitSet.toLongArray();
+        this.channelMasks = new long[bitSet.cardinality()];
+        int j = 0;
+        for (int number = bitSet.nextSetBit(0); number >= 0; number = bitSet.nextSetBit(number + 1)) {
+            channelMasks[j] = CacheUtils.toChannelMask(domains.get(stationIndex.getStation(number)));
+            j++;
+        }
+    }
+
+    /**
+     * @param words the stations (their numbers in stationIndex), as words
+     * @param channelMasks channelMasks[i] is the domain of the i-th station (in increasing order of number)
+     */
+    public ContainmentCacheUNSATEntry(long[] words, long[] channelMasks, String key, StationIndex stationIndex) {
+        this.bitSet = BitSet.valueOf(words);
+        this.words = words;
+        this.channelMasks = channelMasks;
         this.key = key;
-        this.domains = domains;
-        this.bitSet = new BitSet(StationPackingUtils.N_STATIONS);
-        domains.keySet().forEach(station -> bitSet.set(station.getID()));
+        this.stationIndex = stationIndex;
+    }
+
+    /**
+     * @return this entry with its stations numbered by another station index (which gets the stations it does not have yet)
+     */
+    public ContainmentCacheUNSATEntry withStationIndex(StationIndex otherIndex) {
+        if (otherIndex == stationIndex) {
+            return this;
+        }
+        final int[] numbers = bitSet.stream().map(number -> otherIndex.index(stationIndex.getStation(number))).toArray();
+        final int[] order = CacheUtils.sortedOrder(numbers);
+        final BitSet otherBitSet = new BitSet();
+        final long[] otherChannelMasks = new long[channelMasks.length];
+        for (int i = 0; i < order.length; i++) {
+            otherBitSet.set(numbers[order[i]]);
+            otherChannelMasks[i] = channelMasks[order[i]];
+        }
+        return new ContainmentCacheUNSATEntry(otherBitSet.toLongArray(), otherChannelMasks, key, otherIndex);
+    }
+
+    /**
+     * The stations of this entry are already known to be a subset of the query's.
+     * @param queryWords the query's stations, as words
+     * @param queryDomainMasks queryDomainMasks[i] is the channel mask of the domain of the i-th station (in increasing order of number) of the query
+     * @return true if the domain of every station of this entry is a superset of (or equal to) the domain of that station in the query
+     */
+    public boolean isSupersetOrEqualToByDomains(long[] queryWords, long[] queryDomainMasks) {
+        int j = 0;
+        int queryRank = 0;
+        for (int word = 0; word < words.length; word++) {
+            long bits = words[word];
+            while (bits != 0) {
+                final long lowestBit = bits & -bits;
+                // the index of this station among the query's stations
+                final int queryIndex = queryRank + Long.bitCount(queryWords[word] & (lowestBit - 1));
+                if ((queryDomainMasks[queryIndex] & ~channelMasks[j]) != 0) {
+                    return false;
+                }
+                bits ^= lowestBit;
+                j++;
+            }
+            queryRank += Long.bitCount(queryWords[word]);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if other has a subset of the stations of this entry, each with a domain at least as large. Any query this entry answers is then also answered by other
+     */
+    public boolean isDominatedBy(ContainmentCacheUNSATEntry other) {
+        return CacheUtils.isSubsetOrEqualTo(other.words, words) && other.isSupersetOrEqualToByDomains(words, channelMasks);
     }
 
 }
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment;
+
+/**
+ * The kinds of index a containment cache can use to answer subset and superset queries
+ */
+public enum ContainmentIndexType {
+
+    /**
+     * Entries are sorted according to several permutations of the stations, and the permutation that yields the smallest window of candidates after a binary search is scanned
+     * @see PermutationContainmentIndex
+     */
+    PERMUTATION,
+
+    /**
+     * Entries are stored in a trie over their sorted station IDs, which only visits branches that can still lead to a subset (or superset) of the query
+     * @see SetTrieContainmentIndex
+     */
+    SET_TRIE
+
+}
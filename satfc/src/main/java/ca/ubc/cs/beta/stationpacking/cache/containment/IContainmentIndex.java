@@ -0,0 +1,69 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment;
+
+import java.util.BitSet;
+import java.util.List;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * An index over containment cache entries that narrows down which entries can be subsets or supersets of a query.
+ * Implementations are not thread safe, callers are expected to synchronize adds against lookups,
+ * and to finish iterating through a lookup before releasing their lock.
+ */
+public interface IContainmentIndex<T extends IContainmentCacheEntry> {
+
+    void add(T entry);
+
+    /**
+     * Remove this very entry (compared by identity, not equality)
+     * @return true if the entry was in the index
+     */
+    boolean remove(T entry);
+
+    /**
+     * @return entries that may be supersets of (or equal to) the query. Callers must still check each entry
+     */
+    Iterable<T> getPotentialSupersets(BitSet bitSet);
+
+    /**
+     * @return entries that may be subsets of (or equal to) the query. Callers must still check each entry
+     */
+    Iterable<T> getPotentialSubsets(BitSet bitSet);
+
+    /**
+     * @return entries that are likely to share many stations with the query, most likely first, for lookups that can make do with a near miss. Callers are expected to stop after a bounded number of entries.
+     * By default, the potential supersets followed by every entry
+     */
+    default Iterable<T> getNearest(BitSet bitSet) {
+        return Iterables.concat(getPotentialSupersets(bitSet), getEntries());
+    }
+
+    int size();
+
+    /**
+     * @return a copy of every entry in the index
+     */
+    List<T> getEntries();
+
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment;
+
+import static ca.ubc.cs.beta.stationpacking.utils.GuavaCollectors.toImmutableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+/**
+ * Keeps one copy of the entries sorted according to each of a number of permutations of the stations.
+ * A bitset is read as an unsigned integer whose digits are ordered by the permutation, and a superset is always larger than (or equal to) its subsets under any such ordering.
+ */
+@Slf4j
+public class PermutationContainmentIndex<T extends IContainmentCacheEntry> implements IContainmentIndex<T> {
+
+    private final ImmutableList<PermutableBitSetComparator> comparators;
+    private final ImmutableList<List<T>> orderings;
+
+    /**
+     * @param permutations a list of permutations of the numbers {1... N_STATIONS}
+     */
+    public PermutationContainmentIndex(int[][] permutations, Collection<T> entries) {
+        comparators = Arrays.stream(permutations)
+                .map(PermutableBitSetComparator::new)
+                .collect(toImmutableList());
+        // Sort and store the data according to each comparator
+        final ImmutableList.Builder<List<T>> orderingsBuilder = ImmutableList.builder();
+        for (PermutableBitSetComparator comparator : comparators) {
+            final List<T> ordering = new ArrayList<>(entries);
+            ordering.sort(entryComparator(comparator));
+            orderingsBuilder.add(ordering);
+        }
+        orderings = orderingsBuilder.build();
+    }
+
+    /**
+     * Restore an index whose orderings were computed earlier (see {@link #getOrderings()}), without sorting again
+     * @param permutations the permutations the orderings were computed with
+     * @param entries the entries, in the order of the first permutation
+     * @param orderings orderings[p][i] is the index in entries of the i-th entry according to permutation p
+     */
+    public PermutationContainmentIndex(int[][] permutations, List<T> entries, int[][] orderings) {
+        Preconditions.checkArgument(permutations.length == orderings.length, "There should be one ordering per permutation");
+        comparators = Arrays.stream(permutations)
+                .map(PermutableBitSetComparator::new)
+                .collect(toImmutableList());
+        final ImmutableList.Builder<List<T>> orderingsBuilder = ImmutableList.builder();
+        for (int[] indices : orderings) {
+            Preconditions.checkArgument(indices.length == entries.size(), "Each ordering should contain every entry");
+            final List<T> ordering = new ArrayList<>(indices.length);
+            for (int index : indices) {
+                ordering.add(entries.get(index));
+            }
+            orderingsBuilder.add(ordering);
+        }
+        this.orderings = orderingsBuilder.build();
+    }
+
+    private Comparator<T> entryComparator(PermutableBitSetComparator comparator) {
+        return (o1, o2) -> comparator.compare(o1.getBitSet(), o2.getBitSet());
+    }
+
+    @Override
+    public void add(T entry) {
+        for (int i = 0; i < comparators.size(); i++) {
+            // binary search for the insertion point so that the list stays sorted (entries with equal station sets end up next to each other)
+            final List<T> ordering = orderings.get(i);
+            final int index = Collections.binarySearch(ordering, entry, entryComparator(comparators.get(i)));
+            ordering.add(index >= 0 ? index : -(index + 1), entry);
+        }
+    }
+
+    @Override
+    public boolean remove(T entry) {
+        boolean removed = false;
+        for (int i = 0; i < comparators.size(); i++) {
+            final List<T> ordering = orderings.get(i);
+            final Comparator<T> comparator = entryComparator(comparators.get(i));
+            final int index = Collections.binarySearch(ordering, entry, comparator);
+            if (index < 0) {
+                continue;
+            }
+            // entries with the same station set are next to each other, look for this very entry among them
+            int start = index;
+            while (start > 0 && comparator.compare(ordering.get(start - 1), entry) == 0) {
+                start--;
+            }
+            for (int j = start; j < ordering.size() && comparator.compare(ordering.get(j), entry) == 0; j++) {
+                if (ordering.get(j) == entry) {
+                    ordering.remove(j);
+                    removed = true;
+                    break;
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return orderings.isEmpty() ? 0 : orderings.get(0).size();
+    }
+
+    /**
+     * @return the permutations the entries are sorted with
+     */
+    public int[][] getPermutations() {
+        return comparators.stream().map(comparator -> comparator.permutation).toArray(int[][]::new);
+    }
+
+    /**
+     * @return the entries, in the order of the first permutation
+     */
+    @Override
+    public List<T> getEntries() {
+        return orderings.isEmpty() ? new ArrayList<>() : new ArrayList<>(orderings.get(0));
+    }
+
+    /**
+     * @return orderings[p][i] is the index in {@link #getEntries()} of the i-th entry according to permutation p
+     */
+    public int[][] getOrderings() {
+        final Map<T, Integer> indices = new IdentityHashMap<>();
+        final List<T> entries = getEntries();
+        for (int i = 0; i < entries.size(); i++) {
+            indices.put(entries.get(i), i);
+        }
+        return orderings.stream()
+                .map(ordering -> ordering.stream().mapToInt(indices::get).toArray())
+                .toArray(int[][]::new);
+    }
+
+    // binary search return value is positive if the item is found in the list (the index), and -(insertion point) - 1 otherwise
+    private List<Integer> binarySearch(BitSet aBitSet) {
+        return IntStream
+                .range(0, comparators.size())
+                .mapToObj(permutationIndex -> Collections.binarySearch(Lists.transform(orderings.get(permutationIndex), IContainmentCacheEntry::getBitSet), aBitSet, comparators.get(permutationIndex)))
+                .collect(toImmutableList());
+    }
+
+    // bounds[p] = {first, last + 1} of the entries equal to the query according to permutation p (first == last + 1 == insertion point if there are none)
+    private int[][] equalRanges(BitSet aBitSet) {
+        final List<Integer> binarySearchReturn = binarySearch(aBitSet);
+        final int[][] bounds = new int[comparators.size()][];
+        for (int p = 0; p < bounds.length; p++) {
+            final int index = binarySearchReturn.get(p);
+            if (index < 0) {
+                bounds[p] = new int[]{-(index + 1), -(index + 1)};
+            } else {
+                // several entries can have the same station set, the search lands on any of them
+                final List<T> ordering = orderings.get(p);
+                final PermutableBitSetComparator comparator = comparators.get(p);
+                int first = index;
+                while (first > 0 && comparator.compare(ordering.get(first - 1).getBitSet(), aBitSet) == 0) {
+                    first--;
+                }
+                int last = index;
+                while (last + 1 < ordering.size() && comparator.compare(ordering.get(last + 1).getBitSet(), aBitSet) == 0) {
+                    last++;
+                }
+                bounds[p] = new int[]{first, last + 1};
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Return a collection of entries that are potential supersets of the query
+     * In order for an entry be a superset of a the query, a necessary condition is that is larger (in unsigned integer representation) than the query
+     * We find the set of all entries larger than the query according to every permutation, and return the smallest such set so that we have the fewest entries to search further
+     * This initial filtering can be performed efficiently using binary search
+     * If we find exact matches, they are returned first
+     */
+    @Override
+    public Iterable<T> getPotentialSupersets(BitSet aBitSet) {
+        final int[][] bounds = equalRanges(aBitSet);
+        // If it's in one list, it will be in all the lists, so might as well just work with the first
+        final List<T> exactMatches = orderings.get(0).subList(bounds[0][0], bounds[0][1]);
+        if (!exactMatches.isEmpty()) {
+            log.debug("Found an exact match in the cache!");
+        }
+        int bestPermutation = 0;
+        for (int p = 1; p < bounds.length; p++) {
+            if (bounds[p][1] > bounds[bestPermutation][1]) {
+                bestPermutation = p;
+            }
+        }
+        final List<T> ordering = orderings.get(bestPermutation);
+        final List<T> potentialSupersets = ordering.subList(bounds[bestPermutation][1], ordering.size());
+        log.debug("Returning a list of " + (exactMatches.size() + potentialSupersets.size()) + " entries to search through");
+        // reverse the list so the bigger things are seen first as they are most likely to be supersets
+        return Iterables.concat(exactMatches, Lists.reverse(potentialSupersets));
+    }
+
+    /**
+     * Return a collection of entries that are potential subsets of the query
+     * In order for an entry be a subset of a the query, a necessary condition is that is smaller (in unsigned integer representation) than the query
+     * We find the set of all entries smaller than the query according to every permutation, and return the smallest such set so that we have the fewest entries to search further
+     * This initial filtering can be performed efficiently using binary search
+     * If we find exact matches, they are returned first
+     */
+    @Override
+    public Iterable<T> getPotentialSubsets(BitSet aBitSet) {
+        final int[][] bounds = equalRanges(aBitSet);
+        final List<T> exactMatches = orderings.get(0).subList(bounds[0][0], bounds[0][1]);
+        if (!exactMatches.isEmpty()) {
+            log.debug("Found an exact match in the cache!");
+        }
+        int bestPermutation = 0;
+        for (int p = 1; p < bounds.length; p++) {
+            if (bounds[p][0] < bounds[bestPermutation][0]) {
+                bestPermutation = p;
+            }
+        }
+        final List<T> potentialSubsets = orderings.get(bestPermutation).subList(0, bounds[bestPermutation][0]);
+        log.debug("Returning a list of " + (exactMatches.size() + potentialSubsets.size()) + " entries to search through");
+        return Iterables.concat(exactMatches, potentialSubsets);
+    }
+
+    /**
+     * Return the entries around the query in every ordering, walking away from it in both directions one permutation at a time.
+     * Entries next to the query in an ordering agree with it on the most significant stations of that permutation, so they tend to share most of its stations even when they are neither subsets nor supersets.
+     * An entry can be returned more than once (once per ordering it is close to the query in)
+     */
+    @Override
+    public Iterable<T> getNearest(BitSet aBitSet) {
+        final int[][] bounds = equalRanges(aBitSet);
+        return () -> new AbstractIterator<T>() {
+            // the next entry to return above (starting with the exact matches) and below the query, in each ordering
+            private final int[] above = Arrays.stream(bounds).mapToInt(bound -> bound[0]).toArray();
+            private final int[] below = Arrays.stream(bounds).mapToInt(bound -> bound[0] - 1).toArray();
+            private int permutation = 0;
+            private boolean upwards = true;
+
+            @Override
+            protected T computeNext() {
+                // every (ordering, direction) pair gets a turn, once they have all come up empty there is nothing left
+                for (int turn = 0; turn < 2 * orderings.size(); turn++) {
+                    final int p = permutation;
+                    final boolean up = upwards;
+                    if (upwards) {
+                        upwards = false;
+                    } else {
+                        upwards = true;
+                        permutation = (permutation + 1) % orderings.size();
+                    }
+                    final List<T> ordering = orderings.get(p);
+                    if (up && above[p] < ordering.size()) {
+                        return ordering.get(above[p]++);
+                    } else if (!up && below[p] >= 0) {
+                        return ordering.get(below[p]--);
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * A comparator that compares bitsets according to an ordering specified by permutation such that the least
+     * significant digit is the first number in the permutation)
+     */
+    private static class PermutableBitSetComparator implements Comparator<BitSet> {
+
+        final int[] permutation;
+
+        public PermutableBitSetComparator(int[] permutation) {
+            this.permutation = permutation;
+        }
+
+        @Override
+        public int compare(BitSet bs1, BitSet bs2) {
+            for (int i = permutation.length - 1; i >= 0; i--) {
+                int index = permutation[i];
+                boolean b1 = bs1.get(index);
+                boolean b2 = bs2.get(index);
+                if (b1 && !b2) {
+                    return 1;
+                } else if (!b1 && b2) {
+                    return -1;
+                }
+            }
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import lombok.Data;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Picks the permutations of a {@link PermutationContainmentIndex} from the entries it will hold, rather than using a fixed list.
+ * A permutation narrows down a lookup when its most significant stations split the entries evenly, so stations are ranked by the entropy of their presence in the entries (stations in about half of the entries first).
+ * Every permutation starts at a different point of that ranking, so that a query whose leading stations do not narrow down one permutation is likely to be narrowed down by another.
+ */
+public class PermutationSelector {
+
+    private PermutationSelector() {
+    }
+
+    /**
+     * @param stationSets the stations of the entries (or of a sample of them), numbered by {@link StationIndex#IDENTITY}
+     * @return numPermutations permutations of {1 ... N_STATIONS}, in the format of {@link PermutationContainmentIndex} (the last position is the most significant)
+     */
+    public static int[][] selectPermutations(List<BitSet> stationSets, int numPermutations) {
+        return selectPermutations(stationSets, numPermutations, StationIndex.IDENTITY.getNumbers());
+    }
+
+    /**
+     * @param stationSets the stations of the entries (or of a sample of them)
+     * @param numbers the station numbers to permute (see {@link StationIndex#getNumbers()}), stations with other numbers are left out
+     * @return numPermutations permutations of the numbers, in the format of {@link PermutationContainmentIndex} (the last position is the most significant)
+     */
+    public static int[][] selectPermutations(List<BitSet> stationSets, int numPermutations, int[] numbers) {
+        Preconditions.checkArgument(numPermutations > 0, "Need at least one permutation");
+        final int numStations = numbers.length;
+        final int maxNumber = Arrays.stream(numbers).max().orElse(-1);
+        final int[] counts = new int[maxNumber + 1];
+        for (BitSet stationSet : stationSets) {
+            for (int station = stationSet.nextSetBit(0); station >= 0 && station <= maxNumber; station = stationSet.nextSetBit(station + 1)) {
+                counts[station]++;
+            }
+        }
+        final int numEntries = stationSets.size();
+        // most informative first, ties go to the most frequent station
+        final List<Integer> ranking = Arrays.stream(numbers)
+                .filter(station -> counts[station] > 0)
+                .boxed()
+                .sorted(Comparator.<Integer>comparingDouble(station -> -entropy(counts[station], numEntries))
+                        .thenComparingInt(station -> -counts[station])
+                        .thenComparingInt(station -> station))
+                .collect(Collectors.toList());
+        // stations that never appear cannot tell entries apart, they go in the least significant positions
+        final int[] unseen = Arrays.stream(numbers).filter(station -> counts[station] == 0).toArray();
+        final int stride = Math.max(1, ranking.size() / numPermutations);
+
+        final int[][] permutations = new int[numPermutations][numStations];
+        for (int p = 0; p < numPermutations; p++) {
+            // from most to least significant
+            final int[] order = new int[numStations];
+            int i = 0;
+            for (int j = 0; j < ranking.size(); j++) {
+                order[i++] = ranking.get((j + p * stride) % ranking.size());
+            }
+            for (int station : unseen) {
+                order[i++] = station;
+            }
+            for (int j = 0; j < numStations; j++) {
+                permutations[p][j] = order[numStations - 1 - j];
+            }
+        }
+        return permutations;
+    }
+
+    private static double entropy(int count, int total) {
+        final double p = (double) count / total;
+        return p <= 0 || p >= 1 ? 0 : -(p * Math.log(p) + (1 - p) * Math.log(1 - p));
+    }
+
+    @Data
+    public static class CandidateWindows {
+        // the average number of entries a superset (SAT) or subset (UNSAT) lookup has to check, using the best permutation for each query
+        private final double meanSupersetWindow;
+        private final double meanSubsetWindow;
+        private final int numEntries;
+    }
+
+    /**
+     * Estimate how well the permutations narrow down lookups, by counting the entries each query would have to check
+     * @param entries the stations of the entries in the index
+     * @param queries the stations of typical queries (e.g. a sample of the entries themselves)
+     */
+    public static CandidateWindows estimateCandidateWindows(int[][] permutations, List<BitSet> entries, List<BitSet> queries) {
+        final long[] supersetWindows = new long[queries.size()];
+        final long[] subsetWindows = new long[queries.size()];
+        Arrays.fill(supersetWindows, Long.MAX_VALUE);
+        Arrays.fill(subsetWindows, Long.MAX_VALUE);
+        for (int[] permutation : permutations) {
+            // rank[station] is the position of the station in the permutation, so that comparing permuted words compares like the index does
+            final int[] rank = new int[Arrays.stream(permutation).max().orElse(-1) + 1];
+            Arrays.fill(rank, -1);
+            for (int position = 0; position < permutation.length; position++) {
+                rank[permutation[position]] = position;
+            }
+            final long[][] sorted = entries.stream().map(entry -> permute(entry, rank, permutation.length)).sorted(PermutationSelector::compare).toArray(long[][]::new);
+            for (int q = 0; q < queries.size(); q++) {
+                final long[] query = permute(queries.get(q), rank, permutation.length);
+                // entries that compare larger than or equal to the query (superset candidates), and smaller than or equal to it (subset candidates)
+                supersetWindows[q] = Math.min(supersetWindows[q], sorted.length - bound(sorted, query, false));
+                subsetWindows[q] = Math.min(subsetWindows[q], bound(sorted, query, true));
+            }
+        }
+        return new CandidateWindows(mean(supersetWindows), mean(subsetWindows), entries.size());
+    }
+
+    private static long[] permute(BitSet stationSet, int[] rank, int length) {
+        final long[] words = new long[(length + Long.SIZE - 1) / Long.SIZE];
+        for (int station = stationSet.nextSetBit(0); station >= 0 && station < rank.length; station = stationSet.nextSetBit(station + 1)) {
+            if (rank[station] >= 0) {
+                words[rank[station] / Long.SIZE] |= 1L << rank[station];
+            }
+        }
+        return words;
+    }
+
+    // the highest permuted position is the most significant
+    private static int compare(long[] a, long[] b) {
+        for (int i = a.length - 1; i >= 0; i--) {
+            final int comparison = Long.compareUnsigned(a[i], b[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    // the index of the first element larger than (if inclusive) or larger than or equal to the key
+    private static int bound(long[][] sorted, long[] key, boolean inclusive) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int comparison = compare(sorted[mid], key);
+            if (comparison < 0 || (inclusive && comparison == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return at most size elements of list, evenly spread over it
+     */
+    public static <T> List<T> sample(List<T> list, int size) {
+        if (list.size() <= size) {
+            return list;
+        }
+        final double step = (double) list.size() / size;
+        return IntStream.range(0, size).mapToObj(i -> list.get((int) (i * step))).collect(Collectors.toList());
+    }
+
+    private static double mean(long[] values) {
+        return values.length == 0 ? 0 : Arrays.stream(values).average().getAsDouble();
+    }
+
+}
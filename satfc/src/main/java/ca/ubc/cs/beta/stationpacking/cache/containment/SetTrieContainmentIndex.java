@@ -0,0 +1,248 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A set-trie over the sorted station IDs of the entries.
+ * Each entry is stored at the node reached by following its station IDs in increasing order,
+ * so a lookup only explores the branches that can still lead to a subset (or superset) of the query, instead of scanning a window of candidates.
+ * Every entry returned by a lookup is a true subset (or superset) of the query.
+ */
+public class SetTrieContainmentIndex<T extends IContainmentCacheEntry> implements IContainmentIndex<T> {
+
+    private final Node<T> root = new Node<>();
+    private int size = 0;
+
+    public SetTrieContainmentIndex(Collection<T> entries) {
+        entries.forEach(this::add);
+    }
+
+    @Override
+    public void add(T entry) {
+        final BitSet bitSet = entry.getBitSet();
+        Node<T> node = root;
+        for (int station = bitSet.nextSetBit(0); station >= 0; station = bitSet.nextSetBit(station + 1)) {
+            node = node.getOrCreateChild(station);
+        }
+        if (node.entries == null) {
+            node.entries = new ArrayList<>(1);
+        }
+        node.entries.add(entry);
+        size++;
+    }
+
+    @Override
+    public boolean remove(T entry) {
+        final BitSet bitSet = entry.getBitSet();
+        // the path to the entry's node, so that branches left empty can be pruned
+        final Deque<Node<T>> path = new ArrayDeque<>();
+        Node<T> node = root;
+        for (int station = bitSet.nextSetBit(0); station >= 0; station = bitSet.nextSetBit(station + 1)) {
+            path.push(node);
+            node = node.getChild(station);
+            if (node == null) {
+                return false;
+            }
+        }
+        if (node.entries == null || !node.entries.removeIf(e -> e == entry)) {
+            return false;
+        }
+        size--;
+        if (node.entries.isEmpty()) {
+            node.entries = null;
+        }
+        for (int station = bitSet.previousSetBit(bitSet.length() - 1); station >= 0 && node.isEmpty(); station = bitSet.previousSetBit(station - 1)) {
+            final Node<T> parent = path.pop();
+            parent.removeChild(station);
+            node = parent;
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public List<T> getEntries() {
+        // every entry is a superset of the empty set
+        return Lists.newArrayList(getPotentialSupersets(new BitSet()));
+    }
+
+    @Override
+    public Iterable<T> getPotentialSupersets(BitSet bitSet) {
+        final int[] query = bitSet.stream().toArray();
+        return () -> new TrieIterator<T>(root) {
+            @Override
+            protected boolean expand(Node<T> node, int depth) {
+                if (depth == query.length) {
+                    // every station of the query was found along the path, so the whole subtree consists of supersets
+                    for (Node<T> child : node.children) {
+                        push(child, depth);
+                    }
+                    return true;
+                }
+                final int next = query[depth];
+                // children are sorted, and a child with a larger ID than the next query station can never lead to it
+                for (int i = 0; i < node.keys.length && node.keys[i] <= next; i++) {
+                    push(node.children[i], node.keys[i] == next ? depth + 1 : depth);
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Iterable<T> getPotentialSubsets(BitSet bitSet) {
+        return () -> new TrieIterator<T>(root) {
+            @Override
+            protected boolean expand(Node<T> node, int depth) {
+                // only follow stations that are part of the query
+                for (int i = 0; i < node.keys.length; i++) {
+                    if (bitSet.get(node.keys[i])) {
+                        push(node.children[i], depth);
+                    }
+                }
+                // every node reachable this way is a subset of the query
+                return true;
+            }
+        };
+    }
+
+    private static class Node<T> {
+
+        private static final int[] NO_KEYS = new int[0];
+
+        // sorted station IDs of the children, and the corresponding children
+        int[] keys = NO_KEYS;
+        Node<T>[] children = noChildren();
+        // entries whose station set ends at this node (null if there are none)
+        List<T> entries;
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] noChildren() {
+            return (Node<T>[]) new Node<?>[0];
+        }
+
+        Node<T> getChild(int station) {
+            final int index = Arrays.binarySearch(keys, station);
+            return index >= 0 ? children[index] : null;
+        }
+
+        boolean isEmpty() {
+            return entries == null && keys.length == 0;
+        }
+
+        void removeChild(int station) {
+            final int index = Arrays.binarySearch(keys, station);
+            if (index >= 0) {
+                final int[] newKeys = new int[keys.length - 1];
+                System.arraycopy(keys, 0, newKeys, 0, index);
+                System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+                final Node<T>[] newChildren = Arrays.copyOf(children, children.length - 1);
+                System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+                keys = newKeys;
+                children = newChildren;
+            }
+        }
+
+        Node<T> getOrCreateChild(int station) {
+            final int index = Arrays.binarySearch(keys, station);
+            if (index >= 0) {
+                return children[index];
+            }
+            final int insertionPoint = -(index + 1);
+            final Node<T> child = new Node<>();
+            final int[] newKeys = new int[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertionPoint);
+            System.arraycopy(keys, insertionPoint, newKeys, insertionPoint + 1, keys.length - insertionPoint);
+            newKeys[insertionPoint] = station;
+            final Node<T>[] newChildren = Arrays.copyOf(children, children.length + 1);
+            System.arraycopy(children, insertionPoint, newChildren, insertionPoint + 1, children.length - insertionPoint);
+            newChildren[insertionPoint] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+
+    /**
+     * Lazily walks the trie depth first, so that callers that stop at the first match don't pay for the whole search
+     */
+    private static abstract class TrieIterator<T> implements Iterator<T> {
+
+        private final Deque<Node<T>> nodes = new ArrayDeque<>();
+        // how many query stations have been matched on the path to the corresponding node
+        private final Deque<Integer> depths = new ArrayDeque<>();
+        private Iterator<T> current = Collections.emptyIterator();
+
+        TrieIterator(Node<T> root) {
+            push(root, 0);
+        }
+
+        protected void push(Node<T> node, int depth) {
+            nodes.push(node);
+            depths.push(depth);
+        }
+
+        /**
+         * Push the children of node that need to be visited
+         * @return true if the entries stored at node are matches
+         */
+        protected abstract boolean expand(Node<T> node, int depth);
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && !nodes.isEmpty()) {
+                final Node<T> node = nodes.pop();
+                final int depth = depths.pop();
+                if (expand(node, depth) && node.entries != null) {
+                    current = node.entries.iterator();
+                }
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+
+}
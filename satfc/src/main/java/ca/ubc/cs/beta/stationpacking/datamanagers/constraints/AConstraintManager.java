@@ -33,6 +33,8 @@ import lombok.extern.slf4j.Slf4j;
 import ca.ubc.cs.beta.stationpacking.base.Station;
 import ca.ubc.cs.beta.stationpacking.datamanagers.stations.IStationManager;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.hash.Funnel;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
@@ -52,10 +54,13 @@ public abstract class AConstraintManager implements IConstraintManager {
      */
     protected final Map<Station, Map<Integer, Set<Station>>> fADJp1Constraints;
     protected String fHash;
+    // built from the constraints once they are all read, the first time it is asked for
+    private final Supplier<InterferenceAdjacency> fInterferenceAdjacency;
 
     protected AConstraintManager(IStationManager aStationManager, String aInterferenceConstraintsFilename) throws FileNotFoundException {
         fCOConstraints = new HashMap<>();
         fADJp1Constraints = new HashMap<>();
+        fInterferenceAdjacency = Suppliers.memoize(() -> new InterferenceAdjacency(fCOConstraints, fADJp1Constraints));
     }
 
     protected enum ConstraintKey {
@@ -102,6 +107,11 @@ public abstract class AConstraintManager implements IConstraintManager {
         return Collections.unmodifiableSet(interferingStations);
     }
 
+    @Override
+    public InterferenceAdjacency getInterferenceAdjacency() {
+        return fInterferenceAdjacency.get();
+    }
+
     @Override
     public boolean isSatisfyingAssignment(Map<Integer, Set<Station>> aAssignment) {
 
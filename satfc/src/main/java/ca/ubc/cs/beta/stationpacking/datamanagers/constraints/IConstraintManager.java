@@ -60,5 +60,10 @@ public interface IConstraintManager {
 	 */
 	boolean isSatisfyingAssignment(Map<Integer,Set<Station>> aAssignment);
 	
+	/**
+	 * @return the constraints, precomputed as arrays of interfering station numbers for each station and channel (built once, on first use).
+	 */
+	InterferenceAdjacency getInterferenceAdjacency();
+	
     String getHashCode();
 }
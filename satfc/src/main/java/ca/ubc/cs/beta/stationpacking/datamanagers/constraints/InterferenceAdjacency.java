@@ -0,0 +1,201 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.datamanagers.constraints;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+
+/**
+ * The interference constraints of a constraint manager, laid out for encoding instances quickly: the constrained stations are numbered densely,
+ * and the stations interfering with a station on a channel are a sorted array of station numbers.
+ * The constraints that matter to an instance are found by filtering these arrays with the instance's {@link InstanceMask}, rather than by looking every interfering station up in the instance.
+ * Immutable, so it can be shared by threads.
+ */
+public class InterferenceAdjacency {
+
+    private static final int[] NONE = new int[0];
+
+    private final StationIndex stationIndex;
+    // the channels of the constraints are minChannel ... minChannel + numChannels - 1
+    private final int minChannel;
+    private final int numChannels;
+    // co[s][c - minChannel] holds the numbers of the stations that cannot be on channel c when station s is, null rows for stations without such constraints
+    private final int[][][] co;
+    // adjPlus[s][c - minChannel] holds the numbers of the stations that cannot be on channel c + 1 when station s is on channel c
+    private final int[][][] adjPlus;
+
+    /**
+     * @param coConstraints map taking a station to a map taking a channel to the stations that cannot be on that channel concurrently with it
+     * @param adjPlusConstraints map taking a station to a map taking a channel to the stations that cannot be on channel + 1 concurrently with it
+     */
+    public InterferenceAdjacency(Map<Station, Map<Integer, Set<Station>>> coConstraints, Map<Station, Map<Integer, Set<Station>>> adjPlusConstraints) {
+        final Set<Station> stations = new HashSet<>();
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (Map<Station, Map<Integer, Set<Station>>> constraints : Arrays.asList(coConstraints, adjPlusConstraints)) {
+            for (Map.Entry<Station, Map<Integer, Set<Station>>> entry : constraints.entrySet()) {
+                stations.add(entry.getKey());
+                for (Map.Entry<Integer, Set<Station>> channelEntry : entry.getValue().entrySet()) {
+                    stations.addAll(channelEntry.getValue());
+                    min = Math.min(min, channelEntry.getKey());
+                    // an ADJ+1 constraint involves the channel above
+                    max = Math.max(max, constraints == adjPlusConstraints ? channelEntry.getKey() + 1 : channelEntry.getKey());
+                }
+            }
+        }
+        stationIndex = new StationIndex(stations);
+        minChannel = min <= max ? min : 0;
+        numChannels = min <= max ? max - min + 1 : 0;
+        co = build(coConstraints);
+        adjPlus = build(adjPlusConstraints);
+    }
+
+    private int[][][] build(Map<Station, Map<Integer, Set<Station>>> constraints) {
+        final int[][][] adjacency = new int[stationIndex.getStationIDs().length][][];
+        constraints.forEach((station, channelConstraints) -> {
+            final int[][] row = new int[numChannels][];
+            Arrays.fill(row, NONE);
+            channelConstraints.forEach((channel, interferers) -> row[channel - minChannel] = interferers.stream().mapToInt(stationIndex::indexOf).sorted().toArray());
+            adjacency[stationIndex.indexOf(station)] = row;
+        });
+        return adjacency;
+    }
+
+    /**
+     * @return the numbering of the stations used by the adjacency
+     */
+    public StationIndex getStationIndex() {
+        return stationIndex;
+    }
+
+    /**
+     * @param station the number of a station, -1 if it has no number (then it has no constraint)
+     * @return the numbers of the stations that cannot be on the channel concurrently with the station, in increasing order. Not to be modified
+     */
+    public int[] getCOInterferers(int station, int channel) {
+        return interferers(co, station, channel);
+    }
+
+    /**
+     * @param station the number of a station, -1 if it has no number (then it has no constraint)
+     * @return the numbers of the stations that cannot be on channel + 1 while the station is on the channel, in increasing order. Not to be modified
+     */
+    public int[] getADJplusInterferers(int station, int channel) {
+        return interferers(adjPlus, station, channel);
+    }
+
+    private int[] interferers(int[][][] adjacency, int station, int channel) {
+        if (station < 0 || station >= adjacency.length || adjacency[station] == null || channel < minChannel || channel >= minChannel + numChannels) {
+            return NONE;
+        }
+        return adjacency[station][channel - minChannel];
+    }
+
+    /**
+     * @return the stations of the instance and their domains, in terms of the adjacency's station numbers and channels
+     */
+    public InstanceMask mask(StationPackingInstance instance) {
+        return new InstanceMask(instance);
+    }
+
+    /**
+     * The stations of an instance as a bitset of station numbers, and the domain of each as a bitmask of channels.
+     * Sized to the instance: the masks are stored by the rank of the station in the bitset, rather than by its number, so a small instance only pays for its own stations.
+     */
+    public class InstanceMask {
+
+        // the bitset of the numbers of the instance's stations
+        private final long[] stationWords;
+        // ranks[w] is how many stations of the instance have a number below 64 * w
+        private final int[] ranks;
+        // the 64 bit words of the channel mask of each station
+        private final int words = Math.max(1, (numChannels + 63) / 64);
+        // the bit channel - minChannel of the mask of the station of rank r is in channels[r * words + (channel - minChannel) / 64]
+        private final long[] channels;
+
+        private InstanceMask(StationPackingInstance instance) {
+            final Map<Station, Set<Integer>> domains = instance.getDomains();
+            // a station without constraints never interferes, and is left out
+            final int[] numbers = new int[domains.size()];
+            int n = 0;
+            int maxNumber = -1;
+            for (Station station : domains.keySet()) {
+                final int number = stationIndex.indexOf(station);
+                numbers[n++] = number;
+                maxNumber = Math.max(maxNumber, number);
+            }
+            stationWords = new long[maxNumber / 64 + 1];
+            int numStations = 0;
+            for (int number : numbers) {
+                if (number >= 0) {
+                    stationWords[number >>> 6] |= 1L << number;
+                    numStations++;
+                }
+            }
+            ranks = new int[stationWords.length];
+            for (int w = 1; w < stationWords.length; w++) {
+                ranks[w] = ranks[w - 1] + Long.bitCount(stationWords[w - 1]);
+            }
+            channels = new long[numStations * words];
+            int i = 0;
+            for (Set<Integer> domain : domains.values()) {
+                final int number = numbers[i++];
+                if (number >= 0) {
+                    final int offset = rank(number) * words;
+                    for (int channel : domain) {
+                        if (channel >= minChannel && channel < minChannel + numChannels) {
+                            final int bit = channel - minChannel;
+                            channels[offset + bit / 64] |= 1L << (bit % 64);
+                        }
+                    }
+                }
+            }
+        }
+
+        // the number of stations of the instance with a smaller number than the station
+        private int rank(int station) {
+            final int word = station >>> 6;
+            return ranks[word] + Long.bitCount(stationWords[word] & ((1L << station) - 1));
+        }
+
+        /**
+         * @param station the number of a station
+         * @return true if the station is in the instance, and the channel is in its domain
+         */
+        public boolean contains(int station, int channel) {
+            final int word = station >>> 6;
+            if (word >= stationWords.length || (stationWords[word] & (1L << station)) == 0 || channel < minChannel || channel >= minChannel + numChannels) {
+                return false;
+            }
+            final int bit = channel - minChannel;
+            return (channels[rank(station) * words + bit / 64] & (1L << (bit % 64))) != 0;
+        }
+
+    }
+
+}
@@ -33,6 +33,7 @@ import java.util.Set;
 
 import au.com.bytecode.opencsv.CSVReader;
 import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
 
 import com.google.common.hash.Funnel;
 import com.google.common.hash.HashCode;
@@ -49,6 +50,7 @@ public class DomainStationManager implements IStationManager{
 	private final Map<Integer,Station> fStations = new HashMap<Integer,Station>();
 	private final Map<Station,Set<Integer>> fDomains = new HashMap<Station,Set<Integer>>();
     private final String fHash;
+    private final StationIndex fStationIndex;
 	
 	/**
 	 * @param aStationDomainsFilename - domain file from which stations should be read.
@@ -105,6 +107,7 @@ public class DomainStationManager implements IStationManager{
                 })
                 .hash();
         fHash = hc.toString();
+        fStationIndex = new StationIndex(fStations.values());
 	}
 	
 	@Override
@@ -163,4 +166,9 @@ public class DomainStationManager implements IStationManager{
         return fHash;
     }
 
+    @Override
+    public StationIndex getStationIndex() {
+        return fStationIndex;
+    }
+
 }
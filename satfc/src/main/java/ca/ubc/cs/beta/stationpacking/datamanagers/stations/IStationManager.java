@@ -25,6 +25,7 @@ import java.util.Collection;
 import java.util.Set;
 
 import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
 
 
 /**
@@ -60,5 +61,10 @@ public interface IStationManager {
 	public Set<Station> getStationsfromID(Collection<Integer> aIDs);
 
     String getHashCode();
+    
+	/**
+	 * @return a dense index numbering the managed stations 0..N-1 (in increasing ID order), for bitsets and SAT variables.
+	 */
+	public StationIndex getStationIndex();
 	
 }
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.commons.math3.util.Pair;
+
+import ca.ubc.cs.beta.aeatk.misc.jcommander.JCommanderHelper;
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.datamanagers.stations.IStationManager;
+import ca.ubc.cs.beta.stationpacking.execution.parameters.AtMostOneEncodingBenchmarkParameters;
+import ca.ubc.cs.beta.stationpacking.execution.parameters.solver.sat.ClaspLibSATSolverParameters;
+import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.DataManager;
+import ca.ubc.cs.beta.stationpacking.facade.datamanager.data.ManagerBundle;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.AtMostOneEncoding;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.ISATDecoder;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.SATCompressor;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.base.SATSolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.nonincremental.ClaspSATSolver;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.walltime.WalltimeTerminationCriterion;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Encodes every instance of a set with each {@link AtMostOneEncoding}, and solves it with clasp.
+ * Prints the size of each encoding and clasp's runtime on it, one line per instance and encoding, followed by totals for each encoding.
+ */
+@Slf4j
+public class AtMostOneEncodingBenchmarkExecutor {
+
+    public static void main(String[] args) throws IOException {
+        final AtMostOneEncodingBenchmarkParameters parameters = new AtMostOneEncodingBenchmarkParameters();
+        JCommanderHelper.parseCheckingForHelpAndVersion(args, parameters);
+
+        final List<String> instanceFiles = Files.readLines(new File(parameters.fInstanceFile), Charsets.UTF_8);
+        final DataManager dataManager = new DataManager();
+        final ClaspSATSolver clasp = new ClaspSATSolver(parameters.fClaspLibrary, ClaspLibSATSolverParameters.ALL_CONFIG_11_13);
+        final Map<AtMostOneEncoding, Totals> totals = new EnumMap<>(AtMostOneEncoding.class);
+        parameters.fEncodings.forEach(encoding -> totals.put(encoding, new Totals()));
+
+        System.out.println("instance,encoding,variables,clauses,literals,encodingTime,result,claspTime");
+        for (String instanceFile : instanceFiles) {
+            final Converter.StationPackingProblemSpecs specs = Converter.StationPackingProblemSpecs.fromStationRepackingInstance(parameters.fInstanceFolder + File.separator + instanceFile);
+            final ManagerBundle bundle = dataManager.getData(parameters.fInterferencesFolder + File.separator + specs.getDataFoldername());
+            final IStationManager stationManager = bundle.getStationManager();
+            final Map<Station, Set<Integer>> domains = new HashMap<>();
+            specs.getDomains().forEach((id, domain) -> domains.put(stationManager.getStationfromID(id), domain));
+            final StationPackingInstance instance = new StationPackingInstance(domains);
+
+            for (AtMostOneEncoding encoding : parameters.fEncodings) {
+                final Watch watch = Watch.constructAutoStartWatch();
+                final Pair<CNF, ISATDecoder> encoded = new SATCompressor(bundle.getConstraintManager(), stationManager.getStationIndex(), encoding).encode(instance);
+                final double encodingTime = watch.getElapsedTime();
+                final CNF cnf = encoded.getFirst();
+                final SATSolverResult result = clasp.solve(cnf, new WalltimeTerminationCriterion(parameters.fCutoff), parameters.fSeed);
+                final long numVariables = cnf.getPacked().getMaxVariable();
+                System.out.println(String.format("%s,%s,%d,%d,%d,%.3f,%s,%.3f", instanceFile, encoding, numVariables, cnf.size(), cnf.getPacked().getNumLiterals(), encodingTime, result.getResult(), result.getRuntime()));
+                totals.get(encoding).add(cnf.size(), result);
+            }
+        }
+        clasp.notifyShutdown();
+
+        totals.forEach((encoding, total) -> System.out.println(String.format("%s: %d clauses, %d solved, %d timeouts, %.3f s of clasp runtime over %d instances",
+                encoding, total.clauses, total.solved, total.timeouts, total.runtime, instanceFiles.size())));
+    }
+
+    private static class Totals {
+
+        private long clauses = 0;
+        private int solved = 0;
+        private int timeouts = 0;
+        private double runtime = 0;
+
+        private void add(int numClauses, SATSolverResult result) {
+            clauses += numClauses;
+            if (result.getResult().equals(SATResult.SAT) || result.getResult().equals(SATResult.UNSAT)) {
+                solved++;
+            } else {
+                timeouts++;
+            }
+            runtime += result.getRuntime();
+        }
+
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import redis.clients.jedis.JedisShardInfo;
+import ca.ubc.cs.beta.aeatk.misc.jcommander.JCommanderHelper;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
+import ca.ubc.cs.beta.stationpacking.cache.ContainmentCache;
+import ca.ubc.cs.beta.stationpacking.cache.RedisCacher;
+import ca.ubc.cs.beta.stationpacking.cache.RedisCacher.ContainmentCacheInitData;
+import ca.ubc.cs.beta.stationpacking.cache.containment.IContainmentCacheEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.PermutationSelector;
+import ca.ubc.cs.beta.stationpacking.cache.containment.PermutationSelector.CandidateWindows;
+import ca.ubc.cs.beta.stationpacking.execution.parameters.PermutationSelectorParameters;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
+
+/**
+ * Picks the permutations of the containment cache from the entries in redis (see {@link PermutationSelector}), and writes them in the format of the bundled precache_permutations.txt.
+ * Prints how many entries a lookup is expected to check with the bundled permutations and with the new ones.
+ */
+@Slf4j
+public class PermutationSelectorExecutor {
+
+    // how many entries and queries the candidate windows are estimated from
+    private static final int SAMPLE_ENTRIES = 100000;
+    private static final int SAMPLE_QUERIES = 1000;
+
+    public static void main(String[] args) throws IOException {
+        final PermutationSelectorParameters parameters = new PermutationSelectorParameters();
+        JCommanderHelper.parseCheckingForHelpAndVersion(args, parameters);
+
+        final JedisConnectionFactory connectionFactory = new JedisConnectionFactory(new JedisShardInfo(parameters.redisHost, parameters.redisPort));
+        final RedisCacher cacher = new RedisCacher(new StringRedisTemplate(connectionFactory));
+        final ContainmentCacheInitData data = cacher.getContainmentCacheInitData();
+        // the permutations file is shared by every cache coordinate, so the stations of all of them are numbered together
+        final BitSet stationIDs = new BitSet();
+        Stream.concat(data.getSATResults().values().stream(), data.getUNSATResults().values().stream()).forEach(entry -> stationIDs.or(entry.getBitSet()));
+        final StationIndex stationIndex = new StationIndex(stationIDs.stream().toArray());
+        final List<BitSet> stationSets = Stream.concat(
+                data.getSATResults().values().stream().map(entry -> entry.withStationIndex(stationIndex)),
+                data.getUNSATResults().values().stream().map(entry -> entry.withStationIndex(stationIndex)))
+                .map(IContainmentCacheEntry::getBitSet)
+                .collect(Collectors.toList());
+        connectionFactory.destroy();
+        if (stationSets.isEmpty()) {
+            throw new IllegalStateException("There are no entries in redis to pick permutations from");
+        }
+
+        final int[][] bundled = ContainmentCache.readPermutations(stationIndex);
+        final int numPermutations = parameters.numPermutations != null ? parameters.numPermutations : bundled.length;
+        final List<BitSet> entries = PermutationSelector.sample(stationSets, SAMPLE_ENTRIES);
+        final List<BitSet> queries = PermutationSelector.sample(stationSets, SAMPLE_QUERIES);
+        final int[][] selected = PermutationSelector.selectPermutations(entries, numPermutations, stationIndex.getNumbers());
+        report("bundled", PermutationSelector.estimateCandidateWindows(bundled, entries, queries));
+        report("selected", PermutationSelector.estimateCandidateWindows(selected, entries, queries));
+
+        // the file stores station IDs, which every cache maps to its own station numbers, see ContainmentCache#readPermutations(StationIndex)
+        final List<String> lines = Stream.of(selected).map(permutation -> Joiner.on(", ").join(Ints.asList(IntStream.of(permutation).map(number -> stationIndex.getStation(number).getID()).toArray()))).collect(Collectors.toList());
+        Files.write(Joiner.on(System.lineSeparator()).join(lines) + System.lineSeparator(), new File(parameters.outputFile), Charsets.UTF_8);
+        log.info("Wrote {} permutations to {}", selected.length, parameters.outputFile);
+    }
+
+    private static void report(String name, CandidateWindows windows) {
+        System.out.println(String.format("%s permutations: a SAT lookup checks %.1f and an UNSAT lookup %.1f of %d sampled entries on average", name, windows.getMeanSupersetWindow(), windows.getMeanSubsetWindow(), windows.getNumEntries()));
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.execution.parameters;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ca.ubc.cs.beta.aeatk.misc.options.UsageTextField;
+import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.AtMostOneEncoding;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Parameters of {@link ca.ubc.cs.beta.stationpacking.execution.AtMostOneEncodingBenchmarkExecutor}
+ */
+@UsageTextField(title="At Most One Encoding Benchmark Parameters",description="Parameters for comparing the at-most-one encodings of the SAT encoding on a set of instances.")
+public class AtMostOneEncodingBenchmarkParameters extends AbstractOptions {
+
+    @Parameter(names = "-INSTANCES-FILE", description = "file listing each instance file (.srpk) on a separate line", required = true)
+    public String fInstanceFile;
+
+    @Parameter(names = "-INSTANCES-FOLDER", description = "folder where the instance files are located", required = true)
+    public String fInstanceFolder;
+
+    @Parameter(names = "-INTERFERENCES-FOLDER", description = "folder containing all the other interference folders", required = true)
+    public String fInterferencesFolder;
+
+    @Parameter(names = "-CLASP-LIBRARY", description = "clasp library file", required = true)
+    public String fClaspLibrary;
+
+    @Parameter(names = "-ENCODINGS", description = "an at-most-one encoding to compare, repeat the option to compare several (all of them by default)")
+    public List<AtMostOneEncoding> fEncodings = Arrays.asList(AtMostOneEncoding.values());
+
+    @Parameter(names = "-CUTOFF", description = "walltime (s) clasp is given for each instance and encoding")
+    public double fCutoff = 60.0;
+
+    @Parameter(names = "-SEED", description = "seed given to clasp")
+    public long fSeed = 1;
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.execution.parameters;
+
+import ca.ubc.cs.beta.aeatk.misc.options.UsageTextField;
+import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Parameters of {@link ca.ubc.cs.beta.stationpacking.execution.PermutationSelectorExecutor}
+ */
+@UsageTextField(title="Permutation Selector Parameters",description="Parameters for picking the permutations of the containment cache from the cached entries.")
+public class PermutationSelectorParameters extends AbstractOptions {
+
+    @Parameter(names = "--redisHost", description = "host of the redis instance holding the cache", required = false)
+    public String redisHost = "localhost";
+
+    @Parameter(names = "--redisPort", description = "port of the redis instance holding the cache", required = false)
+    public int redisPort = 6379;
+
+    @Parameter(names = "--numPermutations", description = "number of permutations to pick (defaults to the number of bundled permutations)", required = false)
+    public Integer numPermutations = null;
+
+    @Parameter(names = "--outputFile", description = "file the permutations are written to, in the format of precache_permutations.txt", required = true)
+    public String outputFile;
+
+}
@@ -36,7 +36,7 @@ public class SATFCCachingParameters extends AbstractOptions {
     @Parameter(names = "--useCache", description = "Should the cache be used", required = false, arity = 0)
     public boolean useCache = false;
 
-    @Parameter(names = "--serverURL", description = "base URL for the SATFC server", required = false)
+    @Parameter(names = "--serverURL", description = "base URL for the SATFC server, or a comma separated list of the base URLs of its shards in order of shard index", required = false)
     @Getter
     public String serverURL = "http://localhost:8080/satfcserver";
 
@@ -21,10 +21,16 @@
  */
 package ca.ubc.cs.beta.stationpacking.execution.parameters.solver;
 
+import java.util.Arrays;
+import java.util.List;
+
 import ca.ubc.cs.beta.aeatk.misc.options.UsageTextField;
 import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
 import ca.ubc.cs.beta.stationpacking.execution.parameters.SATFCCachingParameters;
 import ca.ubc.cs.beta.stationpacking.facade.SolverCustomizationOptions;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.AtMostOneEncoding;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing.CNFPreprocessingPassType;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParametersDelegate;
@@ -42,6 +48,46 @@ public class SolverCustomizationOptionsParameters extends AbstractOptions {
         private boolean underconstrained = true;
         @Parameter(names = "--decomposition", description = "connected component decomposition", arity = 1)
         private boolean decomposition = true;
+        @Parameter(names = "--prefetchComponents", description = "query the cache for every connected component in a single request", arity = 1)
+        private boolean prefetchComponents = false;
+        @Parameter(names = "--nearestSATWarmStart", description = "pre-solve from the cached SAT assignment that covers the most stations when the previous assignment misses more of them", arity = 1)
+        private boolean nearestSATWarmStart = false;
+        @Parameter(names = "--binaryCacheProtocol", description = "talk to the cache server with a compact binary protocol instead of JSON", arity = 1)
+        private boolean binaryCacheProtocol = false;
+        @Parameter(names = "--writeBehindCache", description = "send results to the cache server from a background thread instead of waiting for the server while solving", arity = 1)
+        private boolean writeBehindCache = false;
+        @Parameter(names = "--writeBehindQueueSize", description = "maximum number of results waiting to be sent to the cache server")
+        private int writeBehindQueueSize = 1000;
+        @Parameter(names = "--writeBehindSpillFile", description = "file where results that cannot be queued or sent to the cache server are saved, to be sent on the next run (dropped if not given)")
+        private String writeBehindSpillFile;
+        @Parameter(names = "--shrinkUNSATCores", description = "look for smaller unsatisfiable subsets of the stations of UNSAT problems from a background thread, and cache them as well", arity = 1)
+        private boolean shrinkUNSATCores = false;
+        @Parameter(names = "--unsatCoreQueueSize", description = "maximum number of UNSAT problems waiting to be shrunk")
+        private int unsatCoreQueueSize = 100;
+        @Parameter(names = "--unsatCoreCutoff", description = "walltime (s) given to each solver call made to shrink an UNSAT problem")
+        private double unsatCoreCutoff = 1.0;
+        @Parameter(names = "--unsatCoreMaxSolverCalls", description = "maximum number of solver calls made to shrink an UNSAT problem")
+        private int unsatCoreMaxSolverCalls = 30;
+        @Parameter(names = "--cacheMaxConnections", description = "maximum number of connections kept open to the cache server")
+        private int cacheMaxConnections = CacheUtils.DEFAULT_MAX_CONNECTIONS;
+        @Parameter(names = "--cacheMaxConnectionsPerRoute", description = "maximum number of connections kept open to the same cache server")
+        private int cacheMaxConnectionsPerRoute = CacheUtils.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        @Parameter(names = "--cacheConnectTimeout", description = "how long (ms) to wait for a connection to the cache server")
+        private int cacheConnectTimeoutMillis = CacheUtils.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        @Parameter(names = "--cacheReadTimeout", description = "how long (ms) to wait for an answer from the cache server")
+        private int cacheReadTimeoutMillis = CacheUtils.DEFAULT_READ_TIMEOUT_MILLIS;
+        @Parameter(names = "--cacheMinRemainingTime", description = "skip the cache when less than this much time (s) is left to solve")
+        private double cacheMinRemainingTime = 0;
+        @Parameter(names = "--embeddedCache", description = "hold the cache in this JVM instead of querying a cache server, kept in sync with the cache server if --useCache is also given", arity = 1)
+        private boolean embeddedCache = false;
+        @Parameter(names = "--embeddedCacheFile", description = "file where the embedded cache appends its results, and reads them back from on the next run (kept in memory only if not given)")
+        private String embeddedCacheFile;
+        @Parameter(names = "--atMostOneEncoding", description = "how the SAT encoding keeps each station on at most one channel: PAIRWISE, SEQUENTIAL, COMMANDER or PRODUCT")
+        private AtMostOneEncoding atMostOneEncoding = AtMostOneEncoding.PAIRWISE;
+        @Parameter(names = "--preprocessCNF", description = "simplify each CNF before giving it to clasp", arity = 1)
+        private boolean preprocessCNF = false;
+        @Parameter(names = "--cnfPreprocessingPass", description = "a simplification made when preprocessing CNFs, repeat the option to make several, in order (all of them by default): UNIT_PROPAGATION, SUBSUMPTION, PURE_LITERALS, FAILED_LITERALS or VARIABLE_ELIMINATION")
+        private List<CNFPreprocessingPassType> cnfPreprocessingPasses = Arrays.asList(CNFPreprocessingPassType.values());
         @ParametersDelegate
         private SATFCCachingParameters cachingParams = new SATFCCachingParameters();
 
@@ -50,6 +96,26 @@ public class SolverCustomizationOptionsParameters extends AbstractOptions {
             options.setPresolve(presolve);
             options.setUnderconstrained(underconstrained);
             options.setDecompose(decomposition);
+            options.setPrefetchComponents(prefetchComponents);
+            options.setNearestSATWarmStart(nearestSATWarmStart);
+            options.setBinaryCacheProtocol(binaryCacheProtocol);
+            options.setWriteBehindCache(writeBehindCache);
+            options.setWriteBehindQueueSize(writeBehindQueueSize);
+            options.setWriteBehindSpillFile(writeBehindSpillFile);
+            options.setShrinkUNSATCores(shrinkUNSATCores);
+            options.setUnsatCoreQueueSize(unsatCoreQueueSize);
+            options.setUnsatCoreCutoff(unsatCoreCutoff);
+            options.setUnsatCoreMaxSolverCalls(unsatCoreMaxSolverCalls);
+            options.setCacheMaxConnections(cacheMaxConnections);
+            options.setCacheMaxConnectionsPerRoute(cacheMaxConnectionsPerRoute);
+            options.setCacheConnectTimeoutMillis(cacheConnectTimeoutMillis);
+            options.setCacheReadTimeoutMillis(cacheReadTimeoutMillis);
+            options.setCacheMinRemainingTime(cacheMinRemainingTime);
+            options.setEmbeddedCache(embeddedCache);
+            options.setEmbeddedCacheFile(embeddedCacheFile);
+            options.setAtMostOneEncoding(atMostOneEncoding);
+            options.setPreprocessCNF(preprocessCNF);
+            options.setCnfPreprocessingPasses(cnfPreprocessingPasses);
             if (cachingParams.useCache)
             {
                 options.setServerURL(cachingParams.serverURL);
@@ -124,7 +124,7 @@ public class SATFCFacade implements AutoCloseable {
 
         // check parameters
         if (aSATFCParameters.getOptions().isCache()) {
-            Preconditions.checkNotNull(aSATFCParameters.getOptions().getServerURL(), "Server URL can not be null if you want to use the cache");
+            Preconditions.checkState(aSATFCParameters.getOptions().isEmbeddedCache() || aSATFCParameters.getOptions().getServerURL() != null, "Server URL can not be null if you want to use the cache");
         }
 
         fSolverManager = new SolverManager(
@@ -1,6 +1,12 @@
 package ca.ubc.cs.beta.stationpacking.facade;
 
+import java.util.Arrays;
+import java.util.List;
+
 import lombok.Data;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.AtMostOneEncoding;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing.CNFPreprocessingPassType;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
 
 /**
 * Created by newmanne on 25/03/15.
@@ -13,8 +19,46 @@ public class SolverCustomizationOptions {
 
     // caching params
     private String serverURL;
+    // hold the cache in this JVM (see EmbeddedContainmentCache), in sync with the server if there is a server URL
+    private boolean embeddedCache = false;
+    // where the embedded cache keeps its results between runs, null to keep them in memory only
+    private String embeddedCacheFile;
+    // query the cache for every connected component in a single request before solving any of them
+    private boolean prefetchComponents = false;
+    // give the neighbourhood presolver the nearest SAT entry of the cache as its previous assignment, see NearestSATPreviousAssignmentDecorator
+    private boolean nearestSATWarmStart = false;
+    // talk to the server with the compact binary protocol instead of JSON
+    private boolean binaryCacheProtocol = false;
+    // send results to the server from a background thread (see WriteBehindCacher) rather than while solving
+    private boolean writeBehindCache = false;
+    private int writeBehindQueueSize = 1000;
+    // where results that cannot be queued or sent go, null to drop them
+    private String writeBehindSpillFile;
+    // look for smaller UNSAT station subsets of UNSAT results in the background (see UNSATCoreShrinkingCacher) and cache them too
+    private boolean shrinkUNSATCores = false;
+    private int unsatCoreQueueSize = 100;
+    // walltime (s) of each solver call, and maximum number of solver calls, spent shrinking a problem
+    private double unsatCoreCutoff = 1.0;
+    private int unsatCoreMaxSolverCalls = 30;
+    // connection pool and timeouts of the http client used to talk to the server
+    private int cacheMaxConnections = CacheUtils.DEFAULT_MAX_CONNECTIONS;
+    private int cacheMaxConnectionsPerRoute = CacheUtils.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private int cacheConnectTimeoutMillis = CacheUtils.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private int cacheReadTimeoutMillis = CacheUtils.DEFAULT_READ_TIMEOUT_MILLIS;
+    // the cache is not queried when less than this much time (s) is left to solve
+    private double cacheMinRemainingTime = 0;
+    // how the SAT encoding keeps each station on at most one channel
+    private AtMostOneEncoding atMostOneEncoding = AtMostOneEncoding.PAIRWISE;
+    // simplify each CNF before giving it to clasp
+    private boolean preprocessCNF = false;
+    // the simplifications made when preprocessing CNFs, in order
+    private List<CNFPreprocessingPassType> cnfPreprocessingPasses = Arrays.asList(CNFPreprocessingPassType.values());
 
     public boolean isCache() {
+        return isServerCache() || embeddedCache;
+    }
+
+    public boolean isServerCache() {
         return serverURL != null;
     }
 }
@@ -21,14 +21,19 @@
  */
 package ca.ubc.cs.beta.stationpacking.facade.datamanager.solver.bundles;
 
+import java.io.File;
 import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestTemplate;
 
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.cache.CacherProxy;
+import ca.ubc.cs.beta.stationpacking.cache.EmbeddedContainmentCache;
 import ca.ubc.cs.beta.stationpacking.cache.ICacher;
+import ca.ubc.cs.beta.stationpacking.cache.UNSATCoreShrinkingCacher;
+import ca.ubc.cs.beta.stationpacking.cache.WriteBehindCacher;
 import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
 import ca.ubc.cs.beta.stationpacking.datamanagers.stations.IStationManager;
 import ca.ubc.cs.beta.stationpacking.execution.parameters.solver.sat.ClaspLibSATSolverParameters;
@@ -45,14 +50,19 @@ import ca.ubc.cs.beta.stationpacking.solvers.decorators.ConnectedComponentGroupi
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.ResultSaverSolverDecorator;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.UnderconstrainedStationRemoverSolverDecorator;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.CacheResultDecorator;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ComponentPrefetchCacheDecorator;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.IContainmentCacheProxy;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.NearestSATPreviousAssignmentDecorator;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.SubsetCacheUNSATDecorator;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.SupersetCacheSATDecorator;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.CompressedSATBasedSolver;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.SATCompressor;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing.CNFPreprocessor;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.AbstractCompressedSATSolver;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.nonincremental.ClaspSATSolver;
 import ca.ubc.cs.beta.stationpacking.solvers.termination.cputime.CPUTimeTerminationCriterionFactory;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
 import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
 
 /**
@@ -66,6 +76,12 @@ public class SATFCSolverBundle extends ASolverBundle {
 
     private final ISolver fUHFSolver;
     private final ISolver fVHFSolver;
+    // null unless results are cached from a background thread
+    private final WriteBehindCacher fWriteBehindCacher;
+    // null unless UNSAT results are shrunk before being cached
+    private final UNSATCoreShrinkingCacher fUNSATCoreShrinkingCacher;
+    // null unless the cache is held in this JVM
+    private final EmbeddedContainmentCache fEmbeddedCache;
 
     /**
      * Create a SATFC solver bundle.
@@ -89,15 +105,22 @@ public class SATFCSolverBundle extends ASolverBundle {
 
         log.debug("SATFC solver bundle.");
 
-        SATCompressor aCompressor = new SATCompressor(this.getConstraintManager());
+        SATCompressor aCompressor = new SATCompressor(this.getConstraintManager(), aStationManager.getStationIndex(), solverOptions.getAtMostOneEncoding());
+
+        // null unless CNFs are simplified before clasp gets them
+        CNFPreprocessor aPreprocessor = null;
+        if (solverOptions.isPreprocessCNF()) {
+            log.debug("Preprocessing CNFs with {}", solverOptions.getCnfPreprocessingPasses());
+            aPreprocessor = CNFPreprocessor.of(solverOptions.getCnfPreprocessingPasses());
+        }
 
         log.debug("Initializing base configured clasp solvers.");
 
         AbstractCompressedSATSolver aUHFClaspSATsolver = new ClaspSATSolver(aClaspLibraryPath, ClaspLibSATSolverParameters.ALL_CONFIG_11_13);
-        ISolver UHFClaspBasedSolver = new CompressedSATBasedSolver(aUHFClaspSATsolver, aCompressor, this.getConstraintManager());
+        ISolver UHFClaspBasedSolver = new CompressedSATBasedSolver(aUHFClaspSATsolver, aCompressor, this.getConstraintManager(), aPreprocessor);
 
         AbstractCompressedSATSolver aHVHFClaspSATsolver = new ClaspSATSolver(aClaspLibraryPath, ClaspLibSATSolverParameters.HVHF_CONFIG_09_13);
-        ISolver VHFClaspBasedSolver = new CompressedSATBasedSolver(aHVHFClaspSATsolver, aCompressor, this.getConstraintManager());
+        ISolver VHFClaspBasedSolver = new CompressedSATBasedSolver(aHVHFClaspSATsolver, aCompressor, this.getConstraintManager(), aPreprocessor);
 
         //Chain pre-solving and main solver.
         final double SATcertifiercutoff = 5;
@@ -109,13 +132,40 @@ public class SATFCSolverBundle extends ASolverBundle {
          * Decorate solvers - remember that the decorator that you put first is applied last
          */
 
-        ContainmentCacheProxy containmentCache = null;
+        IContainmentCacheProxy containmentCache = null;
         ICacher cacher = null;
         ICacher.CacheCoordinate cacheCoordinate = null;
+        WriteBehindCacher writeBehindCacher = null;
+        EmbeddedContainmentCache embeddedCache = null;
+        UNSATCoreShrinkingCacher unsatCoreShrinkingCacher = null;
         if (solverOptions.isCache()) {
             cacheCoordinate = new ICacher.CacheCoordinate(aStationManager.getHashCode(), aConstraintManager.getHashCode());
-            cacher = new CacherProxy(solverOptions.getServerURL(), cacheCoordinate);
-            containmentCache = new ContainmentCacheProxy(solverOptions.getServerURL(), cacheCoordinate);
+            if (solverOptions.isServerCache()) {
+                // one pool of kept-alive connections for all the cache traffic
+                final RestTemplate restTemplate = CacheUtils.createRestTemplate(solverOptions.getCacheMaxConnections(), solverOptions.getCacheMaxConnectionsPerRoute(), solverOptions.getCacheConnectTimeoutMillis(), solverOptions.getCacheReadTimeoutMillis());
+                final CacherProxy cacherProxy = new CacherProxy(restTemplate, solverOptions.getServerURL(), cacheCoordinate, solverOptions.isBinaryCacheProtocol());
+                if (solverOptions.isWriteBehindCache()) {
+                    log.debug("Sending results to the cache server from a background thread");
+                    writeBehindCacher = new WriteBehindCacher(cacherProxy, solverOptions.getWriteBehindQueueSize(), solverOptions.getWriteBehindSpillFile() != null ? new File(solverOptions.getWriteBehindSpillFile()) : null);
+                    cacher = writeBehindCacher;
+                } else {
+                    cacher = cacherProxy;
+                }
+                containmentCache = new ContainmentCacheProxy(restTemplate, solverOptions.getServerURL(), cacheCoordinate, solverOptions.isBinaryCacheProtocol(), solverOptions.getCacheMinRemainingTime());
+            }
+            if (solverOptions.isEmbeddedCache()) {
+                log.debug("Keeping the cache in this JVM{}", solverOptions.isServerCache() ? ", in sync with the cache server" : "");
+                embeddedCache = new EmbeddedContainmentCache(cacheCoordinate, aStationManager.getStationIndex(), solverOptions.getEmbeddedCacheFile() != null ? new File(solverOptions.getEmbeddedCacheFile()) : null, containmentCache, cacher);
+                containmentCache = embeddedCache;
+                cacher = embeddedCache;
+            }
+            if (solverOptions.isShrinkUNSATCores()) {
+                log.debug("Shrinking UNSAT problems from a background thread before caching them");
+                // the shrinker gets its own clasp, which is not safe to use from two threads
+                final ISolver shrinkingSolver = new CompressedSATBasedSolver(new ClaspSATSolver(aClaspLibraryPath, ClaspLibSATSolverParameters.ALL_CONFIG_11_13), aCompressor, this.getConstraintManager(), aPreprocessor);
+                unsatCoreShrinkingCacher = new UNSATCoreShrinkingCacher(cacher, shrinkingSolver, solverOptions.getUnsatCoreQueueSize(), solverOptions.getUnsatCoreCutoff(), solverOptions.getUnsatCoreMaxSolverCalls());
+                cacher = unsatCoreShrinkingCacher;
+            }
         }
 
         if (solverOptions.isCache()) {
@@ -130,6 +180,10 @@ public class SATFCSolverBundle extends ASolverBundle {
             log.debug("Decorate solver to split the graph into connected components and then merge the results");
             UHFsolver = new ConnectedComponentGroupingDecorator(UHFsolver, aGrouper, getConstraintManager());
             VHFsolver = new ConnectedComponentGroupingDecorator(VHFsolver, aGrouper, getConstraintManager());
+            if (solverOptions.isCache() && solverOptions.isPrefetchComponents()) {
+                log.debug("Decorate solver to query the cache for every component at once");
+                UHFsolver = new ComponentPrefetchCacheDecorator(UHFsolver, containmentCache, aGrouper, getConstraintManager());
+            }
         }
 
         if (solverOptions.isUnderconstrained())
@@ -143,12 +197,17 @@ public class SATFCSolverBundle extends ASolverBundle {
         if (solverOptions.isPresolve())
         {
             log.debug("Adding neighborhood presolvers.");
+            ISolver UHFPresolver = new ConstraintGraphNeighborhoodPresolver(aConstraintManager,
+                    Arrays.asList(
+                    		new StationSubsetSATCertifier(UHFClaspBasedSolver, new CPUTimeTerminationCriterionFactory(SATcertifiercutoff))
+                    ));
+            if (solverOptions.isCache() && solverOptions.isNearestSATWarmStart()) {
+                log.debug("Decorate the presolver to start from the nearest SAT entry of the cache");
+                UHFPresolver = new NearestSATPreviousAssignmentDecorator(UHFPresolver, containmentCache);
+            }
             UHFsolver = new SequentialSolversComposite(
                     Arrays.asList(
-                            new ConstraintGraphNeighborhoodPresolver(aConstraintManager,
-                                    Arrays.asList(
-                                    		new StationSubsetSATCertifier(UHFClaspBasedSolver, new CPUTimeTerminationCriterionFactory(SATcertifiercutoff))
-                                    )),
+                            UHFPresolver,
                             UHFsolver
                     )
             );
@@ -198,6 +257,9 @@ public class SATFCSolverBundle extends ASolverBundle {
 
         fUHFSolver = UHFsolver;
         fVHFSolver = VHFsolver;
+        fWriteBehindCacher = writeBehindCacher;
+        fUNSATCoreShrinkingCacher = unsatCoreShrinkingCacher;
+        fEmbeddedCache = embeddedCache;
     }
 
     @Override
@@ -216,6 +278,17 @@ public class SATFCSolverBundle extends ASolverBundle {
     public void close() {
         fUHFSolver.notifyShutdown();
         fVHFSolver.notifyShutdown();
+        if (fUNSATCoreShrinkingCacher != null) {
+            // before the embedded cache and the write-behind cacher, which the cores are cached through
+            fUNSATCoreShrinkingCacher.close();
+        }
+        if (fEmbeddedCache != null) {
+            fEmbeddedCache.close();
+        }
+        if (fWriteBehindCacher != null) {
+            // flush the results that were not sent yet
+            fWriteBehindCacher.close();
+        }
     }
 
 }
\ No newline at end of file
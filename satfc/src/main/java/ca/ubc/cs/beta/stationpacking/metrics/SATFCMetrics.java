@@ -119,6 +119,9 @@ public class SATFCMetrics {
         public final static String FIND_SUBSET = "find_subset";
         public final static String FIND_UNDERCONSTRAINED_STATIONS = "find_underconstrained_stations";
         public final static String CONNECTED_COMPONENTS = "split_connected_components";
+        public final static String PREFETCH_COMPONENTS = "prefetch_components";
+        public final static String FIND_NEAREST_SAT = "find_nearest_sat";
+        public final static String PREPROCESS_CNF = "preprocess_cnf";
 
         private final String name;
         private final String timedEvent;
@@ -131,6 +134,7 @@ public class SATFCMetrics {
         public final static String SUBSET_CACHE = "subset_cache";
         public final static String SUPERSET_CACHE = "superset_cache";
         public static final String CLASP = "clasp";
+        public static final String CNF_PREPROCESSING = "cnf_preprocessing";
 
         private final String name;
         private final String solvedBy;
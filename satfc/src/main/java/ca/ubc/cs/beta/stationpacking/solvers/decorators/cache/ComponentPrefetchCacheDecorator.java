@@ -0,0 +1,143 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import static ca.ubc.cs.beta.stationpacking.utils.GuavaCollectors.toImmutableMap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
+import ca.ubc.cs.beta.stationpacking.metrics.SATFCMetrics;
+import ca.ubc.cs.beta.stationpacking.metrics.SATFCMetrics.SolvedByEvent;
+import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.componentgrouper.IComponentGrouper;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.ASolverDecorator;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+import ca.ubc.cs.beta.stationpacking.utils.GuavaCollectors;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
+
+/**
+ * Meant to sit right above a {@link ca.ubc.cs.beta.stationpacking.solvers.decorators.ConnectedComponentGroupingDecorator}:
+ * queries the cache for every component of the instance in a single request, so that the cache decorators below only hit the prefetched results instead of making one request per component.
+ * If a component is already known to be UNSAT, so is the whole instance, and nothing is solved.
+ * The prefetched results belong to a single solve: they are only seen by the solvers it calls on its own thread, and forgotten when it returns (see {@link #getPrefetched}).
+ */
+@Slf4j
+public class ComponentPrefetchCacheDecorator extends ASolverDecorator {
+
+    // the results prefetched by the solve running on this thread, if any. Solvers below a decorator run on the thread that called it, so concurrent solves never see each other's results
+    private static final ThreadLocal<PrefetchedResults> PREFETCHED = new ThreadLocal<>();
+
+    private final IContainmentCacheProxy proxy;
+    // must group stations the same way as the decorated connected component decorator, otherwise the prefetched instances are never looked up
+    private final IComponentGrouper fComponentGrouper;
+    private final IConstraintManager fConstraintManager;
+
+    public ComponentPrefetchCacheDecorator(ISolver aSolver, IContainmentCacheProxy proxy, IComponentGrouper aComponentGrouper, IConstraintManager aConstraintManager) {
+        super(aSolver);
+        this.proxy = proxy;
+        fComponentGrouper = aComponentGrouper;
+        fConstraintManager = aConstraintManager;
+    }
+
+    @Override
+    public SolverResult solve(StationPackingInstance aInstance, ITerminationCriterion aTerminationCriterion, long aSeed) {
+        if (!proxy.hasTimeToQuery(aTerminationCriterion)) {
+            return fDecoratedSolver.solve(aInstance, aTerminationCriterion, aSeed);
+        }
+        final Watch watch = Watch.constructAutoStartWatch();
+        final Set<Set<Station>> stationComponents = fComponentGrouper.group(aInstance, fConstraintManager);
+        if (stationComponents.size() <= 1) {
+            // nothing to batch
+            return super.solve(aInstance, aTerminationCriterion, aSeed);
+        }
+        final List<StationPackingInstance> componentInstances = stationComponents.stream()
+                .map(stationComponent -> new StationPackingInstance(aInstance.getDomains().entrySet()
+                        .stream()
+                        .filter(entry -> stationComponent.contains(entry.getKey()))
+                        .collect(toImmutableMap(Map.Entry::getKey, Map.Entry::getValue))))
+                .collect(GuavaCollectors.toImmutableList());
+        log.debug("Prefetching cache results for {} components", componentInstances.size());
+        final List<ContainmentCacheBatchResult> results = proxy.prefetch(componentInstances);
+        final Map<StationPackingInstance, ContainmentCacheBatchResult> componentResults = new HashMap<>();
+        for (int i = 0; i < componentInstances.size(); i++) {
+            componentResults.put(componentInstances.get(i), results.get(i));
+        }
+        final PrefetchedResults outerResults = PREFETCHED.get();
+        PREFETCHED.set(new PrefetchedResults(proxy, componentResults));
+        try {
+            SATFCMetrics.postEvent(new SATFCMetrics.TimingEvent(aInstance.getName(), SATFCMetrics.TimingEvent.PREFETCH_COMPONENTS, watch.getElapsedTime()));
+            final Optional<ContainmentCacheUNSATResult> UNSATComponent = results.stream()
+                    .map(ContainmentCacheBatchResult::getUNSATResult)
+                    .filter(ContainmentCacheUNSATResult::isValid)
+                    .findAny();
+            if (UNSATComponent.isPresent()) {
+                log.debug("Found a subset of a component in the UNSAT cache - declaring problem UNSAT due to problem " + UNSATComponent.get().getKey());
+                final SolverResult result = new SolverResult(SATResult.UNSAT, watch.getElapsedTime());
+                SATFCMetrics.postEvent(new SATFCMetrics.SolvedByEvent(aInstance.getName(), SolvedByEvent.SUBSET_CACHE, result.getResult()));
+                SATFCMetrics.postEvent(new SATFCMetrics.JustifiedByCacheEvent(aInstance.getName(), UNSATComponent.get().getKey()));
+                return result;
+            }
+            final double preTime = watch.getElapsedTime();
+            final SolverResult decoratedResult = super.solve(aInstance, aTerminationCriterion, aSeed);
+            return SolverResult.addTime(decoratedResult, preTime);
+        } finally {
+            // the results are only meant for the components of this instance
+            if (outerResults != null) {
+                PREFETCHED.set(outerResults);
+            } else {
+                PREFETCHED.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the result prefetched from the proxy for the instance by the solve running on this thread, or null if there is none
+     */
+    static ContainmentCacheBatchResult getPrefetched(IContainmentCacheProxy proxy, StationPackingInstance instance) {
+        final PrefetchedResults prefetchedResults = PREFETCHED.get();
+        if (prefetchedResults == null || prefetchedResults.proxy != proxy) {
+            return null;
+        }
+        return prefetchedResults.results.get(instance);
+    }
+
+    @AllArgsConstructor
+    private static class PrefetchedResults {
+        // only the lookups made through the same proxy may be answered from these results
+        private final IContainmentCacheProxy proxy;
+        private final Map<StationPackingInstance, ContainmentCacheBatchResult> results;
+    }
+
+}
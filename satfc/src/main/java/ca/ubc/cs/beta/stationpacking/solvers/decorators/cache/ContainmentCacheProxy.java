@@ -21,31 +21,76 @@
  */
 package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacheShardRouter;
 import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
 import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
 
+import com.google.common.base.Preconditions;
+
 /**
  * Created by newmanne on 01/03/15.
  */
-@RequiredArgsConstructor
 @Slf4j
-public class ContainmentCacheProxy {
+public class ContainmentCacheProxy implements IContainmentCacheProxy {
 
-    private final RestTemplate restTemplate = CacheUtils.getRestTemplate();
-    private final String baseServerURL;
+    private final RestTemplate restTemplate;
+    // queries go to every shard of the server, see CacheShardRouter
+    private final CacheShardRouter router;
     private final CacheCoordinate coordinate;
+    // use the binary protocol (see CacheBinaryMessageConverter) rather than JSON
+    private final boolean binary;
+
+    // the cache is not queried when less than this much time (s) is left to solve, as the answer might come too late to be useful
+    private final double minRemainingTime;
+
+    /**
+     * @param restTemplate used to talk to the server, see {@link CacheUtils#createRestTemplate}
+     * @param baseServerURL the base URL of the server, or a comma separated list of the base URLs of the shards of a sharded server
+     * @param minRemainingTime see {@link #hasTimeToQuery}
+     */
+    public ContainmentCacheProxy(RestTemplate restTemplate, String baseServerURL, CacheCoordinate coordinate, boolean binary, double minRemainingTime) {
+        this.restTemplate = restTemplate;
+        this.router = new CacheShardRouter(baseServerURL);
+        this.coordinate = coordinate;
+        this.binary = binary;
+        this.minRemainingTime = minRemainingTime;
+    }
+
+    public ContainmentCacheProxy(String baseServerURL, CacheCoordinate coordinate, boolean binary) {
+        this(CacheUtils.getRestTemplate(), baseServerURL, coordinate, binary, 0);
+    }
+
+    public ContainmentCacheProxy(String baseServerURL, CacheCoordinate coordinate) {
+        this(baseServerURL, coordinate, false);
+    }
+
+    @Override
+    public boolean hasTimeToQuery(ITerminationCriterion terminationCriterion) {
+        final double remainingTime = terminationCriterion.getRemainingTime();
+        if (remainingTime < minRemainingTime) {
+            log.debug("Only {} s left, skipping the cache", remainingTime);
+            return false;
+        }
+        return true;
+    }
 
     /**
      * Object used to represent a cache lookup request
@@ -58,20 +103,97 @@ public class ContainmentCacheProxy {
         private CacheCoordinate coordinate;
     }
 
+    /**
+     * Object used to represent a cache lookup request for many instances at once
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ContainmentCacheBatchRequest {
+        private List<StationPackingInstance> instances;
+        private CacheCoordinate coordinate;
+    }
+
+    /**
+     * Both cache lookups for one instance of a batch request
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ContainmentCacheBatchResult {
+        private ContainmentCacheSATResult SATResult;
+        private ContainmentCacheUNSATResult UNSATResult;
+    }
+
+    /**
+     * Query the SAT and UNSAT caches for every instance in a single request.
+     * @return the results, in the same order as the instances
+     */
+    @Override
+    public List<ContainmentCacheBatchResult> prefetch(List<StationPackingInstance> instances) {
+        final ContainmentCacheBatchRequest request = new ContainmentCacheBatchRequest(instances, coordinate);
+        final List<List<ContainmentCacheBatchResult>> shardResults = router.fanOut(serverURL -> {
+            final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serverURL + "/v1/cache/query/batch");
+            final String uriString = builder.build().toUriString();
+            log.debug("Making a batch request to the cache server for {} instances {}", instances.size(), uriString);
+            final List<ContainmentCacheBatchResult> results = Arrays.asList(restTemplate.postForObject(uriString, CacheUtils.toRequestEntity(request, binary), ContainmentCacheBatchResult[].class));
+            Preconditions.checkState(results.size() == instances.size(), "Expected %s results from the cache server, got %s", instances.size(), results.size());
+            return results;
+        });
+        // an instance is solved if any shard solved it
+        final List<ContainmentCacheBatchResult> results = new ArrayList<>(shardResults.get(0));
+        for (List<ContainmentCacheBatchResult> otherShardResults : shardResults.subList(1, shardResults.size())) {
+            for (int i = 0; i < results.size(); i++) {
+                final ContainmentCacheBatchResult result = results.get(i);
+                final ContainmentCacheBatchResult otherResult = otherShardResults.get(i);
+                results.set(i, new ContainmentCacheBatchResult(
+                        result.getSATResult().isValid() ? result.getSATResult() : otherResult.getSATResult(),
+                        result.getUNSATResult().isValid() ? result.getUNSATResult() : otherResult.getUNSATResult()));
+            }
+        }
+        return results;
+    }
+
+    @Override
     public ContainmentCacheSATResult proveSATBySuperset(StationPackingInstance instance) {
-        final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(baseServerURL + "/v1/cache/query/SAT");
         final ContainmentCacheRequest request = new ContainmentCacheRequest(instance, coordinate);
-        final String uriString = builder.build().toUriString();
-        log.debug("Making a SAT request to the cache server for instance " + instance.getName() + " " + uriString);
-        return restTemplate.postForObject(uriString, request, ContainmentCacheSATResult.class);
+        return router.fanOutUntil(serverURL -> {
+            final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serverURL + "/v1/cache/query/SAT");
+            final String uriString = builder.build().toUriString();
+            log.debug("Making a SAT request to the cache server for instance " + instance.getName() + " " + uriString);
+            return restTemplate.postForObject(uriString, CacheUtils.toRequestEntity(request, binary), ContainmentCacheSATResult.class);
+        }, ContainmentCacheSATResult::isValid);
+    }
+
+    /**
+     * Ask every shard for the SAT entry that solves the most stations of the instance (see {@link ca.ubc.cs.beta.stationpacking.cache.ContainmentCache#findNearestSAT})
+     * @return the assignment of the nearest entry, restricted to the stations it solves, or a failure if no entry solves any station
+     */
+    @Override
+    public ContainmentCacheSATResult findNearestSAT(StationPackingInstance instance) {
+        final ContainmentCacheRequest request = new ContainmentCacheRequest(instance, coordinate);
+        final List<ContainmentCacheSATResult> shardResults = router.fanOut(serverURL -> {
+            final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serverURL + "/v1/cache/query/SAT/nearest");
+            final String uriString = builder.build().toUriString();
+            log.debug("Making a nearest SAT request to the cache server for instance " + instance.getName() + " " + uriString);
+            return restTemplate.postForObject(uriString, CacheUtils.toRequestEntity(request, binary), ContainmentCacheSATResult.class);
+        });
+        // the shard whose entry solves the most stations wins
+        return shardResults.stream()
+                .filter(ContainmentCacheSATResult::isValid)
+                .max(Comparator.comparingInt(result -> result.getResult().values().stream().mapToInt(Set::size).sum()))
+                .orElse(ContainmentCacheSATResult.failure());
     }
 
+    @Override
     public ContainmentCacheUNSATResult proveUNSATBySubset(StationPackingInstance instance) {
-        final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(baseServerURL + "/v1/cache/query/UNSAT");
         final ContainmentCacheRequest request = new ContainmentCacheRequest(instance, coordinate);
-        final String uriString = builder.build().toUriString();
-        log.debug("Making an UNSAT request to the cache server for instance " + instance.getName() + " " + uriString);
-        return restTemplate.postForObject(uriString, request, ContainmentCacheUNSATResult.class);
+        return router.fanOutUntil(serverURL -> {
+            final UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serverURL + "/v1/cache/query/UNSAT");
+            final String uriString = builder.build().toUriString();
+            log.debug("Making an UNSAT request to the cache server for instance " + instance.getName() + " " + uriString);
+            return restTemplate.postForObject(uriString, CacheUtils.toRequestEntity(request, binary), ContainmentCacheUNSATResult.class);
+        }, ContainmentCacheUNSATResult::isValid);
     }
 
 }
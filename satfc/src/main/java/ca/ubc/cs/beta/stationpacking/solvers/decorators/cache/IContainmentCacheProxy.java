@@ -0,0 +1,64 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import java.util.List;
+
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+/**
+ * The containment cache lookups the cache decorators make, whether the cache is on a server ({@link ContainmentCacheProxy}) or in this JVM ({@link ca.ubc.cs.beta.stationpacking.cache.EmbeddedContainmentCache}).
+ */
+public interface IContainmentCacheProxy {
+
+    /**
+     * @return false if the deadline is too close for a cache query to be worth it, in which case the caller should go straight to solving
+     */
+    boolean hasTimeToQuery(ITerminationCriterion terminationCriterion);
+
+    /**
+     * Query the SAT and UNSAT caches for every instance at once.
+     * Nothing is remembered: it is up to the caller to keep the results for as long as they are needed (see {@link ComponentPrefetchCacheDecorator})
+     * @return the results, in the same order as the instances
+     */
+    List<ContainmentCacheBatchResult> prefetch(List<StationPackingInstance> instances);
+
+    /**
+     * @return a cached solution to a superset of the instance's stations that also solves the instance, or a failure
+     */
+    ContainmentCacheSATResult proveSATBySuperset(StationPackingInstance instance);
+
+    /**
+     * @return the assignment of the SAT entry that solves the most stations of the instance, restricted to the stations it solves, or a failure if no entry solves any station
+     */
+    ContainmentCacheSATResult findNearestSAT(StationPackingInstance instance);
+
+    /**
+     * @return a cached UNSAT problem on a subset of the instance's stations, with domains no smaller than the instance's, or a failure
+     */
+    ContainmentCacheUNSATResult proveUNSATBySubset(StationPackingInstance instance);
+
+}
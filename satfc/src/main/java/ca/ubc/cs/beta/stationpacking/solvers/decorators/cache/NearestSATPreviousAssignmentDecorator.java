@@ -0,0 +1,86 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.metrics.SATFCMetrics;
+import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.certifiers.cgneighborhood.ConstraintGraphNeighborhoodPresolver;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.ASolverDecorator;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
+
+/**
+ * Gives the decorated solver (meant to be a {@link ConstraintGraphNeighborhoodPresolver}) the assignment of the nearest SAT entry of the cache as the previous assignment,
+ * when it covers more stations than the instance's own previous assignment. The presolver then only has to pack the few stations the entry misses, along with their neighbours.
+ */
+@Slf4j
+public class NearestSATPreviousAssignmentDecorator extends ASolverDecorator {
+
+    private final IContainmentCacheProxy proxy;
+
+    public NearestSATPreviousAssignmentDecorator(ISolver aSolver, IContainmentCacheProxy proxy) {
+        super(aSolver);
+        this.proxy = proxy;
+    }
+
+    @Override
+    public SolverResult solve(StationPackingInstance aInstance, ITerminationCriterion aTerminationCriterion, long aSeed) {
+        final Map<Station, Integer> previousAssignment = aInstance.getPreviousAssignment();
+        final long covered = aInstance.getStations().stream().filter(previousAssignment::containsKey).count();
+        if (covered == aInstance.getStations().size() || !proxy.hasTimeToQuery(aTerminationCriterion)) {
+            return fDecoratedSolver.solve(aInstance, aTerminationCriterion, aSeed);
+        }
+        final Watch watch = Watch.constructAutoStartWatch();
+        final ContainmentCacheSATResult nearest = proxy.findNearestSAT(aInstance);
+        SATFCMetrics.postEvent(new SATFCMetrics.TimingEvent(aInstance.getName(), SATFCMetrics.TimingEvent.FIND_NEAREST_SAT, watch.getElapsedTime()));
+        StationPackingInstance instance = aInstance;
+        if (nearest.isValid()) {
+            // the server only returns stations of the instance on channels of their domains, but the previous assignment must be valid whatever the server says
+            final Map<Station, Integer> nearestAssignment = new HashMap<>();
+            for (Map.Entry<Integer, Set<Station>> entry : nearest.getResult().entrySet()) {
+                for (Station station : entry.getValue()) {
+                    final Set<Integer> domain = aInstance.getDomains().get(station);
+                    if (domain != null && domain.contains(entry.getKey())) {
+                        nearestAssignment.put(station, entry.getKey());
+                    }
+                }
+            }
+            // two partial assignments taken from different packings may interfere with each other, so they are not merged
+            if (nearestAssignment.size() > covered) {
+                log.debug("Using cache entry {} as the previous assignment, it covers {} of the {} stations (the instance's own covers {})", nearest.getKey(), nearestAssignment.size(), aInstance.getStations().size(), covered);
+                instance = new StationPackingInstance(aInstance.getDomains(), nearestAssignment, aInstance.getMetadata());
+            }
+        }
+        final double preTime = watch.getElapsedTime();
+        return SolverResult.addTime(fDecoratedSolver.solve(instance, aTerminationCriterion, aSeed), preTime);
+    }
+
+}
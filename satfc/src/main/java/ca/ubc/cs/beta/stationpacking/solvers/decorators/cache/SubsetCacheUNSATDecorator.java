@@ -30,6 +30,7 @@ import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.ASolverDecorator;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchResult;
 import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
 import ca.ubc.cs.beta.stationpacking.utils.Watch;
 
@@ -38,19 +39,23 @@ import ca.ubc.cs.beta.stationpacking.utils.Watch;
 */
 @Slf4j
 public class SubsetCacheUNSATDecorator extends ASolverDecorator {
-    private final ContainmentCacheProxy containmentCache;
+    private final IContainmentCacheProxy containmentCache;
 
-    public SubsetCacheUNSATDecorator(ISolver aSolver, ContainmentCacheProxy containmentCacheProxy) {
+    public SubsetCacheUNSATDecorator(ISolver aSolver, IContainmentCacheProxy containmentCacheProxy) {
         super(aSolver);
         this.containmentCache = containmentCacheProxy;
     }
 
     @Override
     public SolverResult solve(StationPackingInstance aInstance, ITerminationCriterion aTerminationCriterion, long aSeed) {
+        if (!containmentCache.hasTimeToQuery(aTerminationCriterion)) {
+            return fDecoratedSolver.solve(aInstance, aTerminationCriterion, aSeed);
+        }
         Watch watch = Watch.constructAutoStartWatch();
         final SolverResult result;
         log.debug("Querying UNSAT cache");
-        ContainmentCacheUNSATResult proveUNSATBySubset = containmentCache.proveUNSATBySubset(aInstance);
+        final ContainmentCacheBatchResult prefetchedResult = ComponentPrefetchCacheDecorator.getPrefetched(containmentCache, aInstance);
+        ContainmentCacheUNSATResult proveUNSATBySubset = prefetchedResult != null ? prefetchedResult.getUNSATResult() : containmentCache.proveUNSATBySubset(aInstance);
         SATFCMetrics.postEvent(new SATFCMetrics.TimingEvent(aInstance.getName(), SATFCMetrics.TimingEvent.FIND_SUBSET, watch.getElapsedTime()));
         if (proveUNSATBySubset.isValid()) {
             log.debug("Found a subset in the UNSAT cache - declaring problem UNSAT due to problem " + proveUNSATBySubset.getKey());
@@ -34,6 +34,7 @@ import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.ASolverDecorator;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchResult;
 import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
 import ca.ubc.cs.beta.stationpacking.utils.Watch;
 
@@ -46,21 +47,25 @@ import com.google.common.collect.Sets;
 @Slf4j
 public class SupersetCacheSATDecorator extends ASolverDecorator {
 
-    private final ContainmentCacheProxy proxy;
+    private final IContainmentCacheProxy proxy;
 
-    public SupersetCacheSATDecorator(ISolver aSolver, ContainmentCacheProxy proxy, ICacher.CacheCoordinate coordinate) {
+    public SupersetCacheSATDecorator(ISolver aSolver, IContainmentCacheProxy proxy, ICacher.CacheCoordinate coordinate) {
         super(aSolver);
         this.proxy = proxy;
     }
 
     @Override
     public SolverResult solve(StationPackingInstance aInstance, ITerminationCriterion aTerminationCriterion, long aSeed) {
+        if (!proxy.hasTimeToQuery(aTerminationCriterion)) {
+            return fDecoratedSolver.solve(aInstance, aTerminationCriterion, aSeed);
+        }
         final Watch watch = Watch.constructAutoStartWatch();
 
         // test sat cache - supersets of the problem that are SAT directly correspond to solutions to the current problem!
         final SolverResult result;
         log.debug("Sending query to cache");
-        final ContainmentCacheSATResult containmentCacheSATResult = proxy.proveSATBySuperset(aInstance);
+        final ContainmentCacheBatchResult prefetchedResult = ComponentPrefetchCacheDecorator.getPrefetched(proxy, aInstance);
+        final ContainmentCacheSATResult containmentCacheSATResult = prefetchedResult != null ? prefetchedResult.getSATResult() : proxy.proveSATBySuperset(aInstance);
         SATFCMetrics.postEvent(new SATFCMetrics.TimingEvent(aInstance.getName(), SATFCMetrics.TimingEvent.FIND_SUPERSET, watch.getElapsedTime()));
         if (containmentCacheSATResult.isValid()) {
             final Map<Integer, Set<Station>> assignment = containmentCacheSATResult.getResult();
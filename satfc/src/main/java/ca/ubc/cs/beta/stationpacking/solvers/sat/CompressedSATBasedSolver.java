@@ -23,6 +23,7 @@ package ca.ubc.cs.beta.stationpacking.solvers.sat;
 
 import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.SATCompressor;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing.CNFPreprocessor;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.AbstractCompressedSATSolver;
 
 /**
@@ -36,4 +37,12 @@ public class CompressedSATBasedSolver extends GenericSATBasedSolver {
 		super(aSATSolver,aSATCompressor);
 	}
 
+	/**
+	 * @param aPreprocessor - simplifies each CNF before it is given to the SAT solver (the simplified CNFs are compressed as well).
+	 */
+	public CompressedSATBasedSolver(AbstractCompressedSATSolver aSATSolver, SATCompressor aSATCompressor, IConstraintManager aConstraintManager, CNFPreprocessor aPreprocessor)
+	{
+		super(aSATSolver,aSATCompressor,aPreprocessor);
+	}
+
 }
@@ -21,6 +21,7 @@
  */
 package ca.ubc.cs.beta.stationpacking.solvers.sat;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -40,6 +41,8 @@ import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.base.Literal;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.ISATDecoder;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.ISATEncoder;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing.CNFPreprocessor;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing.PreprocessedCNF;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.ISATSolver;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.base.SATSolverResult;
 import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
@@ -54,10 +57,20 @@ public class GenericSATBasedSolver implements ISolver {
 
     private final ISATEncoder fSATEncoder;
     private final ISATSolver fSATSolver;
+    // null unless CNFs are simplified before being given to the SAT solver
+    private final CNFPreprocessor fPreprocessor;
 
     protected GenericSATBasedSolver(ISATSolver aSATSolver, ISATEncoder aSATEncoder) {
+        this(aSATSolver, aSATEncoder, null);
+    }
+
+    /**
+     * @param aPreprocessor - simplifies each CNF before it is given to the SAT solver, null to give the CNFs as encoded.
+     */
+    protected GenericSATBasedSolver(ISATSolver aSATSolver, ISATEncoder aSATEncoder, CNFPreprocessor aPreprocessor) {
         fSATEncoder = aSATEncoder;
         fSATSolver = aSATSolver;
+        fPreprocessor = aPreprocessor;
     }
 
     @Override
@@ -73,17 +86,41 @@ public class GenericSATBasedSolver implements ISolver {
         CNF aCNF = aEncoding.getKey();
         ISATDecoder aDecoder = aEncoding.getValue();
         log.debug("CNF has {} clauses.", aCNF.size());
+
+        PreprocessedCNF aPreprocessedCNF = null;
+        if (fPreprocessor != null) {
+            log.debug("Preprocessing the CNF...");
+            final Watch preprocessingWatch = Watch.constructAutoStartWatch();
+            aPreprocessedCNF = fPreprocessor.preprocess(aCNF, aTerminationCriterion);
+            SATFCMetrics.postEvent(new SATFCMetrics.TimingEvent(aInstance.getName(), SATFCMetrics.TimingEvent.PREPROCESS_CNF, preprocessingWatch.getElapsedTime()));
+        }
+        final boolean solvedByPreprocessing = aPreprocessedCNF != null && (aPreprocessedCNF.isUnsat() || aPreprocessedCNF.isSat());
         watch.stop();
         
-        if (aTerminationCriterion.hasToStop()) {
+        if (!solvedByPreprocessing && aTerminationCriterion.hasToStop()) {
             log.debug("All time spent.");
             return new SolverResult(SATResult.TIMEOUT, watch.getElapsedTime());
         }
         else
         {
 
-            log.debug("Solving the subproblem CNF with " + aTerminationCriterion.getRemainingTime() + " s remaining.");
-            SATSolverResult satSolverResult = fSATSolver.solve(aCNF, aTerminationCriterion, aSeed);
+            SATSolverResult satSolverResult;
+            if (solvedByPreprocessing) {
+                log.debug("Preprocessing solved the CNF.");
+                satSolverResult = aPreprocessedCNF.isUnsat() ?
+                        new SATSolverResult(SATResult.UNSAT, 0.0, new HashSet<Literal>()) :
+                        new SATSolverResult(SATResult.SAT, 0.0, aPreprocessedCNF.reconstruct(Collections.<Literal>emptySet()));
+            } else if (aPreprocessedCNF != null) {
+                log.debug("Solving the preprocessed subproblem CNF ({} clauses) with {} s remaining.", aPreprocessedCNF.getCNF().size(), aTerminationCriterion.getRemainingTime());
+                satSolverResult = fSATSolver.solve(aPreprocessedCNF.getCNF(), aTerminationCriterion, aSeed);
+                if (satSolverResult.getResult().equals(SATResult.SAT)) {
+                    // back to the variables of the encoding
+                    satSolverResult = new SATSolverResult(SATResult.SAT, satSolverResult.getRuntime(), aPreprocessedCNF.reconstruct(satSolverResult.getAssignment()));
+                }
+            } else {
+                log.debug("Solving the subproblem CNF with " + aTerminationCriterion.getRemainingTime() + " s remaining.");
+                satSolverResult = fSATSolver.solve(aCNF, aTerminationCriterion, aSeed);
+            }
             watch.start();
     
             log.debug("Parsing result.");
@@ -104,8 +141,8 @@ public class GenericSATBasedSolver implements ISolver {
                         aLitteralChecker.put(aVariable, aSign);
                     }
     
-                    //If the litteral is positive, then we keep it as it is an assigned station to a channel.
-                    if (aSign) {
+                    //If the litteral is positive, then we keep it as it is an assigned station to a channel (unless it is an auxiliary variable of the encoding).
+                    if (aSign && aDecoder.isStationChannelVariable(aVariable)) {
                         Pair<Station, Integer> aStationChannelPair = aDecoder.decode(aVariable);
                         Station aStation = aStationChannelPair.getKey();
                         Integer aChannel = aStationChannelPair.getValue();
@@ -134,7 +171,7 @@ public class GenericSATBasedSolver implements ISolver {
             log.debug("Result:");
             log.debug(solverResult.toParsableString());
     
-            SATFCMetrics.postEvent(new SATFCMetrics.SolvedByEvent(aInstance.getName(), SATFCMetrics.SolvedByEvent.CLASP, solverResult.getResult()));
+            SATFCMetrics.postEvent(new SATFCMetrics.SolvedByEvent(aInstance.getName(), solvedByPreprocessing ? SATFCMetrics.SolvedByEvent.CNF_PREPROCESSING : SATFCMetrics.SolvedByEvent.CLASP, solverResult.getResult()));
             return solverResult;
         }
     }
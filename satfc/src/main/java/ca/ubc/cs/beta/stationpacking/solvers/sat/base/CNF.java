@@ -39,7 +39,9 @@ import org.apache.commons.lang3.StringUtils;
  */
 public class CNF implements Collection<Clause>{
 
-    private final Collection<Clause> fClauses;
+    private Collection<Clause> fClauses;
+    //The clauses in packed form, until some code needs them as objects (then null).
+    private PackedCNF fPacked;
 
     public CNF()
     {
@@ -47,6 +49,35 @@ public class CNF implements Collection<Clause>{
         //fClauses = new HashSet<Clause>();
     }
 
+    /**
+     * A CNF backed by packed clauses, which only become clause objects if some code iterates over or modifies them.
+     * @param aPacked - the clauses.
+     */
+    public CNF(PackedCNF aPacked)
+    {
+        fClauses = null;
+        fPacked = aPacked;
+    }
+
+    //Turns the packed clauses into objects, before they are looked at or changed as such.
+    private Collection<Clause> clauses()
+    {
+        if(fPacked != null)
+        {
+            fClauses = fPacked.toClauses();
+            fPacked = null;
+        }
+        return fClauses;
+    }
+
+    /**
+     * @return the clauses in packed form, packing them if they were not already.
+     */
+    public PackedCNF getPacked()
+    {
+        return fPacked != null ? fPacked : PackedCNF.of(fClauses);
+    }
+
     /**
      * Builds and returns the <a href="http://fairmut3x.wordpress.com/2011/07/29/cnf-conjunctive-normal-form-dimacs-format-explained/">DIMACS</a> string representation of the CNF.
      * @param aComments - the comments to add at the beginning of the CNF, if any.
@@ -54,6 +85,11 @@ public class CNF implements Collection<Clause>{
      */
     public String toDIMACS(String[] aComments)
     {
+        if(fPacked != null)
+        {
+            return fPacked.toDIMACS(aComments);
+        }
+
         StringBuilder aStringBuilder = new StringBuilder();
 
         int aNumClauses = fClauses.size();
@@ -99,6 +135,18 @@ public class CNF implements Collection<Clause>{
     {
         Collection<Long> aVariables = new HashSet<Long>();
 
+        if(fPacked != null)
+        {
+            for(int i=0;i<fPacked.getNumClauses();i++)
+            {
+                for(int j=0;j<fPacked.getClauseSize(i);j++)
+                {
+                    aVariables.add(Math.abs(fPacked.getLiteral(i, j)));
+                }
+            }
+            return aVariables;
+        }
+
         for(Clause aClause : fClauses)
         {
             for(Literal aLitteral : aClause)
@@ -114,7 +162,7 @@ public class CNF implements Collection<Clause>{
     public String toString()
     {
         ArrayDeque<String> aClauseStrings = new ArrayDeque<String>();
-        for(Clause aClause : fClauses)
+        for(Clause aClause : clauses())
         {
             aClauseStrings.add("("+aClause.toString()+")");
         }
@@ -136,32 +184,32 @@ public class CNF implements Collection<Clause>{
 
     @Override
     public int size() {
-        return fClauses.size();
+        return fPacked != null ? fPacked.getNumClauses() : fClauses.size();
     }
 
     @Override
     public boolean isEmpty() {
-        return fClauses.isEmpty();
+        return size() == 0;
     }
 
     @Override
     public boolean contains(Object o) {
-        return fClauses.contains(o);
+        return clauses().contains(o);
     }
 
     @Override
     public Iterator<Clause> iterator() {
-        return fClauses.iterator();
+        return clauses().iterator();
     }
 
     @Override
     public Object[] toArray() {
-        return fClauses.toArray();
+        return clauses().toArray();
     }
 
     @Override
     public <T> T[] toArray(T[] a) {
-        return fClauses.toArray(a);
+        return clauses().toArray(a);
     }
 
     @Override
@@ -172,17 +220,17 @@ public class CNF implements Collection<Clause>{
             throw new IllegalArgumentException("Cannot add a null clause to a CNF.");
         }
 
-        return fClauses.add(e);
+        return clauses().add(e);
     }
 
     @Override
     public boolean remove(Object o) {
-        return fClauses.remove(o);
+        return clauses().remove(o);
     }
 
     @Override
     public boolean containsAll(Collection<?> c) {
-        return fClauses.containsAll(c);
+        return clauses().containsAll(c);
     }
 
     @Override
@@ -193,22 +241,23 @@ public class CNF implements Collection<Clause>{
             throw new IllegalArgumentException("Cannot add a null clause to a CNF.");
         }
 
-        return fClauses.addAll(c);
+        return clauses().addAll(c);
     }
 
     @Override
     public boolean retainAll(Collection<?> c) {
-        return fClauses.retainAll(c);
+        return clauses().retainAll(c);
     }
 
     @Override
     public boolean removeAll(Collection<?> c) {
-        return fClauses.remove(c);
+        return clauses().remove(c);
     }
 
     @Override
     public void clear() {
-        fClauses.clear();
+        fPacked = null;
+        fClauses = new ArrayDeque<Clause>();
     }
 
 }
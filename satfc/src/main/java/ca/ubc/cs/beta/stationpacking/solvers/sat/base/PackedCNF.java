@@ -0,0 +1,439 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.base;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A CNF packed in flat primitive arrays: the literals of every clause one after the other, and the offset at which each clause starts.
+ * A literal is stored DIMACS style, as its variable for a positive literal and minus its variable for a negated one.
+ * Literals are ints, unless some variable does not fit in an int (e.g. station IDs paired with channels without compression), in which case they are all longs.
+ * <p>
+ * Meant to be written clause by clause through a {@link Builder}, without allocating an object per clause or literal. Immutable once built.
+ * </p>
+ */
+public class PackedCNF {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	//The literals, in one of the two arrays (the other is null).
+	private final int[] fLiterals;
+	private final long[] fWideLiterals;
+	//Clause i is made of the literals fClauseStarts[i] (inclusive) to fClauseStarts[i+1] (exclusive).
+	private final int[] fClauseStarts;
+	private final int fNumClauses;
+	private final long fMaxVariable;
+
+	private PackedCNF(int[] aLiterals, long[] aWideLiterals, int[] aClauseStarts, int aNumClauses, long aMaxVariable)
+	{
+		fLiterals = aLiterals;
+		fWideLiterals = aWideLiterals;
+		fClauseStarts = aClauseStarts;
+		fNumClauses = aNumClauses;
+		fMaxVariable = aMaxVariable;
+	}
+
+	/**
+	 * @return a builder for a new packed CNF.
+	 */
+	public static Builder builder()
+	{
+		return new Builder();
+	}
+
+	/**
+	 * @param aClauses - clauses to pack.
+	 * @return the packed version of the given clauses, in the same order.
+	 */
+	public static PackedCNF of(Collection<Clause> aClauses)
+	{
+		Builder aBuilder = new Builder();
+		for(Clause aClause : aClauses)
+		{
+			for(Literal aLiteral : aClause)
+			{
+				aBuilder.addLiteral(aLiteral.getVariable(), aLiteral.getSign());
+			}
+			aBuilder.endClause();
+		}
+		return aBuilder.build();
+	}
+
+	/**
+	 * @return the number of clauses.
+	 */
+	public int getNumClauses()
+	{
+		return fNumClauses;
+	}
+
+	/**
+	 * @return the number of literals, over all clauses.
+	 */
+	public int getNumLiterals()
+	{
+		return fClauseStarts[fNumClauses];
+	}
+
+	/**
+	 * @return the largest variable, 0 if there are no literals.
+	 */
+	public long getMaxVariable()
+	{
+		return fMaxVariable;
+	}
+
+	/**
+	 * @return true if the literals are stored as ints, i.e. every literal fits in an int.
+	 */
+	public boolean isNarrow()
+	{
+		return fLiterals != null;
+	}
+
+	/**
+	 * @param aClause - a clause index.
+	 * @return the number of literals in the clause.
+	 */
+	public int getClauseSize(int aClause)
+	{
+		return fClauseStarts[aClause+1]-fClauseStarts[aClause];
+	}
+
+	/**
+	 * @param aClause - a clause index.
+	 * @param aIndex - the index of a literal in the clause.
+	 * @return the literal, DIMACS style (minus its variable if it is negated).
+	 */
+	public long getLiteral(int aClause, int aIndex)
+	{
+		return literal(fClauseStarts[aClause]+aIndex);
+	}
+
+	private long literal(int aPosition)
+	{
+		return fLiterals != null ? fLiterals[aPosition] : fWideLiterals[aPosition];
+	}
+
+	/**
+	 * @return a copy of every literal, DIMACS style, clause after clause. Only available if the literals fit in ints (see {@link #isNarrow()}).
+	 */
+	public int[] getLiterals()
+	{
+		if(fLiterals == null)
+		{
+			throw new IllegalStateException("The literals of this CNF do not fit in ints.");
+		}
+		return Arrays.copyOf(fLiterals, getNumLiterals());
+	}
+
+	/**
+	 * @return a copy of the clause offsets: clause i spans the literals from offset i (inclusive) to offset i+1 (exclusive), there is one more offset than there are clauses.
+	 */
+	public int[] getClauseStarts()
+	{
+		return Arrays.copyOf(fClauseStarts, fNumClauses+1);
+	}
+
+	/**
+	 * @return the clauses as clause and literal objects, for the code that works on those.
+	 */
+	public Collection<Clause> toClauses()
+	{
+		Collection<Clause> aClauses = new ArrayDeque<Clause>(fNumClauses);
+		for(int i=0;i<fNumClauses;i++)
+		{
+			Clause aClause = new Clause();
+			for(int j=fClauseStarts[i];j<fClauseStarts[i+1];j++)
+			{
+				long aLiteral = literal(j);
+				aClause.add(new Literal(Math.abs(aLiteral), aLiteral > 0));
+			}
+			aClauses.add(aClause);
+		}
+		return aClauses;
+	}
+
+	/**
+	 * @param aComments - the comments to add at the beginning of the CNF, if any.
+	 * @return the DIMACS string representation of the CNF.
+	 * @see CNF#toDIMACS(String[])
+	 */
+	public String toDIMACS(String[] aComments)
+	{
+		StringBuilder aStringBuilder = new StringBuilder(getNumLiterals()*8+64);
+		if(aComments != null)
+		{
+			for(String aComment : aComments)
+			{
+				aStringBuilder.append("c ").append(aComment.trim()).append('\n');
+			}
+		}
+		aStringBuilder.append("p cnf ").append(fMaxVariable).append(' ').append(fNumClauses).append('\n');
+		for(int i=0;i<fNumClauses;i++)
+		{
+			for(int j=fClauseStarts[i];j<fClauseStarts[i+1];j++)
+			{
+				if(j>fClauseStarts[i])
+				{
+					aStringBuilder.append(' ');
+				}
+				aStringBuilder.append(literal(j));
+			}
+			aStringBuilder.append(" 0\n");
+		}
+		return aStringBuilder.toString();
+	}
+
+	/**
+	 * @return the number of ints written by {@link #writeTerminatedLiterals(IntBuffer)}: every literal, plus a 0 per clause.
+	 */
+	public long getTerminatedLength()
+	{
+		return (long) getNumLiterals()+fNumClauses;
+	}
+
+	/**
+	 * Writes every literal, DIMACS style, each clause followed by a 0 (the clauses of the DIMACS representation, without the text).
+	 * Lets the clauses be written straight to where they are read from, e.g. native memory. Only available if the literals fit in ints (see {@link #isNarrow()}).
+	 * @param aBuffer - a buffer with at least {@link #getTerminatedLength()} ints remaining.
+	 */
+	public void writeTerminatedLiterals(IntBuffer aBuffer)
+	{
+		if(fLiterals == null)
+		{
+			throw new IllegalStateException("The literals of this CNF do not fit in ints.");
+		}
+		for(int i=0;i<fNumClauses;i++)
+		{
+			aBuffer.put(fLiterals, fClauseStarts[i], fClauseStarts[i+1]-fClauseStarts[i]);
+			aBuffer.put(0);
+		}
+	}
+
+	/**
+	 * @return the number of bytes of the DIMACS representation of the CNF without comments, as written by {@link #writeDIMACS(ByteBuffer)}.
+	 */
+	public long getDIMACSLength()
+	{
+		long aLength = "p cnf ".length()+length(fMaxVariable)+1+length(fNumClauses)+1;
+		for(int i=0;i<fNumClauses;i++)
+		{
+			for(int j=fClauseStarts[i];j<fClauseStarts[i+1];j++)
+			{
+				aLength += length(literal(j))+1;
+			}
+			//The terminating 0, preceded by a space if the clause is empty.
+			aLength += fClauseStarts[i+1]>fClauseStarts[i] ? 2 : 3;
+		}
+		return aLength;
+	}
+
+	/**
+	 * Writes the DIMACS representation of the CNF, without comments, as ASCII bytes (the same text as {@link #toDIMACS(String[])}).
+	 * Lets the representation be written straight to where it is read from, e.g. native memory, without building a string first.
+	 * @param aBuffer - a buffer with at least {@link #getDIMACSLength()} bytes remaining.
+	 */
+	public void writeDIMACS(ByteBuffer aBuffer)
+	{
+		byte[] aDigits = new byte[20];
+		putASCII(aBuffer, "p cnf ");
+		putNumber(aBuffer, fMaxVariable, aDigits);
+		aBuffer.put((byte) ' ');
+		putNumber(aBuffer, fNumClauses, aDigits);
+		aBuffer.put((byte) '\n');
+		for(int i=0;i<fNumClauses;i++)
+		{
+			for(int j=fClauseStarts[i];j<fClauseStarts[i+1];j++)
+			{
+				if(j>fClauseStarts[i])
+				{
+					aBuffer.put((byte) ' ');
+				}
+				putNumber(aBuffer, literal(j), aDigits);
+			}
+			putASCII(aBuffer, " 0\n");
+		}
+	}
+
+	//The number of characters of a number in base 10.
+	private static int length(long aNumber)
+	{
+		int aLength = aNumber<0 ? 2 : 1;
+		for(long aRest = Math.abs(aNumber)/10;aRest>0;aRest /= 10)
+		{
+			aLength++;
+		}
+		return aLength;
+	}
+
+	private static void putNumber(ByteBuffer aBuffer, long aNumber, byte[] aDigits)
+	{
+		if(aNumber<0)
+		{
+			aBuffer.put((byte) '-');
+		}
+		long aRest = Math.abs(aNumber);
+		int aNumDigits = 0;
+		do
+		{
+			aDigits[aNumDigits++] = (byte) ('0'+aRest%10);
+			aRest /= 10;
+		}
+		while(aRest>0);
+		while(aNumDigits>0)
+		{
+			aBuffer.put(aDigits[--aNumDigits]);
+		}
+	}
+
+	private static void putASCII(ByteBuffer aBuffer, String aString)
+	{
+		for(int i=0;i<aString.length();i++)
+		{
+			aBuffer.put((byte) aString.charAt(i));
+		}
+	}
+
+	/**
+	 * Writes a packed CNF one clause at a time: add the literals of a clause, then end it. Not thread safe.
+	 */
+	public static class Builder {
+
+		private int[] fLiterals = new int[INITIAL_CAPACITY];
+		//Only used once a literal does not fit in an int, then fLiterals is null.
+		private long[] fWideLiterals;
+		private int[] fClauseStarts = new int[INITIAL_CAPACITY];
+		private int fNumLiterals = 0;
+		private int fNumClauses = 0;
+		private long fMaxVariable = 0;
+		private boolean fBuilt = false;
+
+		private Builder()
+		{
+			fClauseStarts[0] = 0;
+		}
+
+		/**
+		 * Adds a literal to the current clause.
+		 * @param aVariable - the literal's (positive) variable.
+		 * @param aSign - the literal's sign (true=not negated, false=negated).
+		 * @return this builder.
+		 */
+		public Builder addLiteral(long aVariable, boolean aSign)
+		{
+			if(fBuilt)
+			{
+				throw new IllegalStateException("Cannot add literals to a CNF that was already built.");
+			}
+			if(aVariable<=0)
+			{
+				throw new IllegalArgumentException("Cannot pack a literal with variable value <= 0 (variable: "+aVariable+").");
+			}
+			if(aVariable>fMaxVariable)
+			{
+				fMaxVariable = aVariable;
+			}
+			long aLiteral = aSign ? aVariable : -aVariable;
+			if(fLiterals != null && aVariable > Integer.MAX_VALUE)
+			{
+				widen();
+			}
+			if(fLiterals != null)
+			{
+				if(fNumLiterals == fLiterals.length)
+				{
+					fLiterals = Arrays.copyOf(fLiterals, fLiterals.length*2);
+				}
+				fLiterals[fNumLiterals++] = (int) aLiteral;
+			}
+			else
+			{
+				if(fNumLiterals == fWideLiterals.length)
+				{
+					fWideLiterals = Arrays.copyOf(fWideLiterals, fWideLiterals.length*2);
+				}
+				fWideLiterals[fNumLiterals++] = aLiteral;
+			}
+			return this;
+		}
+
+		private void widen()
+		{
+			fWideLiterals = new long[fLiterals.length];
+			for(int i=0;i<fNumLiterals;i++)
+			{
+				fWideLiterals[i] = fLiterals[i];
+			}
+			fLiterals = null;
+		}
+
+		/**
+		 * Ends the current clause, made of the literals added since the previous clause ended (possibly none).
+		 * @return this builder.
+		 */
+		public Builder endClause()
+		{
+			if(fBuilt)
+			{
+				throw new IllegalStateException("Cannot add clauses to a CNF that was already built.");
+			}
+			if(fNumClauses+1 == fClauseStarts.length)
+			{
+				fClauseStarts = Arrays.copyOf(fClauseStarts, fClauseStarts.length*2);
+			}
+			fClauseStarts[++fNumClauses] = fNumLiterals;
+			return this;
+		}
+
+		/**
+		 * @return the number of clauses ended so far.
+		 */
+		public int getNumClauses()
+		{
+			return fNumClauses;
+		}
+
+		/**
+		 * @return the packed CNF, made of the clauses ended so far. The builder cannot be used afterwards.
+		 */
+		public PackedCNF build()
+		{
+			if(fBuilt)
+			{
+				throw new IllegalStateException("The CNF was already built.");
+			}
+			if(fClauseStarts[fNumClauses] != fNumLiterals)
+			{
+				throw new IllegalStateException("The last clause was not ended.");
+			}
+			fBuilt = true;
+			return new PackedCNF(fLiterals, fWideLiterals, fClauseStarts, fNumClauses, fMaxVariable);
+		}
+
+	}
+
+}
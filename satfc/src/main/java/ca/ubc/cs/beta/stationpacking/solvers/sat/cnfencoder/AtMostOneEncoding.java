@@ -0,0 +1,171 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.PackedCNF;
+
+/**
+ * Ways to encode that at most one of some SAT variables is true, e.g. that a station is on at most one of its domain channels.
+ * The encodings other than {@link #PAIRWISE} introduce auxiliary variables to need far fewer clauses on large domains.
+ * Domains of at most 4 channels are always encoded pairwise, which is then as compact.
+ */
+public enum AtMostOneEncoding {
+
+	/**
+	 * A clause for every pair of variables: n(n-1)/2 clauses, no auxiliary variable.
+	 */
+	PAIRWISE {
+		@Override
+		public void encode(long[] aVariables, LongSupplier aAuxiliaryVariables, PackedCNF.Builder aBuilder)
+		{
+			pairwise(aVariables, 0, aVariables.length, aBuilder);
+		}
+	},
+
+	/**
+	 * Sinz's sequential counter: auxiliary variable s_i is true if one of the first i+1 variables is, 3n-4 clauses and n-1 auxiliary variables.
+	 */
+	SEQUENTIAL {
+		@Override
+		public void encode(long[] aVariables, LongSupplier aAuxiliaryVariables, PackedCNF.Builder aBuilder)
+		{
+			int n = aVariables.length;
+			if(n <= PAIRWISE_THRESHOLD)
+			{
+				pairwise(aVariables, 0, n, aBuilder);
+				return;
+			}
+			long[] aCounters = auxiliaryVariables(n-1, aAuxiliaryVariables);
+			clause(aBuilder, aVariables[0], false, aCounters[0], true);
+			for(int i=1;i<n-1;i++)
+			{
+				clause(aBuilder, aVariables[i], false, aCounters[i], true);
+				clause(aBuilder, aCounters[i-1], false, aCounters[i], true);
+				clause(aBuilder, aVariables[i], false, aCounters[i-1], false);
+			}
+			clause(aBuilder, aVariables[n-1], false, aCounters[n-2], false);
+		}
+	},
+
+	/**
+	 * Klieber and Kwon's commander encoding: the variables are split in groups of 3, each with a commander variable that is true exactly when one variable of its group is,
+	 * at most one variable of each group is true (pairwise), and at most one commander is true (encoded the same way, recursively). About 3.5n clauses and n/2 auxiliary variables.
+	 */
+	COMMANDER {
+		@Override
+		public void encode(long[] aVariables, LongSupplier aAuxiliaryVariables, PackedCNF.Builder aBuilder)
+		{
+			int n = aVariables.length;
+			if(n <= PAIRWISE_THRESHOLD)
+			{
+				pairwise(aVariables, 0, n, aBuilder);
+				return;
+			}
+			long[] aCommanders = auxiliaryVariables((n+COMMANDER_GROUP_SIZE-1)/COMMANDER_GROUP_SIZE, aAuxiliaryVariables);
+			for(int g=0;g<aCommanders.length;g++)
+			{
+				int aStart = g*COMMANDER_GROUP_SIZE;
+				int aEnd = Math.min(n, aStart+COMMANDER_GROUP_SIZE);
+				pairwise(aVariables, aStart, aEnd, aBuilder);
+				//The commander is true if and only if a variable of its group is.
+				for(int i=aStart;i<aEnd;i++)
+				{
+					clause(aBuilder, aVariables[i], false, aCommanders[g], true);
+				}
+				aBuilder.addLiteral(aCommanders[g], false);
+				for(int i=aStart;i<aEnd;i++)
+				{
+					aBuilder.addLiteral(aVariables[i], true);
+				}
+				aBuilder.endClause();
+			}
+			encode(aCommanders, aAuxiliaryVariables, aBuilder);
+		}
+	},
+
+	/**
+	 * Chen's product encoding: the variables are laid out in a grid of about sqrt(n) by sqrt(n), a variable implies the auxiliary variables of its row and of its column,
+	 * and at most one row and at most one column variable are true (encoded the same way, recursively). About 2n clauses and 2sqrt(n) auxiliary variables.
+	 */
+	PRODUCT {
+		@Override
+		public void encode(long[] aVariables, LongSupplier aAuxiliaryVariables, PackedCNF.Builder aBuilder)
+		{
+			int n = aVariables.length;
+			if(n <= PAIRWISE_THRESHOLD)
+			{
+				pairwise(aVariables, 0, n, aBuilder);
+				return;
+			}
+			int aNumRows = (int) Math.ceil(Math.sqrt(n));
+			int aNumColumns = (n+aNumRows-1)/aNumRows;
+			long[] aRows = auxiliaryVariables(aNumRows, aAuxiliaryVariables);
+			long[] aColumns = auxiliaryVariables(aNumColumns, aAuxiliaryVariables);
+			for(int i=0;i<n;i++)
+			{
+				clause(aBuilder, aVariables[i], false, aRows[i/aNumColumns], true);
+				clause(aBuilder, aVariables[i], false, aColumns[i%aNumColumns], true);
+			}
+			encode(aRows, aAuxiliaryVariables, aBuilder);
+			encode(aColumns, aAuxiliaryVariables, aBuilder);
+		}
+	};
+
+	//Up to this many variables, the pairwise encoding needs no more clauses than the others.
+	private static final int PAIRWISE_THRESHOLD = 4;
+	private static final int COMMANDER_GROUP_SIZE = 3;
+
+	/**
+	 * Writes the clauses that allow at most one of the given variables to be true.
+	 * @param aVariables - the variables.
+	 * @param aAuxiliaryVariables - gives a new auxiliary variable on each call, one that appears nowhere else in the CNF.
+	 * @param aBuilder - the CNF the clauses are written to.
+	 */
+	public abstract void encode(long[] aVariables, LongSupplier aAuxiliaryVariables, PackedCNF.Builder aBuilder);
+
+	private static void pairwise(long[] aVariables, int aStart, int aEnd, PackedCNF.Builder aBuilder)
+	{
+		for(int i=aStart;i<aEnd;i++)
+		{
+			for(int j=i+1;j<aEnd;j++)
+			{
+				clause(aBuilder, aVariables[i], false, aVariables[j], false);
+			}
+		}
+	}
+
+	private static long[] auxiliaryVariables(int aNumber, LongSupplier aAuxiliaryVariables)
+	{
+		long[] aVariables = new long[aNumber];
+		Arrays.setAll(aVariables, i -> aAuxiliaryVariables.getAsLong());
+		return aVariables;
+	}
+
+	private static void clause(PackedCNF.Builder aBuilder, long aVariable1, boolean aSign1, long aVariable2, boolean aSign2)
+	{
+		aBuilder.addLiteral(aVariable1, aSign1).addLiteral(aVariable2, aSign2).endClause();
+	}
+
+}
@@ -38,4 +38,13 @@ public interface ISATDecoder {
 	 */
 	public Pair<Station,Integer> decode(long aVariable);
 	
+	/**
+	 * @param aVariable - a SAT variable.
+	 * @return - true if the variable stands for a station and channel, false if it is an auxiliary variable of the encoding (e.g. of an {@link AtMostOneEncoding}), which cannot be decoded.
+	 */
+	public default boolean isStationChannelVariable(long aVariable)
+	{
+		return true;
+	}
+	
 }
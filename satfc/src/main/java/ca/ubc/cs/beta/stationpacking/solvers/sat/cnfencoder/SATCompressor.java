@@ -23,6 +23,7 @@ package ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder;
 
 import org.apache.commons.math3.util.Pair;
 
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
@@ -40,16 +41,36 @@ import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.base.CompressionBije
 public class SATCompressor implements ISATEncoder {
 	
 	private final IConstraintManager fConstraintManager;
+	private final StationIndex fStationIndex;
+	private final AtMostOneEncoding fAtMostOneEncoding;
 	
 	public SATCompressor(IConstraintManager aConstraintManager)
+	{
+		this(aConstraintManager, StationIndex.IDENTITY);
+	}
+	
+	/**
+	 * @param aStationIndex - numbers the stations before they are paired with channels into SAT variables.
+	 */
+	public SATCompressor(IConstraintManager aConstraintManager, StationIndex aStationIndex)
+	{
+		this(aConstraintManager, aStationIndex, AtMostOneEncoding.PAIRWISE);
+	}
+	
+	/**
+	 * @param aAtMostOneEncoding - how the clauses that keep a station on at most one channel are encoded. Its auxiliary variables are compressed like the others.
+	 */
+	public SATCompressor(IConstraintManager aConstraintManager, StationIndex aStationIndex, AtMostOneEncoding aAtMostOneEncoding)
 	{
 		fConstraintManager = aConstraintManager;
+		fStationIndex = aStationIndex;
+		fAtMostOneEncoding = aAtMostOneEncoding;
 	}
 
 	@Override
 	public Pair<CNF, ISATDecoder> encode(StationPackingInstance aInstance) {
 		
-		SATEncoder aSATEncoder = new SATEncoder(fConstraintManager,new CompressionBijection<Long>());
+		SATEncoder aSATEncoder = new SATEncoder(fConstraintManager,new CompressionBijection<Long>(),fStationIndex,fAtMostOneEncoding);
 		
 		Pair<CNF,ISATDecoder> aEncoding = aSATEncoder.encode(aInstance);
 		
@@ -58,7 +79,7 @@ public class SATCompressor implements ISATEncoder {
 	}
 
     public SATEncoder.CNFEncodedProblem encodeWithAssignment(StationPackingInstance aInstance) {
-        SATEncoder aSATEncoder = new SATEncoder(fConstraintManager,new CompressionBijection<Long>());
+        SATEncoder aSATEncoder = new SATEncoder(fConstraintManager,new CompressionBijection<Long>(),fStationIndex,fAtMostOneEncoding);
         SATEncoder.CNFEncodedProblem aEncoding = aSATEncoder.encodeWithAssignment(aInstance);
         return aEncoding;
 
@@ -33,11 +33,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.math3.util.Pair;
 
 import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
 import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
+import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.InterferenceAdjacency;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
-import ca.ubc.cs.beta.stationpacking.solvers.sat.base.Clause;
-import ca.ubc.cs.beta.stationpacking.solvers.sat.base.Literal;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.PackedCNF;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.base.IBijection;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.base.IdentityBijection;
 
@@ -52,8 +53,16 @@ import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.base.IdentityBijecti
 @Slf4j
 public class SATEncoder implements ISATEncoder {
 	
+	/**
+	 * The auxiliary variables of a station (see {@link AtMostOneEncoding}) are paired with "channels" from this one up, which no real channel reaches.
+	 */
+	public static final int AUXILIARY_CHANNEL_OFFSET = 1000;
+	
 	private final IConstraintManager fConstraintManager;
 	private final IBijection<Long,Long> fBijection;
+	// numbers the stations in the variables, so that variables stay small whatever the station IDs
+	private final StationIndex fStationIndex;
+	private final AtMostOneEncoding fAtMostOneEncoding;
 	
 	public SATEncoder(IConstraintManager aConstraintManager)
 	{
@@ -61,10 +70,36 @@ public class SATEncoder implements ISATEncoder {
 	}
 	
 	public SATEncoder(IConstraintManager aConstraintManager, IBijection<Long, Long> aBijection)
+	{
+		this(aConstraintManager, aBijection, StationIndex.IDENTITY);
+	}
+	
+	/**
+	 * @param aStationIndex - numbers the stations in the SAT variables (a variable pairs a station number with a channel), e.g. the station manager's index.
+	 */
+	public SATEncoder(IConstraintManager aConstraintManager, IBijection<Long, Long> aBijection, StationIndex aStationIndex)
+	{
+		this(aConstraintManager, aBijection, aStationIndex, AtMostOneEncoding.PAIRWISE);
+	}
+	
+	/**
+	 * @param aAtMostOneEncoding - how the clauses that keep a station on at most one channel are encoded.
+	 */
+	public SATEncoder(IConstraintManager aConstraintManager, IBijection<Long, Long> aBijection, StationIndex aStationIndex, AtMostOneEncoding aAtMostOneEncoding)
 	{
 		fConstraintManager = aConstraintManager;
 		
 		fBijection = aBijection;
+		
+		fStationIndex = aStationIndex;
+		
+		fAtMostOneEncoding = aAtMostOneEncoding;
+	}
+	
+	// the SAT variable of a station channel pair
+	private long variable(Station aStation, Integer aChannel)
+	{
+		return fBijection.map(SATEncoderUtils.SzudzikElegantPairing(fStationIndex.index(aStation), aChannel));
 	}
 
     public CNFEncodedProblem encodeWithAssignment(StationPackingInstance aInstance) {
@@ -82,7 +117,7 @@ public class SATEncoder implements ISATEncoder {
             if (aInstance.getPreviousAssignment().containsKey(station)) {
                 final Set<Integer> domain = entry.getValue();
                 domain.forEach(channel -> {
-                    long varId = fBijection.map(SATEncoderUtils.SzudzikElegantPairing(station.getID(), channel));
+                    long varId = variable(station, channel);
                     boolean startingValue = aInstance.getPreviousAssignment().get(station).equals(channel);
                     initialAssignment.put(varId, startingValue);
                 });
@@ -101,22 +136,29 @@ public class SATEncoder implements ISATEncoder {
 	@Override
 	public Pair<CNF,ISATDecoder> encode(StationPackingInstance aInstance){
 		
-		CNF aCNF = new CNF();
+		//Write the clauses straight into packed arrays, instead of allocating objects for each of them.
+		PackedCNF.Builder aBuilder = PackedCNF.builder();
 		
 		//Encode base clauses,
-		aCNF.addAll(encodeBaseClauses(aInstance));
+		encodeBaseClauses(aInstance, aBuilder);
+		
+		//Filter the constraint manager's precomputed constraints down to the instance's stations and domains.
+		InterferenceAdjacency aAdjacency = fConstraintManager.getInterferenceAdjacency();
+		InterferenceAdjacency.InstanceMask aMask = aAdjacency.mask(aInstance);
 		
 		//Encode co-channel constraints
-		aCNF.addAll(encodeCoConstraints(aInstance));
+		encodeCoConstraints(aInstance, aAdjacency, aMask, aBuilder);
 		
 		//Encode adjacent-channel constraints
-		aCNF.addAll(encodeAdjConstraints(aInstance));
+		encodeAdjConstraints(aInstance, aAdjacency, aMask, aBuilder);
+		
+		CNF aCNF = new CNF(aBuilder.build());
 		
-		//Save station map.
+		//Save station map, by station number.
 		final Map<Integer,Station> stationMap = new HashMap<Integer,Station>();
 		for(Station station : aInstance.getStations())
 		{
-			stationMap.put(station.getID(), station);
+			stationMap.put(fStationIndex.index(station), station);
 		}
 
 		//Create the decoder
@@ -128,14 +170,19 @@ public class SATEncoder implements ISATEncoder {
 				Pair<Integer,Integer> aStationChannelPair = SATEncoderUtils.SzudzikElegantInversePairing(fBijection.inversemap(aVariable));
 				
 				//Get station.
-				Integer stationID = aStationChannelPair.getKey();
-				Station aStation = stationMap.get(stationID);
+				Integer stationNumber = aStationChannelPair.getKey();
+				Station aStation = stationMap.get(stationNumber);
 				
 				//Get channel
 				Integer aChannel = aStationChannelPair.getValue();
 				
 				return new Pair<Station,Integer>(aStation,aChannel);
 			}
+			
+			@Override
+			public boolean isStationChannelVariable(long aVariable) {
+				return SATEncoderUtils.SzudzikElegantInversePairing(fBijection.inversemap(aVariable)).getValue() < AUXILIARY_CHANNEL_OFFSET;
+			}
 		};
 		
 		return new Pair<CNF,ISATDecoder>(aCNF,aDecoder);
@@ -145,15 +192,20 @@ public class SATEncoder implements ISATEncoder {
 	 * Get the base SAT clauses of a station packing instances. The base clauses encode the following two constraints:
 	 * <ol>
 	 * <li> Every station must be on at least one channel in the intersection of its domain and the problem instance's channels. </li>
-	 * <li> Every station must be on at most one channel in the intersection of its domain and the problem instance's channels. </li>
+	 * <li> Every station must be on at most one channel in the intersection of its domain and the problem instance's channels (encoded as set by the {@link AtMostOneEncoding}). </li>
 	 * <ol>
 	 * @param aInstance - a station packing problem instance.
 	 * @return A CNF of base clauses.
 	 */
 	public CNF encodeBaseClauses(StationPackingInstance aInstance)
 	{
-		CNF aCNF = new CNF();
-		
+		PackedCNF.Builder aBuilder = PackedCNF.builder();
+		encodeBaseClauses(aInstance, aBuilder);
+		return new CNF(aBuilder.build());
+	}
+	
+	private void encodeBaseClauses(StationPackingInstance aInstance, PackedCNF.Builder aBuilder)
+	{
 		Set<Station> aInstanceStations = aInstance.getStations();
 		Map<Station,Set<Integer>> aInstanceDomains = aInstance.getDomains();
 		
@@ -163,76 +215,58 @@ public class SATEncoder implements ISATEncoder {
 			ArrayList<Integer> aStationInstanceDomain = new ArrayList<Integer>(aInstanceDomains.get(aStation));
 			
 			//A station must be on at least one channel,
-			Clause aStationValidAssignmentBaseClause = new Clause();
 			for(Integer aChannel : aStationInstanceDomain)
 			{
-				
-				aStationValidAssignmentBaseClause.add(new Literal(fBijection.map(SATEncoderUtils.SzudzikElegantPairing(aStation.getID(), aChannel)), true));
+				aBuilder.addLiteral(variable(aStation, aChannel), true);
 			}
-			aCNF.add(aStationValidAssignmentBaseClause);
+			aBuilder.endClause();
 			
 			//A station can be on at most one channel,
+			long[] aStationVariables = new long[aStationInstanceDomain.size()];
 			for(int i=0;i<aStationInstanceDomain.size();i++)
 			{
-				for(int j=i+1;j<aStationInstanceDomain.size();j++)
-				{
-					Clause aStationSingleAssignmentBaseClause = new Clause();
-					
-					Integer aDomainChannel1 = aStationInstanceDomain.get(i);
-					aStationSingleAssignmentBaseClause.add(new Literal(fBijection.map(SATEncoderUtils.SzudzikElegantPairing(aStation.getID(),aDomainChannel1)),false));
-					
-					Integer aDomainChannel2 = aStationInstanceDomain.get(j);
-					aStationSingleAssignmentBaseClause.add(new Literal(fBijection.map(SATEncoderUtils.SzudzikElegantPairing(aStation.getID(),aDomainChannel2)),false));
-					
-					aCNF.add(aStationSingleAssignmentBaseClause);
-				}
+				aStationVariables[i] = variable(aStation, aStationInstanceDomain.get(i));
 			}
+			int[] aNumAuxiliaryVariables = {0};
+			fAtMostOneEncoding.encode(aStationVariables, () -> variable(aStation, AUXILIARY_CHANNEL_OFFSET+aNumAuxiliaryVariables[0]++), aBuilder);
 		}
-		
-		return aCNF;
 	}
 	
-	private CNF encodeCoConstraints(StationPackingInstance aInstance)
+	private void encodeCoConstraints(StationPackingInstance aInstance, InterferenceAdjacency aAdjacency, InterferenceAdjacency.InstanceMask aMask, PackedCNF.Builder aBuilder)
 	{
-		CNF aCNF = new CNF();
-		
-		Set<Station> aInstanceStations = aInstance.getStations();
 		Map<Station,Set<Integer>> aInstanceDomains = aInstance.getDomains();
 		
 		//For every station,
-		for(Station aStation : aInstanceStations)
-		{		
+		for(Station aStation : aInstance.getStations())
+		{
+			int aStationNumber = aAdjacency.getStationIndex().indexOf(aStation);
 			//For every channel,
 			for(Integer aChannel : aInstanceDomains.get(aStation))
 			{
 				//Get stations that can interfere on the same channel,
-				for(Station aInterferingStation : fConstraintManager.getCOInterferingStations(aStation, aChannel))
+				for(int aInterferingStationNumber : aAdjacency.getCOInterferers(aStationNumber, aChannel))
 				{
 					//If interfering station is in this problem, and the channel is in interfering station's domain
-					if(aInstanceStations.contains(aInterferingStation) && aInstanceDomains.get(aInterferingStation).contains(aChannel))
+					if(aMask.contains(aInterferingStationNumber, aChannel))
 					{
-						Clause aCoChannelClause = new Clause();
-						aCoChannelClause.add(new Literal(fBijection.map(SATEncoderUtils.SzudzikElegantPairing(aStation.getID(),aChannel)),false));
-						aCoChannelClause.add(new Literal(fBijection.map(SATEncoderUtils.SzudzikElegantPairing(aInterferingStation.getID(),aChannel)),false));
-						aCNF.add(aCoChannelClause);
+						Station aInterferingStation = aAdjacency.getStationIndex().getStation(aInterferingStationNumber);
+						aBuilder.addLiteral(variable(aStation, aChannel),false);
+						aBuilder.addLiteral(variable(aInterferingStation, aChannel),false);
+						aBuilder.endClause();
 					}
 				}
 			}
 		}
-		
-		return aCNF;
 	}
 	
-	private CNF encodeAdjConstraints(StationPackingInstance aInstance)
+	private void encodeAdjConstraints(StationPackingInstance aInstance, InterferenceAdjacency aAdjacency, InterferenceAdjacency.InstanceMask aMask, PackedCNF.Builder aBuilder)
 	{
-		CNF aCNF = new CNF();
-		
-		Set<Station> aInstanceStations = aInstance.getStations();
 		Map<Station,Set<Integer>> aInstanceDomains = aInstance.getDomains();
 		
 		//For every station,
-		for(Station aStation : aInstanceStations)
-		{		
+		for(Station aStation : aInstance.getStations())
+		{
+			int aStationNumber = aAdjacency.getStationIndex().indexOf(aStation);
 			//For every channel,
 			for(Integer aChannel : aInstanceDomains.get(aStation))
 			{
@@ -240,21 +274,19 @@ public class SATEncoder implements ISATEncoder {
 				Integer aInterferingChannel = aChannel+1;
 				
 				//For every interfering station
-				for(Station aInterferingStation : fConstraintManager.getADJplusInterferingStations(aStation, aChannel))
+				for(int aInterferingStationNumber : aAdjacency.getADJplusInterferers(aStationNumber, aChannel))
 				{
 					//Make sure instance contains interfering station, and interfering channel is in interfering station's domain.
-					if(aInstanceStations.contains(aInterferingStation) && aInstanceDomains.get(aInterferingStation).contains(aInterferingChannel))
+					if(aMask.contains(aInterferingStationNumber, aInterferingChannel))
 					{
-						Clause aAdjChannelClause = new Clause();
-						aAdjChannelClause.add(new Literal(fBijection.map(SATEncoderUtils.SzudzikElegantPairing(aStation.getID(),aChannel)),false));
-						aAdjChannelClause.add(new Literal(fBijection.map(SATEncoderUtils.SzudzikElegantPairing(aInterferingStation.getID(),aInterferingChannel)),false));
-						aCNF.add(aAdjChannelClause);
+						Station aInterferingStation = aAdjacency.getStationIndex().getStation(aInterferingStationNumber);
+						aBuilder.addLiteral(variable(aStation, aChannel),false);
+						aBuilder.addLiteral(variable(aInterferingStation, aInterferingChannel),false);
+						aBuilder.endClause();
 					}
 				}
 			}
 		}
-		
-		return aCNF;
 	}
 	
 	
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+/**
+ * Bounded variable elimination (as in SatELite): replaces the clauses a variable occurs in by all their resolvents on that variable,
+ * when that does not make for more clauses. Variables are tried from the one with the fewest potential resolvents.
+ */
+public class BoundedVariableEliminator implements ICNFPreprocessingPass {
+
+	/**
+	 * Default bound on the number of clauses a variable may occur in positively, and negatively, to be eliminated.
+	 */
+	public static final int DEFAULT_MAX_OCCURRENCES = 16;
+	/**
+	 * Default bound on the length of the resolvents that eliminating a variable may add.
+	 */
+	public static final int DEFAULT_MAX_RESOLVENT_SIZE = 16;
+
+	//How many variables are tried between two looks at the termination criterion.
+	private static final int TERMINATION_CHECK_PERIOD = 256;
+
+	private final int fMaxOccurrences;
+	private final int fMaxResolventSize;
+
+	public BoundedVariableEliminator()
+	{
+		this(DEFAULT_MAX_OCCURRENCES, DEFAULT_MAX_RESOLVENT_SIZE);
+	}
+
+	/**
+	 * @param aMaxOccurrences - bound on the number of clauses a variable may occur in positively, and negatively, to be eliminated.
+	 * @param aMaxResolventSize - bound on the length of the resolvents that eliminating a variable may add.
+	 */
+	public BoundedVariableEliminator(int aMaxOccurrences, int aMaxResolventSize)
+	{
+		fMaxOccurrences = aMaxOccurrences;
+		fMaxResolventSize = aMaxResolventSize;
+	}
+
+	@Override
+	public boolean apply(PreprocessingFormula aFormula, ITerminationCriterion aTerminationCriterion)
+	{
+		boolean aChanged = aFormula.propagate();
+
+		//Candidates with their number of potential resolvents in the high bits, to sort them by it.
+		long[] aCandidates = new long[aFormula.getNumVariables()];
+		int aNumCandidates = 0;
+		for(int v=0;v<aFormula.getNumVariables();v++)
+		{
+			if(aFormula.isFree(v))
+			{
+				long aNumPositive = aFormula.occurrences(PreprocessingFormula.literal(v, true)).size();
+				long aNumNegative = aFormula.occurrences(PreprocessingFormula.literal(v, false)).size();
+				if(aNumPositive <= fMaxOccurrences && aNumNegative <= fMaxOccurrences)
+				{
+					aCandidates[aNumCandidates++] = (aNumPositive*aNumNegative) << 32 | v;
+				}
+			}
+		}
+		Arrays.sort(aCandidates, 0, aNumCandidates);
+
+		for(int i=0;i<aNumCandidates && !aFormula.isUnsat();i++)
+		{
+			if(i % TERMINATION_CHECK_PERIOD == 0 && aTerminationCriterion.hasToStop())
+			{
+				break;
+			}
+			int aVariable = (int) aCandidates[i];
+			if(!aFormula.isFree(aVariable))
+			{
+				continue;
+			}
+			List<int[]> aResolvents = resolvents(aFormula, aVariable);
+			if(aResolvents != null)
+			{
+				aFormula.eliminate(aVariable, aResolvents);
+				aFormula.propagate();
+				aChanged = true;
+			}
+		}
+		return aChanged;
+	}
+
+	/**
+	 * @return the non-tautological resolvents on the variable, or null if the variable should not be eliminated.
+	 */
+	private List<int[]> resolvents(PreprocessingFormula aFormula, int aVariable)
+	{
+		int aPositive = PreprocessingFormula.literal(aVariable, true);
+		int[] aPositiveClauses = aFormula.getOccurrences(aPositive);
+		int[] aNegativeClauses = aFormula.getOccurrences(PreprocessingFormula.negate(aPositive));
+		if(aPositiveClauses.length > fMaxOccurrences || aNegativeClauses.length > fMaxOccurrences)
+		{
+			return null;
+		}
+		int aMaxResolvents = aPositiveClauses.length + aNegativeClauses.length;
+		List<int[]> aResolvents = new ArrayList<int[]>();
+		for(int p : aPositiveClauses)
+		{
+			for(int n : aNegativeClauses)
+			{
+				int[] aResolvent = resolve(aFormula.getClause(p), aFormula.getClause(n), aVariable);
+				if(aResolvent == null)
+				{
+					continue;
+				}
+				if(aResolvent.length > fMaxResolventSize || aResolvents.size() == aMaxResolvents)
+				{
+					return null;
+				}
+				aResolvents.add(aResolvent);
+			}
+		}
+		return aResolvents;
+	}
+
+	/**
+	 * @return the resolvent of two sorted clauses on a variable, sorted, or null if it is a tautology.
+	 */
+	static int[] resolve(int[] aFirst, int[] aSecond, int aVariable)
+	{
+		int[] aResolvent = new int[aFirst.length + aSecond.length - 2];
+		int aSize = 0;
+		int i = 0;
+		int j = 0;
+		while(i < aFirst.length || j < aSecond.length)
+		{
+			int aLiteral;
+			if(j == aSecond.length || (i < aFirst.length && aFirst[i] <= aSecond[j]))
+			{
+				aLiteral = aFirst[i++];
+			}
+			else
+			{
+				aLiteral = aSecond[j++];
+			}
+			if(PreprocessingFormula.variable(aLiteral) == aVariable || (aSize > 0 && aResolvent[aSize-1] == aLiteral))
+			{
+				continue;
+			}
+			if(aSize > 0 && aResolvent[aSize-1] == PreprocessingFormula.negate(aLiteral))
+			{
+				return null;
+			}
+			aResolvent[aSize++] = aLiteral;
+		}
+		return aSize == aResolvent.length ? aResolvent : Arrays.copyOf(aResolvent, aSize);
+	}
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+/**
+ * The preprocessing passes that can be picked from the options, in the order they are best run.
+ */
+public enum CNFPreprocessingPassType {
+
+	/**
+	 * @see UnitPropagator
+	 */
+	UNIT_PROPAGATION {
+		@Override
+		public ICNFPreprocessingPass create()
+		{
+			return new UnitPropagator();
+		}
+	},
+
+	/**
+	 * @see SubsumedClauseRemover
+	 */
+	SUBSUMPTION {
+		@Override
+		public ICNFPreprocessingPass create()
+		{
+			return new SubsumedClauseRemover();
+		}
+	},
+
+	/**
+	 * @see PureLiteralEliminator
+	 */
+	PURE_LITERALS {
+		@Override
+		public ICNFPreprocessingPass create()
+		{
+			return new PureLiteralEliminator();
+		}
+	},
+
+	/**
+	 * @see FailedLiteralProber
+	 */
+	FAILED_LITERALS {
+		@Override
+		public ICNFPreprocessingPass create()
+		{
+			return new FailedLiteralProber();
+		}
+	},
+
+	/**
+	 * @see BoundedVariableEliminator
+	 */
+	VARIABLE_ELIMINATION {
+		@Override
+		public ICNFPreprocessingPass create()
+		{
+			return new BoundedVariableEliminator();
+		}
+	};
+
+	/**
+	 * @return a new pass of this type, with its default settings.
+	 */
+	public abstract ICNFPreprocessingPass create();
+
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+import ca.ubc.cs.beta.stationpacking.utils.Watch;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Simplifies CNFs before they are given to a SAT solver, by running a sequence of {@link ICNFPreprocessingPass}es over and over until none of them changes the CNF
+ * (or for a bounded number of rounds). Models of the simplified CNF are turned back into models of the original one with {@link PreprocessedCNF#reconstruct(Collection)}.
+ * Thread safe if its passes are (those of this package are).
+ */
+public class CNFPreprocessor {
+
+	private static Logger log = LoggerFactory.getLogger(CNFPreprocessor.class);
+
+	/**
+	 * Default bound on the number of times the passes are run.
+	 */
+	public static final int DEFAULT_MAX_ROUNDS = 5;
+
+	private final List<ICNFPreprocessingPass> fPasses;
+	private final int fMaxRounds;
+
+	/**
+	 * @param aPasses - the passes to run, in order.
+	 * @param aMaxRounds - bound on the number of times the passes are run.
+	 */
+	public CNFPreprocessor(List<ICNFPreprocessingPass> aPasses, int aMaxRounds)
+	{
+		fPasses = ImmutableList.copyOf(aPasses);
+		fMaxRounds = aMaxRounds;
+	}
+
+	/**
+	 * @param aPassTypes - the types of passes to run, in order.
+	 * @return a preprocessor running passes of the given types, with their default settings.
+	 */
+	public static CNFPreprocessor of(Collection<CNFPreprocessingPassType> aPassTypes)
+	{
+		List<ICNFPreprocessingPass> aPasses = new ArrayList<ICNFPreprocessingPass>();
+		for(CNFPreprocessingPassType aPassType : aPassTypes)
+		{
+			aPasses.add(aPassType.create());
+		}
+		return new CNFPreprocessor(aPasses, DEFAULT_MAX_ROUNDS);
+	}
+
+	/**
+	 * @param aCNF - a CNF to simplify, left untouched.
+	 * @param aTerminationCriterion - when to stop simplifying (what was simplified so far is kept).
+	 * @return the simplified CNF.
+	 */
+	public PreprocessedCNF preprocess(CNF aCNF, ITerminationCriterion aTerminationCriterion)
+	{
+		Watch aWatch = Watch.constructAutoStartWatch();
+		PreprocessingFormula aFormula = new PreprocessingFormula(aCNF);
+		boolean aChanged = true;
+		for(int r=0;r<fMaxRounds && aChanged;r++)
+		{
+			aChanged = false;
+			for(ICNFPreprocessingPass aPass : fPasses)
+			{
+				if(aFormula.isUnsat() || aTerminationCriterion.hasToStop())
+				{
+					aChanged = false;
+					break;
+				}
+				aChanged |= aPass.apply(aFormula, aTerminationCriterion);
+			}
+		}
+		PreprocessedCNF aPreprocessed = aFormula.toPreprocessedCNF();
+		log.debug("Preprocessed a CNF of {} clauses into {} clauses in {} s{}.", aCNF.size(), aPreprocessed.getCNF().size(), aWatch.getElapsedTime(), aPreprocessed.isUnsat() ? ", found it UNSAT" : "");
+		return aPreprocessed;
+	}
+
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+/**
+ * Failed literal probing: tentatively makes each literal true and unit propagates it. If that falsifies a clause, the literal's negation is implied, and is assigned.
+ * On station packing problems, this finds the channels of a station that leave some neighbour without any channel.
+ */
+public class FailedLiteralProber implements ICNFPreprocessingPass {
+
+	/**
+	 * Default bound on the number of clauses looked at while probing, in one application of the pass.
+	 */
+	public static final long DEFAULT_MAX_CLAUSE_VISITS = 5000000;
+
+	//How many probes are made between two looks at the termination criterion.
+	private static final int TERMINATION_CHECK_PERIOD = 64;
+
+	private final long fMaxClauseVisits;
+
+	public FailedLiteralProber()
+	{
+		this(DEFAULT_MAX_CLAUSE_VISITS);
+	}
+
+	/**
+	 * @param aMaxClauseVisits - bound on the number of clauses looked at while probing, in one application of the pass.
+	 */
+	public FailedLiteralProber(long aMaxClauseVisits)
+	{
+		fMaxClauseVisits = aMaxClauseVisits;
+	}
+
+	@Override
+	public boolean apply(PreprocessingFormula aFormula, ITerminationCriterion aTerminationCriterion)
+	{
+		boolean aChanged = aFormula.propagate();
+		Probe aProbe = new Probe(aFormula);
+		int aNumProbes = 0;
+		for(int v=0;v<aFormula.getNumVariables() && !aFormula.isUnsat();v++)
+		{
+			for(boolean aSign : new boolean[]{true, false})
+			{
+				if(!aFormula.isFree(v))
+				{
+					break;
+				}
+				if(aProbe.fClauseVisits >= fMaxClauseVisits || (++aNumProbes % TERMINATION_CHECK_PERIOD == 0 && aTerminationCriterion.hasToStop()))
+				{
+					return aChanged;
+				}
+				int aLiteral = PreprocessingFormula.literal(v, aSign);
+				if(aProbe.fails(aLiteral))
+				{
+					aFormula.assign(PreprocessingFormula.negate(aLiteral));
+					//Keeps the formula propagated, which the probes rely on.
+					aFormula.propagate();
+					aChanged = true;
+				}
+			}
+		}
+		return aChanged;
+	}
+
+	/**
+	 * Unit propagation of a single literal on a propagated formula, without changing it.
+	 */
+	private static class Probe {
+
+		private final PreprocessingFormula fFormula;
+		//Values assigned by the probe, on top of the (propagated) formula, whose clauses then only hold unassigned literals.
+		private final byte[] fValues;
+		private final IntVector fTrail = new IntVector();
+		private long fClauseVisits = 0;
+
+		private Probe(PreprocessingFormula aFormula)
+		{
+			fFormula = aFormula;
+			fValues = new byte[aFormula.getNumVariables()];
+		}
+
+		/**
+		 * @return true if unit propagating the literal falsifies a clause.
+		 */
+		private boolean fails(int aLiteral)
+		{
+			boolean aConflict = false;
+			assign(aLiteral);
+			for(int t=0;t<fTrail.size() && !aConflict;t++)
+			{
+				IntVector aOccurrences = fFormula.occurrences(PreprocessingFormula.negate(fTrail.get(t)));
+				for(int i=0;i<aOccurrences.size() && !aConflict;i++)
+				{
+					fClauseVisits++;
+					int aUnassigned = -1;
+					int aNumUnassigned = 0;
+					boolean aSatisfied = false;
+					for(int aOther : fFormula.getClause(aOccurrences.get(i)))
+					{
+						int aValue = value(aOther);
+						if(aValue == PreprocessingFormula.TRUE)
+						{
+							aSatisfied = true;
+							break;
+						}
+						else if(aValue == PreprocessingFormula.UNASSIGNED)
+						{
+							aUnassigned = aOther;
+							aNumUnassigned++;
+						}
+					}
+					if(!aSatisfied && aNumUnassigned == 0)
+					{
+						aConflict = true;
+					}
+					else if(!aSatisfied && aNumUnassigned == 1)
+					{
+						assign(aUnassigned);
+					}
+				}
+			}
+			for(int t=0;t<fTrail.size();t++)
+			{
+				fValues[PreprocessingFormula.variable(fTrail.get(t))] = PreprocessingFormula.UNASSIGNED;
+			}
+			fTrail.clear();
+			return aConflict;
+		}
+
+		private void assign(int aLiteral)
+		{
+			fValues[PreprocessingFormula.variable(aLiteral)] = (byte) ((aLiteral & 1) == 0 ? PreprocessingFormula.TRUE : PreprocessingFormula.FALSE);
+			fTrail.add(aLiteral);
+		}
+
+		private int value(int aLiteral)
+		{
+			int aValue = fValues[PreprocessingFormula.variable(aLiteral)];
+			return (aLiteral & 1) == 0 ? aValue : -aValue;
+		}
+
+	}
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+/**
+ * A simplification of a CNF, run by a {@link CNFPreprocessor} along with others.
+ * A pass may only make changes that keep the CNF satisfiable if and only if it was, and that {@link PreprocessingFormula} knows how to undo on models.
+ */
+public interface ICNFPreprocessingPass {
+
+	/**
+	 * Simplifies the formula, which may then be left with assigned literals that were not propagated.
+	 * @param aFormula - a formula being preprocessed.
+	 * @param aTerminationCriterion - when to give up on the simplification (the formula is then left in a consistent state).
+	 * @return true if the formula changed.
+	 */
+	public boolean apply(PreprocessingFormula aFormula, ITerminationCriterion aTerminationCriterion);
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of ints, to keep lists of literals and clause indices without boxing them.
+ */
+class IntVector {
+
+	private int[] fElements;
+	private int fSize = 0;
+
+	IntVector()
+	{
+		this(4);
+	}
+
+	IntVector(int aCapacity)
+	{
+		fElements = new int[Math.max(aCapacity, 1)];
+	}
+
+	void add(int aElement)
+	{
+		if(fSize == fElements.length)
+		{
+			fElements = Arrays.copyOf(fElements, fElements.length*2);
+		}
+		fElements[fSize++] = aElement;
+	}
+
+	int get(int aIndex)
+	{
+		return fElements[aIndex];
+	}
+
+	void set(int aIndex, int aElement)
+	{
+		fElements[aIndex] = aElement;
+	}
+
+	int size()
+	{
+		return fSize;
+	}
+
+	/**
+	 * Keeps only the first elements.
+	 * @param aSize - the number of elements to keep.
+	 */
+	void truncate(int aSize)
+	{
+		fSize = aSize;
+	}
+
+	void clear()
+	{
+		fSize = 0;
+	}
+
+	int[] toArray()
+	{
+		return Arrays.copyOf(fElements, fSize);
+	}
+
+}
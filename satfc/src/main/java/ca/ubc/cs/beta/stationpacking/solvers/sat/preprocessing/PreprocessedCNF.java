@@ -0,0 +1,147 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.Literal;
+
+/**
+ * The result of preprocessing a CNF: a smaller CNF, satisfiable exactly when the original is, over variables renumbered from 1,
+ * and the means to turn its models back into models of the original CNF.
+ */
+public class PreprocessedCNF {
+
+	private final CNF fCNF;
+	private final boolean fUnsat;
+	//Original variable of each dense variable of the preprocessing formula.
+	private final long[] fVariables;
+	//Dense variable of each variable (from 1) of the simplified CNF.
+	private final int[] fDenseVariables;
+	//Values assigned during preprocessing (see PreprocessingFormula).
+	private final byte[] fValues;
+	//Removed clauses that may need their pivot to be made true, in the order they were removed.
+	private final List<int[]> fReconstructionClauses;
+	private final int[] fReconstructionPivots;
+
+	PreprocessedCNF(CNF aCNF, long[] aVariables, int[] aDenseVariables, byte[] aValues, List<int[]> aReconstructionClauses, int[] aReconstructionPivots)
+	{
+		this(aCNF, false, aVariables, aDenseVariables, aValues, aReconstructionClauses, aReconstructionPivots);
+	}
+
+	private PreprocessedCNF(CNF aCNF, boolean aUnsat, long[] aVariables, int[] aDenseVariables, byte[] aValues, List<int[]> aReconstructionClauses, int[] aReconstructionPivots)
+	{
+		fCNF = aCNF;
+		fUnsat = aUnsat;
+		fVariables = aVariables;
+		fDenseVariables = aDenseVariables;
+		fValues = aValues;
+		fReconstructionClauses = aReconstructionClauses;
+		fReconstructionPivots = aReconstructionPivots;
+	}
+
+	static PreprocessedCNF unsat()
+	{
+		return new PreprocessedCNF(new CNF(), true, new long[0], new int[0], new byte[0], Collections.<int[]>emptyList(), new int[0]);
+	}
+
+	/**
+	 * @return the simplified CNF, with variables from 1 to its number of variables. Empty if preprocessing solved the original CNF.
+	 */
+	public CNF getCNF()
+	{
+		return fCNF;
+	}
+
+	/**
+	 * @return true if preprocessing found the original CNF to be unsatisfiable.
+	 */
+	public boolean isUnsat()
+	{
+		return fUnsat;
+	}
+
+	/**
+	 * @return true if preprocessing found the original CNF to be satisfiable, i.e. no clause is left (see {@link #reconstruct(Collection)} for a model).
+	 */
+	public boolean isSat()
+	{
+		return !fUnsat && fCNF.size() == 0;
+	}
+
+	/**
+	 * @param aAssignment - a model of the simplified CNF (an empty one if no clause is left). Variables it leaves out are taken to be false.
+	 * @return a model of the original CNF, with a literal for each of its variables.
+	 */
+	public HashSet<Literal> reconstruct(Collection<Literal> aAssignment)
+	{
+		if(fUnsat)
+		{
+			throw new IllegalStateException("Cannot reconstruct a model of an unsatisfiable CNF.");
+		}
+		byte[] aValues = fValues.clone();
+		for(Literal aLiteral : aAssignment)
+		{
+			long aVariable = aLiteral.getVariable();
+			if(aVariable < 1 || aVariable > fDenseVariables.length)
+			{
+				throw new IllegalArgumentException("Assignment has a literal over variable "+aVariable+" which is not in the simplified CNF.");
+			}
+			aValues[fDenseVariables[(int) aVariable - 1]] = (byte) (aLiteral.getSign() ? PreprocessingFormula.TRUE : PreprocessingFormula.FALSE);
+		}
+		//Walking back the removed clauses, a clause that the model does not satisfy is satisfied by its pivot (standard model reconstruction).
+		for(int c=fReconstructionClauses.size()-1;c>=0;c--)
+		{
+			boolean aSatisfied = false;
+			for(int aLiteral : fReconstructionClauses.get(c))
+			{
+				if(isTrue(aValues, aLiteral))
+				{
+					aSatisfied = true;
+					break;
+				}
+			}
+			if(!aSatisfied)
+			{
+				int aPivot = fReconstructionPivots[c];
+				aValues[PreprocessingFormula.variable(aPivot)] = (byte) ((aPivot & 1) == 0 ? PreprocessingFormula.TRUE : PreprocessingFormula.FALSE);
+			}
+		}
+		HashSet<Literal> aModel = new HashSet<Literal>();
+		for(int v=0;v<fVariables.length;v++)
+		{
+			aModel.add(new Literal(fVariables[v], aValues[v] == PreprocessingFormula.TRUE));
+		}
+		return aModel;
+	}
+
+	private static boolean isTrue(byte[] aValues, int aLiteral)
+	{
+		boolean aTrue = aValues[PreprocessingFormula.variable(aLiteral)] == PreprocessingFormula.TRUE;
+		return (aLiteral & 1) == 0 ? aTrue : !aTrue;
+	}
+
+}
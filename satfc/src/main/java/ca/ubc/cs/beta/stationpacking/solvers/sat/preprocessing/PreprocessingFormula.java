@@ -0,0 +1,425 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.PackedCNF;
+
+/**
+ * A CNF being simplified by {@link ICNFPreprocessingPass}es, which also records what is needed to turn a model of the simplified CNF back into a model of the original one.
+ * <p>
+ * Variables are renumbered densely from 0, in the order of their original values. Literals are ints: 2v is variable v, 2v+1 its negation.
+ * Clauses are sorted arrays of distinct literals, never tautologies, and are referred to by an index that stays the same until they are removed.
+ * Clauses of a single literal are not stored: the literal is assigned instead, and its consequences are drawn by {@link #propagate()}.
+ * </p>
+ * Not thread safe.
+ */
+public class PreprocessingFormula {
+
+	public static final int TRUE = 1;
+	public static final int FALSE = -1;
+	public static final int UNASSIGNED = 0;
+
+	//The original variable of each dense variable, in increasing order.
+	private final long[] fVariables;
+	//The clauses, null once removed.
+	private final ArrayList<int[]> fClauses;
+	private int fNumClauses = 0;
+	//The indices of the clauses each literal occurs in. May also list clauses that were removed or no longer contain the literal, which are skipped and dropped lazily.
+	private final IntVector[] fOccurrences;
+	private final byte[] fValues;
+	private final boolean[] fEliminated;
+	//Literals assigned in the order they were, those from fPropagated on still have to be propagated.
+	private final IntVector fTrail = new IntVector();
+	private int fPropagated = 0;
+	//Clauses removed along with the variable they were removed for, to extend models to eliminated variables (see PreprocessedCNF).
+	private final ArrayList<int[]> fReconstructionClauses = new ArrayList<int[]>();
+	private final IntVector fReconstructionPivots = new IntVector();
+	private boolean fUnsat = false;
+
+	/**
+	 * @param aCNF - a CNF to simplify, left untouched.
+	 */
+	public PreprocessingFormula(CNF aCNF)
+	{
+		PackedCNF aPacked = aCNF.getPacked();
+
+		long[] aVariables = new long[aPacked.getNumLiterals()];
+		int aNumLiterals = 0;
+		for(int c=0;c<aPacked.getNumClauses();c++)
+		{
+			for(int i=0;i<aPacked.getClauseSize(c);i++)
+			{
+				aVariables[aNumLiterals++] = Math.abs(aPacked.getLiteral(c, i));
+			}
+		}
+		Arrays.sort(aVariables);
+		int aNumVariables = 0;
+		for(int i=0;i<aVariables.length;i++)
+		{
+			if(i==0 || aVariables[i]!=aVariables[i-1])
+			{
+				aVariables[aNumVariables++] = aVariables[i];
+			}
+		}
+		fVariables = Arrays.copyOf(aVariables, aNumVariables);
+
+		fClauses = new ArrayList<int[]>(aPacked.getNumClauses());
+		fOccurrences = new IntVector[2*aNumVariables];
+		for(int l=0;l<fOccurrences.length;l++)
+		{
+			fOccurrences[l] = new IntVector();
+		}
+		fValues = new byte[aNumVariables];
+		fEliminated = new boolean[aNumVariables];
+
+		for(int c=0;c<aPacked.getNumClauses();c++)
+		{
+			int[] aClause = new int[aPacked.getClauseSize(c)];
+			for(int i=0;i<aClause.length;i++)
+			{
+				long aLiteral = aPacked.getLiteral(c, i);
+				aClause[i] = literal(Arrays.binarySearch(fVariables, Math.abs(aLiteral)), aLiteral > 0);
+			}
+			addClause(aClause);
+		}
+	}
+
+	/**
+	 * @param aVariable - a (dense) variable.
+	 * @param aSign - the literal's sign (true=not negated, false=negated).
+	 * @return the literal.
+	 */
+	public static int literal(int aVariable, boolean aSign)
+	{
+		return 2*aVariable + (aSign ? 0 : 1);
+	}
+
+	/**
+	 * @param aLiteral - a literal.
+	 * @return its (dense) variable.
+	 */
+	public static int variable(int aLiteral)
+	{
+		return aLiteral >> 1;
+	}
+
+	/**
+	 * @param aLiteral - a literal.
+	 * @return its negation.
+	 */
+	public static int negate(int aLiteral)
+	{
+		return aLiteral ^ 1;
+	}
+
+	/**
+	 * @return the number of (dense) variables, assigned and eliminated ones included.
+	 */
+	public int getNumVariables()
+	{
+		return fVariables.length;
+	}
+
+	/**
+	 * @return the number of clauses left.
+	 */
+	public int getNumClauses()
+	{
+		return fNumClauses;
+	}
+
+	/**
+	 * @return one more than the largest clause index ever used.
+	 */
+	public int getNumClauseIndices()
+	{
+		return fClauses.size();
+	}
+
+	/**
+	 * @param aIndex - a clause index.
+	 * @return the clause's literals, in increasing order, or null if it was removed. Must not be modified.
+	 */
+	public int[] getClause(int aIndex)
+	{
+		return fClauses.get(aIndex);
+	}
+
+	/**
+	 * @return true if the CNF was found to be unsatisfiable.
+	 */
+	public boolean isUnsat()
+	{
+		return fUnsat;
+	}
+
+	/**
+	 * @param aLiteral - a literal.
+	 * @return {@link #TRUE}, {@link #FALSE} or {@link #UNASSIGNED}.
+	 */
+	public int value(int aLiteral)
+	{
+		int aValue = fValues[variable(aLiteral)];
+		return (aLiteral & 1) == 0 ? aValue : -aValue;
+	}
+
+	/**
+	 * @param aVariable - a (dense) variable.
+	 * @return true if the variable is neither assigned nor eliminated, i.e. it may still occur in the clauses.
+	 */
+	public boolean isFree(int aVariable)
+	{
+		return fValues[aVariable] == UNASSIGNED && !fEliminated[aVariable];
+	}
+
+	/**
+	 * @param aLiteral - a literal.
+	 * @return the indices of the clauses the literal occurs in.
+	 */
+	public int[] getOccurrences(int aLiteral)
+	{
+		return occurrences(aLiteral).toArray();
+	}
+
+	/**
+	 * @return the occurrences of the literal, rid of stale entries. Only valid until clauses are next added, removed or shortened.
+	 */
+	IntVector occurrences(int aLiteral)
+	{
+		IntVector aOccurrences = fOccurrences[aLiteral];
+		int aSize = 0;
+		for(int i=0;i<aOccurrences.size();i++)
+		{
+			int aIndex = aOccurrences.get(i);
+			int[] aClause = fClauses.get(aIndex);
+			if(aClause != null && Arrays.binarySearch(aClause, aLiteral) >= 0)
+			{
+				aOccurrences.set(aSize++, aIndex);
+			}
+		}
+		aOccurrences.truncate(aSize);
+		return aOccurrences;
+	}
+
+	/**
+	 * Adds a clause, without its false literals. A clause with a true literal, or a tautology, is ignored, an empty clause makes the CNF unsatisfiable,
+	 * and the literal of a unit clause is assigned (call {@link #propagate()} to draw its consequences).
+	 * @param aLiterals - the clause's literals, in any order, left untouched.
+	 */
+	public void addClause(int[] aLiterals)
+	{
+		if(fUnsat)
+		{
+			return;
+		}
+		int[] aClause = aLiterals.clone();
+		Arrays.sort(aClause);
+		int aSize = 0;
+		for(int i=0;i<aClause.length;i++)
+		{
+			int aLiteral = aClause[i];
+			if(aSize > 0 && aClause[aSize-1] == aLiteral)
+			{
+				continue;
+			}
+			if(aSize > 0 && aClause[aSize-1] == negate(aLiteral))
+			{
+				//Tautology, a literal and its negation are next to each other once sorted.
+				return;
+			}
+			int aValue = value(aLiteral);
+			if(aValue == TRUE)
+			{
+				return;
+			}
+			else if(aValue == UNASSIGNED)
+			{
+				aClause[aSize++] = aLiteral;
+			}
+		}
+		if(aSize == 0)
+		{
+			fUnsat = true;
+		}
+		else if(aSize == 1)
+		{
+			assign(aClause[0]);
+		}
+		else
+		{
+			aClause = aSize == aClause.length ? aClause : Arrays.copyOf(aClause, aSize);
+			int aIndex = fClauses.size();
+			fClauses.add(aClause);
+			fNumClauses++;
+			for(int aLiteral : aClause)
+			{
+				fOccurrences[aLiteral].add(aIndex);
+			}
+		}
+	}
+
+	/**
+	 * Removes a clause, e.g. because it is implied by others.
+	 * @param aIndex - the clause's index.
+	 */
+	public void removeClause(int aIndex)
+	{
+		if(fClauses.set(aIndex, null) != null)
+		{
+			fNumClauses--;
+		}
+	}
+
+	/**
+	 * Makes a literal true, to be propagated by the next {@link #propagate()}. Assigning a false literal makes the CNF unsatisfiable.
+	 * @param aLiteral - a literal implied by the clauses, or a literal that can be made true without losing every model (e.g. a pure literal).
+	 */
+	public void assign(int aLiteral)
+	{
+		int aValue = value(aLiteral);
+		if(aValue == FALSE)
+		{
+			fUnsat = true;
+		}
+		else if(aValue == UNASSIGNED)
+		{
+			fValues[variable(aLiteral)] = (byte) ((aLiteral & 1) == 0 ? TRUE : FALSE);
+			fTrail.add(aLiteral);
+		}
+	}
+
+	/**
+	 * Unit propagation of the literals assigned since the last call: removes the clauses they satisfy, and the literals they falsify, assigning the literals of the clauses that become unit.
+	 * @return true if anything was assigned since the last call.
+	 */
+	public boolean propagate()
+	{
+		boolean aChanged = fPropagated < fTrail.size();
+		while(!fUnsat && fPropagated < fTrail.size())
+		{
+			int aLiteral = fTrail.get(fPropagated++);
+
+			IntVector aSatisfied = occurrences(aLiteral);
+			for(int i=0;i<aSatisfied.size();i++)
+			{
+				removeClause(aSatisfied.get(i));
+			}
+			aSatisfied.clear();
+
+			int aFalsified = negate(aLiteral);
+			IntVector aShortened = occurrences(aFalsified);
+			for(int i=0;i<aShortened.size() && !fUnsat;i++)
+			{
+				int aIndex = aShortened.get(i);
+				int[] aClause = fClauses.get(aIndex);
+				int[] aShorter = new int[aClause.length-1];
+				int aSize = 0;
+				for(int aOther : aClause)
+				{
+					if(aOther != aFalsified)
+					{
+						aShorter[aSize++] = aOther;
+					}
+				}
+				if(aShorter.length == 1)
+				{
+					removeClause(aIndex);
+					assign(aShorter[0]);
+				}
+				else
+				{
+					fClauses.set(aIndex, aShorter);
+				}
+			}
+			aShortened.clear();
+		}
+		return aChanged;
+	}
+
+	/**
+	 * Eliminates a variable by replacing all the clauses it occurs in by the given resolvents, keeping those clauses to extend models to the variable.
+	 * @param aVariable - a free variable.
+	 * @param aResolvents - every non-tautological resolvent, on the variable, of the clauses it occurs in positively with those it occurs in negatively.
+	 */
+	public void eliminate(int aVariable, Collection<int[]> aResolvents)
+	{
+		for(int aPivot : new int[]{literal(aVariable, true), literal(aVariable, false)})
+		{
+			IntVector aOccurrences = occurrences(aPivot);
+			for(int i=0;i<aOccurrences.size();i++)
+			{
+				int aIndex = aOccurrences.get(i);
+				fReconstructionClauses.add(fClauses.get(aIndex));
+				fReconstructionPivots.add(aPivot);
+				removeClause(aIndex);
+			}
+			aOccurrences.clear();
+		}
+		fEliminated[aVariable] = true;
+		for(int[] aResolvent : aResolvents)
+		{
+			addClause(aResolvent);
+		}
+	}
+
+	/**
+	 * Propagates the literals assigned so far, and packs the clauses left.
+	 * @return the clauses left, renumbered so that their variables are 1 to n, with what is needed to extend their models to the original CNF.
+	 */
+	public PreprocessedCNF toPreprocessedCNF()
+	{
+		propagate();
+		if(fUnsat)
+		{
+			return PreprocessedCNF.unsat();
+		}
+		PackedCNF.Builder aBuilder = PackedCNF.builder();
+		//Simplified CNF variable (from 1) of each dense variable, 0 if it does not occur in the clauses left.
+		int[] aRenumbered = new int[fVariables.length];
+		IntVector aDenseVariables = new IntVector();
+		for(int[] aClause : fClauses)
+		{
+			if(aClause == null)
+			{
+				continue;
+			}
+			for(int aLiteral : aClause)
+			{
+				int aVariable = variable(aLiteral);
+				if(aRenumbered[aVariable] == 0)
+				{
+					aDenseVariables.add(aVariable);
+					aRenumbered[aVariable] = aDenseVariables.size();
+				}
+				aBuilder.addLiteral(aRenumbered[aVariable], (aLiteral & 1) == 0);
+			}
+			aBuilder.endClause();
+		}
+		return new PreprocessedCNF(new CNF(aBuilder.build()), fVariables, aDenseVariables.toArray(), fValues.clone(), new ArrayList<int[]>(fReconstructionClauses), fReconstructionPivots.toArray());
+	}
+
+}
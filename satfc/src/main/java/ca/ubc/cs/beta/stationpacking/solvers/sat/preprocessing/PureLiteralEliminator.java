@@ -0,0 +1,64 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+/**
+ * Makes true every literal whose negation occurs in no clause, which satisfies all the clauses it occurs in without falsifying any.
+ */
+public class PureLiteralEliminator implements ICNFPreprocessingPass {
+
+	@Override
+	public boolean apply(PreprocessingFormula aFormula, ITerminationCriterion aTerminationCriterion)
+	{
+		boolean aChanged = aFormula.propagate();
+		for(int v=0;v<aFormula.getNumVariables() && !aFormula.isUnsat();v++)
+		{
+			if(!aFormula.isFree(v))
+			{
+				continue;
+			}
+			int aPositive = PreprocessingFormula.literal(v, true);
+			int aNegative = PreprocessingFormula.negate(aPositive);
+			int aNumPositive = aFormula.occurrences(aPositive).size();
+			int aNumNegative = aFormula.occurrences(aNegative).size();
+			if(aNumPositive > 0 && aNumNegative == 0)
+			{
+				aFormula.assign(aPositive);
+			}
+			else if(aNumNegative > 0 && aNumPositive == 0)
+			{
+				aFormula.assign(aNegative);
+			}
+			else
+			{
+				continue;
+			}
+			aChanged = true;
+			//Satisfied clauses are removed right away, so that the literals they made impure can be found pure in this same pass.
+			aFormula.propagate();
+		}
+		return aChanged;
+	}
+
+}
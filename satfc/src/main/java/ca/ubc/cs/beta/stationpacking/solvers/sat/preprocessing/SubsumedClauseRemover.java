@@ -0,0 +1,100 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+/**
+ * Removes duplicate clauses and clauses that contain all the literals of another clause (which they are implied by).
+ * The SAT encoding has many duplicate binary clauses, since interference constraints are listed in both directions and ADJ constraints also imply CO ones.
+ */
+public class SubsumedClauseRemover implements ICNFPreprocessingPass {
+
+	//How many clauses are checked between two looks at the termination criterion.
+	private static final int TERMINATION_CHECK_PERIOD = 1024;
+
+	@Override
+	public boolean apply(PreprocessingFormula aFormula, ITerminationCriterion aTerminationCriterion)
+	{
+		boolean aChanged = aFormula.propagate();
+		for(int c=0;c<aFormula.getNumClauseIndices() && !aFormula.isUnsat();c++)
+		{
+			if(c % TERMINATION_CHECK_PERIOD == 0 && aTerminationCriterion.hasToStop())
+			{
+				break;
+			}
+			int[] aClause = aFormula.getClause(c);
+			if(aClause == null)
+			{
+				continue;
+			}
+			//Any clause that contains this one contains its least frequent literal.
+			IntVector aCandidates = null;
+			for(int aLiteral : aClause)
+			{
+				IntVector aOccurrences = aFormula.occurrences(aLiteral);
+				if(aCandidates == null || aOccurrences.size() < aCandidates.size())
+				{
+					aCandidates = aOccurrences;
+				}
+			}
+			//Removing clauses only leaves stale entries in occurrence lists, so the candidates can be walked while removing.
+			for(int i=0;i<aCandidates.size();i++)
+			{
+				int aIndex = aCandidates.get(i);
+				int[] aOther = aFormula.getClause(aIndex);
+				if(aIndex != c && aOther != null && isSubset(aClause, aOther))
+				{
+					aFormula.removeClause(aIndex);
+					aChanged = true;
+				}
+			}
+		}
+		return aChanged;
+	}
+
+	/**
+	 * @return true if every literal of the first sorted clause is in the second sorted clause.
+	 */
+	static boolean isSubset(int[] aSubset, int[] aSuperset)
+	{
+		if(aSubset.length > aSuperset.length)
+		{
+			return false;
+		}
+		int j = 0;
+		for(int aLiteral : aSubset)
+		{
+			while(j < aSuperset.length && aSuperset[j] < aLiteral)
+			{
+				j++;
+			}
+			if(j == aSuperset.length || aSuperset[j] != aLiteral)
+			{
+				return false;
+			}
+			j++;
+		}
+		return true;
+	}
+
+}
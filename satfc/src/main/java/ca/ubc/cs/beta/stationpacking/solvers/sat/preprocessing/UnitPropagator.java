@@ -0,0 +1,38 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+/**
+ * Assigns the literals of unit clauses, removes the clauses they satisfy and the literals they falsify, until no unit clause is left.
+ * Gets rid of stations with a single channel, and of the channels their neighbours cannot use.
+ */
+public class UnitPropagator implements ICNFPreprocessingPass {
+
+	@Override
+	public boolean apply(PreprocessingFormula aFormula, ITerminationCriterion aTerminationCriterion)
+	{
+		return aFormula.propagate();
+	}
+
+}
@@ -146,33 +146,36 @@ public class IncrementalCompressor
 	protected Pointer createEncoding(int numVars, TreeSet<Literal> assumptions, HashSet<Clause> clauses, ArrayDeque<Long> newControlVariables)
 	{
 		int size = getIntSize(clauses, assumptions);
-		Pointer message= new Memory(size * Native.getNativeSize(Integer.TYPE));
-		message.setInt(0 * Native.getNativeSize(Integer.TYPE), size);
-		message.setInt(1 * Native.getNativeSize(Integer.TYPE), numVars);
-		message.setInt(2 * Native.getNativeSize(Integer.TYPE), clauses.size());
-		message.setInt(3 * Native.getNativeSize(Integer.TYPE), assumptions.size());
+		// fill the message on the Java side, then copy it to native memory at once rather than one int per native call
+		int[] encoding = new int[size];
+		encoding[0] = size;
+		encoding[1] = numVars;
+		encoding[2] = clauses.size();
+		encoding[3] = assumptions.size();
 
 		int i = 4;
 		for (long newControl : newControlVariables)
 		{
-			message.setInt(i * Native.getNativeSize(Integer.TYPE), (int) newControl);
+			encoding[i] = (int) newControl;
 			i++;
 		}
 		for (Literal trueControl : assumptions)
 		{
-			message.setInt(i * Native.getNativeSize(Integer.TYPE), (trueControl.getSign()?1:-1) * (int) trueControl.getVariable());
+			encoding[i] = (trueControl.getSign()?1:-1) * (int) trueControl.getVariable();
 			i++;
 		}
 		for (Clause clause : clauses)
 		{
 			for (Literal lit : clause)
 			{
-				message.setInt(i * Native.getNativeSize(Integer.TYPE), (lit.getSign()?1:-1) * (int) lit.getVariable());
+				encoding[i] = (lit.getSign()?1:-1) * (int) lit.getVariable();
 				i++;
 			}
-			message.setInt(i * Native.getNativeSize(Integer.TYPE), 0);
+			encoding[i] = 0;
 			i++;
 		}
+		Pointer message = new Memory(size * Native.getNativeSize(Integer.TYPE));
+		message.write(0, encoding, 0, size);
 		return message;
 	}
 	
@@ -72,6 +72,25 @@ public interface ClaspLibrary extends Library
 	 */
 	Pointer createProblem(String problem);
 	
+	/**
+	 * Create a new problem object from the problem in dimacs format, read from native memory.  Variables must be from 1 to n.
+	 * Spares building a Java string of the problem, and JNA copying and encoding it to native memory. Clasp still parses the text, like with {@link #createProblem(String)}.
+	 * @param problem null terminated ASCII characters representing the problem in dimacs format. Copied, so it can be freed once the call returns.
+	 * @return a new problem object defined by the characters.
+	 */
+	Pointer createProblem(Pointer problem);
+	
+	/**
+	 * Create a new problem object from the clauses themselves, so that clasp does not have to parse any text.  Variables must be from 1 to numVars.
+	 * Only in libraries built from libjnaclasp-2.1.3.tar.gz since it was added, older ones only have {@link #createProblem(Pointer)}.
+	 * @param literals the literals of every clause in native ints, each clause terminated by a 0. Copied, so it can be freed once the call returns.
+	 * @param numLiterals number of ints in literals, 0s included.
+	 * @param numVars number of variables.
+	 * @param numClauses number of clauses.
+	 * @return a new problem object defined by the clauses.
+	 */
+	Pointer createProblemFromLiterals(Pointer literals, int numLiterals, int numVars, int numClauses);
+	
 	/**
 	 * Frees the memory used by the problem object.
 	 * @param problem problem object to destroy.
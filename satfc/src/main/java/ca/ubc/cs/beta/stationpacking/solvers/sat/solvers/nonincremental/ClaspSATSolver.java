@@ -21,6 +21,8 @@
  */
 package ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.nonincremental;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.concurrent.Executors;
@@ -38,13 +40,16 @@ import ca.ubc.cs.beta.aeatk.misc.returnvalues.AEATKReturnValues;
 import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.base.Literal;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.PackedCNF;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.AbstractCompressedSATSolver;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.base.SATSolverResult;
 import ca.ubc.cs.beta.stationpacking.solvers.sat.solvers.jnalibraries.ClaspLibrary;
 import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
 import ca.ubc.cs.beta.stationpacking.utils.Watch;
 
+import com.sun.jna.Memory;
 import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.IntByReference;
 
@@ -59,6 +64,8 @@ public class ClaspSATSolver extends AbstractCompressedSATSolver
 	private static Logger log = LoggerFactory.getLogger(ClaspSATSolver.class);
 	
 	private ClaspLibrary fClaspLibrary;
+	// whether the library takes the clauses themselves, libraries built before it could only parse DIMACS text
+	private boolean fTakesLiterals;
 	private String fParameters;
 	private int fMaxArgs;
 	private final AtomicBoolean fInterrupt = new AtomicBoolean(false);
@@ -93,6 +100,16 @@ public class ClaspSATSolver extends AbstractCompressedSATSolver
 	{
 		// load the library
 		fClaspLibrary = (ClaspLibrary) Native.loadLibrary(libraryPath, ClaspLibrary.class);
+		try
+		{
+			NativeLibrary.getInstance(libraryPath).getFunction("createProblemFromLiterals");
+			fTakesLiterals = true;
+		}
+		catch (UnsatisfiedLinkError e)
+		{
+			log.warn("Clasp library {} predates createProblemFromLiterals, problems will be handed to it as DIMACS text. Rebuild it with src/dist/clasp/compile.sh.",libraryPath);
+			fTakesLiterals = false;
+		}
 		fMaxArgs = maxArgs;
 		fParameters = parameters;
 		
@@ -143,7 +160,7 @@ public class ClaspSATSolver extends AbstractCompressedSATSolver
 		Pointer config = fClaspLibrary.createConfig(params, params.length(), fMaxArgs);
 		
 		// create the problem
-		Pointer problem = fClaspLibrary.createProblem(aCNF.toDIMACS(null));
+		Pointer problem = createProblem(aCNF.getPacked());
 		final Pointer result = fClaspLibrary.createResult();
 		final AtomicBoolean timedOut = new AtomicBoolean(false);
 		
@@ -272,6 +289,45 @@ public class ClaspSATSolver extends AbstractCompressedSATSolver
 		return output;
 	}
 
+	private Pointer createProblem(PackedCNF aCNF)
+	{
+		// clasp numbers its variables with ints, so wider literals can only fail through the DIMACS text
+		if (fTakesLiterals && aCNF.isNarrow())
+		{
+			Memory aLiterals = toNativeLiterals(aCNF);
+			return fClaspLibrary.createProblemFromLiterals(aLiterals, (int) aCNF.getTerminatedLength(), (int) aCNF.getMaxVariable(), aCNF.getNumClauses());
+		}
+		return fClaspLibrary.createProblem(toNativeDIMACS(aCNF));
+	}
+
+	/**
+	 * Writes the clauses of a CNF straight into native memory, each terminated by a 0, for clasp to add without parsing.
+	 * @param aCNF - a packed CNF whose literals fit in ints.
+	 * @return the clauses in native ints, freed once garbage collected.
+	 */
+	static Memory toNativeLiterals(PackedCNF aCNF)
+	{
+		long aLength = aCNF.getTerminatedLength();
+		Memory aMemory = new Memory(Math.max(1, aLength)*Native.getNativeSize(Integer.TYPE));
+		aCNF.writeTerminatedLiterals(aMemory.getByteBuffer(0, aMemory.size()).order(ByteOrder.nativeOrder()).asIntBuffer());
+		return aMemory;
+	}
+
+	/**
+	 * Writes the DIMACS representation of a CNF straight into native memory, for clasp to parse.
+	 * @param aCNF - a packed CNF.
+	 * @return null terminated DIMACS text, freed once garbage collected.
+	 */
+	static Memory toNativeDIMACS(PackedCNF aCNF)
+	{
+		long aLength = aCNF.getDIMACSLength();
+		Memory aMemory = new Memory(aLength+1);
+		ByteBuffer aBuffer = aMemory.getByteBuffer(0, aLength+1);
+		aCNF.writeDIMACS(aBuffer);
+		aBuffer.put((byte) 0);
+		return aMemory;
+	}
+
 	private HashSet<Literal> parseAssignment(int[] assignment)
 	{
 		HashSet<Literal> set = new HashSet<Literal>();
@@ -456,7 +456,7 @@ public class SwitchFCTargetAlgorithmEvaluator extends AbstractSyncTargetAlgorith
                         for (String variable : additionalRunData.split(" ")) {
                             long var = Long.parseLong(variable);
                             
-                            if (var > 0) {
+                            if (var > 0 && decoder.isStationChannelVariable(var)) {
                                 Pair<Station, Integer> stationChannelVariable = decoder.decode(var);
                                 
                                 assignments.add(stationChannelVariable.getKey().getID() + "=" + stationChannelVariable.getValue());
@@ -21,38 +21,188 @@
  */
 package ca.ubc.cs.beta.stationpacking.utils;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.IntStream;
 
+import lombok.Data;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
 
 import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacheBinaryMessageConverter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
 
 /**
  * Created by newmanne on 19/03/15.
  */
 public class CacheUtils {
 
-    private static RestTemplate restTemplate;
+    // connection pool and timeouts of the default rest template
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 2000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30000;
+
+    // see getFileLock, by canonical path
+    private static final ConcurrentMap<String, Object> fileLocks = new ConcurrentHashMap<>();
 
-    public static BitSet toBitSet(StationPackingInstance aInstance) {
+    /**
+     * @return the numbers of the instance's stations in the station index, as a bit set. Stations that are not in the index are left out
+     */
+    public static BitSet toBitSet(StationPackingInstance aInstance, StationIndex stationIndex) {
         final BitSet bitSet = new BitSet();
-        aInstance.getStations().forEach(station -> bitSet.set(station.getID()));
+        aInstance.getStations().forEach(station -> {
+            final int number = stationIndex.indexOf(station);
+            if (number >= 0) {
+                bitSet.set(number);
+            }
+        });
         return bitSet;
     }
 
-    public static BitSet toBitSet(Map<Integer, Set<Station>> answer) {
+    /**
+     * @return the numbers of the assigned stations in the station index (stations that are not in the index are added to it), as a bit set
+     */
+    public static BitSet toBitSet(Map<Integer, Set<Station>> answer, StationIndex stationIndex) {
         final BitSet bitSet = new BitSet();
-        answer.values().stream().forEach(stations -> stations.forEach(station -> bitSet.set(station.getID())));
+        answer.values().stream().forEach(stations -> stations.forEach(station -> bitSet.set(stationIndex.index(station))));
         return bitSet;
     }
 
+    /**
+     * The stations of an instance as numbers of a {@link StationIndex}, with everything a containment check needs about them
+     */
+    @Data
+    public static class IndexedStations {
+        private final BitSet bitSet;
+        // the bit set as words
+        private final long[] words;
+        // the numbers of the stations, in increasing order
+        private final int[] stations;
+        // domainMasks[i] is the channel mask (see toChannelMask) of the domain of stations[i]
+        private final long[] domainMasks;
+        // how many stations of the instance are not in the index, and were left out
+        private final int numUnindexed;
+        // true if the domain of a station in the index has channels that were left out of its channel mask (see toChannelMask)
+        private final boolean truncatedDomains;
+    }
+
+    public static IndexedStations toIndexedStations(StationPackingInstance aInstance, StationIndex stationIndex) {
+        final Map<Station, Set<Integer>> domains = aInstance.getDomains();
+        final int[] numbers = new int[domains.size()];
+        final long[] masks = new long[domains.size()];
+        int n = 0;
+        boolean truncatedDomains = false;
+        for (Map.Entry<Station, Set<Integer>> entry : domains.entrySet()) {
+            final int number = stationIndex.indexOf(entry.getKey());
+            if (number >= 0) {
+                numbers[n] = number;
+                masks[n] = toChannelMask(entry.getValue());
+                truncatedDomains |= Long.bitCount(masks[n]) != entry.getValue().size();
+                n++;
+            }
+        }
+        final int[] order = sortedOrder(Arrays.copyOf(numbers, n));
+        final BitSet bitSet = new BitSet();
+        final int[] stations = new int[n];
+        final long[] domainMasks = new long[n];
+        for (int i = 0; i < n; i++) {
+            stations[i] = numbers[order[i]];
+            domainMasks[i] = masks[order[i]];
+            bitSet.set(stations[i]);
+        }
+        return new IndexedStations(bitSet, bitSet.toLongArray(), stations, domainMasks, domains.size() - n, truncatedDomains);
+    }
+
+    /**
+     * @param numbers distinct numbers
+     * @return the positions of the numbers, in increasing order of number
+     */
+    public static int[] sortedOrder(int[] numbers) {
+        boolean sorted = true;
+        for (int i = 1; i < numbers.length && sorted; i++) {
+            sorted = numbers[i - 1] < numbers[i];
+        }
+        if (sorted) {
+            return IntStream.range(0, numbers.length).toArray();
+        }
+        // sort each number along with its position, numbers are non negative ints so the pairs sort by number
+        final long[] pairs = new long[numbers.length];
+        for (int i = 0; i < numbers.length; i++) {
+            pairs[i] = ((long) numbers[i] << Integer.SIZE) | i;
+        }
+        Arrays.sort(pairs);
+        return Arrays.stream(pairs).mapToInt(pair -> (int) pair).toArray();
+    }
+
+    /**
+     * @return a mask whose bit c is set if and only if channel c is in the given set. Only channels 0 to 63 fit, which covers every TV channel, the others are left out (see {@link #fitsChannelMask})
+     */
+    public static long toChannelMask(Set<Integer> channels) {
+        long mask = 0;
+        for (int channel : channels) {
+            if (channel >= 0 && channel < Long.SIZE) {
+                mask |= 1L << channel;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return true if every channel of the set is in its channel mask (see {@link #toChannelMask})
+     */
+    public static boolean fitsChannelMask(Set<Integer> channels) {
+        return Long.bitCount(toChannelMask(channels)) == channels.size();
+    }
+
+    /**
+     * @return true if the channel is in the channel mask. A channel that does not fit in a mask never is
+     */
+    public static boolean isInChannelMask(long mask, int channel) {
+        return channel >= 0 && channel < Long.SIZE && (mask & (1L << channel)) != 0;
+    }
+
+    /**
+     * @return the channel masks of the domains of the instance's stations, in increasing order of station ID
+     */
+    public static long[] toChannelMasks(StationPackingInstance aInstance) {
+        // an instance's domains are sorted by station
+        return aInstance.getDomains().values().stream().mapToLong(CacheUtils::toChannelMask).toArray();
+    }
+
+    /**
+     * @return true if the bitset represented by the words a is a subset of (or equal to) the bitset represented by the words b
+     */
+    public static boolean isSubsetOrEqualTo(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            final long bWord = i < b.length ? b[i] : 0L;
+            if ((a[i] & ~bWord) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static Map<Station, Integer> stationToChannelFromChannelToStation(Map<Integer, Set<Station>> channelToStation) {
         final Map<Station, Integer> stationToChannel = new HashMap<>();
         channelToStation.entrySet().forEach(entry -> {
@@ -63,22 +213,78 @@ public class CacheUtils {
         return stationToChannel;
     }
 
+    /**
+     * @return a rest template shared by everyone, with the default connection pool and timeouts
+     */
     public static RestTemplate getRestTemplate() {
-        if (restTemplate == null) {
-            restTemplate = new RestTemplate();
-            final MappingJackson2HttpMessageConverter mappingJacksonHttpMessageConverter = new MappingJackson2HttpMessageConverter();
-            final ObjectMapper mapper = JSONUtils.getMapper();
-            mappingJacksonHttpMessageConverter.setObjectMapper(mapper);
-            // swap out the default message converter
-            for (int i = 0; i < restTemplate.getMessageConverters().size(); i++) {
-                if (restTemplate.getMessageConverters().get(i) instanceof MappingJackson2HttpMessageConverter) {
-                    restTemplate.getMessageConverters().remove(i);
-                    restTemplate.getMessageConverters().add(i, mappingJacksonHttpMessageConverter);
-                    break;
-                }
+        return DefaultRestTemplateHolder.REST_TEMPLATE;
+    }
+
+    // initialized the first time it is used, thread safe by virtue of class loading
+    private static class DefaultRestTemplateHolder {
+        private static final RestTemplate REST_TEMPLATE = createRestTemplate(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Create a rest template that keeps connections to the server alive and reuses them across requests, instead of opening a new connection per request
+     * @param maxConnections maximum number of pooled connections
+     * @param maxConnectionsPerRoute maximum number of pooled connections to the same server
+     * @param connectTimeoutMillis how long to wait for a connection (new or from the pool)
+     * @param readTimeoutMillis how long to wait for the server's answer
+     */
+    public static RestTemplate createRestTemplate(int maxConnections, int maxConnectionsPerRoute, int connectTimeoutMillis, int readTimeoutMillis) {
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setConnectionRequestTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                .build();
+        final CloseableHttpClient httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+        final RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        final MappingJackson2HttpMessageConverter mappingJacksonHttpMessageConverter = new MappingJackson2HttpMessageConverter();
+        final ObjectMapper mapper = JSONUtils.getMapper();
+        mappingJacksonHttpMessageConverter.setObjectMapper(mapper);
+        // swap out the default message converter
+        for (int i = 0; i < restTemplate.getMessageConverters().size(); i++) {
+            if (restTemplate.getMessageConverters().get(i) instanceof MappingJackson2HttpMessageConverter) {
+                restTemplate.getMessageConverters().remove(i);
+                restTemplate.getMessageConverters().add(i, mappingJacksonHttpMessageConverter);
+                break;
             }
         }
+        restTemplate.getMessageConverters().add(new CacheBinaryMessageConverter());
         return restTemplate;
     }
 
+    /**
+     * @param binary if true, the body is sent with the binary cache protocol (see {@link CacheBinaryMessageConverter}) and the response is asked for in that protocol too. Otherwise JSON is used
+     */
+    public static <T> HttpEntity<T> toRequestEntity(T body, boolean binary) {
+        final HttpHeaders headers = new HttpHeaders();
+        if (binary) {
+            headers.setContentType(CacheBinaryMessageConverter.MEDIA_TYPE);
+            headers.setAccept(ImmutableList.of(CacheBinaryMessageConverter.MEDIA_TYPE));
+        }
+        return new HttpEntity<>(body, headers);
+    }
+
+    /**
+     * @return the lock to hold while reading or writing the file, shared by everything in this process that uses the same file, whatever path it was given by.
+     * Other processes are not kept out
+     */
+    public static Object getFileLock(File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        return fileLocks.computeIfAbsent(path, p -> new Object());
+    }
+
 }
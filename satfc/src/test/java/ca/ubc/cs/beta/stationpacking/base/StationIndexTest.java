@@ -0,0 +1,69 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.base;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
+
+import com.google.common.collect.ImmutableSet;
+
+public class StationIndexTest {
+
+    @Test
+    public void testStationsAreNumberedByIncreasingID() {
+        final StationIndex stationIndex = new StationIndex(ImmutableSet.of(new Station(250000), new Station(7), new Station(190000)));
+        assertEquals(0, stationIndex.indexOf(new Station(7)));
+        assertEquals(1, stationIndex.indexOf(new Station(190000)));
+        assertEquals(2, stationIndex.indexOf(new Station(250000)));
+        assertEquals(-1, stationIndex.indexOf(new Station(8)));
+        assertEquals(new Station(190000), stationIndex.getStation(1));
+        assertArrayEquals(new int[]{7, 190000, 250000}, stationIndex.getStationIDs());
+        assertArrayEquals(new int[]{0, 1, 2}, stationIndex.getNumbers());
+    }
+
+    @Test
+    public void testNewStationsGetTheNextNumber() {
+        final StationIndex stationIndex = new StationIndex(new int[]{40, 10});
+        assertEquals(2, stationIndex.index(new Station(300000)));
+        assertEquals(2, stationIndex.index(new Station(300000)));
+        assertEquals(0, stationIndex.index(new Station(40)));
+        assertEquals(new Station(300000), stationIndex.getStation(2));
+        // the order survives a round trip through the station IDs, as in a snapshot
+        final StationIndex copy = new StationIndex(stationIndex.getStationIDs());
+        assertEquals(2, copy.indexOf(new Station(300000)));
+        assertEquals(1, copy.indexOf(new Station(10)));
+    }
+
+    @Test
+    public void testIdentityNumbersStationsByID() {
+        assertTrue(StationIndex.IDENTITY.isIdentity());
+        assertEquals(190000, StationIndex.IDENTITY.index(new Station(190000)));
+        assertEquals(new Station(42), StationIndex.IDENTITY.getStation(42));
+        assertEquals(StationPackingUtils.N_STATIONS, StationIndex.IDENTITY.getNumbers().length);
+    }
+
+}
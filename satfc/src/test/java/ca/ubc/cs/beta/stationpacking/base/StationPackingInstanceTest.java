@@ -44,4 +44,36 @@ public class StationPackingInstanceTest extends TestCase {
         System.out.println(instance.toString());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testCanonicalHashIgnoresOrderAndPreviousAssignment() {
+        final Station s1 = new Station(1);
+        final Station s2 = new Station(2);
+        final StationPackingInstance instance = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14, 15), s2, ImmutableSet.of(20, 100)));
+        final StationPackingInstance reordered = new StationPackingInstance(ImmutableMap.of(s2, ImmutableSet.of(100, 20), s1, ImmutableSet.of(15, 14)), ImmutableMap.of(s1, 14), ImmutableMap.of(StationPackingInstance.NAME_KEY, "SAMPLE"));
+        assertEquals(instance.getCanonicalHash(), reordered.getCanonicalHash());
+        assertEquals(128, instance.getCanonicalHash().bits());
+        // memoized
+        assertSame(instance.getCanonicalHash(), instance.getCanonicalHash());
+    }
+
+    @Test
+    public void testHashStringKeepsNamingSavedFilesTheSame() {
+        final StationPackingInstance instance = new StationPackingInstance(ImmutableMap.of(new Station(1), ImmutableSet.of(14, 15), new Station(2), ImmutableSet.of(20)));
+        assertEquals("1:14,15;2:20", instance.toString());
+        // the SHA-1 of the string above
+        assertEquals("eb9c4b45649a171415fc5cdc31c53f55424cfde3", instance.getHashString());
+    }
+
+    @Test
+    public void testCanonicalHashDependsOnDomains() {
+        final Station s1 = new Station(1);
+        final Station s2 = new Station(2);
+        final StationPackingInstance instance = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14, 15), s2, ImmutableSet.of(20)));
+        // same channels overall, split differently between the stations
+        assertFalse(instance.getCanonicalHash().equals(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(15, 20))).getCanonicalHash()));
+        // same channel in another channel word
+        assertFalse(instance.getCanonicalHash().equals(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14, 15), s2, ImmutableSet.of(84))).getCanonicalHash()));
+        assertFalse(instance.getCanonicalHash().equals(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14, 15))).getCanonicalHash()));
+    }
+
+}
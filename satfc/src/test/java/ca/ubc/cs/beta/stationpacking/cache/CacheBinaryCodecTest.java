@@ -0,0 +1,154 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheRequest;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheRequest;
+import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
+
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+
+public class CacheBinaryCodecTest {
+
+    private final CacheCoordinate coordinate = new CacheCoordinate("domains", "interference");
+
+    private interface Writer {
+        void write(DataOutputStream out) throws Exception;
+    }
+
+    private static DataInputStream roundTrip(Writer writer) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        writer.write(out);
+        out.flush();
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private StationPackingInstance largeInstance() {
+        final Map<Station, Set<Integer>> domains = new HashMap<>();
+        final Set<Integer> uhf = ContiguousSet.create(Range.closed(14, 51), DiscreteDomain.integers());
+        for (int id = 1; id < 2000; id += 3) {
+            domains.put(new Station(id), id % 10 == 0 ? ImmutableSet.of(14, 20, 36) : uhf);
+        }
+        final Map<String, Object> metadata = new HashMap<>();
+        metadata.put(StationPackingInstance.NAME_KEY, "large");
+        return new StationPackingInstance(domains, ImmutableMap.of(new Station(10), 20), metadata);
+    }
+
+    @Test
+    public void testRequestRoundTrip() throws Exception {
+        final StationPackingInstance instance = largeInstance();
+        final ContainmentCacheRequest request = CacheBinaryCodec.readRequest(roundTrip(out -> CacheBinaryCodec.writeRequest(out, new ContainmentCacheRequest(instance, coordinate))));
+        assertEquals(coordinate, request.getCoordinate());
+        assertEquals(instance.getDomains(), request.getInstance().getDomains());
+        assertEquals(instance.getPreviousAssignment(), request.getInstance().getPreviousAssignment());
+        assertEquals("large", request.getInstance().getName());
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanJSON() throws Exception {
+        final ContainmentCacheRequest request = new ContainmentCacheRequest(largeInstance(), coordinate);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CacheBinaryCodec.writeRequest(new DataOutputStream(bytes), request);
+        assertTrue(bytes.size() * 10 < JSONUtils.toString(request).length());
+    }
+
+    @Test
+    public void testCacheRequestRoundTrip() throws Exception {
+        final Station s1 = new Station(1);
+        final Station s300 = new Station(300);
+        final StationPackingInstance instance = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14, 15), s300, ImmutableSet.of(15)));
+        final SolverResult result = new SolverResult(SATResult.SAT, 1.5, ImmutableMap.of(14, ImmutableSet.of(s1), 15, ImmutableSet.of(s300)));
+        final ContainmentCacheCacheRequest request = CacheBinaryCodec.readCacheRequest(roundTrip(out -> CacheBinaryCodec.writeCacheRequest(out, new ContainmentCacheCacheRequest(instance, coordinate, result))));
+        assertEquals(instance, request.getInstance());
+        assertEquals(SATResult.SAT, request.getResult().getResult());
+        assertEquals(1.5, request.getResult().getRuntime(), 0);
+        assertEquals(result.getAssignment(), request.getResult().getAssignment());
+    }
+
+    @Test
+    public void testChannelsAboveTheMasksRoundTrip() throws Exception {
+        final StationPackingInstance instance = new StationPackingInstance(ImmutableMap.of(new Station(1), ImmutableSet.of(14, 70), new Station(2), ImmutableSet.of(14), new Station(3), ImmutableSet.of(64, 200)));
+        final ContainmentCacheRequest request = CacheBinaryCodec.readRequest(roundTrip(out -> CacheBinaryCodec.writeRequest(out, new ContainmentCacheRequest(instance, coordinate))));
+        assertEquals(instance.getDomains(), request.getInstance().getDomains());
+    }
+
+    @Test
+    public void testBatchResultsRoundTrip() throws Exception {
+        final ContainmentCacheBatchResult[] results = {
+                new ContainmentCacheBatchResult(new ContainmentCacheSATResult(ImmutableMap.of(14, ImmutableSet.of(new Station(3), new Station(70))), "SATFC:SAT:a:b:1"), ContainmentCacheUNSATResult.failure()),
+                new ContainmentCacheBatchResult(ContainmentCacheSATResult.failure(), new ContainmentCacheUNSATResult("SATFC:UNSAT:a:b:2"))
+        };
+        final ContainmentCacheBatchResult[] decoded = CacheBinaryCodec.readBatchResults(roundTrip(out -> CacheBinaryCodec.writeBatchResults(out, results)));
+        assertArrayEquals(results, decoded);
+        assertNull(decoded[1].getSATResult().getResult());
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownSATResultIsRejected() throws Exception {
+        CacheBinaryCodec.readSolverResult(roundTrip(out -> {
+            CacheBinaryCodec.writeVarInt(out, SATResult.values().length);
+            out.writeDouble(1.0);
+            CacheBinaryCodec.writeVarInt(out, 0);
+        }));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptSizeRunsOutOfInput() throws Exception {
+        // claims the largest possible number of stations, but holds a single one
+        CacheBinaryCodec.readBatchRequest(roundTrip(out -> {
+            CacheBinaryCodec.writeCoordinate(out, coordinate);
+            CacheBinaryCodec.writeVarInt(out, 1);
+            CacheBinaryCodec.writeVarInt(out, Integer.MAX_VALUE);
+            CacheBinaryCodec.writeVarInt(out, 1);
+        }));
+    }
+
+}
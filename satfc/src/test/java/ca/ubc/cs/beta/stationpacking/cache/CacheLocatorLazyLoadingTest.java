@@ -0,0 +1,161 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+
+public class CacheLocatorLazyLoadingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CacheCoordinate queried = new CacheCoordinate("a", "b");
+    private final CacheCoordinate neverQueried = new CacheCoordinate("c", "d");
+    private final Random random = new Random(1);
+
+    private RedisCacher cacher;
+    private CacheLocator locator;
+
+    @Before
+    public void setUp() {
+        cacher = new RedisCacher(new InMemoryRedis().getTemplate());
+        for (int i = 0; i < 20; i++) {
+            cacheResult(queried, randomInstance());
+            cacheResult(neverQueried, randomInstance());
+        }
+        locator = CacheLocator.builder(cacher).lazyLoading(true, 2).build();
+        locator.onApplicationEvent(null);
+    }
+
+    @After
+    public void tearDown() {
+        locator.close();
+    }
+
+    private String cacheResult(CacheCoordinate coordinate, StationPackingInstance instance) {
+        final Map<Integer, Set<Station>> assignment = instance.getStations().stream().collect(Collectors.groupingBy(station -> instance.getDomains().get(station).iterator().next(), Collectors.toSet()));
+        return cacher.cacheResult(coordinate, instance, new SolverResult(SATResult.SAT, 1.0, assignment));
+    }
+
+    private StationPackingInstance randomInstance() {
+        final Map<Station, Set<Integer>> domains = new HashMap<>();
+        for (int station = 0; station < 20; station++) {
+            if (random.nextBoolean()) {
+                final Set<Integer> domain = new HashSet<>();
+                domain.add(14 + random.nextInt(3));
+                domains.put(new Station(station), domain);
+            }
+        }
+        return new StationPackingInstance(domains);
+    }
+
+    private ContainmentCache awaitLoaded(CacheCoordinate coordinate) throws InterruptedException {
+        for (int attempt = 0; attempt < 500; attempt++) {
+            if (locator.locate(coordinate).isPresent()) {
+                return locator.locate(coordinate).get();
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Coordinate " + coordinate + " was not loaded");
+    }
+
+    private static boolean isLoaded(CacheLocator locator, CacheCoordinate coordinate) {
+        final CacheLocator.LoadStatus status = locator.getLoadStatus();
+        return status.getLoaded().contains(coordinate) && !status.getLoading().contains(coordinate);
+    }
+
+    @Test
+    public void testCoordinateIsLoadedOnItsFirstQuery() throws InterruptedException {
+        assertFalse(locator.locate(queried).isPresent());
+        assertEquals(20, awaitLoaded(queried).getContents().getSATEntries().size());
+        final CacheLocator.LoadStatus status = locator.getLoadStatus();
+        assertTrue(status.isSnapshotRestored());
+        assertTrue(status.getLoaded().contains(queried));
+        // nothing asked for it
+        assertFalse(status.getLoaded().contains(neverQueried));
+        assertFalse(status.getLoading().contains(neverQueried));
+    }
+
+    @Test
+    public void testResultsAddedWhileLoadingAreKept() throws InterruptedException {
+        final StationPackingInstance instance = randomInstance();
+        final String key = cacheResult(queried, instance);
+        final Map<Integer, Set<Station>> assignment = instance.getStations().stream().collect(Collectors.groupingBy(station -> instance.getDomains().get(station).iterator().next(), Collectors.toSet()));
+        // starts the load, as nothing queried the coordinate yet
+        locator.addToCache(queried, instance, new SolverResult(SATResult.SAT, 1.0, assignment), key);
+        final ContainmentCache cache = awaitLoaded(queried);
+        // once, whether it came from redis or was added after the load
+        assertEquals(21, cache.getContents().getSATEntries().size());
+        assertEquals(1, cache.getContents().getSATEntries().stream().filter(entry -> entry.getKey().equals(key)).count());
+    }
+
+    @Test
+    public void testResultsAddedToARestoredCacheAreNotPulledAgain() throws Exception {
+        // a snapshot taken before any result of the coordinate was cached
+        final File snapshotFile = new File(folder.getRoot(), "snapshot.bin");
+        final Map<CacheCoordinate, ContainmentCache> caches = new HashMap<>();
+        caches.put(queried, new ContainmentCache());
+        ContainmentCacheSnapshot.write(snapshotFile, caches);
+        final StationPackingInstance instance = randomInstance();
+        final String key = cacheResult(queried, instance);
+        final Map<Integer, Set<Station>> assignment = instance.getStations().stream().collect(Collectors.groupingBy(station -> instance.getDomains().get(station).iterator().next(), Collectors.toSet()));
+
+        final CacheLocator restoring = CacheLocator.builder(cacher).snapshot(snapshotFile, 600).lazyLoading(true, 2).build();
+        try {
+            restoring.onApplicationEvent(null);
+            // posted to the restored cache, while or before its delta load pulls the same key from redis
+            restoring.addToCache(queried, instance, new SolverResult(SATResult.SAT, 1.0, assignment), key);
+            // the delta load is the only way to the other 20 entries
+            for (int attempt = 0; attempt < 500 && !(isLoaded(restoring, queried) && restoring.locate(queried).get().getContents().getSATEntries().size() >= 21); attempt++) {
+                Thread.sleep(10);
+            }
+            final ContainmentCache cache = restoring.locate(queried).get();
+            assertEquals(21, cache.getContents().getSATEntries().size());
+            assertEquals(1, cache.getContents().getSATEntries().stream().filter(entry -> entry.getKey().equals(key)).count());
+        } finally {
+            restoring.close();
+        }
+    }
+
+}
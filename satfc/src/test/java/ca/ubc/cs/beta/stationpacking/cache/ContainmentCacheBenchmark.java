@@ -0,0 +1,137 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.utils.CacheUtils;
+import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Compares scanning a window of SAT cache candidates with the word level containment checks against the previous BitSet stream / HashMap implementation.
+ * Run with ./gradlew :satfc:benchmark -Pargs=ContainmentCacheBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ContainmentCacheBenchmark {
+
+    @Param({"1000", "10000"})
+    int numEntries;
+
+    @Param({"200", "1000"})
+    int stationsPerEntry;
+
+    private List<ContainmentCacheSATEntry> entries;
+    private StationPackingInstance query;
+    private BitSet queryBitSet;
+    private ContainmentCache cache;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(1);
+        final List<Integer> channels = Lists.newArrayList(StationPackingUtils.UHF_CHANNELS);
+        entries = Lists.newArrayList();
+        for (int i = 0; i < numEntries; i++) {
+            final Map<Integer, Set<Station>> assignment = Maps.newHashMap();
+            random.ints(0, StationPackingUtils.N_STATIONS).distinct().limit(stationsPerEntry).forEach(id -> {
+                assignment.computeIfAbsent(channels.get(random.nextInt(channels.size())), c -> Sets.newHashSet()).add(new Station(id));
+            });
+            entries.add(new ContainmentCacheSATEntry(assignment, "SATFC:SAT:benchmark:benchmark:" + i));
+        }
+        // query half of the stations of the last entry, so that exactly one candidate is a solution
+        final Map<Integer, Integer> assignment = entries.get(entries.size() - 1).getAssignment();
+        final Map<Station, Set<Integer>> domains = Maps.newHashMap();
+        assignment.keySet().stream().limit(stationsPerEntry / 2).forEach(id -> domains.put(new Station(id), Sets.newHashSet(channels)));
+        query = new StationPackingInstance(domains);
+        queryBitSet = CacheUtils.toBitSet(query, StationIndex.IDENTITY);
+        cache = new ContainmentCache(Lists.newArrayList(entries), Lists.newArrayList());
+    }
+
+    @Benchmark
+    public boolean scanWithBitSetStreams() {
+        boolean found = false;
+        for (ContainmentCacheSATEntry entry : entries) {
+            found |= queryBitSet.stream().allMatch(entry.getBitSet()::get) && legacyIsSolutionTo(entry, query);
+        }
+        return found;
+    }
+
+    @Benchmark
+    public boolean scanWithWords() {
+        final long[] words = queryBitSet.toLongArray();
+        final int[] stations = queryBitSet.stream().toArray();
+        final long[] domainMasks = CacheUtils.toChannelMasks(query);
+        boolean found = false;
+        for (ContainmentCacheSATEntry entry : entries) {
+            found |= CacheUtils.isSubsetOrEqualTo(words, entry.getWords()) && entry.isSolutionTo(stations, domainMasks);
+        }
+        return found;
+    }
+
+    @Benchmark
+    public boolean proveSATBySuperset() {
+        return cache.proveSATBySuperset(query).isValid();
+    }
+
+    // the check used before, which builds a HashMap out of the entry for every candidate
+    private static boolean legacyIsSolutionTo(ContainmentCacheSATEntry entry, StationPackingInstance aInstance) {
+        final Map<Integer, Integer> stationToChannel = entry.getAssignment();
+        return aInstance.getDomains().entrySet().stream().allMatch(e -> e.getValue().contains(stationToChannel.get(e.getKey().getID())));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ContainmentCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class ContainmentCacheQueryCoalescerTest {
+
+    private final CacheCoordinate coordinate = new CacheCoordinate("a", "b");
+    private final Station s1 = new Station(1);
+    private final Station s2 = new Station(2);
+    private final StationPackingInstance query = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14, 15), s2, ImmutableSet.of(16)));
+
+    @Test
+    public void testConcurrentIdenticalQueriesShareOneLookup() throws Exception {
+        final ContainmentCache cache = spy(new ContainmentCache());
+        cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1), 16, ImmutableSet.of(s2)), "SATFC:SAT:a:b:1"));
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return invocation.callRealMethod();
+        }).when(cache).proveSATBySuperset(any(StationPackingInstance.class));
+        // no answers are kept, so only the queries in flight are shared
+        final ContainmentCacheQueryCoalescer coalescer = new ContainmentCacheQueryCoalescer(0);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Thread> threads = new ArrayList<>();
+            final List<Future<ContainmentCacheSATResult>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> {
+                    synchronized (threads) {
+                        threads.add(Thread.currentThread());
+                    }
+                    // an identical instance, not the same object
+                    return coalescer.proveSATBySuperset(coordinate, cache, new StationPackingInstance(query.getDomains()));
+                }));
+            }
+            started.await();
+            // wait for every query to be blocked on the one in flight
+            while (true) {
+                synchronized (threads) {
+                    if (threads.size() == 4 && threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+                        break;
+                    }
+                }
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<ContainmentCacheSATResult> result : results) {
+                assertEquals("SATFC:SAT:a:b:1", result.get().getKey());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(cache, times(1)).proveSATBySuperset(any(StationPackingInstance.class));
+        assertEquals(4, cache.getHits("SATFC:SAT:a:b:1"));
+    }
+
+    @Test
+    public void testAnswersAreKeptUntilTheCacheChanges() {
+        final ContainmentCache cache = spy(new ContainmentCache());
+        final ContainmentCacheQueryCoalescer coalescer = new ContainmentCacheQueryCoalescer(10);
+        assertFalse(coalescer.proveUNSATBySubset(coordinate, cache, query).isValid());
+        assertFalse(coalescer.proveUNSATBySubset(coordinate, cache, query).isValid());
+        verify(cache, times(1)).proveUNSATBySubset(any(StationPackingInstance.class));
+
+        cache.add(new ContainmentCacheUNSATEntry(ImmutableMap.of(s1, ImmutableSet.of(14, 15)), "SATFC:UNSAT:a:b:1"));
+        assertTrue(coalescer.proveUNSATBySubset(coordinate, cache, query).isValid());
+        assertTrue(coalescer.proveUNSATBySubset(coordinate, cache, query).isValid());
+        verify(cache, times(2)).proveUNSATBySubset(any(StationPackingInstance.class));
+        assertEquals(2, cache.getHits("SATFC:UNSAT:a:b:1"));
+        // the other kinds of queries, and other coordinates, have answers of their own
+        assertFalse(coalescer.proveSATBySuperset(coordinate, cache, query).isValid());
+        assertTrue(coalescer.proveUNSATBySubset(new CacheCoordinate("c", "d"), cache, query).isValid());
+        verify(cache, times(3)).proveUNSATBySubset(any(StationPackingInstance.class));
+    }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.ContainmentCacheSnapshot.LoadedSnapshot;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentIndexType;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class ContainmentCacheSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Station s1 = new Station(1);
+    private final Station s2 = new Station(2);
+    private final Station s70 = new Station(70);
+    private final CacheCoordinate coordinate = new CacheCoordinate("a", "b");
+
+    private File writeSnapshot(ContainmentIndexType indexType) throws Exception {
+        final ContainmentCache cache = new ContainmentCache(indexType);
+        cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1, s70), 16, ImmutableSet.of(s2)), "SATFC:SAT:a:b:1"));
+        cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(20, ImmutableSet.of(s2)), "SATFC:SAT:a:b:2"));
+        cache.add(new ContainmentCacheUNSATEntry(ImmutableMap.of(s2, ImmutableSet.of(14, 15), s70, ImmutableSet.of(14, 15)), "SATFC:UNSAT:a:b:3"));
+        final Map<CacheCoordinate, ContainmentCache> caches = new HashMap<>();
+        caches.put(coordinate, cache);
+        caches.put(new CacheCoordinate("c", "d"), new ContainmentCache(indexType));
+        final File file = new File(folder.getRoot(), "snapshot.bin");
+        ContainmentCacheSnapshot.write(file, caches);
+        return file;
+    }
+
+    private void assertAnswersQueries(ContainmentCache cache) {
+        final ContainmentCacheSATResult SATResult = cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14, 15), s70, ImmutableSet.of(14))));
+        assertTrue(SATResult.isValid());
+        assertEquals("SATFC:SAT:a:b:1", SATResult.getKey());
+        assertEquals(ImmutableMap.of(14, ImmutableSet.of(s1, s70), 16, ImmutableSet.of(s2)), SATResult.getResult());
+        assertFalse(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(15)))).isValid());
+        assertTrue(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(20), s2, ImmutableSet.of(14), s70, ImmutableSet.of(15)))).isValid());
+        assertFalse(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(s2, ImmutableSet.of(14)))).isValid());
+    }
+
+    @Test
+    public void testRoundTripReusesOrderings() throws Exception {
+        final LoadedSnapshot snapshot = ContainmentCacheSnapshot.read(writeSnapshot(ContainmentIndexType.PERMUTATION), ContainmentIndexType.PERMUTATION);
+        assertEquals(ImmutableSet.of(coordinate, new CacheCoordinate("c", "d")), snapshot.getCaches().keySet());
+        assertEquals(ImmutableSet.of("SATFC:SAT:a:b:1", "SATFC:SAT:a:b:2", "SATFC:UNSAT:a:b:3"), snapshot.getKeys());
+        assertAnswersQueries(snapshot.getCaches().get(coordinate));
+    }
+
+    @Test
+    public void testRoundTripToAnotherIndexType() throws Exception {
+        final LoadedSnapshot snapshot = ContainmentCacheSnapshot.read(writeSnapshot(ContainmentIndexType.PERMUTATION), ContainmentIndexType.SET_TRIE);
+        assertAnswersQueries(snapshot.getCaches().get(coordinate));
+        assertAnswersQueries(ContainmentCacheSnapshot.read(writeSnapshot(ContainmentIndexType.SET_TRIE), ContainmentIndexType.PERMUTATION).getCaches().get(coordinate));
+    }
+
+    @Test
+    public void testRestoredCacheAcceptsNewEntries() throws Exception {
+        final ContainmentCache cache = ContainmentCacheSnapshot.read(writeSnapshot(ContainmentIndexType.PERMUTATION), ContainmentIndexType.PERMUTATION).getCaches().get(coordinate);
+        final StationPackingInstance query = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(30)));
+        assertFalse(cache.proveSATBySuperset(query).isValid());
+        cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(30, ImmutableSet.of(s1)), "SATFC:SAT:a:b:4"));
+        assertTrue(cache.proveSATBySuperset(query).isValid());
+        assertAnswersQueries(cache);
+    }
+
+    @Test
+    public void testEvictedKeysAreKept() throws Exception {
+        final ContainmentCache cache = new ContainmentCache();
+        final ContainmentCacheSATEntry used = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1)), "SATFC:SAT:a:b:used");
+        final ContainmentCacheSATEntry unused = new ContainmentCacheSATEntry(ImmutableMap.of(15, ImmutableSet.of(s2)), "SATFC:SAT:a:b:unused");
+        cache.add(used);
+        cache.add(unused);
+        cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14))));
+        cache.compact(ContainmentCache.estimateBytes(used));
+        assertEquals(ImmutableSet.of("SATFC:SAT:a:b:unused"), cache.getEvictedKeys());
+        final File file = new File(folder.getRoot(), "snapshot.bin");
+        ContainmentCacheSnapshot.write(file, ImmutableMap.of(coordinate, cache));
+
+        final LoadedSnapshot snapshot = ContainmentCacheSnapshot.read(file, ContainmentIndexType.PERMUTATION);
+        // not pulled from redis again
+        assertEquals(ImmutableSet.of("SATFC:SAT:a:b:used", "SATFC:SAT:a:b:unused"), snapshot.getKeys());
+        final ContainmentCache restored = snapshot.getCaches().get(coordinate);
+        assertEquals(ImmutableSet.of("SATFC:SAT:a:b:unused"), restored.getEvictedKeys());
+        assertEquals(1, restored.getContents().getSATEntries().size());
+
+        // unless it is cached again
+        restored.add(unused);
+        assertTrue(restored.getEvictedKeys().isEmpty());
+    }
+
+    @Test
+    public void testRoundTripAcrossMappedWindows() throws Exception {
+        // smaller than most values, so that they are split between windows
+        final LoadedSnapshot snapshot = ContainmentCacheSnapshot.read(writeSnapshot(ContainmentIndexType.PERMUTATION), ContainmentIndexType.PERMUTATION, 7);
+        assertEquals(ImmutableSet.of("SATFC:SAT:a:b:1", "SATFC:SAT:a:b:2", "SATFC:UNSAT:a:b:3"), snapshot.getKeys());
+        assertAnswersQueries(snapshot.getCaches().get(coordinate));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedSnapshotIsRejected() throws Exception {
+        final File file = writeSnapshot(ContainmentIndexType.PERMUTATION);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() - 3);
+        }
+        ContainmentCacheSnapshot.read(file, ContainmentIndexType.PERMUTATION);
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptLengthIsRejected() throws Exception {
+        final File file = writeSnapshot(ContainmentIndexType.PERMUTATION);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // the length of the first domain hash, after the magic number, the version and the number of caches
+            raf.seek(3 * Integer.BYTES);
+            raf.writeInt(Integer.MAX_VALUE);
+        }
+        ContainmentCacheSnapshot.read(file, ContainmentIndexType.PERMUTATION);
+    }
+
+    @Test
+    public void testRoundTripKeepsPermutations() throws Exception {
+        final int[][] permutations = ContainmentCache.readPermutations();
+        // any other permutations will do
+        Collections.reverse(Arrays.asList(permutations));
+        final ContainmentCache cache = new ContainmentCache(new ArrayList<>(), new ArrayList<>(), permutations);
+        cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1, s70), 16, ImmutableSet.of(s2)), "SATFC:SAT:a:b:1"));
+        final File file = new File(folder.getRoot(), "snapshot.bin");
+        ContainmentCacheSnapshot.write(file, ImmutableMap.of(coordinate, cache));
+
+        final ContainmentCache restored = ContainmentCacheSnapshot.read(file, ContainmentIndexType.PERMUTATION).getCaches().get(coordinate);
+        assertTrue(Arrays.deepEquals(permutations, restored.getPermutations()));
+        assertTrue(restored.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s70, ImmutableSet.of(14)))).isValid());
+    }
+
+}
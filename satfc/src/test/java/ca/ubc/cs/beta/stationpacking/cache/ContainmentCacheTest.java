@@ -0,0 +1,330 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.ContainmentCache.CompactionResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentIndexType;
+import ca.ubc.cs.beta.stationpacking.cache.containment.IContainmentCacheEntry;
+import ca.ubc.cs.beta.stationpacking.cache.containment.PermutationContainmentIndex;
+import ca.ubc.cs.beta.stationpacking.cache.containment.PermutationSelector;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+public class ContainmentCacheTest {
+
+    private final Station s1 = new Station(1);
+    private final Station s2 = new Station(2);
+    private final Station s3 = new Station(3);
+
+    @Test
+    public void testSATEntryIsVisibleAfterAdd() {
+        final ContainmentCache cache = new ContainmentCache();
+        final StationPackingInstance query = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14, 15), s2, ImmutableSet.of(15, 16)));
+        assertFalse(cache.proveSATBySuperset(query).isValid());
+
+        final Map<Integer, Set<Station>> assignment = ImmutableMap.of(14, ImmutableSet.of(s1, s3), 16, ImmutableSet.of(s2));
+        cache.add(new ContainmentCacheSATEntry(assignment, "SATFC:SAT:a:b:1"));
+
+        final ContainmentCacheSATResult result = cache.proveSATBySuperset(query);
+        assertTrue(result.isValid());
+        assertEquals("SATFC:SAT:a:b:1", result.getKey());
+    }
+
+    @Test
+    public void testSATEntryMustRespectDomains() {
+        final ContainmentCache cache = new ContainmentCache();
+        cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1, s2)), "SATFC:SAT:a:b:1"));
+        final StationPackingInstance query = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(15)));
+        assertFalse(cache.proveSATBySuperset(query).isValid());
+    }
+
+    @Test
+    public void testSATEntrySpanningSeveralWords() {
+        final Station s70 = new Station(70);
+        final Station s130 = new Station(130);
+        final ContainmentCacheSATEntry entry = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1, s130), 20, ImmutableSet.of(s70), 30, ImmutableSet.of(s3)), "SATFC:SAT:a:b:1");
+        assertTrue(entry.isSolutionTo(new StationPackingInstance(ImmutableMap.of(s70, ImmutableSet.of(19, 20), s130, ImmutableSet.of(14)))));
+        assertFalse(entry.isSolutionTo(new StationPackingInstance(ImmutableMap.of(s70, ImmutableSet.of(20), s130, ImmutableSet.of(15)))));
+        assertTrue(entry.isSolutionTo(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s3, ImmutableSet.of(30), s70, ImmutableSet.of(20), s130, ImmutableSet.of(14)))));
+    }
+
+    @Test
+    public void testUNSATEntryIsVisibleAfterAdd() {
+        final ContainmentCache cache = new ContainmentCache();
+        final StationPackingInstance query = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(14)));
+        assertFalse(cache.proveUNSATBySubset(query).isValid());
+
+        cache.add(new ContainmentCacheUNSATEntry(query.getDomains(), "SATFC:UNSAT:a:b:1"));
+
+        assertTrue(cache.proveUNSATBySubset(query).isValid());
+    }
+
+    @Test
+    public void testUNSATEntryProvesLargerAndMoreConstrainedQueries() {
+        final ContainmentCache cache = new ContainmentCache();
+        final Station s70 = new Station(70);
+        cache.add(new ContainmentCacheUNSATEntry(ImmutableMap.of(s2, ImmutableSet.of(14, 15), s70, ImmutableSet.of(14, 15)), "SATFC:UNSAT:a:b:1"));
+        // more stations, and domains no larger than the entry's
+        assertTrue(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(20, 21), s2, ImmutableSet.of(14), s70, ImmutableSet.of(14, 15)))).isValid());
+        // a station of the entry has a larger domain in the query
+        assertFalse(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(20, 21), s2, ImmutableSet.of(14, 16), s70, ImmutableSet.of(14, 15)))).isValid());
+        // a station of the entry is missing from the query
+        assertFalse(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(20, 21), s2, ImmutableSet.of(14)))).isValid());
+    }
+
+    @Test
+    public void testChannelsAboveTheMasksAreMisses() {
+        final ContainmentCache cache = new ContainmentCache();
+        // an UNSAT entry keeps the channels that fit in a mask
+        cache.add(new ContainmentCacheUNSATEntry(ImmutableMap.of(s1, ImmutableSet.of(14, 70), s2, ImmutableSet.of(14)), "SATFC:UNSAT:a:b:1"));
+        assertTrue(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(14)))).isValid());
+        // a query domain with a channel that does not fit cannot be shown to be covered
+        assertFalse(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14, 70), s2, ImmutableSet.of(14)))).isValid());
+
+        // nor can a SAT entry with a station on such a channel solve anything with it
+        cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(70, ImmutableSet.of(s1), 15, ImmutableSet.of(s2)), "SATFC:SAT:a:b:2"));
+        assertFalse(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(6, 70)))).isValid());
+        assertTrue(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s2, ImmutableSet.of(15, 70)))).isValid());
+    }
+
+    @Test
+    public void testEntryWithAKnownKeyIsNotAddedAgain() {
+        for (ContainmentIndexType indexType : ContainmentIndexType.values()) {
+            final ContainmentCacheSATEntry SATEntry = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1)), "SATFC:SAT:a:b:1");
+            final ContainmentCacheUNSATEntry UNSATEntry = new ContainmentCacheUNSATEntry(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(14)), "SATFC:UNSAT:a:b:1");
+            final ContainmentCache cache = new ContainmentCache(Lists.newArrayList(SATEntry, SATEntry), Lists.newArrayList(UNSATEntry), indexType, StationIndex.IDENTITY);
+            assertEquals(1, cache.getContents().getSATEntries().size());
+            assertTrue(cache.contains("SATFC:SAT:a:b:1"));
+
+            final long version = cache.getVersion();
+            assertFalse(cache.add(SATEntry));
+            assertFalse(cache.add(UNSATEntry));
+            assertEquals(version, cache.getVersion());
+            assertEquals(1, cache.getContents().getSATEntries().size());
+            assertEquals(1, cache.getContents().getUNSATEntries().size());
+
+            assertTrue(cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(15, ImmutableSet.of(s1)), "SATFC:SAT:a:b:2")));
+            assertEquals(2, cache.getContents().getSATEntries().size());
+        }
+    }
+
+    @Test
+    public void testCompactRemovesDominatedSATEntries() {
+        for (ContainmentIndexType indexType : ContainmentIndexType.values()) {
+            final ContainmentCache cache = new ContainmentCache(indexType);
+            // same channels as the larger entry
+            cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1), 16, ImmutableSet.of(s2)), "SATFC:SAT:a:b:small"));
+            cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1, s3), 16, ImmutableSet.of(s2)), "SATFC:SAT:a:b:large"));
+            // a subset on other channels answers queries the larger entry cannot
+            cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(15, ImmutableSet.of(s1)), "SATFC:SAT:a:b:other"));
+            // of two identical entries, exactly one is kept
+            cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(20, ImmutableSet.of(s1, s2, s3)), "SATFC:SAT:a:b:copy1"));
+            cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(20, ImmutableSet.of(s1, s2, s3)), "SATFC:SAT:a:b:copy2"));
+
+            final CompactionResult result = cache.compact(0);
+            assertEquals(2, result.getDominatedKeys().size());
+            assertTrue(result.getDominatedKeys().contains("SATFC:SAT:a:b:small"));
+            assertTrue(result.getEvictedKeys().isEmpty());
+            assertEquals(3, cache.getContents().getSATEntries().size());
+            assertTrue(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(16)))).isValid());
+            assertTrue(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(15)))).isValid());
+            assertTrue(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(20), s3, ImmutableSet.of(20)))).isValid());
+        }
+    }
+
+    @Test
+    public void testCompactRemovesDominatedUNSATEntries() {
+        for (ContainmentIndexType indexType : ContainmentIndexType.values()) {
+            final ContainmentCache cache = new ContainmentCache(indexType);
+            cache.add(new ContainmentCacheUNSATEntry(ImmutableMap.of(s1, ImmutableSet.of(14, 15), s2, ImmutableSet.of(14, 15)), "SATFC:UNSAT:a:b:small"));
+            // more stations, domains no larger
+            cache.add(new ContainmentCacheUNSATEntry(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(14, 15), s3, ImmutableSet.of(20)), "SATFC:UNSAT:a:b:large"));
+            // more stations, but a larger domain
+            cache.add(new ContainmentCacheUNSATEntry(ImmutableMap.of(s1, ImmutableSet.of(14, 15, 16), s2, ImmutableSet.of(14, 15), s3, ImmutableSet.of(20)), "SATFC:UNSAT:a:b:wide"));
+
+            final CompactionResult result = cache.compact(0);
+            assertEquals(ImmutableSet.of("SATFC:UNSAT:a:b:large"), ImmutableSet.copyOf(result.getDominatedKeys()));
+            assertEquals(2, cache.getContents().getUNSATEntries().size());
+            assertTrue(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(14, 15), s3, ImmutableSet.of(20)))).isValid());
+        }
+    }
+
+    @Test
+    public void testCompactKeepsKeysThatAreStillUsed() {
+        // an index built directly is not checked for repeated keys
+        final int[][] permutations = ContainmentCache.readPermutations();
+        final ContainmentCacheSATEntry copy1 = new ContainmentCacheSATEntry(ImmutableMap.of(20, ImmutableSet.of(s1, s2)), "SATFC:SAT:a:b:copy");
+        final ContainmentCacheSATEntry copy2 = new ContainmentCacheSATEntry(ImmutableMap.of(20, ImmutableSet.of(s1, s2)), "SATFC:SAT:a:b:copy");
+        // dominated by another key, but its key is also that of an entry that stays
+        final ContainmentCacheSATEntry small = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1)), "SATFC:SAT:a:b:shared");
+        final ContainmentCacheSATEntry kept = new ContainmentCacheSATEntry(ImmutableMap.of(30, ImmutableSet.of(s3)), "SATFC:SAT:a:b:shared");
+        final ContainmentCacheSATEntry large = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1, s3)), "SATFC:SAT:a:b:large");
+        final ContainmentCache cache = new ContainmentCache(new PermutationContainmentIndex<>(permutations, Lists.newArrayList(copy1, copy2, small, kept, large)),
+                new PermutationContainmentIndex<>(permutations, new ArrayList<ContainmentCacheUNSATEntry>()));
+
+        final CompactionResult result = cache.compact(0);
+        assertTrue(result.getDominatedKeys().isEmpty());
+        assertEquals(4, cache.getContents().getSATEntries().size());
+        assertTrue(cache.contains("SATFC:SAT:a:b:shared"));
+        assertTrue(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(20), s2, ImmutableSet.of(20)))).isValid());
+        assertTrue(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s3, ImmutableSet.of(30)))).isValid());
+    }
+
+    @Test
+    public void testCompactEvictsLeastUsedEntriesOverBudget() {
+        final ContainmentCache cache = new ContainmentCache();
+        final ContainmentCacheSATEntry used = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1)), "SATFC:SAT:a:b:used");
+        final ContainmentCacheSATEntry unused = new ContainmentCacheSATEntry(ImmutableMap.of(15, ImmutableSet.of(s2)), "SATFC:SAT:a:b:unused");
+        cache.add(used);
+        cache.add(unused);
+        assertTrue(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14)))).isValid());
+        assertEquals(1, cache.getHits("SATFC:SAT:a:b:used"));
+
+        // room for a single entry
+        final CompactionResult result = cache.compact(ContainmentCache.estimateBytes(used));
+        assertTrue(result.getDominatedKeys().isEmpty());
+        assertEquals(ImmutableSet.of("SATFC:SAT:a:b:unused"), ImmutableSet.copyOf(result.getEvictedKeys()));
+        assertTrue(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14)))).isValid());
+        assertFalse(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s2, ImmutableSet.of(15)))).isValid());
+    }
+
+    @Test
+    public void testRebuildIndexKeepsEntries() {
+        final ContainmentCache cache = new ContainmentCache();
+        cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1, s3), 16, ImmutableSet.of(s2)), "SATFC:SAT:a:b:1"));
+        cache.add(new ContainmentCacheUNSATEntry(ImmutableMap.of(s2, ImmutableSet.of(14, 15), s3, ImmutableSet.of(14, 15)), "SATFC:UNSAT:a:b:2"));
+        final int[][] permutations = PermutationSelector.selectPermutations(Lists.transform(cache.getContents().getSATEntries(), IContainmentCacheEntry::getBitSet), 3);
+
+        cache.rebuildIndex(permutations);
+        assertTrue(Arrays.deepEquals(permutations, cache.getPermutations()));
+        assertTrue(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(16)))).isValid());
+        assertTrue(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(20), s2, ImmutableSet.of(14), s3, ImmutableSet.of(15)))).isValid());
+
+        // the new index takes insertions like the old one
+        cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(30, ImmutableSet.of(s1)), "SATFC:SAT:a:b:3"));
+        assertTrue(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(30)))).isValid());
+        assertEquals(2, cache.getContents().getSATEntries().size());
+    }
+
+    @Test
+    public void testFindNearestSATCoversTheMostStations() {
+        final Station s4 = new Station(4);
+        for (ContainmentIndexType indexType : ContainmentIndexType.values()) {
+            final ContainmentCache cache = new ContainmentCache(indexType);
+            cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1), 20, ImmutableSet.of(s4)), "SATFC:SAT:a:b:far"));
+            // has every station of the query, but one on a channel outside its domain
+            cache.add(new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1), 15, ImmutableSet.of(s2), 30, ImmutableSet.of(s3)), "SATFC:SAT:a:b:near"));
+            final StationPackingInstance query = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(15, 16), s3, ImmutableSet.of(20)));
+            assertFalse(cache.proveSATBySuperset(query).isValid());
+
+            final ContainmentCacheSATResult nearest = cache.findNearestSAT(query, 10);
+            assertEquals("SATFC:SAT:a:b:near", nearest.getKey());
+            assertEquals(ImmutableMap.of(14, ImmutableSet.of(s1), 15, ImmutableSet.of(s2)), nearest.getResult());
+            assertEquals(1, cache.getHits("SATFC:SAT:a:b:near"));
+
+            assertFalse(cache.findNearestSAT(new StationPackingInstance(ImmutableMap.of(s2, ImmutableSet.of(20))), 10).isValid());
+        }
+    }
+
+    @Test
+    public void testDenseStationIndexWithLargeStationIDs() {
+        final Station big1 = new Station(190000);
+        final Station big2 = new Station(250000);
+        final Station unknown = new Station(300000);
+        for (ContainmentIndexType indexType : ContainmentIndexType.values()) {
+            final StationIndex stationIndex = new StationIndex(ImmutableSet.of(s1, big1, big2));
+            final ContainmentCache cache = new ContainmentCache(indexType, stationIndex);
+            final ContainmentCacheSATEntry SATEntry = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s1, big2), 16, ImmutableSet.of(big1)), "SATFC:SAT:a:b:1", stationIndex);
+            // bits are station numbers, not IDs
+            assertEquals(3, SATEntry.getBitSet().length());
+            cache.add(SATEntry);
+            cache.add(new ContainmentCacheUNSATEntry(ImmutableMap.of(big1, ImmutableSet.of(14), big2, ImmutableSet.of(14)), "SATFC:UNSAT:a:b:1", stationIndex));
+
+            final ContainmentCacheSATResult SATResult = cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(big1, ImmutableSet.of(15, 16), big2, ImmutableSet.of(14))));
+            assertTrue(SATResult.isValid());
+            assertEquals(ImmutableMap.of(14, ImmutableSet.of(s1, big2), 16, ImmutableSet.of(big1)), SATResult.getResult());
+            // a station the cache has never seen cannot be in a SAT entry, but does not stop an UNSAT entry from proving the query
+            assertFalse(cache.proveSATBySuperset(new StationPackingInstance(ImmutableMap.of(big1, ImmutableSet.of(16), unknown, ImmutableSet.of(14)))).isValid());
+            assertTrue(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(big1, ImmutableSet.of(14), big2, ImmutableSet.of(14), unknown, ImmutableSet.of(14)))).isValid());
+        }
+    }
+
+    @Test
+    public void testBundledPermutationsAreMappedToStationNumbers() {
+        final int[][] bundled = ContainmentCache.readPermutations();
+        // numbered out of ID order on purpose, 9000 is not in the bundled permutations
+        final StationIndex stationIndex = new StationIndex(new int[]{5, 3, 9000});
+        final int[][] permutations = ContainmentCache.readPermutations(stationIndex);
+
+        assertEquals(bundled.length, permutations.length);
+        // the first bundled permutation orders the station IDs 1, 2, 3, 4, 5, ...
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5}, Arrays.copyOf(bundled[0], 5));
+        assertArrayEquals(new int[]{3, 4, 1, 5, 0}, Arrays.copyOf(permutations[0], 5));
+        for (int p = 0; p < bundled.length; p++) {
+            assertEquals(bundled[p].length + 1, permutations[p].length);
+            for (int i = 0; i < bundled[p].length; i++) {
+                assertEquals(bundled[p][i], stationIndex.getStation(permutations[p][i]).getID());
+            }
+            // the station the permutations do not order comes last
+            assertEquals(2, permutations[p][bundled[p].length]);
+        }
+    }
+
+    @Test
+    public void testEntriesAreRenumberedIntoAnotherStationIndex() {
+        final Station s70 = new Station(70);
+        final ContainmentCacheSATEntry SATEntry = new ContainmentCacheSATEntry(ImmutableMap.of(14, ImmutableSet.of(s2, s70), 20, ImmutableSet.of(s3)), "SATFC:SAT:a:b:1");
+        final ContainmentCacheUNSATEntry UNSATEntry = new ContainmentCacheUNSATEntry(ImmutableMap.of(s70, ImmutableSet.of(14, 15), s3, ImmutableSet.of(14)), "SATFC:UNSAT:a:b:1");
+        // numbered out of ID order on purpose
+        final StationIndex stationIndex = new StationIndex(new int[]{70, 3, 2});
+
+        final ContainmentCacheSATEntry renumberedSAT = SATEntry.withStationIndex(stationIndex);
+        assertEquals(SATEntry.getAssignment(), renumberedSAT.getAssignment());
+        assertTrue(renumberedSAT.isSolutionTo(new StationPackingInstance(ImmutableMap.of(s70, ImmutableSet.of(14), s3, ImmutableSet.of(20, 21)))));
+        assertFalse(renumberedSAT.isSolutionTo(new StationPackingInstance(ImmutableMap.of(s70, ImmutableSet.of(20), s3, ImmutableSet.of(20)))));
+
+        final ContainmentCache cache = new ContainmentCache(Lists.newArrayList(renumberedSAT), Lists.newArrayList(UNSATEntry.withStationIndex(stationIndex)), ContainmentIndexType.PERMUTATION, stationIndex);
+        assertTrue(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(s70, ImmutableSet.of(14), s3, ImmutableSet.of(14), s2, ImmutableSet.of(20)))).isValid());
+        assertFalse(cache.proveUNSATBySubset(new StationPackingInstance(ImmutableMap.of(s70, ImmutableSet.of(14, 16), s3, ImmutableSet.of(14)))).isValid());
+    }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationIndex;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.IContainmentCacheProxy;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class EmbeddedContainmentCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CacheCoordinate coordinate = new CacheCoordinate("a", "b");
+    private final Station s1 = new Station(1);
+    private final Station s2 = new Station(2);
+    private final Station s3 = new Station(3);
+    private final StationIndex stationIndex = new StationIndex(ImmutableSet.of(s1, s2, s3));
+
+    private final Map<Integer, Set<Station>> assignment = ImmutableMap.of(14, ImmutableSet.of(s1, s3), 16, ImmutableSet.of(s2));
+    private final StationPackingInstance SATInstance = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(16), s3, ImmutableSet.of(14, 15)));
+    private final StationPackingInstance UNSATInstance = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(14)));
+    // solved by the SAT entry, and contains the UNSAT entry
+    private final StationPackingInstance SATQuery = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14, 15), s2, ImmutableSet.of(16)));
+    private final StationPackingInstance UNSATQuery = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(14), s3, ImmutableSet.of(20)));
+
+    private void cacheBoth(EmbeddedContainmentCache cache) {
+        cache.cacheResult(coordinate, SATInstance, new SolverResult(SATResult.SAT, 1.0, assignment));
+        cache.cacheResult(coordinate, UNSATInstance, new SolverResult(SATResult.UNSAT, 1.0));
+    }
+
+    @Test
+    public void testResultsAreVisibleRightAway() {
+        final EmbeddedContainmentCache cache = new EmbeddedContainmentCache(coordinate, stationIndex, null);
+        assertFalse(cache.proveSATBySuperset(SATQuery).isValid());
+        cacheBoth(cache);
+        cache.cacheResult(coordinate, SATQuery, new SolverResult(SATResult.TIMEOUT, 1.0));
+
+        final ContainmentCacheSATResult SATResult = cache.proveSATBySuperset(SATQuery);
+        assertTrue(SATResult.isValid());
+        assertEquals(assignment, SATResult.getResult());
+        assertTrue(cache.proveUNSATBySubset(UNSATQuery).isValid());
+        assertFalse(cache.proveUNSATBySubset(SATQuery).isValid());
+        assertEquals(1, cache.getCache().getContents().getSATEntries().size());
+        assertEquals(1, cache.getCache().getContents().getUNSATEntries().size());
+    }
+
+    @Test
+    public void testResultsAreReadBackFromTheFile() {
+        final File file = new File(folder.getRoot(), "cache.bin");
+        final EmbeddedContainmentCache cache = new EmbeddedContainmentCache(coordinate, stationIndex, file);
+        cacheBoth(cache);
+        final long length = file.length();
+        // already cached, so not written again
+        cacheBoth(cache);
+        assertEquals(length, file.length());
+        // another coordinate sharing the file
+        final CacheCoordinate other = new CacheCoordinate("c", "d");
+        final EmbeddedContainmentCache otherCache = new EmbeddedContainmentCache(other, stationIndex, file);
+        otherCache.cacheResult(other, SATQuery, new SolverResult(SATResult.UNSAT, 1.0));
+        cache.close();
+        otherCache.close();
+
+        final EmbeddedContainmentCache reloaded = new EmbeddedContainmentCache(coordinate, new StationIndex(ImmutableSet.of(s1, s2, s3)), file);
+        assertEquals(assignment, reloaded.proveSATBySuperset(SATQuery).getResult());
+        assertTrue(reloaded.proveUNSATBySubset(UNSATQuery).isValid());
+        assertFalse(reloaded.proveUNSATBySubset(SATQuery).isValid());
+        reloaded.close();
+    }
+
+    @Test
+    public void testIncompleteLastResultIsDropped() throws Exception {
+        final File file = new File(folder.getRoot(), "cache.bin");
+        final EmbeddedContainmentCache cache = new EmbeddedContainmentCache(coordinate, stationIndex, file);
+        cache.cacheResult(coordinate, UNSATInstance, new SolverResult(SATResult.UNSAT, 1.0));
+        final long complete = file.length();
+        cache.cacheResult(coordinate, SATInstance, new SolverResult(SATResult.SAT, 1.0, assignment));
+        cache.close();
+        // a crash in the middle of the second write
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(file.length() - 3);
+        }
+
+        final EmbeddedContainmentCache reloaded = new EmbeddedContainmentCache(coordinate, stationIndex, file);
+        assertEquals(complete, file.length());
+        assertTrue(reloaded.proveUNSATBySubset(UNSATQuery).isValid());
+        assertFalse(reloaded.proveSATBySuperset(SATQuery).isValid());
+        // new results follow the last complete one
+        reloaded.cacheResult(coordinate, SATInstance, new SolverResult(SATResult.SAT, 1.0, assignment));
+        reloaded.close();
+        assertTrue(new EmbeddedContainmentCache(coordinate, stationIndex, file).proveSATBySuperset(SATQuery).isValid());
+    }
+
+    @Test
+    public void testOpeningTheFileDoesNotCutAnotherCachesResults() throws Exception {
+        final File file = new File(folder.getRoot(), "cache.bin");
+        // the same file, by another path
+        final File sameFile = new File(new File(folder.newFolder("other"), ".."), "cache.bin");
+        final EmbeddedContainmentCache writer = new EmbeddedContainmentCache(coordinate, stationIndex, file);
+        final int numResults = 200;
+        final Thread appender = new Thread(() -> {
+            for (int i = 0; i < numResults; i++) {
+                writer.cacheResult(coordinate, new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14 + i % 20), s2, ImmutableSet.of(14 + i / 20))), new SolverResult(SATResult.UNSAT, 1.0));
+            }
+        });
+        appender.start();
+        while (appender.isAlive()) {
+            new EmbeddedContainmentCache(new CacheCoordinate("c", "d"), stationIndex, sameFile).close();
+        }
+        writer.close();
+        assertEquals(numResults, new EmbeddedContainmentCache(coordinate, stationIndex, file).getCache().getContents().getUNSATEntries().size());
+    }
+
+    @Test
+    public void testSyncsWithTheServer() {
+        final IContainmentCacheProxy remote = mock(IContainmentCacheProxy.class);
+        final ICacher remoteCacher = mock(ICacher.class);
+        when(remote.proveSATBySuperset(any(StationPackingInstance.class))).thenReturn(new ContainmentCacheSATResult(assignment, "SATFC:SAT:a:b:remote"));
+        final EmbeddedContainmentCache cache = new EmbeddedContainmentCache(coordinate, stationIndex, null, remote, remoteCacher);
+
+        // a local miss is asked to the server, whose answer is kept
+        assertTrue(cache.proveSATBySuperset(SATQuery).isValid());
+        assertTrue(cache.proveSATBySuperset(SATQuery).isValid());
+        verify(remote, times(1)).proveSATBySuperset(any(StationPackingInstance.class));
+
+        // results go to the server too, once
+        final SolverResult UNSAT = new SolverResult(SATResult.UNSAT, 1.0);
+        cache.cacheResult(coordinate, UNSATInstance, UNSAT);
+        cache.cacheResult(coordinate, UNSATInstance, UNSAT);
+        verify(remoteCacher, times(1)).cacheResult(eq(coordinate), eq(UNSATInstance), eq(UNSAT));
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * A stand-in for redis for tests, holding string values in memory.
+ * Only supports the commands the cache uses: GET, SET, MGET, DEL and SCAN (MGET also within a pipeline)
+ */
+public class InMemoryRedis {
+
+    private final Map<String, String> data = new ConcurrentSkipListMap<>();
+
+    public Map<String, String> getData() {
+        return data;
+    }
+
+    public StringRedisTemplate getTemplate() {
+        final RedisConnectionFactory factory = (RedisConnectionFactory) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RedisConnectionFactory.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getConnection":
+                    return newConnection();
+                case "getConvertPipelineAndTxResults":
+                    return true;
+                default:
+                    return null;
+            }
+        });
+        return new StringRedisTemplate(factory);
+    }
+
+    private RedisConnection newConnection() {
+        // results of the commands sent since the pipeline was opened, null if not pipelining
+        final AtomicReference<List<Object>> pipeline = new AtomicReference<>();
+        return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RedisConnection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "get":
+                    return toBytes(data.get(toString((byte[]) args[0])));
+                case "set":
+                    data.put(toString((byte[]) args[0]), toString((byte[]) args[1]));
+                    return null;
+                case "del":
+                    long deleted = 0;
+                    for (byte[] key : (byte[][]) args[0]) {
+                        deleted += data.remove(toString(key)) != null ? 1 : 0;
+                    }
+                    return deleted;
+                case "mGet":
+                    final List<byte[]> values = new ArrayList<>();
+                    for (byte[] key : (byte[][]) args[0]) {
+                        values.add(toBytes(data.get(toString(key))));
+                    }
+                    if (pipeline.get() != null) {
+                        pipeline.get().add(values);
+                        return null;
+                    }
+                    return values;
+                case "scan":
+                    return scan((ScanOptions) args[0]);
+                case "openPipeline":
+                    pipeline.set(new ArrayList<>());
+                    return null;
+                case "closePipeline":
+                    final List<Object> results = pipeline.get() != null ? pipeline.get() : new ArrayList<>();
+                    pipeline.set(null);
+                    return results;
+                case "isPipelined":
+                    return pipeline.get() != null;
+                case "isClosed":
+                case "isQueueing":
+                    return false;
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName() + " is not supported by the in-memory redis");
+            }
+        });
+    }
+
+    private Cursor<byte[]> scan(ScanOptions options) {
+        final Pattern pattern = Pattern.compile(options.getPattern() == null ? ".*" : Pattern.quote(options.getPattern()).replace("*", "\\E.*\\Q"));
+        final Iterator<byte[]> keys = data.keySet().stream().filter(key -> pattern.matcher(key).matches()).map(InMemoryRedis::toBytes).collect(Collectors.toList()).iterator();
+        return new Cursor<byte[]>() {
+            boolean closed = false;
+            long position = 0;
+
+            @Override
+            public long getCursorId() {
+                return 0;
+            }
+
+            @Override
+            public boolean isClosed() {
+                return closed;
+            }
+
+            @Override
+            public Cursor<byte[]> open() {
+                return this;
+            }
+
+            @Override
+            public long getPosition() {
+                return position;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public byte[] next() {
+                position++;
+                return keys.next();
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+            }
+        };
+    }
+
+    private static byte[] toBytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String toString(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+}
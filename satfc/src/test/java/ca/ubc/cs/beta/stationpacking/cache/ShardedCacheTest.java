@@ -0,0 +1,233 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheBatchRequest;
+import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheRequest;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchRequest;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheRequest;
+import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Several shards of the cache server on localhost, sharing an in-memory redis
+ */
+public class ShardedCacheTest {
+
+    private static final int SHARDS = 3;
+
+    private final CacheCoordinate coordinate = new CacheCoordinate("a", "b");
+    private final Random random = new Random(1);
+
+    private InMemoryRedis redis;
+    private RedisCacher cacher;
+    private final List<CacheLocator> locators = new ArrayList<>();
+    private final List<HttpServer> servers = new ArrayList<>();
+    private String serverURLs;
+
+    private final Map<StationPackingInstance, SolverResult> SATResults = new HashMap<>();
+    private final List<StationPackingInstance> UNSATInstances = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        redis = new InMemoryRedis();
+        cacher = new RedisCacher(redis.getTemplate());
+        for (int i = 0; i < 100; i++) {
+            final StationPackingInstance instance = randomInstance();
+            if (i % 2 == 0) {
+                final SolverResult result = new SolverResult(SATResult.SAT, 1.0, assignmentOf(instance));
+                SATResults.put(instance, result);
+                cacher.cacheResult(coordinate, instance, result);
+            } else {
+                UNSATInstances.add(instance);
+                cacher.cacheResult(coordinate, instance, new SolverResult(SATResult.UNSAT, 1.0));
+            }
+        }
+        final List<String> urls = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            final CacheLocator locator = CacheLocator.builder(cacher).shard(shard, SHARDS).build();
+            locator.onApplicationEvent(null);
+            locators.add(locator);
+            final HttpServer server = startShard(locator);
+            servers.add(server);
+            urls.add("http://localhost:" + server.getAddress().getPort() + "/satfcserver");
+        }
+        serverURLs = String.join(",", urls);
+    }
+
+    @After
+    public void tearDown() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    private StationPackingInstance randomInstance() {
+        final Map<Station, Set<Integer>> domains = new HashMap<>();
+        for (int station = 0; station < 20; station++) {
+            if (random.nextBoolean()) {
+                final Set<Integer> domain = new HashSet<>();
+                domain.add(14 + random.nextInt(3));
+                domain.add(14 + random.nextInt(3));
+                domains.put(new Station(station), domain);
+            }
+        }
+        return new StationPackingInstance(domains);
+    }
+
+    private static Map<Integer, Set<Station>> assignmentOf(StationPackingInstance instance) {
+        return instance.getStations().stream().collect(Collectors.groupingBy(station -> instance.getDomains().get(station).iterator().next(), Collectors.toSet()));
+    }
+
+    // the endpoints of ContainmentCacheController that the proxies use
+    private HttpServer startShard(CacheLocator locator) throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final Function<CacheCoordinate, ContainmentCache> cache = c -> locator.locate(c).orElseGet(ContainmentCache::new);
+        handle(server, "/satfcserver/v1/cache/query/SAT", ContainmentCacheRequest.class, request -> cache.apply(request.getCoordinate()).proveSATBySuperset(request.getInstance()));
+        handle(server, "/satfcserver/v1/cache/query/UNSAT", ContainmentCacheRequest.class, request -> cache.apply(request.getCoordinate()).proveUNSATBySubset(request.getInstance()));
+        handle(server, "/satfcserver/v1/cache/query/batch", ContainmentCacheBatchRequest.class, request -> request.getInstances().stream()
+                .map(instance -> new ContainmentCacheBatchResult(cache.apply(request.getCoordinate()).proveSATBySuperset(instance), cache.apply(request.getCoordinate()).proveUNSATBySubset(instance)))
+                .toArray(ContainmentCacheBatchResult[]::new));
+        final Function<ContainmentCacheCacheRequest, Object> insert = request -> {
+            final String key = cacher.cacheResult(request.getCoordinate(), request.getInstance(), request.getResult());
+            locator.addToCache(request.getCoordinate(), request.getInstance(), request.getResult(), key);
+            return null;
+        };
+        handle(server, "/satfcserver/v1/cache/batch", ContainmentCacheCacheBatchRequest.class, request -> {
+            request.getRequests().forEach(insert::apply);
+            return null;
+        });
+        handle(server, "/satfcserver/v1/cache", ContainmentCacheCacheRequest.class, insert);
+        server.start();
+        return server;
+    }
+
+    private static <T> void handle(HttpServer server, String path, Class<T> requestClass, Function<T, Object> handler) {
+        server.createContext(path, exchange -> {
+            // contexts match by prefix
+            if (!exchange.getRequestURI().getPath().equals(path)) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            final T request = JSONUtils.toObject(new String(ByteStreams.toByteArray(exchange.getRequestBody()), StandardCharsets.UTF_8), requestClass);
+            final Object response = handler.apply(request);
+            if (response == null) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                final byte[] body = JSONUtils.toString(response).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+    }
+
+    private int entriesOf(CacheLocator locator) {
+        return locator.locate(coordinate).map(cache -> cache.getContents().getSATEntries().size() + cache.getContents().getUNSATEntries().size()).orElse(0);
+    }
+
+    @Test
+    public void testEveryEntryIsHeldByExactlyOneShard() {
+        int total = 0;
+        for (int shard = 0; shard < SHARDS; shard++) {
+            final CacheLocator locator = locators.get(shard);
+            total += entriesOf(locator);
+            if (locator.locate(coordinate).isPresent()) {
+                final ContainmentCache cache = locator.locate(coordinate).get();
+                for (String key : cache.getContents().getSATEntries().stream().map(e -> e.getKey()).collect(Collectors.toList())) {
+                    assertEquals(shard, CacheShardRouter.shardOf(key, SHARDS));
+                }
+            }
+        }
+        assertEquals(redis.getData().size(), total);
+        // with 100 entries, every shard should have some
+        locators.forEach(locator -> assertTrue(entriesOf(locator) > 0));
+    }
+
+    @Test
+    public void testQueriesAreAnsweredByWhicheverShardHoldsTheEntry() {
+        final ContainmentCacheProxy proxy = new ContainmentCacheProxy(serverURLs, coordinate);
+        SATResults.keySet().forEach(instance -> assertTrue(proxy.proveSATBySuperset(instance).isValid()));
+        UNSATInstances.forEach(instance -> assertTrue(proxy.proveUNSATBySubset(instance).isValid()));
+
+        final List<StationPackingInstance> instances = new ArrayList<>(SATResults.keySet());
+        instances.addAll(UNSATInstances);
+        final List<ContainmentCacheBatchResult> results = proxy.prefetch(instances);
+        for (int i = 0; i < instances.size(); i++) {
+            final boolean isSAT = i < SATResults.size();
+            assertTrue(isSAT ? results.get(i).getSATResult().isValid() : results.get(i).getUNSATResult().isValid());
+        }
+    }
+
+    @Test
+    public void testInsertsGoToTheOwningShard() {
+        final StationPackingInstance instance = new StationPackingInstance(Collections.singletonMap(new Station(100), Collections.singleton(30)));
+        final ContainmentCacheProxy proxy = new ContainmentCacheProxy(serverURLs, coordinate);
+        assertFalse(proxy.proveUNSATBySubset(instance).isValid());
+
+        final int[] entriesBefore = locators.stream().mapToInt(this::entriesOf).toArray();
+        new CacherProxy(serverURLs, coordinate).cacheResult(coordinate, instance, new SolverResult(SATResult.UNSAT, 1.0));
+
+        final int owner = CacheShardRouter.shardOf(coordinate.toKey(SATResult.UNSAT, instance), SHARDS);
+        for (int shard = 0; shard < SHARDS; shard++) {
+            assertEquals(entriesBefore[shard] + (shard == owner ? 1 : 0), entriesOf(locators.get(shard)));
+        }
+        assertTrue(proxy.proveUNSATBySubset(instance).isValid());
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+public class UNSATCoreShrinkingCacherTest {
+
+    private final CacheCoordinate coordinate = new CacheCoordinate("a", "b");
+    private final StationPackingInstance instance = instance(1, 2, 3, 4, 5, 6, 7, 8);
+
+    private static StationPackingInstance instance(int... ids) {
+        final Map<Station, Set<Integer>> domains = Maps.newLinkedHashMap();
+        for (int id : ids) {
+            domains.put(new Station(id), ImmutableSet.of(14, 15));
+        }
+        return new StationPackingInstance(domains);
+    }
+
+    // UNSAT exactly when stations 3 and 6 are both there
+    private ISolver solver(AtomicInteger calls) {
+        final ISolver solver = mock(ISolver.class);
+        doAnswer(invocation -> {
+            calls.incrementAndGet();
+            final StationPackingInstance problem = (StationPackingInstance) invocation.getArguments()[0];
+            final boolean unsat = problem.getStations().contains(new Station(3)) && problem.getStations().contains(new Station(6));
+            return unsat ? new SolverResult(SATResult.UNSAT, 0.1) : new SolverResult(SATResult.TIMEOUT, 0.1);
+        }).when(solver).solve(any(StationPackingInstance.class), any(ITerminationCriterion.class), anyLong());
+        return solver;
+    }
+
+    @Test
+    public void testShrinkFindsTheCore() {
+        final AtomicInteger calls = new AtomicInteger();
+        final UNSATCoreShrinkingCacher shrinker = new UNSATCoreShrinkingCacher(mock(ICacher.class), solver(calls), 10, 1.0, 100);
+        final StationPackingInstance core = shrinker.shrink(instance);
+        assertEquals(ImmutableSet.of(new Station(3), new Station(6)), core.getStations());
+        assertEquals(instance.getDomains().get(new Station(3)), core.getDomains().get(new Station(3)));
+        shrinker.close();
+    }
+
+    @Test
+    public void testShrinkStopsAfterMaxSolverCalls() {
+        final AtomicInteger calls = new AtomicInteger();
+        final UNSATCoreShrinkingCacher shrinker = new UNSATCoreShrinkingCacher(mock(ICacher.class), solver(calls), 10, 1.0, 1);
+        final StationPackingInstance core = shrinker.shrink(instance);
+        assertEquals(1, calls.get());
+        // the first half (stations 1 to 4) is needed, so nothing could be removed
+        assertSame(instance, core);
+        shrinker.close();
+    }
+
+    @Test
+    public void testCoreIsCachedFromTheBackground() {
+        final ICacher cacher = mock(ICacher.class);
+        final UNSATCoreShrinkingCacher shrinker = new UNSATCoreShrinkingCacher(cacher, solver(new AtomicInteger()), 10, 1.0, 100);
+        final SolverResult result = new SolverResult(SATResult.UNSAT, 1.0);
+        shrinker.cacheResult(coordinate, instance, result);
+        verify(cacher).cacheResult(coordinate, instance, result);
+        verify(cacher, timeout(5000)).cacheResult(coordinate, instance(3, 6), new SolverResult(SATResult.UNSAT, 0.0));
+        shrinker.close();
+    }
+
+    @Test
+    public void testSATResultsAreNotShrunk() {
+        final ICacher cacher = mock(ICacher.class);
+        final ISolver solver = mock(ISolver.class);
+        final UNSATCoreShrinkingCacher shrinker = new UNSATCoreShrinkingCacher(cacher, solver, 10, 1.0, 100);
+        final SolverResult result = new SolverResult(SATResult.SAT, 1.0, ImmutableMap.of());
+        shrinker.cacheResult(coordinate, instance, result);
+        shrinker.close();
+        verify(cacher).cacheResult(coordinate, instance, result);
+        verify(solver, never()).solve(any(StationPackingInstance.class), any(ITerminationCriterion.class), anyLong());
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheRequest;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class WriteBehindCacherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CacheCoordinate coordinate = new CacheCoordinate("a", "b");
+    private final StationPackingInstance instance1 = new StationPackingInstance(ImmutableMap.of(new Station(1), ImmutableSet.of(14, 15)));
+    private final StationPackingInstance instance2 = new StationPackingInstance(ImmutableMap.of(new Station(2), ImmutableSet.of(14)));
+    private final SolverResult UNSAT = new SolverResult(SATResult.UNSAT, 1.0);
+
+    @SuppressWarnings("unchecked")
+    private CacherProxy recordingProxy(List<ContainmentCacheCacheRequest> sent) {
+        final CacherProxy proxy = mock(CacherProxy.class);
+        doAnswer(invocation -> {
+            sent.addAll((List<ContainmentCacheCacheRequest>) invocation.getArguments()[0]);
+            return null;
+        }).when(proxy).cacheResults(anyListOf(ContainmentCacheCacheRequest.class));
+        return proxy;
+    }
+
+    private CacherProxy failingProxy() {
+        final CacherProxy proxy = mock(CacherProxy.class);
+        doThrow(new RuntimeException("server is down")).when(proxy).cacheResults(anyListOf(ContainmentCacheCacheRequest.class));
+        return proxy;
+    }
+
+    @Test
+    public void testEverythingIsSentOnClose() {
+        final List<ContainmentCacheCacheRequest> sent = new ArrayList<>();
+        final WriteBehindCacher cacher = new WriteBehindCacher(recordingProxy(sent), 10, null);
+        cacher.cacheResult(coordinate, instance1, UNSAT);
+        cacher.cacheResult(coordinate, instance2, UNSAT);
+        cacher.close();
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void testSpilledResultsAreSentByTheNextCacher() {
+        final File spillFile = new File(folder.getRoot(), "spill.json");
+        final WriteBehindCacher failing = new WriteBehindCacher(failingProxy(), 10, spillFile);
+        failing.cacheResult(coordinate, instance1, UNSAT);
+        failing.cacheResult(coordinate, instance2, UNSAT);
+        failing.close();
+        assertTrue(spillFile.exists());
+
+        final List<ContainmentCacheCacheRequest> sent = new ArrayList<>();
+        new WriteBehindCacher(recordingProxy(sent), 10, spillFile).close();
+        assertEquals(2, sent.size());
+        assertEquals(ImmutableSet.of(instance1, instance2), ImmutableSet.of(sent.get(0).getInstance(), sent.get(1).getInstance()));
+        assertFalse(spillFile.exists());
+    }
+
+    @Test
+    public void testTornSpillLineIsSkipped() throws Exception {
+        final File spillFile = new File(folder.getRoot(), "spill.json");
+        final WriteBehindCacher failing = new WriteBehindCacher(failingProxy(), 10, spillFile);
+        failing.cacheResult(coordinate, instance1, UNSAT);
+        failing.close();
+        // as left by a crash in the middle of a write
+        try (FileOutputStream out = new FileOutputStream(spillFile, true)) {
+            out.write("{\"instance\":{\"dom".getBytes(StandardCharsets.UTF_8));
+        }
+
+        final List<ContainmentCacheCacheRequest> sent = new ArrayList<>();
+        final WriteBehindCacher cacher = new WriteBehindCacher(recordingProxy(sent), 10, spillFile);
+        // the write-behind thread survived the bad line
+        cacher.cacheResult(coordinate, instance2, UNSAT);
+        cacher.close();
+        assertEquals(ImmutableSet.of(instance1, instance2), ImmutableSet.of(sent.get(0).getInstance(), sent.get(1).getInstance()));
+        assertFalse(spillFile.exists());
+    }
+
+    @Test
+    public void testResultsAreDroppedWithoutSpillFile() {
+        final WriteBehindCacher cacher = new WriteBehindCacher(failingProxy(), 1, null);
+        for (int i = 0; i < 5; i++) {
+            cacher.cacheResult(coordinate, new StationPackingInstance(ImmutableMap.of(new Station(i), ImmutableSet.of(14))), UNSAT);
+        }
+        cacher.close();
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.cache.ContainmentCache;
+import ca.ubc.cs.beta.stationpacking.cache.containment.PermutationSelector.CandidateWindows;
+import ca.ubc.cs.beta.stationpacking.utils.StationPackingUtils;
+
+import com.google.common.collect.Lists;
+
+public class PermutationSelectorTest {
+
+    // entries that only use a few hundred of the stations, some of them much more often than others
+    private static List<BitSet> skewedStationSets(Random random, int numSets) {
+        final List<BitSet> stationSets = Lists.newArrayList();
+        for (int i = 0; i < numSets; i++) {
+            final BitSet stationSet = new BitSet();
+            for (int station = 1000; station < 1300; station++) {
+                if (random.nextDouble() < (station < 1030 ? 0.5 : 0.05)) {
+                    stationSet.set(station);
+                }
+            }
+            stationSets.add(stationSet);
+        }
+        return stationSets;
+    }
+
+    @Test
+    public void testSelectsPermutationsOfAllStations() {
+        final int[][] permutations = PermutationSelector.selectPermutations(skewedStationSets(new Random(1), 200), 5);
+        assertEquals(5, permutations.length);
+        final int[] expected = IntStream.rangeClosed(1, StationPackingUtils.N_STATIONS).toArray();
+        for (int[] permutation : permutations) {
+            final int[] sorted = permutation.clone();
+            Arrays.sort(sorted);
+            assertArrayEquals(expected, sorted);
+        }
+        // every permutation starts from a different station
+        assertEquals(permutations.length, Arrays.stream(permutations).mapToInt(permutation -> permutation[permutation.length - 1]).distinct().count());
+    }
+
+    @Test
+    public void testSelectedPermutationsNarrowDownLookups() {
+        final Random random = new Random(2);
+        final List<BitSet> entries = skewedStationSets(random, 2000);
+        final List<BitSet> queries = skewedStationSets(random, 200);
+        final int[][] bundled = ContainmentCache.readPermutations();
+        final CandidateWindows bundledWindows = PermutationSelector.estimateCandidateWindows(bundled, entries, queries);
+        final CandidateWindows selectedWindows = PermutationSelector.estimateCandidateWindows(PermutationSelector.selectPermutations(entries, bundled.length), entries, queries);
+        assertEquals(entries.size(), selectedWindows.getNumEntries());
+        assertTrue(selectedWindows.getMeanSupersetWindow() + selectedWindows.getMeanSubsetWindow() < bundledWindows.getMeanSupersetWindow() + bundledWindows.getMeanSubsetWindow());
+    }
+
+    @Test
+    public void testWindowsAreExactForASinglePermutation() {
+        final List<BitSet> entries = Lists.newArrayList(BitSet.valueOf(new long[] {0b010}), BitSet.valueOf(new long[] {0b110}), BitSet.valueOf(new long[] {0b100}));
+        // identity permutation: entries compare as the numbers 2, 6 and 4
+        final int[][] identity = {IntStream.rangeClosed(1, StationPackingUtils.N_STATIONS).toArray()};
+        final CandidateWindows windows = PermutationSelector.estimateCandidateWindows(identity, entries, Lists.newArrayList(BitSet.valueOf(new long[] {0b100})));
+        // 4 and 6 compare larger than or equal to 4, 2 and 4 smaller than or equal to it
+        assertEquals(2, windows.getMeanSupersetWindow(), 0);
+        assertEquals(2, windows.getMeanSubsetWindow(), 0);
+    }
+
+}
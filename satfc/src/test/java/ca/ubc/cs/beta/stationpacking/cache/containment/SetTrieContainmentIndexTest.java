@@ -0,0 +1,109 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.cache.containment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import lombok.Data;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class SetTrieContainmentIndexTest {
+
+    @Data
+    private static class Entry implements IContainmentCacheEntry {
+        private final BitSet bitSet;
+        private final String key;
+    }
+
+    private static BitSet randomBitSet(Random random, int universe, double density) {
+        final BitSet bitSet = new BitSet();
+        for (int i = 0; i < universe; i++) {
+            if (random.nextDouble() < density) {
+                bitSet.set(i);
+            }
+        }
+        return bitSet;
+    }
+
+    private static boolean isSubset(BitSet a, BitSet b) {
+        final BitSet copy = (BitSet) a.clone();
+        copy.andNot(b);
+        return copy.isEmpty();
+    }
+
+    @Test
+    public void testLookupsMatchBruteForce() {
+        final Random random = new Random(1);
+        final List<Entry> entries = Lists.newArrayList();
+        for (int i = 0; i < 500; i++) {
+            entries.add(new Entry(randomBitSet(random, 20, 0.5), Integer.toString(i)));
+        }
+        final SetTrieContainmentIndex<Entry> index = new SetTrieContainmentIndex<>(entries.subList(0, 250));
+        entries.subList(250, entries.size()).forEach(index::add);
+        assertEquals(entries.size(), index.size());
+
+        for (int i = 0; i < 200; i++) {
+            final BitSet query = randomBitSet(random, 20, i % 2 == 0 ? 0.2 : 0.8);
+            final Set<Entry> expectedSupersets = entries.stream().filter(e -> isSubset(query, e.getBitSet())).collect(Collectors.toSet());
+            final Set<Entry> expectedSubsets = entries.stream().filter(e -> isSubset(e.getBitSet(), query)).collect(Collectors.toSet());
+            assertEquals(expectedSupersets, Sets.newHashSet(index.getPotentialSupersets(query)));
+            assertEquals(expectedSubsets, Sets.newHashSet(index.getPotentialSubsets(query)));
+        }
+    }
+
+    @Test
+    public void testRemoveMatchesBruteForce() {
+        final Random random = new Random(2);
+        final List<Entry> entries = Lists.newArrayList();
+        for (int i = 0; i < 300; i++) {
+            entries.add(new Entry(randomBitSet(random, 12, 0.5), Integer.toString(i)));
+        }
+        final SetTrieContainmentIndex<Entry> index = new SetTrieContainmentIndex<>(entries);
+        final List<Entry> removed = Lists.newArrayList(entries.subList(0, 150));
+        removed.forEach(entry -> assertTrue(index.remove(entry)));
+        // already gone
+        assertFalse(index.remove(removed.get(0)));
+        final List<Entry> remaining = entries.subList(150, entries.size());
+        assertEquals(remaining.size(), index.size());
+
+        for (int i = 0; i < 100; i++) {
+            final BitSet query = randomBitSet(random, 12, 0.5);
+            final Set<Entry> expectedSupersets = remaining.stream().filter(e -> isSubset(query, e.getBitSet())).collect(Collectors.toSet());
+            final Set<Entry> expectedSubsets = remaining.stream().filter(e -> isSubset(e.getBitSet(), query)).collect(Collectors.toSet());
+            assertEquals(expectedSupersets, Sets.newHashSet(index.getPotentialSupersets(query)));
+            assertEquals(expectedSubsets, Sets.newHashSet(index.getPotentialSubsets(query)));
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.datamanagers.constraints;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.Clause;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.Literal;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.SATEncoder;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder.SATEncoderUtils;
+
+import com.google.common.collect.ImmutableSet;
+
+public class InterferenceAdjacencyTest {
+
+    private static final int STATIONS = 30;
+
+    private final Random random = new Random(3);
+    private AConstraintManager constraintManager;
+
+    // random constraints between stations with large IDs, on channels 14 to 19
+    @Before
+    public void setUp() throws FileNotFoundException {
+        constraintManager = new AConstraintManager(null, null) {
+        };
+        for (int i = 0; i < 200; i++) {
+            final Station subject = station(random.nextInt(STATIONS));
+            final Station target = station(random.nextInt(STATIONS));
+            final int channel = 14 + random.nextInt(6);
+            final Map<Station, Map<Integer, Set<Station>>> constraints = random.nextBoolean() ? constraintManager.fCOConstraints : constraintManager.fADJp1Constraints;
+            constraints.computeIfAbsent(subject, s -> new HashMap<>()).computeIfAbsent(channel, c -> new HashSet<>()).add(target);
+        }
+    }
+
+    private static Station station(int i) {
+        return new Station(100000 + 7 * i);
+    }
+
+    private StationPackingInstance randomInstance() {
+        final Map<Station, Set<Integer>> domains = new HashMap<>();
+        for (int i = 0; i < STATIONS + 5; i++) {
+            if (random.nextInt(3) > 0) {
+                final Set<Integer> domain = new HashSet<>();
+                domain.add(14 + random.nextInt(6));
+                for (int channel = 13; channel <= 21; channel++) {
+                    if (random.nextBoolean()) {
+                        domain.add(channel);
+                    }
+                }
+                domains.put(station(i), domain);
+            }
+        }
+        return new StationPackingInstance(domains);
+    }
+
+    @Test
+    public void testInterferersAreTheConstraintsSortedByNumber() {
+        final InterferenceAdjacency adjacency = constraintManager.getInterferenceAdjacency();
+        for (int i = 0; i < STATIONS + 5; i++) {
+            final Station station = station(i);
+            final int number = adjacency.getStationIndex().indexOf(station);
+            for (int channel = 10; channel <= 25; channel++) {
+                assertArrayEquals(constraintManager.getCOInterferingStations(station, channel).stream().mapToInt(s -> adjacency.getStationIndex().indexOf(s)).sorted().toArray(), adjacency.getCOInterferers(number, channel));
+                assertArrayEquals(constraintManager.getADJplusInterferingStations(station, channel).stream().mapToInt(s -> adjacency.getStationIndex().indexOf(s)).sorted().toArray(), adjacency.getADJplusInterferers(number, channel));
+            }
+        }
+        final StationPackingInstance instance = randomInstance();
+        final InterferenceAdjacency.InstanceMask mask = adjacency.mask(instance);
+        for (int number : adjacency.getStationIndex().getNumbers()) {
+            final Station station = adjacency.getStationIndex().getStation(number);
+            // the channels of the constraints
+            for (int channel = 14; channel <= 19; channel++) {
+                assertEquals(instance.getStations().contains(station) && instance.getDomains().get(station).contains(channel), mask.contains(number, channel));
+            }
+        }
+        assertFalse(mask.contains(0, 100));
+    }
+
+    @Test
+    public void testMaskOfAFewStationsAmongManyWords() {
+        // 300 constrained stations, numbered over several words
+        final Map<Station, Map<Integer, Set<Station>>> coConstraints = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            coConstraints.computeIfAbsent(station(i), s -> new HashMap<>()).computeIfAbsent(14, c -> new HashSet<>()).add(station((i + 1) % 300));
+        }
+        final InterferenceAdjacency adjacency = new InterferenceAdjacency(coConstraints, new HashMap<>());
+        final Map<Station, Set<Integer>> domains = new HashMap<>();
+        domains.put(station(3), ImmutableSet.of(14));
+        domains.put(station(130), ImmutableSet.of(13, 14));
+        domains.put(station(299), ImmutableSet.of(15));
+        // no constraints
+        domains.put(station(1000), ImmutableSet.of(14));
+        final StationPackingInstance instance = new StationPackingInstance(domains);
+        final InterferenceAdjacency.InstanceMask mask = adjacency.mask(instance);
+        for (int number : adjacency.getStationIndex().getNumbers()) {
+            final Station station = adjacency.getStationIndex().getStation(number);
+            assertEquals(station.equals(station(3)) || station.equals(station(130)), mask.contains(number, 14));
+            assertFalse(mask.contains(number, 15));
+        }
+    }
+
+    @Test
+    public void testEncodingMatchesTheConstraints() {
+        final SATEncoder encoder = new SATEncoder(constraintManager);
+        int interferenceClauses = 0;
+        for (int trial = 0; trial < 10; trial++) {
+            final StationPackingInstance instance = randomInstance();
+            final Set<Clause> expected = new HashSet<>(encoder.encodeBaseClauses(instance));
+            for (Station station : instance.getStations()) {
+                for (int channel : instance.getDomains().get(station)) {
+                    for (Station interfering : constraintManager.getCOInterferingStations(station, channel)) {
+                        if (instance.getStations().contains(interfering) && instance.getDomains().get(interfering).contains(channel)) {
+                            expected.add(clause(station, channel, interfering, channel));
+                        }
+                    }
+                    for (Station interfering : constraintManager.getADJplusInterferingStations(station, channel)) {
+                        if (instance.getStations().contains(interfering) && instance.getDomains().get(interfering).contains(channel + 1)) {
+                            expected.add(clause(station, channel, interfering, channel + 1));
+                        }
+                    }
+                }
+            }
+            final CNF cnf = encoder.encode(instance).getFirst();
+            assertEquals(expected, new HashSet<>(cnf));
+            interferenceClauses += cnf.size() - encoder.encodeBaseClauses(instance).size();
+        }
+        assertTrue(interferenceClauses > 0);
+    }
+
+    // the variables of the default encoder are the (identity numbered) station ID paired with the channel
+    private static Clause clause(Station station1, int channel1, Station station2, int channel2) {
+        final Clause clause = new Clause();
+        clause.add(new Literal(variable(station1, channel1), false));
+        clause.add(new Literal(variable(station2, channel2), false));
+        return clause;
+    }
+
+    private static long variable(Station station, int channel) {
+        return SATEncoderUtils.SzudzikElegantPairing(station.getID(), channel);
+    }
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.datamanagers.constraints.IConstraintManager;
+import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.componentgrouper.IComponentGrouper;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchResult;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+public class ComponentPrefetchCacheDecoratorTest {
+
+    private final long seed = 0;
+    private final Station s1 = new Station(1);
+    private final Station s2 = new Station(2);
+    private final StationPackingInstance instance = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14), s2, ImmutableSet.of(15)));
+    private final Set<Set<Station>> components = ImmutableSet.of(ImmutableSet.of(s1), ImmutableSet.of(s2));
+
+    @Test
+    public void testUNSATComponentStopsSolving() {
+        final ISolver solver = mock(ISolver.class);
+        final IComponentGrouper grouper = mock(IComponentGrouper.class);
+        final IConstraintManager constraintManager = mock(IConstraintManager.class);
+        final ITerminationCriterion terminationCriterion = mock(ITerminationCriterion.class);
+        final ContainmentCacheProxy proxy = mock(ContainmentCacheProxy.class);
+        when(proxy.hasTimeToQuery(terminationCriterion)).thenReturn(true);
+        when(grouper.group(instance, constraintManager)).thenReturn(components);
+        when(proxy.prefetch(anyListOf(StationPackingInstance.class))).thenReturn(ImmutableList.of(
+                new ContainmentCacheBatchResult(ContainmentCacheSATResult.failure(), ContainmentCacheUNSATResult.failure()),
+                new ContainmentCacheBatchResult(ContainmentCacheSATResult.failure(), new ContainmentCacheUNSATResult("SATFC:UNSAT:a:b:1"))));
+
+        final SolverResult result = new ComponentPrefetchCacheDecorator(solver, proxy, grouper, constraintManager).solve(instance, terminationCriterion, seed);
+
+        assertEquals(SATResult.UNSAT, result.getResult());
+        verify(solver, never()).solve(any(StationPackingInstance.class), eq(terminationCriterion), eq(seed));
+        assertNull(ComponentPrefetchCacheDecorator.getPrefetched(proxy, new StationPackingInstance(ImmutableMap.of(s2, ImmutableSet.of(15)))));
+    }
+
+    @Test
+    public void testPrefetchesEveryComponentAtOnce() {
+        final ISolver solver = mock(ISolver.class);
+        final IComponentGrouper grouper = mock(IComponentGrouper.class);
+        final IConstraintManager constraintManager = mock(IConstraintManager.class);
+        final ITerminationCriterion terminationCriterion = mock(ITerminationCriterion.class);
+        final ContainmentCacheProxy proxy = mock(ContainmentCacheProxy.class);
+        when(proxy.hasTimeToQuery(terminationCriterion)).thenReturn(true);
+        when(grouper.group(instance, constraintManager)).thenReturn(components);
+        final ContainmentCacheBatchResult miss = new ContainmentCacheBatchResult(ContainmentCacheSATResult.failure(), ContainmentCacheUNSATResult.failure());
+        when(proxy.prefetch(anyListOf(StationPackingInstance.class))).thenReturn(ImmutableList.of(miss, miss));
+        when(solver.solve(instance, terminationCriterion, seed)).thenReturn(new SolverResult(SATResult.SAT, 0, Maps.newHashMap()));
+
+        final SolverResult result = new ComponentPrefetchCacheDecorator(solver, proxy, grouper, constraintManager).solve(instance, terminationCriterion, seed);
+
+        assertEquals(SATResult.SAT, result.getResult());
+        verify(proxy, times(1)).prefetch(ImmutableList.of(
+                new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14))),
+                new StationPackingInstance(ImmutableMap.of(s2, ImmutableSet.of(15)))));
+        verify(solver, times(1)).solve(instance, terminationCriterion, seed);
+    }
+
+    @Test
+    public void testPrefetchedResultsOnlyServeTheirOwnSolve() throws Exception {
+        final ISolver solver = mock(ISolver.class);
+        final IComponentGrouper grouper = mock(IComponentGrouper.class);
+        final IConstraintManager constraintManager = mock(IConstraintManager.class);
+        final ITerminationCriterion terminationCriterion = mock(ITerminationCriterion.class);
+        final ContainmentCacheProxy proxy = mock(ContainmentCacheProxy.class);
+        when(proxy.hasTimeToQuery(terminationCriterion)).thenReturn(true);
+        when(grouper.group(instance, constraintManager)).thenReturn(components);
+        final StationPackingInstance component = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14)));
+        final ContainmentCacheBatchResult hit = new ContainmentCacheBatchResult(new ContainmentCacheSATResult(ImmutableMap.of(14, ImmutableSet.of(s1)), "SATFC:SAT:a:b:1"), ContainmentCacheUNSATResult.failure());
+        final ContainmentCacheBatchResult miss = new ContainmentCacheBatchResult(ContainmentCacheSATResult.failure(), ContainmentCacheUNSATResult.failure());
+        when(proxy.prefetch(anyListOf(StationPackingInstance.class))).thenReturn(ImmutableList.of(hit, miss));
+        final List<ContainmentCacheBatchResult> seenBySolver = new ArrayList<>();
+        final List<ContainmentCacheBatchResult> seenByAnotherThread = new ArrayList<>();
+        when(solver.solve(instance, terminationCriterion, seed)).thenAnswer(invocation -> {
+            seenBySolver.add(ComponentPrefetchCacheDecorator.getPrefetched(proxy, component));
+            // another solve running at the same time
+            final Thread other = new Thread(() -> seenByAnotherThread.add(ComponentPrefetchCacheDecorator.getPrefetched(proxy, component)));
+            other.start();
+            other.join();
+            // a lookup through another proxy
+            seenBySolver.add(ComponentPrefetchCacheDecorator.getPrefetched(mock(ContainmentCacheProxy.class), component));
+            return new SolverResult(SATResult.SAT, 0, Maps.newHashMap());
+        });
+
+        new ComponentPrefetchCacheDecorator(solver, proxy, grouper, constraintManager).solve(instance, terminationCriterion, seed);
+
+        assertEquals(Arrays.asList(hit, null), seenBySolver);
+        assertEquals(Collections.singletonList(null), seenByAnotherThread);
+        assertNull(ComponentPrefetchCacheDecorator.getPrefetched(proxy, component));
+    }
+
+    @Test
+    public void testSkipsTheCacheWhenTheDeadlineIsClose() {
+        final ISolver solver = mock(ISolver.class);
+        final IComponentGrouper grouper = mock(IComponentGrouper.class);
+        final IConstraintManager constraintManager = mock(IConstraintManager.class);
+        final ITerminationCriterion terminationCriterion = mock(ITerminationCriterion.class);
+        final ContainmentCacheProxy proxy = mock(ContainmentCacheProxy.class);
+        when(proxy.hasTimeToQuery(terminationCriterion)).thenReturn(false);
+        when(solver.solve(instance, terminationCriterion, seed)).thenReturn(new SolverResult(SATResult.TIMEOUT, 0));
+
+        new ComponentPrefetchCacheDecorator(solver, proxy, grouper, constraintManager).solve(instance, terminationCriterion, seed);
+
+        verify(proxy, never()).prefetch(anyListOf(StationPackingInstance.class));
+        verify(solver, times(1)).solve(instance, terminationCriterion, seed);
+    }
+
+}
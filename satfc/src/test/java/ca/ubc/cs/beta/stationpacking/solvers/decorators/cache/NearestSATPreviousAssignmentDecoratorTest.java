@@ -0,0 +1,102 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.decorators.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import ca.ubc.cs.beta.stationpacking.base.Station;
+import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.ISolver;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.base.SolverResult;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.ITerminationCriterion;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class NearestSATPreviousAssignmentDecoratorTest {
+
+    private final long seed = 0;
+    private final Station s1 = new Station(1);
+    private final Station s2 = new Station(2);
+    private final Station s3 = new Station(3);
+    private final StationPackingInstance instance = new StationPackingInstance(
+            ImmutableMap.of(s1, ImmutableSet.of(14, 15), s2, ImmutableSet.of(15, 16), s3, ImmutableSet.of(20)),
+            ImmutableMap.of(s1, 14));
+
+    @Test
+    public void testNearestEntryBecomesThePreviousAssignment() {
+        final ISolver presolver = mock(ISolver.class);
+        final ITerminationCriterion terminationCriterion = mock(ITerminationCriterion.class);
+        final ContainmentCacheProxy proxy = mock(ContainmentCacheProxy.class);
+        when(proxy.hasTimeToQuery(terminationCriterion)).thenReturn(true);
+        when(proxy.findNearestSAT(instance)).thenReturn(new ContainmentCacheSATResult(ImmutableMap.of(15, ImmutableSet.of(s1), 16, ImmutableSet.of(s2)), "SATFC:SAT:a:b:1"));
+        when(presolver.solve(any(StationPackingInstance.class), eq(terminationCriterion), eq(seed))).thenReturn(new SolverResult(SATResult.TIMEOUT, 0));
+
+        new NearestSATPreviousAssignmentDecorator(presolver, proxy).solve(instance, terminationCriterion, seed);
+
+        final ArgumentCaptor<StationPackingInstance> captor = ArgumentCaptor.forClass(StationPackingInstance.class);
+        verify(presolver).solve(captor.capture(), eq(terminationCriterion), eq(seed));
+        assertEquals(instance.getDomains(), captor.getValue().getDomains());
+        assertEquals(ImmutableMap.of(s1, 15, s2, 16), captor.getValue().getPreviousAssignment());
+    }
+
+    @Test
+    public void testKeepsAPreviousAssignmentThatCoversMore() {
+        final ISolver presolver = mock(ISolver.class);
+        final ITerminationCriterion terminationCriterion = mock(ITerminationCriterion.class);
+        final ContainmentCacheProxy proxy = mock(ContainmentCacheProxy.class);
+        when(proxy.hasTimeToQuery(terminationCriterion)).thenReturn(true);
+        // covers no more stations than the instance's own previous assignment
+        when(proxy.findNearestSAT(instance)).thenReturn(new ContainmentCacheSATResult(ImmutableMap.of(16, ImmutableSet.of(s2)), "SATFC:SAT:a:b:1"));
+        when(presolver.solve(instance, terminationCriterion, seed)).thenReturn(new SolverResult(SATResult.TIMEOUT, 0));
+
+        new NearestSATPreviousAssignmentDecorator(presolver, proxy).solve(instance, terminationCriterion, seed);
+
+        verify(presolver).solve(instance, terminationCriterion, seed);
+    }
+
+    @Test
+    public void testSkipsTheCacheWhenThePreviousAssignmentIsComplete() {
+        final ISolver presolver = mock(ISolver.class);
+        final ITerminationCriterion terminationCriterion = mock(ITerminationCriterion.class);
+        final ContainmentCacheProxy proxy = mock(ContainmentCacheProxy.class);
+        when(proxy.hasTimeToQuery(terminationCriterion)).thenReturn(true);
+        final StationPackingInstance complete = new StationPackingInstance(ImmutableMap.of(s1, ImmutableSet.of(14)), ImmutableMap.of(s1, 14));
+
+        new NearestSATPreviousAssignmentDecorator(presolver, proxy).solve(complete, terminationCriterion, seed);
+
+        verify(proxy, never()).findNearestSAT(any(StationPackingInstance.class));
+        verify(presolver).solve(complete, terminationCriterion, seed);
+    }
+
+}
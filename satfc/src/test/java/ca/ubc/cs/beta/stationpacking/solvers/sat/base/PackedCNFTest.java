@@ -0,0 +1,122 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.base;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class PackedCNFTest {
+
+    private static Clause clause(long... aLiterals) {
+        final Clause clause = new Clause();
+        for (long literal : aLiterals) {
+            clause.add(new Literal(Math.abs(literal), literal > 0));
+        }
+        return clause;
+    }
+
+    private static CNF objectCNF() {
+        final CNF cnf = new CNF();
+        cnf.add(clause(1, 2, 3));
+        cnf.add(clause(-1, -2));
+        cnf.add(clause());
+        cnf.add(clause(-7));
+        return cnf;
+    }
+
+    @Test
+    public void testBuilderPacksClausesInOrder() {
+        final PackedCNF packed = PackedCNF.builder()
+                .addLiteral(1, true).addLiteral(2, true).addLiteral(3, true).endClause()
+                .addLiteral(1, false).addLiteral(2, false).endClause()
+                .endClause()
+                .addLiteral(7, false).endClause()
+                .build();
+        assertEquals(4, packed.getNumClauses());
+        assertEquals(6, packed.getNumLiterals());
+        assertEquals(7, packed.getMaxVariable());
+        assertTrue(packed.isNarrow());
+        assertArrayEquals(new int[]{1, 2, 3, -1, -2, -7}, packed.getLiterals());
+        assertArrayEquals(new int[]{0, 3, 5, 5, 6}, packed.getClauseStarts());
+        assertEquals(0, packed.getClauseSize(2));
+        assertEquals(-2, packed.getLiteral(1, 1));
+        assertEquals("c comment\np cnf 7 4\n1 2 3 0\n-1 -2 0\n 0\n-7 0\n", packed.toDIMACS(new String[]{" comment "}));
+        assertEquals(new HashSet<>(objectCNF()), new HashSet<>(packed.toClauses()));
+    }
+
+    @Test
+    public void testPackedBackedCNFBehavesLikeObjectCNF() {
+        final CNF objects = objectCNF();
+        final CNF packed = new CNF(PackedCNF.of(objects));
+        assertEquals(objects.size(), packed.size());
+        assertEquals(objects.getVariables(), packed.getVariables());
+        assertEquals(objects.toString(), packed.toString());
+        assertEquals(objects.getHashString(), packed.getHashString());
+        // changes go to the clause objects
+        packed.add(clause(8));
+        assertEquals(5, packed.size());
+        assertTrue(packed.contains(clause(8)));
+        assertEquals(8, packed.getPacked().getMaxVariable());
+    }
+
+    @Test
+    public void testWrittenDIMACSMatchesTheString() {
+        final PackedCNF packed = PackedCNF.of(objectCNF());
+        final ByteBuffer buffer = ByteBuffer.allocate((int) packed.getDIMACSLength());
+        packed.writeDIMACS(buffer);
+        assertEquals(0, buffer.remaining());
+        assertEquals(packed.toDIMACS(null), new String(buffer.array(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testTerminatedLiteralsFollowTheClauses() {
+        final PackedCNF packed = PackedCNF.of(objectCNF());
+        final IntBuffer buffer = IntBuffer.allocate((int) packed.getTerminatedLength());
+        packed.writeTerminatedLiterals(buffer);
+        assertEquals(0, buffer.remaining());
+        assertArrayEquals(new int[]{1, 2, 3, 0, -1, -2, 0, 0, -7, 0}, buffer.array());
+    }
+
+    @Test
+    public void testVariablesBeyondIntRangeWidenTheLiterals() {
+        final long large = 1L + Integer.MAX_VALUE;
+        final PackedCNF packed = PackedCNF.builder()
+                .addLiteral(5, false).endClause()
+                .addLiteral(large, true).addLiteral(large + 1, false).endClause()
+                .build();
+        assertFalse(packed.isNarrow());
+        assertEquals(-5, packed.getLiteral(0, 0));
+        assertEquals(large, packed.getLiteral(1, 0));
+        assertEquals(-(large + 1), packed.getLiteral(1, 1));
+        assertEquals(large + 1, packed.getMaxVariable());
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.cnfencoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.LongSupplier;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.PackedCNF;
+
+public class AtMostOneEncodingTest {
+
+    private static final int MAX_VARIABLES = 10;
+
+    /**
+     * Encodes at most one of variables 1..n, numbering auxiliary variables from n+1 on.
+     */
+    private static PackedCNF encode(AtMostOneEncoding encoding, int n, long[] numAuxiliaryVariables) {
+        final long[] variables = new long[n];
+        for (int i = 0; i < n; i++) {
+            variables[i] = i + 1;
+        }
+        final LongSupplier auxiliaryVariables = () -> n + 1 + numAuxiliaryVariables[0]++;
+        final PackedCNF.Builder builder = PackedCNF.builder();
+        encoding.encode(variables, auxiliaryVariables, builder);
+        return builder.build();
+    }
+
+    private static boolean satisfies(PackedCNF cnf, long assignment) {
+        for (int c = 0; c < cnf.getNumClauses(); c++) {
+            boolean satisfied = false;
+            for (int i = 0; i < cnf.getClauseSize(c) && !satisfied; i++) {
+                final long literal = cnf.getLiteral(c, i);
+                final boolean value = (assignment >> (Math.abs(literal) - 1) & 1) == 1;
+                satisfied = value == literal > 0;
+            }
+            if (!satisfied) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testEncodingsAllowExactlyTheAtMostOneAssignments() {
+        for (AtMostOneEncoding encoding : AtMostOneEncoding.values()) {
+            for (int n = 1; n <= MAX_VARIABLES; n++) {
+                final long[] numAuxiliaryVariables = {0};
+                final PackedCNF cnf = encode(encoding, n, numAuxiliaryVariables);
+                assertTrue(cnf.getMaxVariable() <= n + numAuxiliaryVariables[0]);
+                for (long primary = 0; primary < 1L << n; primary++) {
+                    boolean satisfiable = false;
+                    for (long auxiliary = 0; auxiliary < 1L << numAuxiliaryVariables[0] && !satisfiable; auxiliary++) {
+                        satisfiable = satisfies(cnf, primary | auxiliary << n);
+                    }
+                    assertEquals(encoding + " on " + n + " variables, assignment " + Long.toBinaryString(primary),
+                            Long.bitCount(primary) <= 1, satisfiable);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAuxiliaryEncodingsAreSmallerOnLargeDomains() {
+        final int n = 30;
+        final int pairwiseClauses = encode(AtMostOneEncoding.PAIRWISE, n, new long[]{0}).getNumClauses();
+        assertEquals(n * (n - 1) / 2, pairwiseClauses);
+        for (AtMostOneEncoding encoding : new AtMostOneEncoding[]{AtMostOneEncoding.SEQUENTIAL, AtMostOneEncoding.COMMANDER, AtMostOneEncoding.PRODUCT}) {
+            assertTrue(encoding.toString(), encode(encoding, n, new long[]{0}).getNumClauses() < pairwiseClauses / 3);
+        }
+    }
+
+}
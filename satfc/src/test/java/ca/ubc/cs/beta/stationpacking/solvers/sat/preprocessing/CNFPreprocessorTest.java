@@ -0,0 +1,199 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfc.
+ *
+ * satfc is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfc is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfc.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.solvers.sat.preprocessing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.CNF;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.Clause;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.Literal;
+import ca.ubc.cs.beta.stationpacking.solvers.sat.base.PackedCNF;
+import ca.ubc.cs.beta.stationpacking.solvers.termination.walltime.WalltimeTerminationCriterion;
+
+public class CNFPreprocessorTest {
+
+    private static final int NUM_RANDOM_CNFS = 300;
+
+    private static Clause clause(long... literals) {
+        final Clause clause = new Clause();
+        for (long literal : literals) {
+            clause.add(new Literal(Math.abs(literal), literal > 0));
+        }
+        return clause;
+    }
+
+    /**
+     * A random CNF over variables 1..numVariables, spread out by a factor of 10 to make sure variables are renumbered.
+     */
+    private static CNF randomCNF(Random random, int numVariables, int numClauses) {
+        final CNF cnf = new CNF();
+        for (int c = 0; c < numClauses; c++) {
+            final int size = random.nextInt(10) == 0 ? 1 : 2 + random.nextInt(2);
+            final long[] literals = new long[size];
+            for (int i = 0; i < size; i++) {
+                literals[i] = (1 + random.nextInt(numVariables)) * 10L * (random.nextBoolean() ? 1 : -1);
+            }
+            cnf.add(clause(literals));
+        }
+        return cnf;
+    }
+
+    private static boolean satisfies(CNF cnf, Map<Long, Boolean> model) {
+        final PackedCNF packed = cnf.getPacked();
+        for (int c = 0; c < packed.getNumClauses(); c++) {
+            boolean satisfied = false;
+            for (int i = 0; i < packed.getClauseSize(c); i++) {
+                final long literal = packed.getLiteral(c, i);
+                if (model.getOrDefault(Math.abs(literal), false) == literal > 0) {
+                    satisfied = true;
+                }
+            }
+            if (!satisfied) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a model of the CNF over variables 1..numVariables (times the given factor), or null if it is unsatisfiable.
+     */
+    private static Set<Literal> bruteForce(CNF cnf, int numVariables, long factor) {
+        for (long assignment = 0; assignment < 1L << numVariables; assignment++) {
+            final Map<Long, Boolean> model = new HashMap<>();
+            for (int v = 0; v < numVariables; v++) {
+                model.put((v + 1) * factor, (assignment >> v & 1) == 1);
+            }
+            if (satisfies(cnf, model)) {
+                final Set<Literal> literals = new HashSet<>();
+                model.forEach((variable, sign) -> literals.add(new Literal(variable, sign)));
+                return literals;
+            }
+        }
+        return null;
+    }
+
+    private static Map<Long, Boolean> toMap(Set<Literal> literals) {
+        final Map<Long, Boolean> model = new HashMap<>();
+        literals.forEach(literal -> model.put(literal.getVariable(), literal.getSign()));
+        return model;
+    }
+
+    private static void checkPreprocessing(CNFPreprocessor preprocessor, CNF cnf, int numVariables) {
+        final boolean sat = bruteForce(cnf, numVariables, 10) != null;
+        final PreprocessedCNF preprocessed = preprocessor.preprocess(cnf, new WalltimeTerminationCriterion(60));
+        if (preprocessed.isUnsat()) {
+            assertFalse(sat);
+            return;
+        }
+        final CNF simplified = preprocessed.getCNF();
+        assertTrue(simplified.size() <= cnf.size());
+        final int numSimplifiedVariables = (int) simplified.getPacked().getMaxVariable();
+        assertEquals("simplified CNF variables are not compressed", numSimplifiedVariables, simplified.getVariables().size());
+        final Set<Literal> simplifiedModel = bruteForce(simplified, numSimplifiedVariables, 1);
+        assertEquals(sat, simplifiedModel != null);
+        if (simplifiedModel != null) {
+            final Set<Literal> model = preprocessed.reconstruct(simplifiedModel);
+            assertTrue("reconstructed model " + model + " does not satisfy " + cnf, satisfies(cnf, toMap(model)));
+        }
+    }
+
+    @Test
+    public void testEachPassPreservesSatisfiabilityAndReconstructsModels() {
+        final Random random = new Random(42);
+        for (CNFPreprocessingPassType passType : CNFPreprocessingPassType.values()) {
+            final CNFPreprocessor preprocessor = CNFPreprocessor.of(Collections.singletonList(passType));
+            for (int i = 0; i < NUM_RANDOM_CNFS; i++) {
+                final int numVariables = 2 + random.nextInt(9);
+                checkPreprocessing(preprocessor, randomCNF(random, numVariables, 1 + random.nextInt(4 * numVariables)), numVariables);
+            }
+        }
+    }
+
+    @Test
+    public void testPipelinePreservesSatisfiabilityAndReconstructsModels() {
+        final Random random = new Random(7);
+        final CNFPreprocessor preprocessor = CNFPreprocessor.of(Arrays.asList(CNFPreprocessingPassType.values()));
+        for (int i = 0; i < NUM_RANDOM_CNFS; i++) {
+            final int numVariables = 2 + random.nextInt(11);
+            checkPreprocessing(preprocessor, randomCNF(random, numVariables, 1 + random.nextInt(5 * numVariables)), numVariables);
+        }
+    }
+
+    @Test
+    public void testDuplicateAndSubsumedClausesAreRemoved() {
+        final CNF cnf = new CNF();
+        cnf.add(clause(-1, -2));
+        cnf.add(clause(-2, -1));
+        cnf.add(clause(-1, -2, 3));
+        cnf.add(clause(1, 2, 4));
+        final List<ICNFPreprocessingPass> passes = Collections.singletonList(new SubsumedClauseRemover());
+        final PreprocessedCNF preprocessed = new CNFPreprocessor(passes, 1).preprocess(cnf, new WalltimeTerminationCriterion(60));
+        assertEquals(2, preprocessed.getCNF().size());
+        assertEquals(3, preprocessed.getCNF().getVariables().size());
+    }
+
+    @Test
+    public void testSingletonDomainIsPropagated() {
+        // station A has channel 1 (variable 1) only, station B channels 1 and 2 (variables 2 and 3), and they interfere on channel 1
+        final CNF cnf = new CNF();
+        cnf.add(clause(1));
+        cnf.add(clause(2, 3));
+        cnf.add(clause(-2, -3));
+        cnf.add(clause(-1, -2));
+        final PreprocessedCNF preprocessed = CNFPreprocessor.of(Collections.singletonList(CNFPreprocessingPassType.UNIT_PROPAGATION)).preprocess(cnf, new WalltimeTerminationCriterion(60));
+        assertTrue(preprocessed.isSat());
+        final Map<Long, Boolean> model = toMap(preprocessed.reconstruct(Collections.emptySet()));
+        assertEquals(3, model.size());
+        assertTrue(model.get(1L));
+        assertFalse(model.get(2L));
+        assertTrue(model.get(3L));
+    }
+
+    @Test
+    public void testFailedLiteralIsNegated() {
+        // 1 implies 2 and 3, which cannot both be true
+        final CNF cnf = new CNF();
+        cnf.add(clause(-1, 2));
+        cnf.add(clause(-1, 3));
+        cnf.add(clause(-2, -3));
+        cnf.add(clause(1, 4, 5));
+        final PreprocessedCNF preprocessed = new CNFPreprocessor(Collections.singletonList(new FailedLiteralProber()), 1).preprocess(cnf, new WalltimeTerminationCriterion(60));
+        assertFalse(preprocessed.isUnsat());
+        assertEquals(2, preprocessed.getCNF().size());
+        assertFalse(toMap(preprocessed.reconstruct(Collections.emptySet())).get(1L));
+    }
+
+}
@@ -21,6 +21,8 @@
  */
 package ca.ubc.cs.beta.stationpacking.webapp;
 
+import java.io.File;
+
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -33,9 +35,11 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 
 import redis.clients.jedis.JedisShardInfo;
+import ca.ubc.cs.beta.stationpacking.cache.CacheBinaryMessageConverter;
 import ca.ubc.cs.beta.stationpacking.cache.CacheLocator;
-import ca.ubc.cs.beta.stationpacking.cache.ICacheLocator;
+import ca.ubc.cs.beta.stationpacking.cache.ContainmentCacheQueryCoalescer;
 import ca.ubc.cs.beta.stationpacking.cache.RedisCacher;
+import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentIndexType;
 import ca.ubc.cs.beta.stationpacking.utils.JSONUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -56,6 +60,38 @@ public class Application {
     String redisURL;
     @Value("${redis.port:6379}")
     int redisPort;
+    // PERMUTATION or SET_TRIE, see ContainmentIndexType
+    @Value("${cache.index:PERMUTATION}")
+    ContainmentIndexType indexType;
+    // binary snapshot of the caches, used for fast restarts (empty to disable)
+    @Value("${cache.snapshot.file:}")
+    String snapshotFile;
+    @Value("${cache.snapshot.interval:600}")
+    long snapshotIntervalSeconds;
+    // how often (in seconds) dominated entries are pruned from the caches (0 to disable)
+    @Value("${cache.compaction.interval:0}")
+    long compactionIntervalSeconds;
+    // memory (in MB) each cache coordinate may use before its least used entries are evicted when compacting (0 for no limit)
+    @Value("${cache.budget.mb:0}")
+    long memoryBudgetMB;
+    // to split the cache across several servers: each one is started with the same shard count and its own shard index
+    @Value("${cache.shard.index:0}")
+    int shardIndex;
+    @Value("${cache.shard.count:1}")
+    int shardCount;
+    // pick the permutations of the containment indices from the cached entries on startup, and how often (in seconds) to pick them again (0 to never)
+    @Value("${cache.permutations.data:false}")
+    boolean dataDrivenPermutations;
+    @Value("${cache.permutations.rebuild.interval:0}")
+    long permutationRebuildIntervalSeconds;
+    // how many recent query answers are kept, until an entry is added to or removed from their cache (0 to only share the answers of identical queries in flight)
+    @Value("${cache.answers.size:1000}")
+    int maxAnswers;
+    // restore the snapshot and load each coordinate on its first query in the background, rather than loading everything before serving
+    @Value("${cache.load.lazy:true}")
+    boolean lazyLoading;
+    @Value("${cache.load.threads:4}")
+    int loadThreads;
 
     @Bean
     MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter() {
@@ -65,6 +101,12 @@ public class Application {
         return mappingJacksonHttpMessageConverter;
     }
 
+    // picked up by spring boot alongside the JSON converter, for clients that use the binary cache protocol
+    @Bean
+    CacheBinaryMessageConverter cacheBinaryMessageConverter() {
+        return new CacheBinaryMessageConverter();
+    }
+
     @Bean
     RedisConnectionFactory redisConnectionFactory() {
         return new JedisConnectionFactory(new JedisShardInfo(redisURL, redisPort));
@@ -80,9 +122,27 @@ public class Application {
         return new StringRedisTemplate(redisConnectionFactory());
     }
 
+    @Bean(destroyMethod = "close")
+    CacheLocator containmentCache() {
+        return CacheLocator.builder(cacher())
+                .indexType(indexType)
+                .snapshot(snapshotFile.isEmpty() ? null : new File(snapshotFile), snapshotIntervalSeconds)
+                .compaction(compactionIntervalSeconds, memoryBudgetMB * 1024 * 1024)
+                .shard(shardIndex, shardCount)
+                .permutations(dataDrivenPermutations, permutationRebuildIntervalSeconds)
+                .lazyLoading(lazyLoading, loadThreads)
+                .build();
+    }
+
+    // reported under /health
+    @Bean
+    CacheLoadingHealthIndicator cacheLoadingHealthIndicator() {
+        return new CacheLoadingHealthIndicator(containmentCache());
+    }
+
     @Bean
-    ICacheLocator containmentCache() {
-        return new CacheLocator(cacher());
+    ContainmentCacheQueryCoalescer coalescer() {
+        return new ContainmentCacheQueryCoalescer(maxAnswers);
     }
 
 }
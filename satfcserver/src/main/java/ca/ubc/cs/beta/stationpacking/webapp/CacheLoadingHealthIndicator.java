@@ -0,0 +1,64 @@
+/**
+ * Copyright 2015, Auctionomics, Alexandre Fréchette, Kevin Leyton-Brown.
+ *
+ * This file is part of satfcserver.
+ *
+ * satfcserver is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * satfcserver is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with satfcserver.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For questions, contact us at:
+ * afrechet@cs.ubc.ca
+ */
+package ca.ubc.cs.beta.stationpacking.webapp;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+
+import ca.ubc.cs.beta.stationpacking.cache.CacheLocator;
+import ca.ubc.cs.beta.stationpacking.cache.CacheLocator.LoadStatus;
+import ca.ubc.cs.beta.stationpacking.cache.ICacher.CacheCoordinate;
+
+/**
+ * Reports where the loading of the caches stands. The server is out of service until the snapshot is restored, and up after that,
+ * even while coordinates are loading (their queries are misses until they are loaded)
+ */
+public class CacheLoadingHealthIndicator extends AbstractHealthIndicator {
+
+    private final CacheLocator cacheLocator;
+
+    public CacheLoadingHealthIndicator(CacheLocator cacheLocator) {
+        this.cacheLocator = cacheLocator;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) throws Exception {
+        final LoadStatus status = cacheLocator.getLoadStatus();
+        if (status.isSnapshotRestored()) {
+            builder.up();
+        } else {
+            builder.outOfService();
+        }
+        builder.withDetail("snapshotRestored", status.isSnapshotRestored())
+                .withDetail("loaded", status.getLoaded().stream().map(CacheLoadingHealthIndicator::name).collect(Collectors.toList()))
+                .withDetail("loading", status.getLoading().stream().map(CacheLoadingHealthIndicator::name).collect(Collectors.toList()))
+                .withDetail("failed", status.getFailed().entrySet().stream().collect(Collectors.toMap(entry -> name(entry.getKey()), Map.Entry::getValue)));
+    }
+
+    private static String name(CacheCoordinate coordinate) {
+        return coordinate.getDomainHash() + ":" + coordinate.getInterferenceHash();
+    }
+
+}
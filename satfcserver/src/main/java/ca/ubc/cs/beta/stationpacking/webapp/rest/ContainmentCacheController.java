@@ -26,6 +26,7 @@ import java.util.Optional;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -34,12 +35,17 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import ca.ubc.cs.beta.stationpacking.base.StationPackingInstance;
+import ca.ubc.cs.beta.stationpacking.cache.CacheBinaryMessageConverter;
+import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheBatchRequest;
 import ca.ubc.cs.beta.stationpacking.cache.CacherProxy.ContainmentCacheCacheRequest;
 import ca.ubc.cs.beta.stationpacking.cache.ContainmentCache;
+import ca.ubc.cs.beta.stationpacking.cache.ContainmentCacheQueryCoalescer;
 import ca.ubc.cs.beta.stationpacking.cache.ICacheLocator;
 import ca.ubc.cs.beta.stationpacking.cache.RedisCacher;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheSATResult;
 import ca.ubc.cs.beta.stationpacking.cache.containment.ContainmentCacheUNSATResult;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchRequest;
+import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheBatchResult;
 import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCacheProxy.ContainmentCacheRequest;
 
 @Controller
@@ -47,14 +53,25 @@ import ca.ubc.cs.beta.stationpacking.solvers.decorators.cache.ContainmentCachePr
 @RequestMapping("/v1/cache")
 public class ContainmentCacheController extends AbstractController {
 
+    // every endpoint also speaks the compact binary protocol, picked through the Content-Type and Accept headers
+    private final static String BINARY_CONTENT = CacheBinaryMessageConverter.MEDIA_TYPE_VALUE;
+
     @Autowired
     ICacheLocator containmentCache;
 
     @Autowired
     RedisCacher cacher;
 
+    // shares the answers of identical queries
+    @Autowired
+    ContainmentCacheQueryCoalescer coalescer;
+
+    // how many SAT entries a nearest SAT lookup looks at, at most
+    @Value("${cache.nearest.budget:1000}")
+    int nearestScanBudget;
+
     // note that while this is conceptually a GET request, the fact that we need to send json means that its simpler to achieve as a POST
-    @RequestMapping(value = "/query/SAT", method = RequestMethod.POST, produces = JSON_CONTENT, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @RequestMapping(value = "/query/SAT", method = RequestMethod.POST, produces = {JSON_CONTENT, BINARY_CONTENT}, consumes = {MediaType.APPLICATION_JSON_VALUE, BINARY_CONTENT})
     @ResponseBody
     public ContainmentCacheSATResult lookupSAT(
             @RequestBody final ContainmentCacheRequest request
@@ -64,14 +81,14 @@ public class ContainmentCacheController extends AbstractController {
         log.info("Querying the SAT cache for entry " + description);
         final Optional<ContainmentCache> cache = containmentCache.locate(request.getCoordinate());
         if (cache.isPresent()) {
-            return cache.get().proveSATBySuperset(instance);
+            return coalescer.proveSATBySuperset(request.getCoordinate(), cache.get(), instance);
         } else {
             return ContainmentCacheSATResult.failure();
         }
     }
 
     // note that while this is conceptually a GET request, the fact that we need to send json means that its simpler to achieve as a POST
-    @RequestMapping(value = "/query/UNSAT", method = RequestMethod.POST, produces = JSON_CONTENT, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @RequestMapping(value = "/query/UNSAT", method = RequestMethod.POST, produces = {JSON_CONTENT, BINARY_CONTENT}, consumes = {MediaType.APPLICATION_JSON_VALUE, BINARY_CONTENT})
     @ResponseBody
     public ContainmentCacheUNSATResult lookupUNSAT(
             @RequestBody final ContainmentCacheRequest request
@@ -81,18 +98,61 @@ public class ContainmentCacheController extends AbstractController {
         log.info("Querying the UNSAT cache for entry " + description);
         final Optional<ContainmentCache> cache = containmentCache.locate(request.getCoordinate());
         if (cache.isPresent()) {
-            return cache.get().proveUNSATBySubset(instance);
+            return coalescer.proveUNSATBySubset(request.getCoordinate(), cache.get(), instance);
         } else {
             return ContainmentCacheUNSATResult.failure();
         }
     }
 
-    @RequestMapping(method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    // the SAT entry that solves the most stations of the instance, as a starting point for solving it. Answers with the solution itself if an entry solves every station
+    @RequestMapping(value = "/query/SAT/nearest", method = RequestMethod.POST, produces = {JSON_CONTENT, BINARY_CONTENT}, consumes = {MediaType.APPLICATION_JSON_VALUE, BINARY_CONTENT})
+    @ResponseBody
+    public ContainmentCacheSATResult lookupNearestSAT(
+            @RequestBody final ContainmentCacheRequest request
+    ) {
+        final StationPackingInstance instance = request.getInstance();
+        final String description = instance.getMetadata().containsKey(StationPackingInstance.NAME_KEY) ? instance.getName() : instance.getInfo();
+        log.info("Querying the SAT cache for the nearest entry to " + description);
+        final Optional<ContainmentCache> cache = containmentCache.locate(request.getCoordinate());
+        if (cache.isPresent()) {
+            return coalescer.findNearestSAT(request.getCoordinate(), cache.get(), instance, nearestScanBudget);
+        } else {
+            return ContainmentCacheSATResult.failure();
+        }
+    }
+
+    // answers both lookups for every instance, so that a client can query all the components of a problem in one round trip
+    @RequestMapping(value = "/query/batch", method = RequestMethod.POST, produces = {JSON_CONTENT, BINARY_CONTENT}, consumes = {MediaType.APPLICATION_JSON_VALUE, BINARY_CONTENT})
+    @ResponseBody
+    public ContainmentCacheBatchResult[] lookupBatch(
+            @RequestBody final ContainmentCacheBatchRequest request
+    ) {
+        log.info("Querying the SAT and UNSAT caches for a batch of {} entries", request.getInstances().size());
+        final Optional<ContainmentCache> cache = containmentCache.locate(request.getCoordinate());
+        return request.getInstances().stream()
+                .map(instance -> cache.isPresent() ?
+                        new ContainmentCacheBatchResult(coalescer.proveSATBySuperset(request.getCoordinate(), cache.get(), instance), coalescer.proveUNSATBySubset(request.getCoordinate(), cache.get(), instance)) :
+                        new ContainmentCacheBatchResult(ContainmentCacheSATResult.failure(), ContainmentCacheUNSATResult.failure()))
+                .toArray(ContainmentCacheBatchResult[]::new);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, consumes = {MediaType.APPLICATION_JSON_VALUE, BINARY_CONTENT})
     @ResponseBody
     public void cache(
             @RequestBody final ContainmentCacheCacheRequest request
     ) {
-        cacher.cacheResult(request.getCoordinate(), request.getInstance(), request.getResult());
+        final String key = cacher.cacheResult(request.getCoordinate(), request.getInstance(), request.getResult());
+        // make the result visible to queries right away, rather than on the next server restart
+        containmentCache.addToCache(request.getCoordinate(), request.getInstance(), request.getResult(), key);
+    }
+
+    @RequestMapping(value = "/batch", method = RequestMethod.POST, consumes = {MediaType.APPLICATION_JSON_VALUE, BINARY_CONTENT})
+    @ResponseBody
+    public void cacheBatch(
+            @RequestBody final ContainmentCacheCacheBatchRequest request
+    ) {
+        log.info("Caching a batch of {} results", request.getRequests().size());
+        request.getRequests().forEach(this::cache);
     }
 
 }
\ No newline at end of file